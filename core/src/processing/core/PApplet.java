@@ -5334,7 +5334,13 @@ public class PApplet implements PConstants {
 
 
   /**
-   * Options may contain "header", "tsv", "csv", or "bin" separated by commas.
+   * Options may contain "header", "tsv", "csv", "bin", or "tbl" separated by
+   * commas. A "tbl" file is stored by column and mapped into memory when
+   * it's opened, so even very large tables load right away.
+   *
+   * With the "follow" option, table.refresh() will add rows that have been
+   * written to the end of a CSV or TSV file since it was loaded, and
+   * "window=1000" keeps only the newest 1000 rows.
    *
    * Another option is "dictionary=filename.tsv", which allows users to
    * specify a "dictionary" file that contains a mapping of the column titles
@@ -5355,6 +5361,16 @@ public class PApplet implements PConstants {
           return dictionary.typedParse(createInput(filename), optionStr);
         }
       }
+      if (Table.isColumnar(optionStr) || Table.isFollowing(optionStr)) {
+        // map or follow the file directly if it's on the local disk
+        File file = dataFile(filename);
+        if (!file.exists()) {
+          file = sketchFile(filename);
+        }
+        if (file.exists()) {
+          return new Table(file, optionStr);
+        }
+      }
       return new Table(createInput(filename), optionStr);
 
     } catch (IOException e) {
@@ -5377,7 +5393,7 @@ public class PApplet implements PConstants {
 
 
   /**
-   * @param options can be one of "tsv", "csv", "bin", or "html"
+   * @param options can be one of "tsv", "csv", "bin", "tbl", or "html"
    */
   public boolean saveTable(Table table, String filename, String options) {
 //    String ext = checkExtension(filename);
@@ -0,0 +1,570 @@
+package processing.data;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Random;
+
+import processing.core.PApplet;
+
+
+/**
+ * Helper class for a list of doubles, for values that need more precision
+ * than a float. Lists are designed to have some of the features of
+ * ArrayLists, but to maintain the simplicity and efficiency of working
+ * with arrays.
+ *
+ * Functions like sort() and shuffle() always act on the list itself. To get
+ * a sorted copy, use list.copy().sort().
+ *
+ * @see FloatList
+ * @see LongList
+ */
+public class DoubleList implements Iterable<Double> {
+  protected int count;
+  protected double[] data;
+
+
+  public DoubleList() {
+    data = new double[10];
+  }
+
+
+  public DoubleList(int length) {
+    data = new double[length];
+  }
+
+
+  public DoubleList(double[] source) {
+    count = source.length;
+    data = new double[count];
+    System.arraycopy(source, 0, data, 0, count);
+  }
+
+
+  public DoubleList(Iterable<Double> iter) {
+    this(10);
+    for (double v : iter) {
+      append(v);
+    }
+  }
+
+
+  /**
+   * Improve efficiency by removing allocated but unused entries from the
+   * internal array used to store the data.
+   */
+  private void crop() {
+    if (count != data.length) {
+      data = Arrays.copyOf(data, count);
+    }
+  }
+
+
+  /**
+   * Get the length of the list.
+   */
+  public int size() {
+    return count;
+  }
+
+
+  public void resize(int length) {
+    if (length > data.length) {
+      double[] temp = new double[length];
+      System.arraycopy(data, 0, temp, 0, count);
+      data = temp;
+
+    } else if (length > count) {
+      Arrays.fill(data, count, length, 0);
+    }
+    count = length;
+  }
+
+
+  /**
+   * Remove all entries from the list.
+   */
+  public void clear() {
+    count = 0;
+  }
+
+
+  /**
+   * Get an entry at a particular index.
+   */
+  public double get(int index) {
+    if (index >= count) {
+      throw new ArrayIndexOutOfBoundsException(index);
+    }
+    return data[index];
+  }
+
+
+  /**
+   * Set the entry at a particular index. If the index is past the length of
+   * the list, it'll expand the list to accommodate, and fill the intermediate
+   * entries with 0s.
+   */
+  public void set(int index, double what) {
+    if (index >= count) {
+      data = PApplet.expand(data, index+1);
+      for (int i = count; i < index; i++) {
+        data[i] = 0;
+      }
+      count = index+1;
+    }
+    data[index] = what;
+  }
+
+
+  /**
+   * Remove an element from the specified index.
+   */
+  public double remove(int index) {
+    if (index < 0 || index >= count) {
+      throw new ArrayIndexOutOfBoundsException(index);
+    }
+    double entry = data[index];
+    System.arraycopy(data, index + 1, data, index, count - index - 1);
+    count--;
+    return entry;
+  }
+
+
+  // Remove the first instance of a particular value,
+  // and return the index at which it was found.
+  public int removeValue(double value) {
+    int index = index(value);
+    if (index != -1) {
+      remove(index);
+      return index;
+    }
+    return -1;
+  }
+
+
+  // Remove all instances of a particular value,
+  // and return the number of values found and removed
+  public int removeValues(double value) {
+    int ii = 0;
+    if (Double.isNaN(value)) {
+      for (int i = 0; i < count; i++) {
+        if (!Double.isNaN(data[i])) {
+          data[ii++] = data[i];
+        }
+      }
+    } else {
+      for (int i = 0; i < count; i++) {
+        if (data[i] != value) {
+          data[ii++] = data[i];
+        }
+      }
+    }
+    int removed = count - ii;
+    count = ii;
+    return removed;
+  }
+
+
+  /** Replace the first instance of a particular value */
+  public boolean replaceValue(double value, double newValue) {
+    for (int i = 0; i < count; i++) {
+      if (data[i] == value || (value != value && data[i] != data[i])) {
+        data[i] = newValue;
+        return true;
+      }
+    }
+    return false;
+  }
+
+
+  /** Replace all instances of a particular value */
+  public boolean replaceValues(double value, double newValue) {
+    boolean changed = false;
+    for (int i = 0; i < count; i++) {
+      if (data[i] == value || (value != value && data[i] != data[i])) {
+        data[i] = newValue;
+        changed = true;
+      }
+    }
+    return changed;
+  }
+
+
+  /**
+   * Add a new entry to the list.
+   */
+  public void append(double value) {
+    if (count == data.length) {
+      data = PApplet.expand(data, Math.max(10, count << 1));
+    }
+    data[count++] = value;
+  }
+
+
+  public void append(double[] values) {
+    for (double v : values) {
+      append(v);
+    }
+  }
+
+
+  public void append(DoubleList list) {
+    for (int i = 0; i < list.count; i++) {
+      append(list.data[i]);
+    }
+  }
+
+
+  public void insert(int index, double value) {
+    insert(index, new double[] { value });
+  }
+
+
+  // same as splice
+  public void insert(int index, double[] values) {
+    if (index < 0) {
+      throw new IllegalArgumentException("insert() index cannot be negative: it was " + index);
+    }
+    if (index > count) {
+      throw new IllegalArgumentException("insert() index " + index + " is past the end of this list");
+    }
+    double[] temp = new double[count + values.length];
+    System.arraycopy(data, 0, temp, 0, index);
+    System.arraycopy(values, 0, temp, index, values.length);
+    System.arraycopy(data, index, temp, index+values.length, count - index);
+    count = count + values.length;
+    data = temp;
+  }
+
+
+  public void insert(int index, DoubleList list) {
+    insert(index, list.array());
+  }
+
+
+  /** Return the first index of a particular value. */
+  public int index(double what) {
+    for (int i = 0; i < count; i++) {
+      if (data[i] == what) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+
+  /**
+   * Check if a number is a part of the list
+   */
+  public boolean hasValue(double value) {
+    if (Double.isNaN(value)) {
+      for (int i = 0; i < count; i++) {
+        if (Double.isNaN(data[i])) {
+          return true;
+        }
+      }
+      return false;
+    }
+    return index(value) != -1;
+  }
+
+
+  public void add(int index, double amount) {
+    data[index] += amount;
+  }
+
+
+  public void sub(int index, double amount) {
+    data[index] -= amount;
+  }
+
+
+  public void mult(int index, double amount) {
+    data[index] *= amount;
+  }
+
+
+  public void div(int index, double amount) {
+    data[index] /= amount;
+  }
+
+
+  private void checkMinMax(String functionName) {
+    if (count == 0) {
+      String msg =
+        String.format("Cannot use %s() on an empty %s.",
+                      functionName, getClass().getSimpleName());
+      throw new RuntimeException(msg);
+    }
+  }
+
+
+  /** The smallest value, skipping NaN (or NaN if they're all NaN). */
+  public double min() {
+    checkMinMax("min");
+    int index = minIndex();
+    return index == -1 ? Double.NaN : data[index];
+  }
+
+
+  // index of the minimum value, skipping NaN, or -1 if they're all NaN
+  public int minIndex() {
+    checkMinMax("minIndex");
+    int index = -1;
+    for (int i = 0; i < count; i++) {
+      double d = data[i];
+      if (d == d && (index == -1 || d < data[index])) {
+        index = i;
+      }
+    }
+    return index;
+  }
+
+
+  /** The largest value, skipping NaN (or NaN if they're all NaN). */
+  public double max() {
+    checkMinMax("max");
+    int index = maxIndex();
+    return index == -1 ? Double.NaN : data[index];
+  }
+
+
+  // index of the maximum value, skipping NaN, or -1 if they're all NaN
+  public int maxIndex() {
+    checkMinMax("maxIndex");
+    int index = -1;
+    for (int i = 0; i < count; i++) {
+      double d = data[i];
+      if (d == d && (index == -1 || d > data[index])) {
+        index = i;
+      }
+    }
+    return index;
+  }
+
+
+  public double sum() {
+    double outgoing = 0;
+    for (int i = 0; i < count; i++) {
+      outgoing += data[i];
+    }
+    return outgoing;
+  }
+
+
+  /**
+   * Sorts the array in place.
+   */
+  public void sort() {
+    Arrays.sort(data, 0, count);
+  }
+
+
+  /**
+   * Reverse sort, orders values from highest to lowest, with any NaN
+   * values left at the end.
+   */
+  public void sortReverse() {
+    sort();  // puts NaN values at the end
+    int right = count;
+    while (right > 0 && data[right-1] != data[right-1]) {
+      right--;
+    }
+    for (int i = 0, ii = right - 1; i < ii; i++, ii--) {
+      double t = data[i];
+      data[i] = data[ii];
+      data[ii] = t;
+    }
+  }
+
+
+  /**
+   * Reverse the order of the list elements
+   */
+  public void reverse() {
+    int ii = count - 1;
+    for (int i = 0; i < count/2; i++) {
+      double t = data[i];
+      data[i] = data[ii];
+      data[ii] = t;
+      --ii;
+    }
+  }
+
+
+  /**
+   * Randomize the order of the list elements. Note that this does not
+   * obey the randomSeed() function in PApplet.
+   */
+  public void shuffle() {
+    Random r = new Random();
+    int num = count;
+    while (num > 1) {
+      int value = r.nextInt(num);
+      num--;
+      double temp = data[num];
+      data[num] = data[value];
+      data[value] = temp;
+    }
+  }
+
+
+  /**
+   * Randomize the list order using the random() function from the specified
+   * sketch, allowing shuffle() to use its current randomSeed() setting.
+   */
+  public void shuffle(PApplet sketch) {
+    int num = count;
+    while (num > 1) {
+      int value = (int) sketch.random(num);
+      num--;
+      double temp = data[num];
+      data[num] = data[value];
+      data[value] = temp;
+    }
+  }
+
+
+  public DoubleList copy() {
+    DoubleList outgoing = new DoubleList(data);
+    outgoing.count = count;
+    return outgoing;
+  }
+
+
+  /**
+   * Returns the actual array being used to store the data. For advanced users,
+   * this is the fastest way to access a large list. Suitable for iterating
+   * with a for() loop, but modifying the list will have terrible consequences.
+   */
+  public double[] values() {
+    crop();
+    return data;
+  }
+
+
+  /**
+   * Implemented this way so that we can use a DoubleList in a for loop. Each
+   * value is boxed as a Double, so use get() in a loop to avoid the garbage.
+   */
+  @Override
+  public Iterator<Double> iterator() {
+    return new Iterator<Double>() {
+      int index = -1;
+
+      public void remove() {
+        DoubleList.this.remove(index--);
+      }
+
+      public Double next() {
+        return data[++index];
+      }
+
+      public boolean hasNext() {
+        return index+1 < count;
+      }
+    };
+  }
+
+
+  /** Receives each entry in turn from forEach(). */
+  public interface Visitor {
+    public void visit(int index, double value);
+  }
+
+
+  /**
+   * Go through the entries in order, without boxing them the way a for loop
+   * over the list does.
+   */
+  public void forEach(Visitor visitor) {
+    for (int i = 0; i < count; i++) {
+      visitor.visit(i, data[i]);
+    }
+  }
+
+
+  /**
+   * Create a new array with a copy of all the values.
+   */
+  public double[] array() {
+    return array(null);
+  }
+
+
+  /**
+   * Copy values into the specified array. If the specified array is null or
+   * not the same size, a new array will be allocated.
+   */
+  public double[] array(double[] array) {
+    if (array == null || array.length != count) {
+      array = new double[count];
+    }
+    System.arraycopy(data, 0, array, 0, count);
+    return array;
+  }
+
+
+  /**
+   * Returns a normalized version of this list, with each value divided by
+   * the sum of all of them.
+   */
+  public DoubleList getPercent() {
+    double sum = sum();
+    DoubleList outgoing = new DoubleList(count);
+    for (int i = 0; i < count; i++) {
+      outgoing.data[i] = data[i] / sum;
+    }
+    outgoing.count = count;
+    return outgoing;
+  }
+
+
+  public DoubleList getSubset(int start) {
+    return getSubset(start, count - start);
+  }
+
+
+  public DoubleList getSubset(int start, int num) {
+    double[] subset = new double[num];
+    System.arraycopy(data, start, subset, 0, num);
+    return new DoubleList(subset);
+  }
+
+
+  public String join(String separator) {
+    if (count == 0) {
+      return "";
+    }
+    StringBuilder sb = new StringBuilder();
+    sb.append(data[0]);
+    for (int i = 1; i < count; i++) {
+      sb.append(separator);
+      sb.append(data[i]);
+    }
+    return sb.toString();
+  }
+
+
+  public void print() {
+    for (int i = 0; i < size(); i++) {
+      System.out.format("[%d] %f%n", i, data[i]);
+    }
+  }
+
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    sb.append(getClass().getSimpleName() + " size=" + size() + " [ ");
+    for (int i = 0; i < size(); i++) {
+      if (i != 0) {
+        sb.append(", ");
+      }
+      sb.append(i + ": " + data[i]);
+    }
+    sb.append(" ]");
+    return sb.toString();
+  }
+}
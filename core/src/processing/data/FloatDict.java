@@ -1,7 +1,7 @@
 package processing.data;
 
 import java.io.*;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Iterator;
 
 import processing.core.PApplet;
@@ -9,6 +9,12 @@ import processing.core.PApplet;
 
 /**
  * A simple table class to use a String as a lookup for an float value.
+ * <p>
+ * Removing an entry leaves a gap that's closed up the next time entries
+ * are used by their position: key(), value(), keyArray(), print(),
+ * toString(), and so on. So after a removal, even those reads change the
+ * dictionary, and it isn't safe to read from several threads at once
+ * without synchronizing.
  *
  * @webref data:composite
  * @see IntDict
@@ -23,7 +29,11 @@ public class FloatDict {
   protected float[] values;
 
   /** Internal implementation for faster lookups */
-  private HashMap<String, Integer> indices = new HashMap<String, Integer>();
+  private StringIndex indices = new StringIndex();
+
+  // reused by keys() and keyIterator(), so a for loop doesn't allocate
+  private Iterable<String> keyIterable;
+  private KeyIterator keyIterator;
 
 
   public FloatDict() {
@@ -43,6 +53,7 @@ public class FloatDict {
     count = 0;
     keys = new String[length];
     values = new float[length];
+    indices = new StringIndex(length);
   }
 
 
@@ -56,13 +67,14 @@ public class FloatDict {
     String[] lines = PApplet.loadStrings(reader);
     keys = new String[lines.length];
     values = new float[lines.length];
+    indices = new StringIndex(lines.length);
 
     for (int i = 0; i < lines.length; i++) {
       String[] pieces = PApplet.split(lines[i], '\t');
       if (pieces.length == 2) {
         keys[count] = pieces[0];
         values[count] = PApplet.parseFloat(pieces[1]);
-        indices.put(pieces[0], count);
+        indices.put(keys, pieces[0], count);
         count++;
       }
     }
@@ -78,8 +90,9 @@ public class FloatDict {
     this.keys = keys;
     this.values = values;
     count = keys.length;
+    indices = new StringIndex(count);
     for (int i = 0; i < count; i++) {
-      indices.put(keys[i], i);
+      indices.put(keys, keys[i], i);
     }
   }
 
@@ -88,7 +101,7 @@ public class FloatDict {
    * @brief Returns the number of key/value pairs
    */
   public int size() {
-    return count;
+    return count - indices.gapCount;
   }
 
 
@@ -100,16 +113,18 @@ public class FloatDict {
    */
   public void clear() {
     count = 0;
-    indices = new HashMap<String, Integer>();
+    indices = new StringIndex();
   }
 
 
   public String key(int index) {
+    closeGaps();
     return keys[index];
   }
 
 
   protected void crop() {
+    closeGaps();
     if (count != keys.length) {
       keys = PApplet.subset(keys, 0, count);
       values = PApplet.subset(values, 0, count);
@@ -127,61 +142,63 @@ public class FloatDict {
 //  }
 
   /**
+   * The iterator is reused once it's finished, so this isn't safe to use
+   * from more than one thread at a time, even when the dictionary isn't
+   * changing.
+   *
    * @webref floatdict:method
    * @brief Return the internal array being used to store the keys
    */
   public Iterable<String> keys() {
-    return new Iterable<String>() {
-
-      @Override
-      public Iterator<String> iterator() {
-        return new Iterator<String>() {
-          int index = -1;
+    if (keyIterable == null) {
+      keyIterable = new Iterable<String>() {
 
-          public void remove() {
-            removeIndex(index);
-          }
+        @Override
+        public Iterator<String> iterator() {
+          return keyIterator();
+        }
+      };
+    }
+    return keyIterable;
+  }
 
-          public String next() {
-            return key(++index);
-          }
 
-          public boolean hasNext() {
-            return index+1 < size();
-          }
-        };
-      }
-    };
+  // Use this to iterate when you want to be able to remove elements along the way
+  public Iterator<String> keyIterator() {
+    // hand back the last iterator again once it's been used up
+    if (keyIterator == null || !keyIterator.done) {
+      keyIterator = new KeyIterator();
+    } else {
+      keyIterator.reset();
+    }
+    return keyIterator;
   }
 
 
-  /*
-  static class KeyIterator implements Iterator<String> {
-    FloatHash parent;
-    int index;
-
-    public KeyIterator(FloatHash parent) {
-      this.parent = parent;
-      index = -1;
-    }
+  private class KeyIterator implements Iterator<String> {
+    int index = -1;  // position in the arrays, skipping gaps
+    boolean done;  // whether hasNext() last returned false
 
     public void remove() {
-      parent.removeIndex(index);
+      removeAt(index);
     }
 
     public String next() {
-      return parent.key(++index);
+      index = nextPosition(index);
+      return keys[index];
     }
 
     public boolean hasNext() {
-      return index+1 < parent.size();
+      // cleared again if entries are added and this carries on
+      done = nextPosition(index) >= count;
+      return !done;
     }
 
-    public void reset() {
+    void reset() {
       index = -1;
+      done = false;
     }
   }
-  */
 
 
   /**
@@ -196,6 +213,7 @@ public class FloatDict {
 
 
   public String[] keyArray(String[] outgoing) {
+    closeGaps();
     if (outgoing == null || outgoing.length != count) {
       outgoing = new String[count];
     }
@@ -205,6 +223,7 @@ public class FloatDict {
 
 
   public float value(int index) {
+    closeGaps();
     return values[index];
   }
 
@@ -224,18 +243,19 @@ public class FloatDict {
       @Override
       public Iterator<Float> iterator() {
         return new Iterator<Float>() {
-          int index = -1;
+          int index = -1;  // position in the arrays, skipping gaps
 
           public void remove() {
-            removeIndex(index);
+            removeAt(index);
           }
 
           public Float next() {
-            return value(++index);
+            index = nextPosition(index);
+            return values[index];
           }
 
           public boolean hasNext() {
-            return index+1 < size();
+            return nextPosition(index) < count;
           }
         };
       }
@@ -243,6 +263,26 @@ public class FloatDict {
   }
 
 
+  /** Receives each entry in turn from forEach(). */
+  public interface Visitor {
+    public void visit(String key, float value);
+  }
+
+
+  /**
+   * Go through the entries in order, without the Iterator or boxed values
+   * that a for loop over keys() or values() creates. The visitor shouldn't
+   * add or remove entries.
+   */
+  public void forEach(Visitor visitor) {
+    for (int i = 0; i < count; i++) {
+      if (keys[i] != StringIndex.GAP) {
+        visitor.visit(keys[i], values[i]);
+      }
+    }
+  }
+
+
   /**
    * Create a new array and copy each of the values into it.
    *
@@ -260,6 +300,7 @@ public class FloatDict {
    * size as the number of values, a new array will be allocated and returned.
    */
   public float[] valueArray(float[] array) {
+    closeGaps();
     if (array == null || array.length != size()) {
       array = new float[count];
     }
@@ -275,7 +316,7 @@ public class FloatDict {
    * @brief Return a value for the specified key
    */
   public float get(String key) {
-    int index = index(key);
+    int index = find(key);
     if (index == -1) {
       throw new IllegalArgumentException("No key named '" + key + "'");
     }
@@ -284,7 +325,7 @@ public class FloatDict {
 
 
   public float get(String key, float alternate) {
-    int index = index(key);
+    int index = find(key);
     if (index == -1) {
       return alternate;
     }
@@ -297,7 +338,7 @@ public class FloatDict {
    * @brief Create a new key/value pair or change the value of one
    */
   public void set(String key, float amount) {
-    int index = index(key);
+    int index = find(key);
     if (index == -1) {
       create(key, amount);
     } else {
@@ -311,14 +352,14 @@ public class FloatDict {
    * @brief Check if a key is a part of the data structure
    */
   public boolean hasKey(String key) {
-    return index(key) != -1;
+    return find(key) != -1;
   }
 
 
 //  /** Increase the value of a specific key by 1. */
 //  public void inc(String key) {
 //    inc(key, 1);
-////    int index = index(key);
+////    int index = find(key);
 ////    if (index == -1) {
 ////      create(key, 1);
 ////    } else {
@@ -332,7 +373,7 @@ public class FloatDict {
    * @brief Add to a value
    */
   public void add(String key, float amount) {
-    int index = index(key);
+    int index = find(key);
     if (index == -1) {
       create(key, amount);
     } else {
@@ -361,7 +402,7 @@ public class FloatDict {
    * @brief Multiply a value
    */
   public void mult(String key, float amount) {
-    int index = index(key);
+    int index = find(key);
     if (index != -1) {
       values[index] *= amount;
     }
@@ -373,7 +414,7 @@ public class FloatDict {
    * @brief Divide a value
    */
   public void div(String key, float amount) {
-    int index = index(key);
+    int index = find(key);
     if (index != -1) {
       values[index] /= amount;
     }
@@ -381,6 +422,7 @@ public class FloatDict {
 
 
   private void checkMinMax(String functionName) {
+    closeGaps();
     if (count == 0) {
       String msg =
         String.format("Cannot use %s() on an empty %s.",
@@ -494,17 +536,28 @@ public class FloatDict {
 
 
   public int index(String what) {
-    Integer found = indices.get(what);
-    return (found == null) ? -1 : found.intValue();
+    int position = find(what);
+    return (position == -1) ? -1 : position - indices.gapsBefore(position);
+  }
+
+
+  /** Position of a key in the arrays, or -1 if it's not there. */
+  private int find(String key) {
+    return indices.get(keys, key);
   }
 
 
   protected void create(String what, float much) {
     if (count == keys.length) {
-      keys = PApplet.expand(keys);
-      values = PApplet.expand(values);
+      closeGaps();
+      // grow unless closing the gaps left plenty of room
+      if (count * 2 >= keys.length) {
+        int length = Math.max(10, keys.length << 1);  // expand() keeps 0 at 0
+        keys = PApplet.expand(keys, length);
+        values = PApplet.expand(values, length);
+      }
     }
-    indices.put(what, Integer.valueOf(count));
+    indices.put(keys, what, count);
     keys[count] = what;
     values[count] = much;
     count++;
@@ -516,43 +569,78 @@ public class FloatDict {
    * @brief Remove a key/value pair
    */
   public int remove(String key) {
-    int index = index(key);
-    if (index != -1) {
-      removeIndex(index);
+    int position = find(key);
+    if (position == -1) {
+      return -1;
     }
+    int index = position - indices.gapsBefore(position);
+    removeAt(position);
     return index;
   }
 
 
   public String removeIndex(int index) {
-    if (index < 0 || index >= count) {
+    if (index < 0 || index >= size()) {
       throw new ArrayIndexOutOfBoundsException(index);
     }
-    String key = keys[index];
-    //System.out.println("index is " + which + " and " + keys[which]);
-    indices.remove(keys[index]);
-    for (int i = index; i < count-1; i++) {
-      keys[i] = keys[i+1];
-      values[i] = values[i+1];
-      indices.put(keys[i], i);
-    }
-    count--;
-    keys[count] = null;
-    values[count] = 0;
+    return removeAt(indices.position(index));
+  }
+
+
+  /**
+   * Remove the entry at a position in the arrays, leaving a gap so that
+   * the entries after it don't have to move (yet).
+   */
+  private String removeAt(int position) {
+    String key = keys[position];
+    indices.remove(key, position);
+    indices.addGap(position, keys.length);
+    keys[position] = StringIndex.GAP;
+    values[position] = 0;
     return key;
   }
 
 
+  /** Next position after this one that isn't a gap, or count if none. */
+  private int nextPosition(int position) {
+    do {
+      position++;
+    } while (position < count && keys[position] == StringIndex.GAP);
+    return position;
+  }
+
+
+  /**
+   * Move entries down over the gaps left by removals. This is what makes
+   * reads by position change the dictionary, see the class notes.
+   */
+  private void closeGaps() {
+    if (indices.gapCount != 0) {
+      int live = 0;
+      for (int i = 0; i < count; i++) {
+        if (keys[i] != StringIndex.GAP) {
+          keys[live] = keys[i];
+          values[live] = values[i];
+          live++;
+        }
+      }
+      Arrays.fill(keys, live, count, null);
+      count = live;
+      indices.rebuild(keys, count);
+    }
+  }
+
+
   public void swap(int a, int b) {
+    closeGaps();
+    indices.swap(keys[a], a, keys[b], b);
+
     String tkey = keys[a];
     float tvalue = values[a];
     keys[a] = keys[b];
     values[a] = values[b];
     keys[b] = tkey;
     values[b] = tvalue;
-
-    indices.put(keys[a], Integer.valueOf(a));
-    indices.put(keys[b], Integer.valueOf(b));
   }
 
 
@@ -675,57 +763,105 @@ public class FloatDict {
 //  }
 
 
-  protected void sortImpl(final boolean useKeys, final boolean reverse) {
-    Sort s = new Sort() {
-      @Override
-      public int size() {
-        if (useKeys) {
-          return count;  // don't worry about NaN values
-
-        } else if (count == 0) {  // skip the NaN check, it'll AIOOBE
-          return 0;
-
-        } else {  // first move NaN values to the end of the list
-          int right = count - 1;
-          while (values[right] != values[right]) {
-            right--;
-            if (right == -1) {
-              return 0;  // all values are NaN
-            }
-          }
-          for (int i = right; i >= 0; --i) {
-            if (Float.isNaN(values[i])) {
-              swap(i, right);
-              --right;
-            }
-          }
-          return right + 1;
+  /**
+   * Return a new dictionary with the k entries that have the highest
+   * values, highest first, leaving out NaN. This is the same as the first
+   * k after sortValuesReverse(), but this dictionary isn't changed, and
+   * only the entries that are returned are sorted, so it's much faster than
+   * sorting everything to get the top few.
+   */
+  public FloatDict topK(int k) {
+    return firstK(k, true);
+  }
+
+
+  /**
+   * Return a new dictionary with the k entries that have the lowest values,
+   * lowest first, leaving out NaN. This is the same as the first k after
+   * sortValues().
+   */
+  public FloatDict bottomK(int k) {
+    return firstK(k, false);
+  }
+
+
+  private FloatDict firstK(int k, final boolean highest) {
+    closeGaps();
+    int[] order = Sort.first(count, k, new Sort.Comparison() {
+      public int compare(int a, int b) {
+        // NaN values come after everything else
+        if (values[a] != values[a] || values[b] != values[b]) {
+          return (values[a] != values[a] ? 1 : 0) - (values[b] != values[b] ? 1 : 0);
+        }
+        int diff = (values[a] < values[b]) ? -1 : ((values[a] > values[b]) ? 1 : 0);
+        if (diff == 0) {
+          diff = keys[a].compareToIgnoreCase(keys[b]);
         }
+        return highest ? -diff : diff;
+      }
+    });
+    FloatDict outgoing = new FloatDict(order.length);
+    for (int position : order) {
+      if (values[position] != values[position]) {
+        break;
       }
+      outgoing.set(keys[position], values[position]);
+    }
+    return outgoing;
+  }
 
-      @Override
-      public float compare(int a, int b) {
-        float diff = 0;
+
+  protected void sortImpl(final boolean useKeys, final boolean reverse) {
+    closeGaps();
+    int[] order = Sort.order(count);
+    int sorted = count;
+    if (!useKeys) {
+      // NaN values go at the end, and aren't sorted
+      sorted = 0;
+      for (int i = 0; i < count; i++) {
+        if (values[i] == values[i]) {
+          order[sorted++] = i;
+        }
+      }
+      int nan = sorted;
+      for (int i = 0; i < count; i++) {
+        if (values[i] != values[i]) {
+          order[nan++] = i;
+        }
+      }
+    }
+    Sort.stableSort(order, sorted, new Sort.Comparison() {
+      public int compare(int a, int b) {
+        int diff;
         if (useKeys) {
           diff = keys[a].compareToIgnoreCase(keys[b]);
           if (diff == 0) {
-            return values[a] - values[b];
+            return (values[a] < values[b]) ? -1 : ((values[a] > values[b]) ? 1 : 0);
           }
         } else {  // sort values
-          diff = values[a] - values[b];
+          diff = (values[a] < values[b]) ? -1 : ((values[a] > values[b]) ? 1 : 0);
           if (diff == 0) {
             diff = keys[a].compareToIgnoreCase(keys[b]);
           }
         }
         return reverse ? -diff : diff;
       }
+    });
+    reorder(order);
+  }
 
-      @Override
-      public void swap(int a, int b) {
-        FloatDict.this.swap(a, b);
-      }
-    };
-    s.run();
+
+  /** Put the entries in a new order, then rebuild the index once. */
+  private void reorder(int[] order) {
+    String[] newKeys = new String[keys.length];
+    float[] newValues = new float[values.length];
+    for (int i = 0; i < count; i++) {
+      newKeys[i] = keys[order[i]];
+      newValues[i] = values[order[i]];
+    }
+    keys = newKeys;
+    values = newValues;
+    indices.rebuild(keys, count);
   }
 
 
@@ -750,18 +886,18 @@ public class FloatDict {
 
   /** Returns a duplicate copy of this object. */
   public FloatDict copy() {
+    closeGaps();
     FloatDict outgoing = new FloatDict(count);
     System.arraycopy(keys, 0, outgoing.keys, 0, count);
     System.arraycopy(values, 0, outgoing.values, 0, count);
-    for (int i = 0; i < count; i++) {
-      outgoing.indices.put(keys[i], i);
-    }
+    outgoing.indices = indices.copy();
     outgoing.count = count;
     return outgoing;
   }
 
 
   public void print() {
+    closeGaps();
     for (int i = 0; i < size(); i++) {
       System.out.println(keys[i] + " = " + values[i]);
     }
@@ -773,6 +909,7 @@ public class FloatDict {
    * @param writer
    */
   public void write(PrintWriter writer) {
+    closeGaps();
     for (int i = 0; i < count; i++) {
       writer.println(keys[i] + "\t" + values[i]);
     }
@@ -782,6 +919,7 @@ public class FloatDict {
 
   @Override
   public String toString() {
+    closeGaps();
     StringBuilder sb = new StringBuilder();
     sb.append(getClass().getSimpleName() + " size=" + size() + " { ");
     for (int i = 0; i < size(); i++) {
@@ -568,44 +568,58 @@ public class FloatList implements Iterable<Float> {
    * @brief Reverse sort, orders values from highest to lowest
    */
   public void sortReverse() {
-    new Sort() {
-      @Override
-      public int size() {
-        // if empty, don't even mess with the NaN check, it'll AIOOBE
-        if (count == 0) {
-          return 0;
-        }
-        // move NaN values to the end of the list and don't sort them
-        int right = count - 1;
-        while (data[right] != data[right]) {
-          right--;
-          if (right == -1) {  // all values are NaN
-            return 0;
-          }
-        }
-        for (int i = right; i >= 0; --i) {
-          float v = data[i];
-          if (v != v) {
-            data[i] = data[right];
-            data[right] = v;
-            --right;
-          }
-        }
-        return right + 1;
-      }
+    sort();  // NaN values end up at the end, and stay there
+    int right = count;
+    while (right > 0 && data[right-1] != data[right-1]) {
+      right--;
+    }
+    for (int i = 0, ii = right - 1; i < ii; i++, ii--) {
+      float t = data[i];
+      data[i] = data[ii];
+      data[ii] = t;
+    }
+  }
 
-      @Override
-      public float compare(int a, int b) {
-        return data[b] - data[a];
-      }
 
-      @Override
-      public void swap(int a, int b) {
-        float temp = data[a];
-        data[a] = data[b];
-        data[b] = temp;
+  /**
+   * Return a new list with the k highest values, highest first, leaving
+   * out NaN. This list isn't changed, and only the values that are returned
+   * are sorted, so it's much faster than sortReverse() on a copy to get the
+   * top few.
+   */
+  public FloatList topK(int k) {
+    return firstK(k, true);
+  }
+
+
+  /**
+   * Return a new list with the k lowest values, lowest first, leaving out
+   * NaN.
+   */
+  public FloatList bottomK(int k) {
+    return firstK(k, false);
+  }
+
+
+  private FloatList firstK(int k, final boolean highest) {
+    int[] order = Sort.first(count, k, new Sort.Comparison() {
+      public int compare(int a, int b) {
+        // NaN values come after everything else
+        if (data[a] != data[a] || data[b] != data[b]) {
+          return (data[a] != data[a] ? 1 : 0) - (data[b] != data[b] ? 1 : 0);
+        }
+        int diff = (data[a] < data[b]) ? -1 : ((data[a] > data[b]) ? 1 : 0);
+        return highest ? -diff : diff;
       }
-    }.run();
+    });
+    FloatList outgoing = new FloatList(order.length);
+    for (int position : order) {
+      if (data[position] != data[position]) {
+        break;
+      }
+      outgoing.append(data[position]);
+    }
+    return outgoing;
   }
 
 
@@ -721,6 +735,23 @@ public class FloatList implements Iterable<Float> {
   }
 
 
+  /** Receives each entry in turn from forEach(). */
+  public interface Visitor {
+    public void visit(int index, float value);
+  }
+
+
+  /**
+   * Go through the entries in order, without boxing them the way a for loop
+   * over the list does.
+   */
+  public void forEach(Visitor visitor) {
+    for (int i = 0; i < count; i++) {
+      visitor.visit(i, data[i]);
+    }
+  }
+
+
   /**
    * Create a new array with a copy of all the values.
    * @return an array sized by the length of the list with each of the values.
@@ -1,7 +1,7 @@
 package processing.data;
 
 import java.io.*;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Iterator;
 
 import processing.core.PApplet;
@@ -9,6 +9,12 @@ import processing.core.PApplet;
 
 /**
  * A simple class to use a String as a lookup for an int value.
+ * <p>
+ * Removing an entry leaves a gap that's closed up the next time entries
+ * are used by their position: key(), value(), keyArray(), print(),
+ * toString(), and so on. So after a removal, even those reads change the
+ * dictionary, and it isn't safe to read from several threads at once
+ * without synchronizing.
  *
  * @webref data:composite
  * @see FloatDict
@@ -23,7 +29,11 @@ public class IntDict {
   protected int[] values;
 
   /** Internal implementation for faster lookups */
-  private HashMap<String, Integer> indices = new HashMap<String, Integer>();
+  private StringIndex indices = new StringIndex();
+
+  // reused by keys() and keyIterator(), so a for loop doesn't allocate
+  private Iterable<String> keyIterable;
+  private KeyIterator keyIterator;
 
 
   public IntDict() {
@@ -43,6 +53,7 @@ public class IntDict {
     count = 0;
     keys = new String[length];
     values = new int[length];
+    indices = new StringIndex(length);
   }
 
 
@@ -56,13 +67,14 @@ public class IntDict {
     String[] lines = PApplet.loadStrings(reader);
     keys = new String[lines.length];
     values = new int[lines.length];
+    indices = new StringIndex(lines.length);
 
     for (int i = 0; i < lines.length; i++) {
       String[] pieces = PApplet.split(lines[i], '\t');
       if (pieces.length == 2) {
         keys[count] = pieces[0];
         values[count] = PApplet.parseInt(pieces[1]);
-        indices.put(pieces[0], count);
+        indices.put(keys, pieces[0], count);
         count++;
       }
     }
@@ -78,8 +90,9 @@ public class IntDict {
     this.keys = keys;
     this.values = values;
     count = keys.length;
+    indices = new StringIndex(count);
     for (int i = 0; i < count; i++) {
-      indices.put(keys[i], i);
+      indices.put(keys, keys[i], i);
     }
   }
 
@@ -90,7 +103,7 @@ public class IntDict {
    * @brief Returns the number of key/value pairs
    */
   public int size() {
-    return count;
+    return count - indices.gapCount;
   }
 
 
@@ -102,11 +115,12 @@ public class IntDict {
    */
   public void clear() {
     count = 0;
-    indices = new HashMap<String, Integer>();
+    indices = new StringIndex();
   }
 
 
   public String key(int index) {
+    closeGaps();
     return keys[index];
   }
 
@@ -157,50 +171,58 @@ public class IntDict {
 //  }
 
 
-  // Use this with 'for' loops
+  // Use this with 'for' loops. The iterator is reused once it's finished,
+  // so this isn't safe to use from more than one thread at a time, even
+  // when the dictionary isn't changing.
   public Iterable<String> keys() {
-    return new Iterable<String>() {
+    if (keyIterable == null) {
+      keyIterable = new Iterable<String>() {
 
-      @Override
-      public Iterator<String> iterator() {
-        return keyIterator();
-//        return new Iterator<String>() {
-//          int index = -1;
-//
-//          public void remove() {
-//            removeIndex(index);
-//          }
-//
-//          public String next() {
-//            return key(++index);
-//          }
-//
-//          public boolean hasNext() {
-//            return index+1 < size();
-//          }
-//        };
-      }
-    };
+        @Override
+        public Iterator<String> iterator() {
+          return keyIterator();
+        }
+      };
+    }
+    return keyIterable;
   }
 
 
   // Use this to iterate when you want to be able to remove elements along the way
   public Iterator<String> keyIterator() {
-    return new Iterator<String>() {
-      int index = -1;
+    // hand back the last iterator again once it's been used up
+    if (keyIterator == null || !keyIterator.done) {
+      keyIterator = new KeyIterator();
+    } else {
+      keyIterator.reset();
+    }
+    return keyIterator;
+  }
 
-      public void remove() {
-        removeIndex(index);
-      }
 
-      public String next() {
-        return key(++index);
-      }
+  private class KeyIterator implements Iterator<String> {
+    int index = -1;  // position in the arrays, skipping gaps
+    boolean done;  // whether hasNext() last returned false
 
-      public boolean hasNext() {
-        return index+1 < size();
-      }
-    };
+    public void remove() {
+      removeAt(index);
+    }
+
+    public String next() {
+      index = nextPosition(index);
+      return keys[index];
+    }
+
+    public boolean hasNext() {
+      // cleared again if entries are added and this carries on
+      done = nextPosition(index) >= count;
+      return !done;
+    }
+
+    void reset() {
+      index = -1;
+      done = false;
+    }
   }
 
 
@@ -216,6 +238,7 @@ public class IntDict {
 
 
   public String[] keyArray(String[] outgoing) {
+    closeGaps();
     if (outgoing == null || outgoing.length != count) {
       outgoing = new String[count];
     }
@@ -225,6 +248,7 @@ public class IntDict {
 
 
   public int value(int index) {
+    closeGaps();
     return values[index];
   }
 
@@ -246,23 +270,44 @@ public class IntDict {
 
   public Iterator<Integer> valueIterator() {
     return new Iterator<Integer>() {
-      int index = -1;
+      int index = -1;  // position in the arrays, skipping gaps
 
       public void remove() {
-        removeIndex(index);
+        removeAt(index);
       }
 
       public Integer next() {
-        return value(++index);
+        index = nextPosition(index);
+        return values[index];
       }
 
       public boolean hasNext() {
-        return index+1 < size();
+        return nextPosition(index) < count;
       }
     };
   }
 
 
+  /** Receives each entry in turn from forEach(). */
+  public interface Visitor {
+    public void visit(String key, int value);
+  }
+
+
+  /**
+   * Go through the entries in order, without the Iterator or boxed values
+   * that a for loop over keys() or values() creates. The visitor shouldn't
+   * add or remove entries.
+   */
+  public void forEach(Visitor visitor) {
+    for (int i = 0; i < count; i++) {
+      if (keys[i] != StringIndex.GAP) {
+        visitor.visit(keys[i], values[i]);
+      }
+    }
+  }
+
+
   /**
    * Create a new array and copy each of the values into it.
    *
@@ -282,6 +327,7 @@ public class IntDict {
    * @param array values to copy into the array
    */
   public int[] valueArray(int[] array) {
+    closeGaps();
     if (array == null || array.length != size()) {
       array = new int[count];
     }
@@ -297,7 +343,7 @@ public class IntDict {
    * @brief Return a value for the specified key
    */
   public int get(String key) {
-    int index = index(key);
+    int index = find(key);
     if (index == -1) {
       throw new IllegalArgumentException("No key named '" + key + "'");
     }
@@ -306,7 +352,7 @@ public class IntDict {
 
 
   public int get(String key, int alternate) {
-    int index = index(key);
+    int index = find(key);
     if (index == -1) return alternate;
     return values[index];
   }
@@ -319,7 +365,7 @@ public class IntDict {
    * @brief Create a new key/value pair or change the value of one
    */
   public void set(String key, int amount) {
-    int index = index(key);
+    int index = find(key);
     if (index == -1) {
       create(key, amount);
     } else {
@@ -332,7 +378,7 @@ public class IntDict {
    * @brief Check if a key is a part of the data structure
    */
   public boolean hasKey(String key) {
-    return index(key) != -1;
+    return find(key) != -1;
   }
 
 
@@ -352,7 +398,7 @@ public class IntDict {
    * @brief Add to a value
    */
   public void add(String key, int amount) {
-    int index = index(key);
+    int index = find(key);
     if (index == -1) {
       create(key, amount);
     } else {
@@ -375,7 +421,7 @@ public class IntDict {
    * @brief Multiply a value
    */
   public void mult(String key, int amount) {
-    int index = index(key);
+    int index = find(key);
     if (index != -1) {
       values[index] *= amount;
     }
@@ -387,7 +433,7 @@ public class IntDict {
    * @brief Divide a value
    */
   public void div(String key, int amount) {
-    int index = index(key);
+    int index = find(key);
     if (index != -1) {
       values[index] /= amount;
     }
@@ -395,6 +441,7 @@ public class IntDict {
 
 
   private void checkMinMax(String functionName) {
+    closeGaps();
     if (count == 0) {
       String msg =
         String.format("Cannot use %s() on an empty %s.",
@@ -463,17 +510,28 @@ public class IntDict {
 
 
   public int index(String what) {
-    Integer found = indices.get(what);
-    return (found == null) ? -1 : found.intValue();
+    int position = find(what);
+    return (position == -1) ? -1 : position - indices.gapsBefore(position);
+  }
+
+
+  /** Position of a key in the arrays, or -1 if it's not there. */
+  private int find(String key) {
+    return indices.get(keys, key);
   }
 
 
   protected void create(String what, int much) {
     if (count == keys.length) {
-      keys = PApplet.expand(keys);
-      values = PApplet.expand(values);
+      closeGaps();
+      // grow unless closing the gaps left plenty of room
+      if (count * 2 >= keys.length) {
+        int length = Math.max(10, keys.length << 1);  // expand() keeps 0 at 0
+        keys = PApplet.expand(keys, length);
+        values = PApplet.expand(values, length);
+      }
     }
-    indices.put(what, Integer.valueOf(count));
+    indices.put(keys, what, count);
     keys[count] = what;
     values[count] = much;
     count++;
@@ -484,43 +542,78 @@ public class IntDict {
    * @brief Remove a key/value pair
    */
   public int remove(String key) {
-    int index = index(key);
-    if (index != -1) {
-      removeIndex(index);
+    int position = find(key);
+    if (position == -1) {
+      return -1;
     }
+    int index = position - indices.gapsBefore(position);
+    removeAt(position);
     return index;
   }
 
 
   public String removeIndex(int index) {
-    if (index < 0 || index >= count) {
+    if (index < 0 || index >= size()) {
       throw new ArrayIndexOutOfBoundsException(index);
     }
-    //System.out.println("index is " + which + " and " + keys[which]);
-    String key = keys[index];
-    indices.remove(keys[index]);
-    for (int i = index; i < count-1; i++) {
-      keys[i] = keys[i+1];
-      values[i] = values[i+1];
-      indices.put(keys[i], i);
-    }
-    count--;
-    keys[count] = null;
-    values[count] = 0;
+    return removeAt(indices.position(index));
+  }
+
+
+  /**
+   * Remove the entry at a position in the arrays, leaving a gap so that
+   * the entries after it don't have to move (yet).
+   */
+  private String removeAt(int position) {
+    String key = keys[position];
+    indices.remove(key, position);
+    indices.addGap(position, keys.length);
+    keys[position] = StringIndex.GAP;
+    values[position] = 0;
     return key;
   }
 
 
+  /** Next position after this one that isn't a gap, or count if none. */
+  private int nextPosition(int position) {
+    do {
+      position++;
+    } while (position < count && keys[position] == StringIndex.GAP);
+    return position;
+  }
+
+
+  /**
+   * Move entries down over the gaps left by removals. This is what makes
+   * reads by position change the dictionary, see the class notes.
+   */
+  private void closeGaps() {
+    if (indices.gapCount != 0) {
+      int live = 0;
+      for (int i = 0; i < count; i++) {
+        if (keys[i] != StringIndex.GAP) {
+          keys[live] = keys[i];
+          values[live] = values[i];
+          live++;
+        }
+      }
+      Arrays.fill(keys, live, count, null);
+      count = live;
+      indices.rebuild(keys, count);
+    }
+  }
+
+
   public void swap(int a, int b) {
+    closeGaps();
+    indices.swap(keys[a], a, keys[b], b);
+
     String tkey = keys[a];
     int tvalue = values[a];
     keys[a] = keys[b];
     values[a] = values[b];
     keys[b] = tkey;
     values[b] = tvalue;
-
-    indices.put(keys[a], Integer.valueOf(a));
-    indices.put(keys[b], Integer.valueOf(b));
   }
 
 
@@ -568,36 +661,81 @@ public class IntDict {
   }
 
 
-  protected void sortImpl(final boolean useKeys, final boolean reverse) {
-    Sort s = new Sort() {
-      @Override
-      public int size() {
-        return count;
+  /**
+   * Return a new dictionary with the k entries that have the highest
+   * values, highest first, the same as the first k after
+   * sortValuesReverse(). This dictionary isn't changed, and only the
+   * entries that are returned are sorted, so it's much faster than sorting
+   * everything to get the top few.
+   */
+  public IntDict topK(int k) {
+    return firstK(k, true);
+  }
+
+
+  /**
+   * Return a new dictionary with the k entries that have the lowest values,
+   * lowest first, the same as the first k after sortValues().
+   */
+  public IntDict bottomK(int k) {
+    return firstK(k, false);
+  }
+
+
+  private IntDict firstK(int k, final boolean highest) {
+    closeGaps();
+    int[] order = Sort.first(count, k, new Sort.Comparison() {
+      public int compare(int a, int b) {
+        int diff = (values[a] < values[b]) ? -1 : ((values[a] > values[b]) ? 1 : 0);
+        if (diff == 0) {
+          diff = keys[a].compareToIgnoreCase(keys[b]);
+        }
+        return highest ? -diff : diff;
       }
+    });
+    IntDict outgoing = new IntDict(order.length);
+    for (int position : order) {
+      outgoing.set(keys[position], values[position]);
+    }
+    return outgoing;
+  }
 
-      @Override
-      public float compare(int a, int b) {
-        int diff = 0;
+
+  protected void sortImpl(final boolean useKeys, final boolean reverse) {
+    closeGaps();
+    int[] order = Sort.order(count);
+    Sort.stableSort(order, count, new Sort.Comparison() {
+      public int compare(int a, int b) {
+        int diff;
         if (useKeys) {
           diff = keys[a].compareToIgnoreCase(keys[b]);
           if (diff == 0) {
-            return values[a] - values[b];
+            return (values[a] < values[b]) ? -1 : ((values[a] > values[b]) ? 1 : 0);
           }
         } else {  // sort values
-          diff = values[a] - values[b];
+          diff = (values[a] < values[b]) ? -1 : ((values[a] > values[b]) ? 1 : 0);
           if (diff == 0) {
             diff = keys[a].compareToIgnoreCase(keys[b]);
           }
         }
         return reverse ? -diff : diff;
       }
+    });
+    reorder(order);
+  }
 
-      @Override
-      public void swap(int a, int b) {
-        IntDict.this.swap(a, b);
-      }
-    };
-    s.run();
+
+  /** Put the entries in a new order, then rebuild the index once. */
+  private void reorder(int[] order) {
+    String[] newKeys = new String[keys.length];
+    int[] newValues = new int[values.length];
+    for (int i = 0; i < count; i++) {
+      newKeys[i] = keys[order[i]];
+      newValues[i] = values[order[i]];
+    }
+    keys = newKeys;
+    values = newValues;
+    indices.rebuild(keys, count);
   }
 
 
@@ -622,12 +760,11 @@ public class IntDict {
 
   /** Returns a duplicate copy of this object. */
   public IntDict copy() {
+    closeGaps();
     IntDict outgoing = new IntDict(count);
     System.arraycopy(keys, 0, outgoing.keys, 0, count);
     System.arraycopy(values, 0, outgoing.values, 0, count);
-    for (int i = 0; i < count; i++) {
-      outgoing.indices.put(keys[i], i);
-    }
+    outgoing.indices = indices.copy();
     outgoing.count = count;
     return outgoing;
   }
@@ -638,6 +775,7 @@ public class IntDict {
    * @param writer
    */
   public void write(PrintWriter writer) {
+    closeGaps();
     for (int i = 0; i < count; i++) {
       writer.println(keys[i] + "\t" + values[i]);
     }
@@ -646,6 +784,7 @@ public class IntDict {
 
 
   public void print() {
+    closeGaps();
     for (int i = 0; i < size(); i++) {
       System.out.println(keys[i] + " = " + values[i]);
     }
@@ -654,6 +793,7 @@ public class IntDict {
 
   @Override
   public String toString() {
+    closeGaps();
     StringBuilder sb = new StringBuilder();
     sb.append(getClass().getSimpleName() + " size=" + size() + " { ");
     for (int i = 0; i < size(); i++) {
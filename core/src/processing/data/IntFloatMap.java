@@ -0,0 +1,208 @@
+package processing.data;
+
+import processing.core.PApplet;
+
+
+/**
+ * A lookup from int keys to float values, without boxing either one the
+ * way a HashMap&lt;Integer, Float&gt; does. The keys are held in an IntSet, and
+ * the values in an array alongside, so a for() loop from 0 to size() with
+ * key() and value() creates no objects at all. Removing an entry moves
+ * the last one into its place.
+ *
+ * @see IntSet
+ * @see IntIntMap
+ */
+public class IntFloatMap {
+  protected IntSet keys;
+  protected float[] values;
+
+
+  public IntFloatMap() {
+    this(10);
+  }
+
+
+  /**
+   * Create a map with room for a number of entries before it has to grow.
+   */
+  public IntFloatMap(int length) {
+    keys = new IntSet(length);
+    values = new float[keys.data.length];
+  }
+
+
+  public IntFloatMap(int[] keys, float[] values) {
+    this(keys.length);
+    if (keys.length != values.length) {
+      throw new IllegalArgumentException("key and value arrays must be the same length");
+    }
+    for (int i = 0; i < keys.length; i++) {
+      set(keys[i], values[i]);
+    }
+  }
+
+
+  public int size() {
+    return keys.count;
+  }
+
+
+  /**
+   * Remove all entries, keeping the memory for reuse.
+   */
+  public void clear() {
+    keys.clear();
+  }
+
+
+  /** Key at a position from 0 to size() - 1. */
+  public int key(int index) {
+    return keys.get(index);
+  }
+
+
+  /** Value at a position from 0 to size() - 1. */
+  public float value(int index) {
+    if (index >= keys.count) {
+      throw new ArrayIndexOutOfBoundsException(index);
+    }
+    return values[index];
+  }
+
+
+  /** Receives each entry in turn from forEach(). */
+  public interface Visitor {
+    public void visit(int key, float value);
+  }
+
+
+  /**
+   * Go through the entries in order. The visitor shouldn't add or remove
+   * entries, since a removal moves the last entry into its place.
+   */
+  public void forEach(Visitor visitor) {
+    for (int i = 0; i < keys.count; i++) {
+      visitor.visit(keys.data[i], values[i]);
+    }
+  }
+
+
+  public int[] keyArray() {
+    return keys.array();
+  }
+
+
+  public float[] valueArray() {
+    float[] outgoing = new float[keys.count];
+    System.arraycopy(values, 0, outgoing, 0, keys.count);
+    return outgoing;
+  }
+
+
+  /** Position of a key, or -1 if it isn't there. */
+  public int index(int key) {
+    return keys.index(key);
+  }
+
+
+  public boolean hasKey(int key) {
+    return keys.index(key) != -1;
+  }
+
+
+  public float get(int key) {
+    int index = keys.index(key);
+    if (index == -1) {
+      throw new IllegalArgumentException("No key " + key);
+    }
+    return values[index];
+  }
+
+
+  public float get(int key, float alternate) {
+    int index = keys.index(key);
+    return (index == -1) ? alternate : values[index];
+  }
+
+
+  /**
+   * Create a new key/value pair or change the value of one.
+   */
+  public void set(int key, float value) {
+    int index = entry(key);
+    values[index] = value;
+  }
+
+
+  /**
+   * Add to the value for a key, which starts at 0 if it's not there yet.
+   */
+  public void add(int key, float amount) {
+    int index = entry(key);
+    values[index] += amount;
+  }
+
+
+  public void sub(int key, float amount) {
+    int index = entry(key);
+    values[index] -= amount;
+  }
+
+
+  /** Position of a key, adding it with a value of 0 if it's new. */
+  private int entry(int key) {
+    int count = keys.count;
+    int index = keys.insert(key);
+    if (index == count) {
+      if (index == values.length) {
+        values = PApplet.expand(values, keys.data.length);
+      }
+      values[index] = 0;
+    }
+    return index;
+  }
+
+
+  /**
+   * Remove a key, and return the position it had, or -1 if it wasn't
+   * there. The last entry is moved into that position.
+   */
+  public int remove(int key) {
+    int index = keys.remove(key);
+    if (index != -1) {
+      values[index] = values[keys.count];
+    }
+    return index;
+  }
+
+
+  public IntFloatMap copy() {
+    IntFloatMap outgoing = new IntFloatMap(0);
+    outgoing.keys = keys.copy();
+    outgoing.values = values.clone();
+    return outgoing;
+  }
+
+
+  public void print() {
+    for (int i = 0; i < size(); i++) {
+      System.out.println(keys.data[i] + " = " + values[i]);
+    }
+  }
+
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    sb.append(getClass().getSimpleName() + " size=" + size() + " { ");
+    for (int i = 0; i < size(); i++) {
+      if (i != 0) {
+        sb.append(", ");
+      }
+      sb.append(keys.data[i] + ": " + values[i]);
+    }
+    sb.append(" }");
+    return sb.toString();
+  }
+}
@@ -69,8 +69,9 @@ public class IntList implements Iterable<Integer> {
     int count = stop - start;
     IntList newbie = new IntList(count);
     for (int i = 0; i < count; i++) {
-      newbie.set(i, start+i);
+      newbie.data[i] = start+i;
     }
+    newbie.count = count;
     return newbie;
   }
 
@@ -537,24 +538,41 @@ public class IntList implements Iterable<Integer> {
    * @brief Reverse sort, orders values from highest to lowest
    */
   public void sortReverse() {
-    new Sort() {
-      @Override
-      public int size() {
-        return count;
-      }
+    sort();
+    reverse();
+  }
+
+
+  /**
+   * Return a new list with the k highest values, highest first. This list
+   * isn't changed, and only the values that are returned are sorted, so
+   * it's much faster than sortReverse() on a copy to get the top few.
+   */
+  public IntList topK(int k) {
+    return firstK(k, true);
+  }
+
+
+  /**
+   * Return a new list with the k lowest values, lowest first.
+   */
+  public IntList bottomK(int k) {
+    return firstK(k, false);
+  }
 
-      @Override
-      public float compare(int a, int b) {
-        return data[b] - data[a];
-      }
 
-      @Override
-      public void swap(int a, int b) {
-        int temp = data[a];
-        data[a] = data[b];
-        data[b] = temp;
+  private IntList firstK(int k, final boolean highest) {
+    int[] order = Sort.first(count, k, new Sort.Comparison() {
+      public int compare(int a, int b) {
+        int diff = (data[a] < data[b]) ? -1 : ((data[a] > data[b]) ? 1 : 0);
+        return highest ? -diff : diff;
       }
-    }.run();
+    });
+    IntList outgoing = new IntList(order.length);
+    for (int position : order) {
+      outgoing.append(data[position]);
+    }
+    return outgoing;
   }
 
 
@@ -665,6 +683,23 @@ public class IntList implements Iterable<Integer> {
   }
 
 
+  /** Receives each entry in turn from forEach(). */
+  public interface Visitor {
+    public void visit(int index, int value);
+  }
+
+
+  /**
+   * Go through the entries in order, without boxing them the way a for loop
+   * over the list does.
+   */
+  public void forEach(Visitor visitor) {
+    for (int i = 0; i < count; i++) {
+      visitor.visit(i, data[i]);
+    }
+  }
+
+
   /**
    * Create a new array with a copy of all the values.
    *
@@ -0,0 +1,293 @@
+package processing.data;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import processing.core.PApplet;
+
+
+/**
+ * A set of ints that doesn't box each one as an Integer the way a
+ * HashSet&lt;Integer&gt; does. The values are kept in an array in the order
+ * they were added, with an open-addressing hash table of their positions,
+ * so a for() loop from 0 to size() with get() creates no objects at all.
+ * Removing a value moves the last one into its place.
+ *
+ * @see IntIntMap
+ * @see LongSet
+ */
+public class IntSet implements Iterable<Integer> {
+  protected int count;
+  protected int[] data;
+
+  // position in data + 1 for each value, or 0 for an empty slot
+  int[] slots;
+
+
+  public IntSet() {
+    this(10);
+  }
+
+
+  /**
+   * Create a set with room for a number of values before it has to grow.
+   */
+  public IntSet(int length) {
+    data = new int[Math.max(length, 1)];
+    slots = new int[tableSize(length)];
+  }
+
+
+  public IntSet(int[] values) {
+    this(values.length);
+    for (int value : values) {
+      insert(value);
+    }
+  }
+
+
+  /** Size of a hash table that's at most half full with this many. */
+  static int tableSize(int expected) {
+    int size = 16;
+    while (size < expected * 2L) {
+      size <<= 1;
+    }
+    return size;
+  }
+
+
+  static int hash(int value) {
+    int h = value * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+
+  public int size() {
+    return count;
+  }
+
+
+  /**
+   * Remove all values, keeping the memory for reuse.
+   */
+  public void clear() {
+    if (count != 0) {
+      Arrays.fill(slots, 0);
+      count = 0;
+    }
+  }
+
+
+  /**
+   * Value at a position from 0 to size() - 1, for going through the set
+   * with a for() loop.
+   */
+  public int get(int index) {
+    if (index >= count) {
+      throw new ArrayIndexOutOfBoundsException(index);
+    }
+    return data[index];
+  }
+
+
+  /** Position of a value, or -1 if it isn't in the set. */
+  public int index(int value) {
+    int mask = slots.length - 1;
+    for (int i = hash(value) & mask; slots[i] != 0; i = (i + 1) & mask) {
+      if (data[slots[i] - 1] == value) {
+        return slots[i] - 1;
+      }
+    }
+    return -1;
+  }
+
+
+  public boolean hasValue(int value) {
+    return index(value) != -1;
+  }
+
+
+  /**
+   * Add a value, returning false if it was already in the set.
+   */
+  public boolean add(int value) {
+    int before = count;
+    insert(value);
+    return count != before;
+  }
+
+
+  public void add(int[] values) {
+    for (int value : values) {
+      insert(value);
+    }
+  }
+
+
+  /**
+   * Position of a value, adding it at the end if it's not there already.
+   */
+  int insert(int value) {
+    int mask = slots.length - 1;
+    int i = hash(value) & mask;
+    while (slots[i] != 0) {
+      if (data[slots[i] - 1] == value) {
+        return slots[i] - 1;
+      }
+      i = (i + 1) & mask;
+    }
+    if (count == data.length) {
+      data = PApplet.expand(data, count << 1);
+    }
+    data[count] = value;
+    slots[i] = ++count;
+    if (count * 2 > slots.length) {
+      rehash(slots.length << 1);
+    }
+    return count - 1;
+  }
+
+
+  private void rehash(int size) {
+    slots = new int[size];
+    int mask = size - 1;
+    for (int index = 0; index < count; index++) {
+      int i = hash(data[index]) & mask;
+      while (slots[i] != 0) {
+        i = (i + 1) & mask;
+      }
+      slots[i] = index + 1;
+    }
+  }
+
+
+  /**
+   * Remove a value, and return the position it had, or -1 if it wasn't
+   * in the set. The last value is moved into that position.
+   */
+  public int remove(int value) {
+    int mask = slots.length - 1;
+    int hole = hash(value) & mask;
+    while (slots[hole] != 0 && data[slots[hole] - 1] != value) {
+      hole = (hole + 1) & mask;
+    }
+    if (slots[hole] == 0) {
+      return -1;
+    }
+    int index = slots[hole] - 1;
+    // move later entries back into the hole, so there are no tombstones
+    for (int i = (hole + 1) & mask; slots[i] != 0; i = (i + 1) & mask) {
+      int home = hash(data[slots[i] - 1]) & mask;
+      if (((i - home) & mask) >= ((i - hole) & mask)) {
+        slots[hole] = slots[i];
+        hole = i;
+      }
+    }
+    slots[hole] = 0;
+
+    count--;
+    if (index != count) {
+      int last = data[count];
+      int i = hash(last) & mask;
+      while (slots[i] != count + 1) {
+        i = (i + 1) & mask;
+      }
+      slots[i] = index + 1;
+      data[index] = last;
+    }
+    return index;
+  }
+
+
+  public IntSet copy() {
+    IntSet outgoing = new IntSet(0);
+    outgoing.count = count;
+    outgoing.data = data.clone();
+    outgoing.slots = slots.clone();
+    return outgoing;
+  }
+
+
+  /**
+   * Implemented this way so that we can use an IntSet in a for loop. Each
+   * value is boxed as an Integer, so use get() in a loop to avoid that.
+   */
+  @Override
+  public Iterator<Integer> iterator() {
+    return new Iterator<Integer>() {
+      int index = -1;
+
+      public void remove() {
+        IntSet.this.remove(data[index--]);
+      }
+
+      public Integer next() {
+        return data[++index];
+      }
+
+      public boolean hasNext() {
+        return index+1 < count;
+      }
+    };
+  }
+
+
+  /** Receives each value in turn from forEach(). */
+  public interface Visitor {
+    public void visit(int index, int value);
+  }
+
+
+  /**
+   * Go through the values in order, without boxing them the way a for loop
+   * over the set does.
+   */
+  public void forEach(Visitor visitor) {
+    for (int i = 0; i < count; i++) {
+      visitor.visit(i, data[i]);
+    }
+  }
+
+
+  /**
+   * Create a new array with a copy of all the values.
+   */
+  public int[] array() {
+    return array(null);
+  }
+
+
+  /**
+   * Copy values into the specified array. If the specified array is null or
+   * not the same size, a new array will be allocated.
+   */
+  public int[] array(int[] array) {
+    if (array == null || array.length != count) {
+      array = new int[count];
+    }
+    System.arraycopy(data, 0, array, 0, count);
+    return array;
+  }
+
+
+  public void print() {
+    for (int i = 0; i < size(); i++) {
+      System.out.format("[%d] %d%n", i, data[i]);
+    }
+  }
+
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    sb.append(getClass().getSimpleName() + " size=" + size() + " [ ");
+    for (int i = 0; i < size(); i++) {
+      if (i != 0) {
+        sb.append(", ");
+      }
+      sb.append(data[i]);
+    }
+    sb.append(" ]");
+    return sb.toString();
+  }
+}
@@ -4,8 +4,28 @@ package processing.data;
 /**
  * Internal sorter used by several data classes.
  * Advanced users only, not official API.
+ * <p>
+ * A subclass sorts in place through compare() and swap(). This is an
+ * introsort: quicksort with a median-of-three pivot, recursing only into
+ * the smaller side so the stack stays shallow, insertion sort for short
+ * ranges, and heapsort for any range that keeps partitioning badly, so no
+ * input takes more than O(n log n) time.
+ * <p>
+ * The static sort() and stableSort() methods instead sort an array of
+ * positions with an int comparison, for data that's cheaper to rearrange
+ * once at the end than one swap at a time, and first() picks out just the
+ * first few positions without sorting the rest.
  */
 public abstract class Sort implements Runnable {
+  // ranges this short are finished with an insertion sort
+  static final int INSERTION = 16;
+
+
+  /** Comparison of the entries at two positions, as in a Comparator. */
+  public interface Comparison {
+    public int compare(int a, int b);
+  }
+
 
   public Sort() { }
 
@@ -18,29 +38,253 @@ public abstract class Sort implements Runnable {
   }
 
 
+  /** Sort the entries from i to j, inclusive. */
   protected void sort(int i, int j) {
-    int pivotIndex = (i+j)/2;
-    swap(pivotIndex, j);
-    int k = partition(i-1, j);
-    swap(k, j);
-    if ((k-i) > 1) sort(i, k-1);
-    if ((j-k) > 1) sort(k+1, j);
+    int depth = 2 * (32 - Integer.numberOfLeadingZeros(j - i + 1));
+    introsort(i, j, depth);
+  }
+
+
+  private void introsort(int i, int j, int depth) {
+    while (j - i >= INSERTION) {
+      if (depth == 0) {
+        heapSort(i, j);
+        return;
+      }
+      depth--;
+      int k = partition(i, j);
+      if (k - i < j - k) {
+        introsort(i, k - 1, depth);
+        i = k + 1;
+      } else {
+        introsort(k + 1, j, depth);
+        j = k - 1;
+      }
+    }
+    insertionSort(i, j);
   }
 
 
-  protected int partition(int left, int right) {
-    int pivot = right;
-    do {
-      while (compare(++left, pivot) < 0) { }
-      while ((right != 0) && (compare(--right, pivot) > 0)) { }
+  /**
+   * Partition the entries from i to j (at least three of them) around the
+   * median of the first, middle, and last, and return where that ends up.
+   */
+  protected int partition(int i, int j) {
+    int mid = (i + j) >>> 1;
+    if (compare(mid, i) < 0) swap(mid, i);
+    if (compare(j, i) < 0) swap(j, i);
+    if (compare(mid, j) < 0) swap(mid, j);
+    // now i <= j <= mid, so the scans below can't run off either end
+    int left = i;
+    int right = j;
+    while (true) {
+      while (compare(++left, j) < 0) { }
+      while (compare(--right, j) > 0) { }
+      if (left >= right) {
+        break;
+      }
       swap(left, right);
-    } while (left < right);
-    swap(left, right);
+    }
+    swap(left, j);
     return left;
   }
 
 
+  private void insertionSort(int i, int j) {
+    for (int a = i + 1; a <= j; a++) {
+      for (int b = a; b > i && compare(b - 1, b) > 0; b--) {
+        swap(b - 1, b);
+      }
+    }
+  }
+
+
+  private void heapSort(int i, int j) {
+    int n = j - i + 1;
+    for (int k = n/2 - 1; k >= 0; k--) {
+      siftDown(i, k, n);
+    }
+    for (int end = n - 1; end > 0; end--) {
+      swap(i, i + end);
+      siftDown(i, 0, end);
+    }
+  }
+
+
+  private void siftDown(int base, int k, int n) {
+    while (true) {
+      int child = 2*k + 1;
+      if (child >= n) {
+        return;
+      }
+      if (child + 1 < n && compare(base + child, base + child + 1) < 0) {
+        child++;
+      }
+      if (compare(base + k, base + child) >= 0) {
+        return;
+      }
+      swap(base + k, base + child);
+      k = child;
+    }
+  }
+
+
   abstract public int size();
   abstract public float compare(int a, int b);
   abstract public void swap(int a, int b);
-}
\ No newline at end of file
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /** Positions 0 to count - 1, in order, ready to be sorted. */
+  static public int[] order(int count) {
+    int[] order = new int[count];
+    for (int i = 0; i < count; i++) {
+      order[i] = i;
+    }
+    return order;
+  }
+
+
+  /**
+   * Sort the first 'count' positions in 'order' by comparing the entries
+   * they point to. Equal entries may end up in any order.
+   */
+  static public void sort(final int[] order, final int count,
+                          final Comparison comparison) {
+    new Sort() {
+      @Override
+      public int size() {
+        return count;
+      }
+
+      @Override
+      public float compare(int a, int b) {
+        return comparison.compare(order[a], order[b]);
+      }
+
+      @Override
+      public void swap(int a, int b) {
+        int temp = order[a];
+        order[a] = order[b];
+        order[b] = temp;
+      }
+    }.run();
+  }
+
+
+  /**
+   * Same as sort(), but entries that compare as equal stay in the order
+   * they started in. This is a merge sort, so it needs a second array.
+   */
+  static public void stableSort(int[] order, int count, Comparison comparison) {
+    // insertion sort short runs, then merge them, doubling each time
+    for (int start = 0; start < count; start += INSERTION) {
+      int stop = Math.min(start + INSERTION, count);
+      for (int a = start + 1; a < stop; a++) {
+        int entry = order[a];
+        int b = a;
+        while (b > start && comparison.compare(order[b - 1], entry) > 0) {
+          order[b] = order[b - 1];
+          b--;
+        }
+        order[b] = entry;
+      }
+    }
+    int[] source = order;
+    int[] target = new int[count];
+    for (int width = INSERTION; width < count; width *= 2) {
+      for (int start = 0; start < count; start += 2*width) {
+        int mid = Math.min(start + width, count);
+        int stop = Math.min(start + 2*width, count);
+        int a = start;
+        int b = mid;
+        int out = start;
+        if (mid < stop && comparison.compare(source[mid - 1], source[mid]) <= 0) {
+          // already in order
+          System.arraycopy(source, start, target, start, stop - start);
+          continue;
+        }
+        while (a < mid && b < stop) {
+          if (comparison.compare(source[b], source[a]) < 0) {
+            target[out++] = source[b++];
+          } else {
+            target[out++] = source[a++];
+          }
+        }
+        System.arraycopy(source, a, target, out, mid - a);
+        System.arraycopy(source, b, target, out + (mid - a), stop - b);
+      }
+      int[] temp = source;
+      source = target;
+      target = temp;
+    }
+    if (source != order) {
+      System.arraycopy(source, 0, order, 0, count);
+    }
+  }
+
+
+  /**
+   * The 'k' positions from 0 to count - 1 whose entries come first by a
+   * comparison, in order, with ties going to the lower position. This keeps
+   * a heap of the best k seen so far, so it takes O(n log k) time and only
+   * the k that are returned get sorted.
+   */
+  static public int[] first(int count, int k, final Comparison comparison) {
+    if (k < 0) {
+      throw new IllegalArgumentException("k cannot be negative: it was " + k);
+    }
+    k = Math.min(k, count);
+    // the entry at the top of the heap is the one that comes last
+    int[] heap = new int[k];
+    for (int i = 0; i < k; i++) {
+      int child = i;
+      heap[child] = i;
+      while (child > 0) {
+        int parent = (child - 1) / 2;
+        if (!before(comparison, heap[parent], heap[child])) {
+          break;
+        }
+        int temp = heap[parent];
+        heap[parent] = heap[child];
+        heap[child] = temp;
+        child = parent;
+      }
+    }
+    for (int i = k; i < count; i++) {
+      if (k != 0 && before(comparison, i, heap[0])) {
+        // replace the top and sift it down
+        int parent = 0;
+        while (true) {
+          int child = 2*parent + 1;
+          if (child >= k) {
+            break;
+          }
+          if (child + 1 < k && before(comparison, heap[child], heap[child + 1])) {
+            child++;
+          }
+          if (!before(comparison, i, heap[child])) {
+            break;
+          }
+          heap[parent] = heap[child];
+          parent = child;
+        }
+        heap[parent] = i;
+      }
+    }
+    sort(heap, k, new Comparison() {
+      public int compare(int a, int b) {
+        return before(comparison, a, b) ? -1 : 1;
+      }
+    });
+    return heap;
+  }
+
+
+  static private boolean before(Comparison comparison, int a, int b) {
+    int diff = comparison.compare(a, b);
+    return diff < 0 || (diff == 0 && a < b);
+  }
+}
@@ -1,7 +1,7 @@
 package processing.data;
 
 import java.io.*;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Iterator;
 
 import processing.core.PApplet;
@@ -9,6 +9,12 @@ import processing.core.PApplet;
 
 /**
  * A simple table class to use a String as a lookup for another String value.
+ * <p>
+ * Removing an entry leaves a gap that's closed up the next time entries
+ * are used by their position: key(), value(), keyArray(), print(),
+ * toString(), and so on. So after a removal, even those reads change the
+ * dictionary, and it isn't safe to read from several threads at once
+ * without synchronizing.
  *
  * @webref data:composite
  * @see IntDict
@@ -23,7 +29,11 @@ public class StringDict {
   protected String[] values;
 
   /** Internal implementation for faster lookups */
-  private HashMap<String, Integer> indices = new HashMap<String, Integer>();
+  private StringIndex indices = new StringIndex();
+
+  // reused by keys() and keyIterator(), so a for loop doesn't allocate
+  private Iterable<String> keyIterable;
+  private KeyIterator keyIterator;
 
 
   public StringDict() {
@@ -44,6 +54,7 @@ public class StringDict {
     count = 0;
     keys = new String[length];
     values = new String[length];
+    indices = new StringIndex(length);
   }
 
 
@@ -57,13 +68,14 @@ public class StringDict {
     String[] lines = PApplet.loadStrings(reader);
     keys = new String[lines.length];
     values = new String[lines.length];
+    indices = new StringIndex(lines.length);
 
     for (int i = 0; i < lines.length; i++) {
       String[] pieces = PApplet.split(lines[i], '\t');
       if (pieces.length == 2) {
         keys[count] = pieces[0];
         values[count] = pieces[1];
-        indices.put(keys[count], count);
+        indices.put(keys, keys[count], count);
         count++;
       }
     }
@@ -79,8 +91,9 @@ public class StringDict {
     this.keys = keys;
     this.values = values;
     count = keys.length;
+    indices = new StringIndex(count);
     for (int i = 0; i < count; i++) {
-      indices.put(keys[i], i);
+      indices.put(keys, keys[i], i);
     }
   }
 
@@ -89,7 +102,7 @@ public class StringDict {
    * @brief Returns the number of key/value pairs
    */
   public int size() {
-    return count;
+    return count - indices.gapCount;
   }
 
 
@@ -101,16 +114,18 @@ public class StringDict {
    */
   public void clear() {
     count = 0;
-    indices = new HashMap<String, Integer>();
+    indices = new StringIndex();
   }
 
 
   public String key(int index) {
+    closeGaps();
     return keys[index];
   }
 
 
   protected void crop() {
+    closeGaps();
     if (count != keys.length) {
       keys = PApplet.subset(keys, 0, count);
       values = PApplet.subset(values, 0, count);
@@ -128,31 +143,62 @@ public class StringDict {
 //  }
 
   /**
+   * The iterator is reused once it's finished, so this isn't safe to use
+   * from more than one thread at a time, even when the dictionary isn't
+   * changing.
+   *
    * @webref stringdict:method
    * @brief Return the internal array being used to store the keys
    */
   public Iterable<String> keys() {
-    return new Iterable<String>() {
+    if (keyIterable == null) {
+      keyIterable = new Iterable<String>() {
 
-      @Override
-      public Iterator<String> iterator() {
-        return new Iterator<String>() {
-          int index = -1;
+        @Override
+        public Iterator<String> iterator() {
+          return keyIterator();
+        }
+      };
+    }
+    return keyIterable;
+  }
 
-          public void remove() {
-            removeIndex(index);
-          }
 
-          public String next() {
-            return key(++index);
-          }
+  // Use this to iterate when you want to be able to remove elements along the way
+  public Iterator<String> keyIterator() {
+    // hand back the last iterator again once it's been used up
+    if (keyIterator == null || !keyIterator.done) {
+      keyIterator = new KeyIterator();
+    } else {
+      keyIterator.reset();
+    }
+    return keyIterator;
+  }
 
-          public boolean hasNext() {
-            return index+1 < size();
-          }
-        };
-      }
-    };
+
+  private class KeyIterator implements Iterator<String> {
+    int index = -1;  // position in the arrays, skipping gaps
+    boolean done;  // whether hasNext() last returned false
+
+    public void remove() {
+      removeAt(index);
+    }
+
+    public String next() {
+      index = nextPosition(index);
+      return keys[index];
+    }
+
+    public boolean hasNext() {
+      // cleared again if entries are added and this carries on
+      done = nextPosition(index) >= count;
+      return !done;
+    }
+
+    void reset() {
+      index = -1;
+      done = false;
+    }
   }
 
 
@@ -168,6 +214,7 @@ public class StringDict {
 
 
   public String[] keyArray(String[] outgoing) {
+    closeGaps();
     if (outgoing == null || outgoing.length != count) {
       outgoing = new String[count];
     }
@@ -177,6 +224,7 @@ public class StringDict {
 
 
   public String value(int index) {
+    closeGaps();
     return values[index];
   }
 
@@ -190,18 +238,19 @@ public class StringDict {
       @Override
       public Iterator<String> iterator() {
         return new Iterator<String>() {
-          int index = -1;
+          int index = -1;  // position in the arrays, skipping gaps
 
           public void remove() {
-            removeIndex(index);
+            removeAt(index);
           }
 
           public String next() {
-            return value(++index);
+            index = nextPosition(index);
+            return values[index];
           }
 
           public boolean hasNext() {
-            return index+1 < size();
+            return nextPosition(index) < count;
           }
         };
       }
@@ -209,6 +258,26 @@ public class StringDict {
   }
 
 
+  /** Receives each entry in turn from forEach(). */
+  public interface Visitor {
+    public void visit(String key, String value);
+  }
+
+
+  /**
+   * Go through the entries in order, without the Iterator or boxed values
+   * that a for loop over keys() or values() creates. The visitor shouldn't
+   * add or remove entries.
+   */
+  public void forEach(Visitor visitor) {
+    for (int i = 0; i < count; i++) {
+      if (keys[i] != StringIndex.GAP) {
+        visitor.visit(keys[i], values[i]);
+      }
+    }
+  }
+
+
   /**
    * Create a new array and copy each of the values into it.
    *
@@ -226,6 +295,7 @@ public class StringDict {
    * size as the number of values, a new array will be allocated and returned.
    */
   public String[] valueArray(String[] array) {
+    closeGaps();
     if (array == null || array.length != size()) {
       array = new String[count];
     }
@@ -241,14 +311,14 @@ public class StringDict {
    * @brief Return a value for the specified key
    */
   public String get(String key) {
-    int index = index(key);
+    int index = find(key);
     if (index == -1) return null;
     return values[index];
   }
 
 
   public String get(String key, String alternate) {
-    int index = index(key);
+    int index = find(key);
     if (index == -1) return alternate;
     return values[index];
   }
@@ -259,7 +329,7 @@ public class StringDict {
    * @brief Create a new key/value pair or change the value of one
    */
   public void set(String key, String amount) {
-    int index = index(key);
+    int index = find(key);
     if (index == -1) {
       create(key, amount);
     } else {
@@ -269,8 +339,14 @@ public class StringDict {
 
 
   public int index(String what) {
-    Integer found = indices.get(what);
-    return (found == null) ? -1 : found.intValue();
+    int position = find(what);
+    return (position == -1) ? -1 : position - indices.gapsBefore(position);
+  }
+
+
+  /** Position of a key in the arrays, or -1 if it's not there. */
+  private int find(String key) {
+    return indices.get(keys, key);
   }
 
   /**
@@ -278,16 +354,21 @@ public class StringDict {
    * @brief Check if a key is a part of the data structure
    */
   public boolean hasKey(String key) {
-    return index(key) != -1;
+    return find(key) != -1;
   }
 
 
   protected void create(String key, String value) {
     if (count == keys.length) {
-      keys = PApplet.expand(keys);
-      values = PApplet.expand(values);
+      closeGaps();
+      // grow unless closing the gaps left plenty of room
+      if (count * 2 >= keys.length) {
+        int length = Math.max(10, keys.length << 1);  // expand() keeps 0 at 0
+        keys = PApplet.expand(keys, length);
+        values = PApplet.expand(values, length);
+      }
     }
-    indices.put(key, Integer.valueOf(count));
+    indices.put(keys, key, count);
     keys[count] = key;
     values[count] = value;
     count++;
@@ -298,43 +379,78 @@ public class StringDict {
    * @brief Remove a key/value pair
    */
   public int remove(String key) {
-    int index = index(key);
-    if (index != -1) {
-      removeIndex(index);
+    int position = find(key);
+    if (position == -1) {
+      return -1;
     }
+    int index = position - indices.gapsBefore(position);
+    removeAt(position);
     return index;
   }
 
 
   public String removeIndex(int index) {
-    if (index < 0 || index >= count) {
+    if (index < 0 || index >= size()) {
       throw new ArrayIndexOutOfBoundsException(index);
     }
-    //System.out.println("index is " + which + " and " + keys[which]);
-    String key = keys[index];
-    indices.remove(key);
-    for (int i = index; i < count-1; i++) {
-      keys[i] = keys[i+1];
-      values[i] = values[i+1];
-      indices.put(keys[i], i);
-    }
-    count--;
-    keys[count] = null;
-    values[count] = null;
+    return removeAt(indices.position(index));
+  }
+
+
+  /**
+   * Remove the entry at a position in the arrays, leaving a gap so that
+   * the entries after it don't have to move (yet).
+   */
+  private String removeAt(int position) {
+    String key = keys[position];
+    indices.remove(key, position);
+    indices.addGap(position, keys.length);
+    keys[position] = StringIndex.GAP;
+    values[position] = null;
     return key;
   }
 
 
+  /** Next position after this one that isn't a gap, or count if none. */
+  private int nextPosition(int position) {
+    do {
+      position++;
+    } while (position < count && keys[position] == StringIndex.GAP);
+    return position;
+  }
+
+
+  /**
+   * Move entries down over the gaps left by removals. This is what makes
+   * reads by position change the dictionary, see the class notes.
+   */
+  private void closeGaps() {
+    if (indices.gapCount != 0) {
+      int live = 0;
+      for (int i = 0; i < count; i++) {
+        if (keys[i] != StringIndex.GAP) {
+          keys[live] = keys[i];
+          values[live] = values[i];
+          live++;
+        }
+      }
+      Arrays.fill(keys, live, count, null);
+      count = live;
+      indices.rebuild(keys, count);
+    }
+  }
+
+
   public void swap(int a, int b) {
+    closeGaps();
+    indices.swap(keys[a], a, keys[b], b);
+
     String tkey = keys[a];
     String tvalue = values[a];
     keys[a] = keys[b];
     values[a] = values[b];
     keys[b] = tkey;
     values[b] = tvalue;
-
-    indices.put(keys[a], Integer.valueOf(a));
-    indices.put(keys[b], Integer.valueOf(b));
   }
 
 
@@ -379,15 +495,11 @@ public class StringDict {
 
 
   protected void sortImpl(final boolean useKeys, final boolean reverse) {
-    Sort s = new Sort() {
-      @Override
-      public int size() {
-        return count;
-      }
-
-      @Override
-      public float compare(int a, int b) {
-        int diff = 0;
+    closeGaps();
+    int[] order = Sort.order(count);
+    Sort.stableSort(order, count, new Sort.Comparison() {
+      public int compare(int a, int b) {
+        int diff;
         if (useKeys) {
           diff = keys[a].compareToIgnoreCase(keys[b]);
           if (diff == 0) {
@@ -401,24 +513,32 @@ public class StringDict {
         }
         return reverse ? -diff : diff;
       }
+    });
+    reorder(order);
+  }
 
-      @Override
-      public void swap(int a, int b) {
-        StringDict.this.swap(a, b);
-      }
-    };
-    s.run();
+
+  /** Put the entries in a new order, then rebuild the index once. */
+  private void reorder(int[] order) {
+    String[] newKeys = new String[keys.length];
+    String[] newValues = new String[values.length];
+    for (int i = 0; i < count; i++) {
+      newKeys[i] = keys[order[i]];
+      newValues[i] = values[order[i]];
+    }
+    keys = newKeys;
+    values = newValues;
+    indices.rebuild(keys, count);
   }
 
 
   /** Returns a duplicate copy of this object. */
   public StringDict copy() {
+    closeGaps();
     StringDict outgoing = new StringDict(count);
     System.arraycopy(keys, 0, outgoing.keys, 0, count);
     System.arraycopy(values, 0, outgoing.values, 0, count);
-    for (int i = 0; i < count; i++) {
-      outgoing.indices.put(keys[i], i);
-    }
+    outgoing.indices = indices.copy();
     outgoing.count = count;
     return outgoing;
   }
@@ -429,6 +549,7 @@ public class StringDict {
    * @param writer
    */
   public void write(PrintWriter writer) {
+    closeGaps();
     for (int i = 0; i < count; i++) {
       writer.println(keys[i] + "\t" + values[i]);
     }
@@ -437,6 +558,7 @@ public class StringDict {
 
 
   public void print() {
+    closeGaps();
     for (int i = 0; i < size(); i++) {
       System.out.println(keys[i] + " = " + values[i]);
     }
@@ -445,6 +567,7 @@ public class StringDict {
 
   @Override
   public String toString() {
+    closeGaps();
     StringBuilder sb = new StringBuilder();
     sb.append(getClass().getSimpleName() + " size=" + size() + " { ");
     for (int i = 0; i < size(); i++) {
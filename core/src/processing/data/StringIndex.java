@@ -0,0 +1,230 @@
+package processing.data;
+
+import java.util.Arrays;
+
+
+/**
+ * Lookup from a String key to its position in the keys array of an
+ * IntDict, FloatDict, or StringDict. This is an open-addressing hash table
+ * (with linear probing) that holds only positions and hash codes, so that
+ * a lookup doesn't box an Integer the way HashMap&lt;String, Integer&gt; does.
+ * The keys themselves stay in the dictionary's array, which is passed in.
+ * <p>
+ * A removed entry is taken out of the table right away, without leaving a
+ * tombstone, but is left as a GAP in the dictionary's arrays, so the
+ * entries after it don't have to move. The dictionary closes up the gaps
+ * all at once, the next time entries are used by their position. Until
+ * then, a tree of the gaps gives the position that an entry will have.
+ */
+class StringIndex {
+  /** Key left in a dictionary's array in place of a removed entry. */
+  static final String GAP = new String("");
+
+  int[] slots;  // position + 1, or 0 for an empty slot
+  int[] hashes;  // hash of the key in each slot
+  int used;
+
+  int gapCount;
+  int[] gaps;  // Fenwick tree counting the gaps, while there are any
+
+
+  StringIndex() {
+    this(0);
+  }
+
+
+  /** Index with room for a number of keys before it needs to grow. */
+  StringIndex(int expected) {
+    int size = 16;
+    while (size < expected * 2L) {
+      size <<= 1;
+    }
+    slots = new int[size];
+    hashes = new int[size];
+  }
+
+
+  static int hash(String key) {
+    int h = (key == null) ? 0 : key.hashCode() * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+
+  /** Position of a key, or -1 if it isn't there. */
+  int get(String[] keys, String key) {
+    int h = hash(key);
+    int mask = slots.length - 1;
+    for (int i = h & mask; slots[i] != 0; i = (i + 1) & mask) {
+      if (hashes[i] == h) {
+        String found = keys[slots[i] - 1];
+        if (found == key || (key != null && key.equals(found))) {
+          return slots[i] - 1;
+        }
+      }
+    }
+    return -1;
+  }
+
+
+  /** Add a key, or if it's already there, change its position. */
+  void put(String[] keys, String key, int position) {
+    int h = hash(key);
+    int mask = slots.length - 1;
+    int i = h & mask;
+    while (slots[i] != 0) {
+      if (hashes[i] == h) {
+        String found = keys[slots[i] - 1];
+        if (found == key || (key != null && key.equals(found))) {
+          slots[i] = position + 1;
+          return;
+        }
+      }
+      i = (i + 1) & mask;
+    }
+    slots[i] = position + 1;
+    hashes[i] = h;
+    used++;
+    if (used * 2 > slots.length) {
+      resize(slots.length * 2);
+    }
+  }
+
+
+  private void resize(int size) {
+    int[] oldSlots = slots;
+    int[] oldHashes = hashes;
+    slots = new int[size];
+    hashes = new int[size];
+    int mask = size - 1;
+    for (int j = 0; j < oldSlots.length; j++) {
+      if (oldSlots[j] != 0) {
+        int i = oldHashes[j] & mask;
+        while (slots[i] != 0) {
+          i = (i + 1) & mask;
+        }
+        slots[i] = oldSlots[j];
+        hashes[i] = oldHashes[j];
+      }
+    }
+  }
+
+
+  /** Slot for the key at a position, or -1 if it isn't in the table. */
+  private int slot(String key, int position) {
+    int mask = slots.length - 1;
+    for (int i = hash(key) & mask; slots[i] != 0; i = (i + 1) & mask) {
+      if (slots[i] == position + 1) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+
+  /**
+   * Take out the key at a position. Later entries in the same run of
+   * slots are moved back to fill the hole, so no tombstone is needed.
+   */
+  void remove(String key, int position) {
+    int hole = slot(key, position);
+    if (hole == -1) {
+      return;
+    }
+    int mask = slots.length - 1;
+    for (int i = (hole + 1) & mask; slots[i] != 0; i = (i + 1) & mask) {
+      int home = hashes[i] & mask;
+      // move it if the hole is between its home slot and where it is now
+      if (((i - home) & mask) >= ((i - hole) & mask)) {
+        slots[hole] = slots[i];
+        hashes[hole] = hashes[i];
+        hole = i;
+      }
+    }
+    slots[hole] = 0;
+    used--;
+  }
+
+
+  /** Trade the positions of two keys, as in the dictionary's swap(). */
+  void swap(String keyA, int a, String keyB, int b) {
+    int slotA = slot(keyA, a);
+    int slotB = slot(keyB, b);
+    if (slotA != -1) {
+      slots[slotA] = b + 1;
+    }
+    if (slotB != -1) {
+      slots[slotB] = a + 1;
+    }
+  }
+
+
+  /** Start over with the first 'count' keys, after their order changed. */
+  void rebuild(String[] keys, int count) {
+    Arrays.fill(slots, 0);
+    used = 0;
+    gapCount = 0;
+    gaps = null;
+    for (int i = 0; i < count; i++) {
+      put(keys, keys[i], i);
+    }
+  }
+
+
+  StringIndex copy() {
+    StringIndex outgoing = new StringIndex();
+    outgoing.slots = slots.clone();
+    outgoing.hashes = hashes.clone();
+    outgoing.used = used;
+    outgoing.gapCount = gapCount;
+    if (gaps != null) {
+      outgoing.gaps = gaps.clone();
+    }
+    return outgoing;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /** Note a gap at this position, in an array of length 'capacity'. */
+  void addGap(int position, int capacity) {
+    if (gaps == null) {
+      gaps = new int[capacity + 1];
+    }
+    for (int i = position + 1; i < gaps.length; i += i & -i) {
+      gaps[i]++;
+    }
+    gapCount++;
+  }
+
+
+  /** Number of gaps before a position. */
+  int gapsBefore(int position) {
+    int total = 0;
+    if (gaps != null) {
+      for (int i = position; i > 0; i -= i & -i) {
+        total += gaps[i];
+      }
+    }
+    return total;
+  }
+
+
+  /** Position in the array of the entry that's 'index' once gaps close. */
+  int position(int index) {
+    if (gaps == null) {
+      return index;
+    }
+    // find the last position with at most 'index' entries before it
+    int position = 0;
+    int step = Integer.highestOneBit(gaps.length - 1);
+    for (; step != 0; step >>= 1) {
+      int next = position + step;
+      if (next < gaps.length && step - gaps[next] <= index) {
+        position = next;
+        index -= step - gaps[next];
+      }
+    }
+    return position;
+  }
+}
@@ -1,6 +1,8 @@
 package processing.data;
 
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.Random;
 
@@ -461,26 +463,9 @@ public class StringList implements Iterable<String> {
   }
 
 
-  private void sortImpl(final boolean reverse) {
-    new Sort() {
-      @Override
-      public int size() {
-        return count;
-      }
-
-      @Override
-      public float compare(int a, int b) {
-        float diff = data[a].compareToIgnoreCase(data[b]);
-        return reverse ? -diff : diff;
-      }
-
-      @Override
-      public void swap(int a, int b) {
-        String temp = data[a];
-        data[a] = data[b];
-        data[b] = temp;
-      }
-    }.run();
+  private void sortImpl(boolean reverse) {
+    Comparator<String> order = String.CASE_INSENSITIVE_ORDER;
+    Arrays.sort(data, 0, count, reverse ? Collections.reverseOrder(order) : order);
   }
 
 
@@ -625,6 +610,23 @@ public class StringList implements Iterable<String> {
   }
 
 
+  /** Receives each entry in turn from forEach(). */
+  public interface Visitor {
+    public void visit(int index, String value);
+  }
+
+
+  /**
+   * Go through the entries in order, along with their index, without the
+   * Iterator that a for loop over the list creates.
+   */
+  public void forEach(Visitor visitor) {
+    for (int i = 0; i < count; i++) {
+      visitor.visit(i, data[i]);
+    }
+  }
+
+
   /**
    * Create a new array with a copy of all the values.
    *
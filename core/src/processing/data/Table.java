@@ -25,21 +25,35 @@ package processing.data;
 
 import java.io.*;
 import java.lang.reflect.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Types;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
 
+import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
 
 import processing.core.PApplet;
 import processing.core.PConstants;
@@ -82,6 +96,11 @@ public class Table {
   HashMap<String, Integer> columnIndices;
 
   protected Object[] columns;  // [column]
+  // columns (and their categories) that may also be used by a copy() of
+  // this table, so they're copied before they're first modified
+  boolean[] shared;
+  // keep numeric and CATEGORY columns in direct buffers, see setOffHeap()
+  protected boolean offHeap;
 
   // accessible for advanced users
   static public final int STRING = 0;
@@ -92,12 +111,62 @@ public class Table {
   static public final int CATEGORY = 5;
   int[] columnTypes;
 
+  // used with join()
+  static public final int INNER_JOIN = 0;
+  static public final int LEFT_JOIN = 1;
+
   protected RowIterator rowIterator;
 
+  // hash indexes used by the find methods, null unless createIndex() is used
+  ColumnIndex[] indexes;
+  // summary statistics for each column, null unless createStats() is used
+  ColumnStats[] stats;
+
   // 0 for doubling each time, otherwise the number of rows to increment on
   // each expansion.
   protected int expandIncrement;
 
+  // shared by all tables for work that's split across cores
+  static ForkJoinPool pool;
+
+  // number of chars handed to each task when parsing in parallel
+  static final int PARALLEL_CHUNK = 1 << 22;
+
+  // minimum number of rows handed to each task for other parallel work
+  static final int PARALLEL_ROWS = 1 << 16;
+
+  // number of rows used to guess column types with the 'infer' option
+  static final int INFER_COUNT = 1000;
+
+  // rows per batch for insertInto()
+  static final int JDBC_BATCH = 1000;
+
+  // most distinct values for a String column with the 'compact' option
+  static final int DICTIONARY_LIMIT = 1 << 16;
+
+  // while loading with 'compact', new columns are dictionary-encoded
+  protected int dictionaryLimit;
+
+  // rough sizes used by memoryUsage(), for a 64-bit JVM that uses
+  // compressed references
+  static final int REFERENCE_BYTES = 4;
+  static final int ARRAY_HEADER = 16;
+  static final int STRING_BYTES = 24;
+  static final int MAP_ENTRY_BYTES = 48;  // HashMap node plus an Integer
+
+  // reused for each line while parsing
+  private char[] lineBuffer;
+
+  // set by the 'follow' option, so that refresh() can read new rows
+  protected File followFile;
+  protected String followOptions;
+  protected long followOffset;  // end of the last record that was read
+  protected boolean followTsv;
+  protected boolean followNewlines;
+
+  // most rows to keep with the 'window' option, or 0 for no limit
+  protected int window;
+
 
   /**
    * Creates a new, empty table. Use addRow() to add additional rows.
@@ -123,8 +192,14 @@ public class Table {
   public Table(File file, String options) throws IOException {
     // uses createInput() to handle .gz (and eventually .bz2) files
     init();
-    parse(PApplet.createInput(file),
-          extensionOptions(true, file.getName(), options));
+    options = extensionOptions(true, file.getName(), options);
+    if (isColumnar(options) && !file.getName().toLowerCase().endsWith(".gz")) {
+      loadColumnar(file);
+    } else if (isFollowing(options)) {
+      follow(file, options);
+    } else {
+      parse(PApplet.createInput(file), options);
+    }
   }
 
   /**
@@ -142,6 +217,17 @@ public class Table {
    * <li>tsv - parse the table as tab-separated values
    * <li>newlines - this CSV file contains newlines inside individual cells
    * <li>header - this table has a header (title) row
+   * <li>parallel - split CSV or TSV parsing across all available cores
+   * <li>infer - guess the type of each column from the first 1000 rows
+   * (or use infer=5000 to look at a different number of rows)
+   * <li>compact - store String columns with a dictionary of their distinct
+   * values (see compact() for details), or compact=1000 to set the most
+   * distinct values a column can have
+   * <li>follow - keep track of where the file ends, so that refresh() can
+   * add rows that are written to it later (CSV and TSV files only)
+   * <li>window=1000 - keep only the last 1000 rows, dropping older rows
+   * <li>offheap - keep numeric and compacted columns outside the Java heap
+   * (see setOffHeap() for details)
    * </ul>
    *
    * @nowebref
@@ -189,56 +275,54 @@ public class Table {
    * @nowebref
    */
   public Table(ResultSet rs) {
+    this(rs, 0);
+  }
+
+
+  /**
+   * Read all the rows of a ResultSet. Numeric columns become INT, LONG,
+   * FLOAT, or DOUBLE columns, BOOLEAN and BIT columns are INT (1 or 0), and
+   * DATE, TIME, and TIMESTAMP columns are LONG values in milliseconds since
+   * January 1, 1970 (the same as Date.getTime()). Everything else is read
+   * as a String. SQL NULL values are stored as the missing value for the
+   * column's type.
+   *
+   * @nowebref
+   * @param fetchSize number of rows for the driver to fetch at a time,
+   * or 0 to use the driver's default
+   */
+  public Table(ResultSet rs, int fetchSize) {
     init();
     try {
+      if (fetchSize > 0) {
+        rs.setFetchSize(fetchSize);
+      }
       ResultSetMetaData rsmd = rs.getMetaData();
 
       int columnCount = rsmd.getColumnCount();
       setColumnCount(columnCount);
 
+      int[] sqlTypes = new int[columnCount];
       for (int col = 0; col < columnCount; col++) {
-        setColumnTitle(col, rsmd.getColumnName(col + 1));
-
-        int type = rsmd.getColumnType(col + 1);
-        switch (type) {  // TODO these aren't tested. nor are they complete.
-        case Types.INTEGER:
-        case Types.TINYINT:
-        case Types.SMALLINT:
-          setColumnType(col, INT);
-          break;
-        case Types.BIGINT:
-          setColumnType(col, LONG);
-          break;
-        case Types.FLOAT:
-          setColumnType(col, FLOAT);
-          break;
-        case Types.DECIMAL:
-        case Types.DOUBLE:
-        case Types.REAL:
-          setColumnType(col, DOUBLE);
-          break;
-        }
+        setColumnTitle(col, rsmd.getColumnLabel(col + 1));
+        sqlTypes[col] = rsmd.getColumnType(col + 1);
+        setColumnType(col, sqlColumnType(sqlTypes[col]));
       }
 
+      // fill the column arrays directly, doubling their size as needed
       int row = 0;
+      int alloc = 0;
       while (rs.next()) {
+        if (row == alloc) {
+          alloc = Math.max(alloc << 1, 64);
+          setRowCount(alloc);
+        }
         for (int col = 0; col < columnCount; col++) {
-          switch (columnTypes[col]) {
-          case STRING: setString(row, col, rs.getString(col+1)); break;
-          case INT: setInt(row, col, rs.getInt(col+1)); break;
-          case LONG: setLong(row, col, rs.getLong(col+1)); break;
-          case FLOAT: setFloat(row, col, rs.getFloat(col+1)); break;
-          case DOUBLE: setDouble(row, col, rs.getDouble(col+1)); break;
-          default: throw new IllegalArgumentException("column type " + columnTypes[col] + " not supported.");
-          }
+          readResultColumn(rs, row, col, sqlTypes[col]);
         }
         row++;
-//        String[] row = new String[columnCount];
-//        for (int col = 0; col < columnCount; col++) {
-//          row[col] = rs.get(col + 1);
-//        }
-//        addRow(row);
       }
+      setRowCount(row);
 
     } catch (SQLException s) {
       throw new RuntimeException(s);
@@ -246,6 +330,191 @@ public class Table {
   }
 
 
+  /** The type of column used for a type from java.sql.Types. */
+  static protected int sqlColumnType(int sqlType) {
+    switch (sqlType) {
+    case Types.INTEGER:
+    case Types.TINYINT:
+    case Types.SMALLINT:
+    case Types.BOOLEAN:
+    case Types.BIT:
+      return INT;
+    case Types.BIGINT:
+    case Types.DATE:
+    case Types.TIME:
+    case Types.TIMESTAMP:
+      return LONG;
+    case Types.REAL:  // FLOAT in SQL is double precision
+      return FLOAT;
+    case Types.FLOAT:
+    case Types.DOUBLE:
+    case Types.DECIMAL:
+    case Types.NUMERIC:
+      return DOUBLE;
+    }
+    return STRING;
+  }
+
+
+  private void readResultColumn(ResultSet rs, int row, int col,
+                                int sqlType) throws SQLException {
+    int index = col + 1;
+    switch (columnTypes[col]) {
+    case INT: {
+      int value = (sqlType == Types.BOOLEAN || sqlType == Types.BIT) ?
+        (rs.getBoolean(index) ? 1 : 0) : rs.getInt(index);
+      ((int[]) columns[col])[row] = rs.wasNull() ? missingInt : value;
+      break;
+    }
+    case LONG: {
+      long value;
+      if (sqlType == Types.BIGINT) {
+        value = rs.getLong(index);
+      } else {
+        java.util.Date date = (sqlType == Types.DATE) ? rs.getDate(index) :
+          (sqlType == Types.TIME) ? rs.getTime(index) : rs.getTimestamp(index);
+        value = (date == null) ? 0 : date.getTime();
+      }
+      ((long[]) columns[col])[row] = rs.wasNull() ? missingLong : value;
+      break;
+    }
+    case FLOAT: {
+      float value = rs.getFloat(index);
+      ((float[]) columns[col])[row] = rs.wasNull() ? missingFloat : value;
+      break;
+    }
+    case DOUBLE: {
+      double value = rs.getDouble(index);
+      ((double[]) columns[col])[row] = rs.wasNull() ? missingDouble : value;
+      break;
+    }
+    default:
+      ((String[]) columns[col])[row] = rs.getString(index);
+    }
+  }
+
+
+  /**
+   * Add the rows of this table to a database table, using batches of 1000
+   * rows. The column titles are used as the names of the database columns.
+   * @nowebref
+   */
+  public void insertInto(Connection connection, String tableName) throws SQLException {
+    insertInto(connection, tableName, JDBC_BATCH);
+  }
+
+
+  /**
+   * Add the rows of this table to a database table. Rows are sent in
+   * batches with a single PreparedStatement, and committed together unless
+   * the connection is already managing its own transaction. If anything
+   * fails, that transaction is rolled back and the connection's auto-commit
+   * setting is restored before the exception is passed along. Missing values
+   * in String, FLOAT, and DOUBLE columns (null and NaN) are stored as NULL.
+   * @nowebref
+   * @param batchSize number of rows to send to the database at a time
+   */
+  public void insertInto(Connection connection, String tableName,
+                         int batchSize) throws SQLException {
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("batchSize must be at least 1");
+    }
+    int columnCount = getColumnCount();
+    StringBuilder sql = new StringBuilder("INSERT INTO " + tableName);
+    if (hasColumnTitles()) {
+      String quote = connection.getMetaData().getIdentifierQuoteString();
+      quote = (quote == null || quote.trim().length() == 0) ? "" : quote.trim();
+      sql.append(" (");
+      for (int col = 0; col < columnCount; col++) {
+        sql.append(col == 0 ? "" : ", ");
+        String title = columnTitles[col];
+        if (quote.length() != 0) {
+          // a quote inside the name is written twice
+          title = quote + title.replace(quote, quote + quote) + quote;
+        }
+        sql.append(title);
+      }
+      sql.append(")");
+    }
+    sql.append(" VALUES (");
+    for (int col = 0; col < columnCount; col++) {
+      sql.append(col == 0 ? "?" : ", ?");
+    }
+    sql.append(")");
+
+    boolean autoCommit = connection.getAutoCommit();
+    if (autoCommit) {
+      connection.setAutoCommit(false);
+    }
+    boolean committed = false;
+    try {
+      PreparedStatement statement = connection.prepareStatement(sql.toString());
+      try {
+        for (int row = 0; row < rowCount; row++) {
+          for (int col = 0; col < columnCount; col++) {
+            int index = col + 1;
+            switch (columnTypes[col]) {
+            case INT:
+              statement.setInt(index, getInt(row, col));
+              break;
+            case LONG:
+              statement.setLong(index, getLong(row, col));
+              break;
+            case FLOAT:
+              float f = getFloat(row, col);
+              if (f != f) {
+                statement.setNull(index, Types.REAL);
+              } else {
+                statement.setFloat(index, f);
+              }
+              break;
+            case DOUBLE:
+              double d = getDouble(row, col);
+              if (d != d) {
+                statement.setNull(index, Types.DOUBLE);
+              } else {
+                statement.setDouble(index, d);
+              }
+              break;
+            default:
+              String s = getString(row, col);
+              if (s == null) {
+                statement.setNull(index, Types.VARCHAR);
+              } else {
+                statement.setString(index, s);
+              }
+            }
+          }
+          statement.addBatch();
+          if ((row + 1) % batchSize == 0) {
+            statement.executeBatch();
+          }
+        }
+        if (rowCount % batchSize != 0) {
+          statement.executeBatch();
+        }
+      } finally {
+        statement.close();
+      }
+      if (autoCommit) {
+        connection.commit();
+        committed = true;
+      }
+    } finally {
+      // put the connection back the way it was, even if the statement failed
+      if (autoCommit) {
+        try {
+          if (!committed) {
+            connection.rollback();
+          }
+        } finally {
+          connection.setAutoCommit(true);
+        }
+      }
+    }
+  }
+
+
   public Table typedParse(InputStream input, String options) throws IOException {
     Table table = new Table();
     table.setColumnTypes(this);
@@ -293,8 +562,8 @@ public class Table {
   */
 
 
-  static final String[] loadExtensions = { "csv", "tsv", "ods", "bin" };
-  static final String[] saveExtensions = { "csv", "tsv", "ods", "bin", "html" };
+  static final String[] loadExtensions = { "csv", "tsv", "ods", "bin", "tbl" };
+  static final String[] saveExtensions = { "csv", "tsv", "ods", "bin", "tbl", "html" };
 
   static public String extensionOptions(boolean loading, String filename, String options) {
     String extension = PApplet.checkExtension(filename);
@@ -322,10 +591,17 @@ public class Table {
     boolean header = false;
     String extension = null;
     boolean binary = false;
+    boolean parallel = false;
+    int inferCount = 0;
+    final String inferParam = "infer=";
 
     String worksheet = null;
     final String sheetParam = "worksheet=";
 
+    int compactLimit = 0;
+    final String compactParam = "compact=";
+    final String windowParam = "window=";
+
     String[] opts = null;
     if (options != null) {
       opts = PApplet.trim(PApplet.split(options, ','));
@@ -342,10 +618,29 @@ public class Table {
         } else if (opt.equals("bin")) {
           binary = true;
           extension = "bin";
+        } else if (opt.equals("tbl")) {
+          binary = false;
+          extension = "tbl";
         } else if (opt.equals("header")) {
           header = true;
+        } else if (opt.equals("parallel")) {
+          parallel = true;
+        } else if (opt.equals("infer")) {
+          inferCount = INFER_COUNT;
+        } else if (opt.startsWith(inferParam)) {
+          inferCount = PApplet.parseInt(opt.substring(inferParam.length()), INFER_COUNT);
         } else if (opt.startsWith(sheetParam)) {
           worksheet = opt.substring(sheetParam.length());
+        } else if (opt.equals("compact")) {
+          compactLimit = DICTIONARY_LIMIT;
+        } else if (opt.startsWith(compactParam)) {
+          compactLimit = PApplet.parseInt(opt.substring(compactParam.length()), DICTIONARY_LIMIT);
+        } else if (opt.startsWith(windowParam)) {
+          window = PApplet.parseInt(opt.substring(windowParam.length()), 0);
+        } else if (opt.equals("offheap")) {
+          offHeap = true;
+        } else if (opt.equals("follow")) {
+          // handled by Table(File, String), which then calls this
         } else if (opt.startsWith("dictionary=")) {
           // ignore option, this is only handled by PApplet
         } else {
@@ -360,62 +655,320 @@ public class Table {
 
     if (binary) {
       loadBinary(input);
+      compact(compactLimit);
+
+    } else if (extension.equals("tbl")) {
+      loadColumnar(input);
+      compact(compactLimit);
 
     } else if (extension.equals("ods")) {
+      dictionaryLimit = compactLimit;
       odsParse(input, worksheet, header);
+      dictionaryLimit = 0;
 
     } else {
       BufferedReader reader = PApplet.createReader(input);
-      if (awfulCSV) {
+      boolean tsv = "tsv".equals(extension);
+      if (inferCount > 0) {
+        parseInfer(reader, header, tsv, awfulCSV, inferCount);
+        header = false;  // already handled
+      }
+      // encode as the rows come in, so the Strings never pile up
+      compact(compactLimit);
+      dictionaryLimit = compactLimit;
+      if (parallel) {
+        parseParallel(reader, header, tsv, awfulCSV);
+      } else if (awfulCSV && rowCount == 0 && isUntyped()) {
         parseAwfulCSV(reader, header);
-      } else if ("tsv".equals(extension)) {
-        parseBasic(reader, header, true);
-      } else if ("csv".equals(extension)) {
-        parseBasic(reader, header, false);
+      } else {
+        parseBasic(reader, header, tsv, awfulCSV);
+      }
+      dictionaryLimit = 0;
+    }
+    trimWindow();
+    if (offHeap) {
+      setOffHeap(true);
+    }
+  }
+
+
+  /** True if every column is still a String column. */
+  private boolean isUntyped() {
+    for (int type : columnTypes) {
+      if (type != STRING) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /** True if these options ask for a table that can be refreshed. */
+  static public boolean isFollowing(String options) {
+    if (options != null) {
+      for (String opt : PApplet.trim(PApplet.split(options, ','))) {
+        if (opt.equals("follow")) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+
+  /**
+   * Load the complete records from a CSV or TSV file, and remember where
+   * they end so that refresh() can pick up rows added later.
+   */
+  protected void follow(File file, String options) throws IOException {
+    boolean tsv = false;
+    boolean awfulCSV = false;
+    for (String opt : PApplet.trim(PApplet.split(options, ','))) {
+      if (opt.equals("tsv")) {
+        tsv = true;
+      } else if (opt.equals("csv")) {
+        tsv = false;
+      } else if (opt.equals("newlines")) {
+        tsv = false;
+        awfulCSV = true;
+      } else if (opt.equals("ods") || opt.equals("bin") || opt.equals("tbl")) {
+        throw new IllegalArgumentException("Only CSV and TSV files can use the 'follow' option");
+      }
+    }
+    if (file.getName().toLowerCase().endsWith(".gz")) {
+      throw new IllegalArgumentException("Compressed files can't use the 'follow' option");
+    }
+    followFile = file;
+    followOptions = options;
+    followTsv = tsv;
+    followNewlines = awfulCSV;
+    followOffset = 0;
+    followRead();
+  }
+
+
+  /**
+   * Add any complete rows that were written to the end of the file since
+   * it was loaded (with the 'follow' option) or last refreshed. A row that's
+   * only partly written is left for next time. If the file has become
+   * shorter, it's assumed to have been replaced, and is read again from the
+   * start. With the 'window' option, the oldest rows are dropped to keep
+   * the table at that size.
+   * @return the number of new rows in the table
+   */
+  public int refresh() {
+    if (followFile == null) {
+      throw new RuntimeException("Load the table with the 'follow' option to use refresh()");
+    }
+    try {
+      if (followFile.length() < followOffset) {
+        clearRows();
+        followOffset = 0;
+        followRead();
+        return rowCount;
+      }
+      long stop = recordEnd(followFile, followOffset, followNewlines);
+      if (stop == followOffset) {
+        return 0;
+      }
+      int before = rowCount;
+      InputStream input = new FileSegment(followFile, followOffset, stop);
+      try {
+        parseBasic(PApplet.createReader(input), false, followTsv, followNewlines);
+      } finally {
+        input.close();
+      }
+      followOffset = stop;
+      int added = rowCount - before;
+      trimWindow();
+      return Math.min(added, rowCount);
+
+    } catch (IOException e) {
+      e.printStackTrace();
+      return 0;
+    }
+  }
+
+
+  /** Parse the file from the start, up to the end of its last full record. */
+  private void followRead() throws IOException {
+    long stop = recordEnd(followFile, 0, followNewlines);
+    InputStream input = new FileSegment(followFile, 0, stop);
+    try {
+      parse(input, followOptions);
+    } finally {
+      input.close();
+    }
+    followOffset = stop;
+  }
+
+
+  /** With the 'window' option, drop the oldest rows past the limit. */
+  protected void trimWindow() {
+    if (window > 0 && rowCount > window) {
+      invalidateIndexes();
+      int drop = rowCount - window;
+      for (int col = 0; col < columns.length; col++) {
+        if (offHeap && columnTypes[col] != STRING) {
+          // move the rows within the direct buffers, not through the heap
+          offHeapColumn(col).shift(drop, window);
+        } else {
+          ensureWritable(col);
+          System.arraycopy(columns[col], drop, columns[col], 0, window);
+        }
+      }
+      setRowCount(window);
+    }
+  }
+
+
+  /**
+   * Byte offset just past the last complete record in a file, not looking
+   * before 'start', which should itself be the end of a record. Line breaks
+   * are the same in UTF-8 and ASCII, so the bytes can be checked directly.
+   */
+  static long recordEnd(File file, long start, boolean awfulCSV) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      long length = raf.length();
+      byte[] buffer = new byte[1 << 16];
+      if (!awfulCSV) {
+        // look back from the end for the last line break
+        long pos = length;
+        while (pos > start) {
+          int count = (int) Math.min(buffer.length, pos - start);
+          pos -= count;
+          raf.seek(pos);
+          raf.readFully(buffer, 0, count);
+          for (int i = count - 1; i >= 0; --i) {
+            // a \r at the very end might be followed by a \n that's not there yet
+            if (buffer[i] == '\n' || (buffer[i] == '\r' && pos + i != length - 1)) {
+              return pos + i + 1;
+            }
+          }
+        }
+        return start;
+      }
+      // line breaks inside quotes don't count, so read forward
+      long boundary = start;
+      boolean quote = false;
+      long pos = start;
+      raf.seek(pos);
+      while (pos < length) {
+        int count = (int) Math.min(buffer.length, length - pos);
+        raf.readFully(buffer, 0, count);
+        for (int i = 0; i < count; i++) {
+          byte b = buffer[i];
+          if (b == '\"') {
+            quote = !quote;
+          } else if (!quote &&
+                     (b == '\n' || (b == '\r' && pos + i != length - 1))) {
+            boundary = pos + i + 1;
+          }
+        }
+        pos += count;
+      }
+      return boundary;
+
+    } finally {
+      raf.close();
+    }
+  }
+
+
+  /** Reads the bytes of a file from one offset up to (not including) another. */
+  static class FileSegment extends FilterInputStream {
+    long remaining;
+
+    FileSegment(File file, long start, long stop) throws IOException {
+      super(new FileInputStream(file));
+      long skip = start;
+      while (skip > 0) {
+        long count = in.skip(skip);
+        if (count <= 0) {
+          in.close();
+          throw new EOFException();
+        }
+        skip -= count;
+      }
+      remaining = stop - start;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (remaining <= 0) {
+        return -1;
       }
+      int c = in.read();
+      if (c != -1) {
+        remaining--;
+      }
+      return c;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (remaining <= 0) {
+        return -1;
+      }
+      int count = in.read(b, off, (int) Math.min(len, remaining));
+      if (count > 0) {
+        remaining -= count;
+      }
+      return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long count = in.skip(Math.min(n, remaining));
+      remaining -= count;
+      return count;
+    }
+
+    @Override
+    public int available() throws IOException {
+      return (int) Math.min(in.available(), remaining);
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
     }
   }
 
 
   protected void parseBasic(BufferedReader reader,
                             boolean header, boolean tsv) throws IOException {
+    parseBasic(reader, header, tsv, false);
+  }
+
+
+  /**
+   * @param awfulCSV true if quoted entries may contain newlines, in which
+   *                 case a record can span several lines of the file
+   */
+  protected void parseBasic(BufferedReader reader, boolean header,
+                            boolean tsv, boolean awfulCSV) throws IOException {
     String line = null;
-    int row = 0;
+    int row = rowCount;  // add to any rows already read
     if (rowCount == 0) {
       setRowCount(10);
     }
-    //int prev = 0;  //-1;
     try {
-      while ((line = reader.readLine()) != null) {
+      while ((line = readRecord(reader, awfulCSV)) != null) {
         if (row == getRowCount()) {
           setRowCount(row << 1);
         }
-        if (row == 0 && header) {
-          setColumnTitles(tsv ? PApplet.split(line, '\t') : splitLineCSV(line));
+        if (header) {
+          setColumnTitles(splitLine(line, tsv));
           header = false;
         } else {
-          setRow(row, tsv ? PApplet.split(line, '\t') : splitLineCSV(line));
+          parseLine(row, line, tsv);
           row++;
         }
-
-        // this is problematic unless we're going to calculate rowCount first
-        if (row % 10000 == 0) {
-        /*
-        if (row < rowCount) {
-          int pct = (100 * row) / rowCount;
-          if (pct != prev) {  // also prevents "0%" from showing up
-            System.out.println(pct + "%");
-            prev = pct;
-          }
-        }
-         */
-          try {
-            // Sleep this thread so that the GC can catch up
-            Thread.sleep(10);
-          } catch (InterruptedException e) {
-            e.printStackTrace();
-          }
-        }
       }
     } catch (Exception e) {
       throw new RuntimeException("Error reading table on line " + row, e);
@@ -427,2883 +980,6393 @@ public class Table {
   }
 
 
-//  public void convertTSV(BufferedReader reader, File outputFile) throws IOException {
-//    convertBasic(reader, true, outputFile);
-//  }
+  /**
+   * Read CSV or TSV data in large blocks, and hand each block (cut at the
+   * last complete record) to a separate task that parses it into a table of
+   * its own. The results are then stitched back together in their original
+   * order, one column at a time.
+   */
+  protected void parseParallel(BufferedReader reader, boolean header,
+                               boolean tsv, boolean awfulCSV) throws IOException {
+    if (header) {
+      String line = readRecord(reader, awfulCSV);
+      if (line != null) {
+        setColumnTitles(splitLine(line, tsv));
+      }
+    }
 
+    ForkJoinPool pool = getPool();
+    // don't let the reader get too far ahead of the parsers
+    int limit = pool.getParallelism() * 2;
+    List<ParseChunk> tasks = new ArrayList<ParseChunk>();
+    int joined = 0;
+
+    char[] buffer = new char[PARALLEL_CHUNK];
+    int length = 0;
+    boolean done = false;
+    while (!done) {
+      while (length < buffer.length) {
+        int count = reader.read(buffer, length, buffer.length - length);
+        if (count == -1) {
+          done = true;
+          break;
+        }
+        length += count;
+      }
+      int stop = done ? length : recordBoundary(buffer, length, awfulCSV);
+      if (stop == 0) {
+        if (!done) {
+          // a single record that's larger than the buffer
+          buffer = PApplet.expand(buffer);
+        }
+        continue;
+      }
+      ParseChunk task = new ParseChunk(this, buffer, stop, tsv, awfulCSV);
+      tasks.add(task);
+      pool.execute(task);
+      if (tasks.size() - joined > limit) {
+        tasks.get(joined++).join();
+      }
+      // the task owns the old buffer, move the partial record to a new one
+      char[] next = new char[Math.max(PARALLEL_CHUNK, (length - stop) * 2)];
+      System.arraycopy(buffer, stop, next, 0, length - stop);
+      buffer = next;
+      length -= stop;
+    }
 
-  protected void parseAwfulCSV(BufferedReader reader,
-                               boolean header) throws IOException {
-    char[] c = new char[100];
-    int count = 0;
-    boolean insideQuote = false;
+    List<Table> chunks = new ArrayList<Table>(tasks.size());
+    for (ParseChunk task : tasks) {
+      chunks.add(task.join());
+    }
+    appendChunks(chunks);
+  }
 
-    int alloc = 100;
-    setRowCount(100);
 
-    int row = 0;
-    int col = 0;
-    int ch;
-    while ((ch = reader.read()) != -1) {
-      if (insideQuote) {
-        if (ch == '\"') {
-          // this is either the end of a quoted entry, or a quote character
-          reader.mark(1);
-          if (reader.read() == '\"') {
-            // it's "", which means a quote character
-            if (count == c.length) {
-              c = PApplet.expand(c);
-            }
-            c[count++] = '\"';
-          } else {
-            // nope, just the end of a quoted csv entry
-            reader.reset();
-            insideQuote = false;
-            // TODO nothing here that prevents bad csv data from showing up
-            // after the quote and before the comma...
-//            set(row, col, new String(c, 0, count));
-//            count = 0;
-//            col++;
-//            insideQuote = false;
-          }
-        } else {  // inside a quote, but the character isn't a quote
-          if (count == c.length) {
-            c = PApplet.expand(c);
-          }
-          c[count++] = (char) ch;
-        }
-      } else {  // not inside a quote
-        if (ch == '\"') {
-          insideQuote = true;
-
-        } else if (ch == '\r' || ch == '\n') {
-          if (ch == '\r') {
-            // check to see if next is a '\n'
-            reader.mark(1);
-            if (reader.read() != '\n') {
-              reader.reset();
-            }
-          }
-          setString(row, col, new String(c, 0, count));
-          count = 0;
-          row++;
-          if (row == 1 && header) {
-            // Use internal row removal (efficient because only one row).
-            removeTitleRow();
-            // Un-set the header variable so that next time around, we don't
-            // just get stuck into a loop, removing the 0th row repeatedly.
-            header = false;
-            // Reset the number of rows (removeTitleRow() won't reset our local 'row' counter)
-            row = 0;
-          }
-//          if (row % 1000 == 0) {
-//            PApplet.println(PApplet.nfc(row));
-//          }
-          if (row == alloc) {
-            alloc *= 2;
-            setRowCount(alloc);
-          }
-          col = 0;
-
-        } else if (ch == ',') {
-          setString(row, col, new String(c, 0, count));
-          count = 0;
-          // starting a new column, make sure we have room
-          col++;
-          ensureColumn(col);
-
-        } else {  // just a regular character, add it
-          if (count == c.length) {
-            c = PApplet.expand(c);
-          }
-          c[count++] = (char) ch;
+  /**
+   * Find the end of the last complete record in a block of characters.
+   * Returns 0 if there's no complete record. Unless the 'newlines' option is
+   * in use, records always end at a line break, otherwise line breaks that
+   * are inside quotes are skipped over.
+   */
+  static private int recordBoundary(char[] c, int length, boolean awfulCSV) {
+    if (!awfulCSV) {
+      for (int i = length - 1; i >= 0; --i) {
+        if (c[i] == '\n') {
+          return i + 1;
+        } else if (c[i] == '\r' && i != length - 1) {
+          // a \r at the very end might be followed by \n in the next block
+          return i + 1;
         }
       }
+      return 0;
     }
-    // catch any leftovers
-    if (count > 0) {
-      setString(row, col, new String(c, 0, count));
+    int boundary = 0;
+    boolean quote = false;
+    for (int i = 0; i < length; i++) {
+      char ch = c[i];
+      if (ch == '\"') {
+        quote = !quote;
+      } else if (!quote) {
+        if (ch == '\n') {
+          boundary = i + 1;
+        } else if (ch == '\r' && i != length - 1) {
+          boundary = i + 1;
+        }
+      }
     }
-    row++;  // set row to row count (the current row index + 1)
-    if (alloc != row) {
-      setRowCount(row);  // shrink to the actual size
+    return boundary;
+  }
+
+
+  /** Parses one block of a file into its own table. */
+  @SuppressWarnings("serial")
+  static class ParseChunk extends RecursiveTask<Table> {
+    Table parent;
+    char[] data;
+    int length;
+    boolean tsv;
+    boolean awfulCSV;
+
+    ParseChunk(Table parent, char[] data, int length,
+               boolean tsv, boolean awfulCSV) {
+      this.parent = parent;
+      this.data = data;
+      this.length = length;
+      this.tsv = tsv;
+      this.awfulCSV = awfulCSV;
+    }
+
+    @Override
+    protected Table compute() {
+      Table chunk = new Table();
+      chunk.setColumnTypes(parent.columnTypes);
+      chunk.copyMissing(parent);
+      // compacted columns may go back to Strings separately in each chunk
+      chunk.dictionaryLimit = parent.dictionaryLimit;
+      for (int col = 0; col < parent.columns.length; col++) {
+        if (parent.columnTypes[col] == CATEGORY) {
+          chunk.columnCategories[col] =
+            new HashMapBlows(parent.columnCategories[col].limit);
+        }
+      }
+      try {
+        BufferedReader reader =
+          new BufferedReader(new CharArrayReader(data, 0, length));
+        chunk.parseBasic(reader, false, tsv, awfulCSV);
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+      data = null;  // let go of the text once it's been parsed
+      return chunk;
     }
   }
 
 
   /**
-   * Parse a line of text as comma-separated values, returning each value as
-   * one entry in an array of String objects. Remove quotes from entries that
-   * begin and end with them, and convert 'escaped' quotes to actual quotes.
-   * @param line line of text to be parsed
-   * @return an array of the individual values formerly separated by commas
+   * Append the rows from a series of tables that share this table's column
+   * types. CATEGORY values are re-indexed into this table's categories.
    */
-  static protected String[] splitLineCSV(String line) {
-    char[] c = line.toCharArray();
-    int rough = 1;  // at least one
-    boolean quote = false;
-    for (int i = 0; i < c.length; i++) {
-      if (!quote && (c[i] == ',')) {
-        rough++;
-      } else if (c[i] == '\"') {
-        quote = !quote;
+  protected void appendChunks(final List<Table> chunks) {
+    final int start = rowCount;
+    invalidateIndexes();
+    int total = start;
+    int columnCount = columns.length;
+    for (Table chunk : chunks) {
+      total += chunk.getRowCount();
+      columnCount = Math.max(columnCount, chunk.getColumnCount());
+    }
+    ensureColumn(columnCount - 1);
+    for (int col = 0; col < columnCount; col++) {
+      if (isCompacted(col)) {
+        for (Table chunk : chunks) {
+          if (col < chunk.getColumnCount() && chunk.columnTypes[col] == STRING) {
+            uncompact(col);
+            break;
+          }
+        }
       }
     }
-    String[] pieces = new String[rough];
-    int pieceCount = 0;
-    int offset = 0;
-    while (offset < c.length) {
-      int start = offset;
-      int stop = nextComma(c, offset);
-      offset = stop + 1;  // next time around, need to step over the comment
-      if (c[start] == '\"' && c[stop-1] == '\"') {
-        start++;
-        stop--;
-      }
-      int i = start;
-      int ii = start;
-      while (i < stop) {
-        if (c[i] == '\"') {
-          i++;  // skip over pairs of double quotes become one
-        }
-        if (i != ii) {
-          c[ii] = c[i];
+    setRowCount(total);
+
+    List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+    for (int i = 0; i < columnCount; i++) {
+      final int col = i;
+      tasks.add(new RecursiveAction() {
+        @Override
+        protected void compute() {
+          int offset = start;
+          for (Table chunk : chunks) {
+            int count = chunk.getRowCount();
+            if (col < chunk.getColumnCount()) {
+              if (columnTypes[col] != chunk.columnTypes[col]) {
+                // a compacted chunk going into a column that's back to Strings
+                String[] target = (String[]) columns[col];
+                for (int row = 0; row < count; row++) {
+                  target[offset + row] = chunk.getString(row, col);
+                }
+              } else if (columnTypes[col] == CATEGORY) {
+                int[] source = (int[]) chunk.columns[col];
+                HashMapBlows chunkCategories = chunk.columnCategories[col];
+                int[] remap = new int[chunkCategories.size()];
+                for (int j = 0; j < remap.length; j++) {
+                  remap[j] = columnCategories[col].index(chunkCategories.key(j));
+                }
+                for (int row = 0; row < count; row++) {
+                  int index = source[row];
+                  putInt(col, offset + row,
+                         (index == missingCategory) ? missingCategory : remap[index]);
+                }
+              } else if (columns[col] instanceof BufferColumn) {
+                ((BufferColumn) columns[col]).put(offset, chunk.columns[col], count);
+              } else {
+                System.arraycopy(chunk.columns[col], 0, columns[col], offset, count);
+              }
+            }
+            offset += count;
+          }
         }
-        i++;
-        ii++;
+      });
+    }
+    runTasks(tasks);
+    for (int col = 0; col < columnCount; col++) {
+      if (isCompacted(col) &&
+          columnCategories[col].size() > columnCategories[col].limit + 1) {
+        uncompact(col);
       }
-      String s = new String(c, start, ii - start);
-      pieces[pieceCount++] = s;
     }
-    // make any remaining entries blanks instead of nulls
-    for (int i = pieceCount; i < pieces.length; i++) {
-      pieces[i] = "";
+  }
+
 
+  /** Run a set of tasks on the shared pool, and wait for all to finish. */
+  static void runTasks(List<? extends ForkJoinTask<?>> tasks) {
+    ForkJoinPool pool = getPool();
+    for (ForkJoinTask<?> task : tasks) {
+      pool.execute(task);
+    }
+    for (ForkJoinTask<?> task : tasks) {
+      task.join();
     }
-    return pieces;
   }
 
 
-  static protected int nextComma(char[] c, int index) {
-    boolean quote = false;
-    for (int i = index; i < c.length; i++) {
-      if (!quote && (c[i] == ',')) {
-        return i;
-      } else if (c[i] == '\"') {
-        quote = !quote;
-      }
+  static synchronized ForkJoinPool getPool() {
+    if (pool == null) {
+      pool = new ForkJoinPool();
     }
-    return c.length;
+    return pool;
+  }
+
+
+  /** Use the same values for missing data as another table. */
+  protected void copyMissing(Table source) {
+    missingString = source.missingString;
+    missingInt = source.missingInt;
+    missingLong = source.missingLong;
+    missingFloat = source.missingFloat;
+    missingDouble = source.missingDouble;
+    missingCategory = source.missingCategory;
   }
 
 
   /**
-   * Read a .ods (OpenDoc spreadsheet) zip file from an InputStream, and
-   * return the InputStream for content.xml contained inside.
+   * Read the first few records to guess the type of each column, then add
+   * those records to the table using the new types. Columns that already
+   * have a type (i.e. from a dictionary) are left alone.
    */
-  private InputStream odsFindContentXML(InputStream input) {
-    ZipInputStream zis = new ZipInputStream(input);
-    ZipEntry entry = null;
-    try {
-      while ((entry = zis.getNextEntry()) != null) {
-        if (entry.getName().equals("content.xml")) {
-          return zis;
-        }
+  protected void parseInfer(BufferedReader reader, boolean header, boolean tsv,
+                            boolean awfulCSV, int sampleCount) throws IOException {
+    if (header) {
+      String line = readRecord(reader, awfulCSV);
+      if (line != null) {
+        setColumnTitles(splitLine(line, tsv));
       }
-    } catch (IOException e) {
-      e.printStackTrace();
     }
-    return null;
-  }
-
+    List<String> sample = new ArrayList<String>();
+    String line = null;
+    while (sample.size() < sampleCount &&
+           (line = readRecord(reader, awfulCSV)) != null) {
+      sample.add(line);
+    }
+    inferColumnTypes(sample, tsv);
 
-  protected void odsParse(InputStream input, String worksheet, boolean header) {
-    try {
-      InputStream contentStream = odsFindContentXML(input);
-      XML xml = new XML(contentStream);
-
-      // table files will have multiple sheets..
-      // <table:table table:name="Sheet1" table:style-name="ta1" table:print="false">
-      // <table:table table:name="Sheet2" table:style-name="ta1" table:print="false">
-      // <table:table table:name="Sheet3" table:style-name="ta1" table:print="false">
-      XML[] sheets =
-        xml.getChildren("office:body/office:spreadsheet/table:table");
-
-      boolean found = false;
-      for (XML sheet : sheets) {
-//        System.out.println(sheet.getAttribute("table:name"));
-        if (worksheet == null || worksheet.equals(sheet.getString("table:name"))) {
-          odsParseSheet(sheet, header);
-          found = true;
-          if (worksheet == null) {
-            break;  // only read the first sheet
-          }
-        }
-      }
-      if (!found) {
-        if (worksheet == null) {
-          throw new RuntimeException("No worksheets found in the ODS file.");
-        } else {
-          throw new RuntimeException("No worksheet named " + worksheet +
-                                     " found in the ODS file.");
-        }
-      }
-    } catch (UnsupportedEncodingException e) {
-      e.printStackTrace();
-    } catch (IOException e) {
-      e.printStackTrace();
-    } catch (ParserConfigurationException e) {
-      e.printStackTrace();
-    } catch (SAXException e) {
-      e.printStackTrace();
+    int row = rowCount;
+    setRowCount(row + sample.size());
+    for (String record : sample) {
+      parseLine(row++, record, tsv);
     }
   }
 
 
   /**
-   * Parses a single sheet of XML from this file.
-   * @param The XML object for a single worksheet from the ODS file
+   * Set the type of each String column to the narrowest type that can hold
+   * all of its entries in the sample: int, then long, float, double, and
+   * if none of those work, it's left as a String.
    */
-  private void odsParseSheet(XML sheet, boolean header) {
-    // Extra <p> or <a> tags inside the text tag for the cell will be stripped.
-    // Different from showing formulas, and not quite the same as 'save as
-    // displayed' option when saving from inside OpenOffice. Only time we
-    // wouldn't want this would be so that we could parse hyperlinks and
-    // styling information intact, but that's out of scope for the p5 version.
-    final boolean ignoreTags = true;
-
-    XML[] rows = sheet.getChildren("table:table-row");
-    //xml.getChildren("office:body/office:spreadsheet/table:table/table:table-row");
-
-    int rowIndex = 0;
-    for (XML row : rows) {
-      int rowRepeat = row.getInt("table:number-rows-repeated", 1);
-//      if (rowRepeat != 1) {
-//          System.out.println(rowRepeat + " " + rowCount + " " + (rowCount + rowRepeat));
-//      }
-      boolean rowNotNull = false;
-      XML[] cells = row.getChildren();
-      int columnIndex = 0;
-
-      for (XML cell : cells) {
-        int cellRepeat = cell.getInt("table:number-columns-repeated", 1);
-
-//        <table:table-cell table:formula="of:=SUM([.E7:.E8])" office:value-type="float" office:value="4150">
-//        <text:p>4150.00</text:p>
-//        </table:table-cell>
-
-        String cellData = ignoreTags ? cell.getString("office:value") : null;
-
-        // if there's an office:value in the cell, just roll with that
-        if (cellData == null) {
-          int cellKids = cell.getChildCount();
-          if (cellKids != 0) {
-            XML[] paragraphElements = cell.getChildren("text:p");
-            if (paragraphElements.length != 1) {
-              for (XML el : paragraphElements) {
-                System.err.println(el.toString());
-              }
-              throw new RuntimeException("found more than one text:p element");
-            }
-            XML textp = paragraphElements[0];
-            String textpContent = textp.getContent();
-            // if there are sub-elements, the content shows up as a child element
-            // (for which getName() returns null.. which seems wrong)
-            if (textpContent != null) {
-              cellData = textpContent;  // nothing fancy, the text is in the text:p element
-            } else {
-              XML[] textpKids = textp.getChildren();
-              StringBuilder cellBuffer = new StringBuilder();
-              for (XML kid : textpKids) {
-                String kidName = kid.getName();
-                if (kidName == null) {
-                  odsAppendNotNull(kid, cellBuffer);
-
-                } else if (kidName.equals("text:s")) {
-                  int spaceCount = kid.getInt("text:c", 1);
-                  for (int space = 0; space < spaceCount; space++) {
-                    cellBuffer.append(' ');
-                  }
-                } else if (kidName.equals("text:span")) {
-                  odsAppendNotNull(kid, cellBuffer);
-
-                } else if (kidName.equals("text:a")) {
-                  // <text:a xlink:href="http://blah.com/">blah.com</text:a>
-                  if (ignoreTags) {
-                    cellBuffer.append(kid.getString("xlink:href"));
-                  } else {
-                    odsAppendNotNull(kid, cellBuffer);
-                  }
-
-                } else {
-                  odsAppendNotNull(kid, cellBuffer);
-                  System.err.println(getClass().getName() + ": don't understand: " + kid);
-                  //throw new RuntimeException("I'm not used to this.");
-                }
-              }
-              cellData = cellBuffer.toString();
-            }
-            //setString(rowIndex, columnIndex, c); //text[0].getContent());
-            //columnIndex++;
-          }
+  protected void inferColumnTypes(List<String> records, boolean tsv) {
+    int[] inferred = new int[columns.length];
+    boolean[] longs = new boolean[columns.length];
+    boolean[] seen = new boolean[columns.length];
+
+    for (String record : records) {
+      String[] pieces = splitLine(record, tsv);
+      if (pieces.length > inferred.length) {
+        inferred = PApplet.expand(inferred, pieces.length);
+        longs = PApplet.expand(longs, pieces.length);
+        seen = PApplet.expand(seen, pieces.length);
+      }
+      for (int col = 0; col < pieces.length; col++) {
+        String piece = pieces[col];
+        if (piece.length() == 0 || piece.equals(missingString)) {
+          continue;  // missing entries don't say anything about the type
         }
-        for (int r = 0; r < cellRepeat; r++) {
-          if (cellData != null) {
-            //System.out.println("setting " + rowIndex + "," + columnIndex + " to " + cellData);
-            setString(rowIndex, columnIndex, cellData);
-          }
-          columnIndex++;
-          if (cellData != null) {
-//            if (columnIndex > columnMax) {
-//              columnMax = columnIndex;
-//            }
-            rowNotNull = true;
-          }
+        int type = inferType(piece);
+        if (!seen[col] || inferRank(type) > inferRank(inferred[col])) {
+          inferred[col] = type;
+        }
+        if (type == LONG) {
+          longs[col] = true;
         }
+        seen[col] = true;
       }
-      if (header) {
-        removeTitleRow();  // efficient enough on the first row
-        header = false;  // avoid infinite loop
+    }
 
-      } else {
-        if (rowNotNull && rowRepeat > 1) {
-          String[] rowStrings = getStringRow(rowIndex);
-          for (int r = 1; r < rowRepeat; r++) {
-            addRow(rowStrings);
-          }
+    ensureColumn(inferred.length - 1);
+    for (int col = 0; col < inferred.length; col++) {
+      if (seen[col] && columnTypes[col] == STRING) {
+        int type = inferred[col];
+        if (type == FLOAT && longs[col]) {
+          type = DOUBLE;  // float would lose too much of the long values
+        }
+        if (type != STRING) {
+          setColumnType(col, type);
         }
-        rowIndex += rowRepeat;
       }
     }
   }
 
 
-  private void odsAppendNotNull(XML kid, StringBuilder buffer) {
-    String content = kid.getContent();
-    if (content != null) {
-      buffer.append(content);
-    }
+  /** Order for widening inferred types, with STRING as the widest. */
+  static protected int inferRank(int type) {
+    return (type == STRING) ? DOUBLE + 1 : type;
   }
 
 
-  // A 'Class' object is used here, so the syntax for this function is:
-  // Table t = loadTable("cars3.tsv", "header");
-  // Record[] records = (Record[]) t.parse(Record.class);
-  // While t.parse("Record") might be nicer, the class is likely to be an
-  // inner class (another tab in a PDE sketch) or even inside a package,
-  // so additional information would be needed to locate it. The name of the
-  // inner class would be "SketchName$Record" which isn't acceptable syntax
-  // to make people use. Better to just introduce the '.class' syntax.
-
-  // Unlike the Table class itself, this accepts char and boolean fields in
-  // the target class, since they're much more prevalent, and don't require
-  // a zillion extra methods and special cases in the rest of the class here.
-
-  // since this is likely an inner class, needs a reference to its parent,
-  // because that's passed to the constructor parameter (inserted by the
-  // compiler) of an inner class by the runtime.
-
-  /** incomplete, do not use */
-  public void parseInto(Object enclosingObject, String fieldName) {
-    Class<?> target = null;
-    Object outgoing = null;
-    Field targetField = null;
-    try {
-      // Object targetObject,
-      // Class target -> get this from the type of fieldName
-//      Class sketchClass = sketch.getClass();
-      Class<?> sketchClass = enclosingObject.getClass();
-      targetField = sketchClass.getDeclaredField(fieldName);
-//      PApplet.println("found " + targetField);
-      Class<?> targetArray = targetField.getType();
-      if (!targetArray.isArray()) {
-        // fieldName is not an array
-      } else {
-        target = targetArray.getComponentType();
-        outgoing = Array.newInstance(target, getRowCount());
-      }
-    } catch (NoSuchFieldException e) {
-      e.printStackTrace();
-    } catch (SecurityException e) {
-      e.printStackTrace();
-    }
-
-//    Object enclosingObject = sketch;
-//    PApplet.println("enclosing obj is " + enclosingObject);
-    Class<?> enclosingClass = target.getEnclosingClass();
-    Constructor<?> con = null;
-
-    try {
-      if (enclosingClass == null) {
-        con = target.getDeclaredConstructor();  //new Class[] { });
-//        PApplet.println("no enclosing class");
-      } else {
-        con = target.getDeclaredConstructor(new Class[] { enclosingClass });
-//        PApplet.println("enclosed by " + enclosingClass.getName());
-      }
-      if (!con.isAccessible()) {
-//        System.out.println("setting constructor to public");
-        con.setAccessible(true);
+  /**
+   * Figure out the narrowest column type for a single entry. The ordering
+   * of the result (INT &lt; LONG &lt; FLOAT &lt; DOUBLE &lt; STRING, see
+   * inferRank()) is used to widen a column as more entries are seen.
+   */
+  static protected int inferType(String piece) {
+    int length = piece.length();
+    int start = (piece.charAt(0) == '-' || piece.charAt(0) == '+') ? 1 : 0;
+    boolean integer = start < length;
+    for (int i = start; i < length; i++) {
+      char c = piece.charAt(i);
+      if (c < '0' || c > '9') {
+        integer = false;
+        break;
       }
-    } catch (SecurityException e) {
-      e.printStackTrace();
-    } catch (NoSuchMethodException e) {
-      e.printStackTrace();
     }
-
-    Field[] fields = target.getDeclaredFields();
-    ArrayList<Field> inuse = new ArrayList<Field>();
-    for (Field field : fields) {
-      String name = field.getName();
-      if (getColumnIndex(name, false) != -1) {
-//        System.out.println("found field " + name);
-        if (!field.isAccessible()) {
-//          PApplet.println("  changing field access");
-          field.setAccessible(true);
-        }
-        inuse.add(field);
-      } else {
-//        System.out.println("skipping field " + name);
+    if (integer) {
+      if (length - start < 10) {
+        return INT;
       }
+      try {
+        Integer.parseInt(piece);
+        return INT;
+      } catch (NumberFormatException e) { }
+      try {
+        Long.parseLong(piece);
+        return LONG;
+      } catch (NumberFormatException e) { }
+      return DOUBLE;
     }
-
-    int index = 0;
     try {
-      for (TableRow row : rows()) {
-        Object item = null;
-        if (enclosingClass == null) {
-          //item = target.newInstance();
-          item = con.newInstance();
+      Double.parseDouble(piece);
+    } catch (NumberFormatException e) {
+      return STRING;
+    }
+    // count significant digits to see whether a float is enough
+    int digits = 0;
+    int zeros = 0;  // trailing zeros (which might not be significant)
+    boolean leading = true;
+    for (int i = 0; i < length; i++) {
+      char c = piece.charAt(i);
+      if (c == 'e' || c == 'E') {
+        break;
+      } else if (c >= '0' && c <= '9') {
+        if (c == '0') {
+          if (!leading) {
+            zeros++;
+          }
         } else {
-          item = con.newInstance(new Object[] { enclosingObject });
+          leading = false;
+          digits += zeros + 1;
+          zeros = 0;
         }
-        //Object item = defaultCons.newInstance(new Object[] { });
-        for (Field field : inuse) {
-          String name = field.getName();
-          //PApplet.println("gonna set field " + name);
+      }
+    }
+    return (digits > 7) ? DOUBLE : FLOAT;
+  }
 
-          if (field.getType() == String.class) {
-            field.set(item, row.getString(name));
 
-          } else if (field.getType() == Integer.TYPE) {
-            field.setInt(item, row.getInt(name));
+  static protected String readRecord(BufferedReader reader,
+                                     boolean awfulCSV) throws IOException {
+    return awfulCSV ? readRecordCSV(reader) : reader.readLine();
+  }
 
-          } else if (field.getType() == Long.TYPE) {
-            field.setLong(item, row.getLong(name));
 
-          } else if (field.getType() == Float.TYPE) {
-            field.setFloat(item, row.getFloat(name));
+  static protected String[] splitLine(String line, boolean tsv) {
+    return tsv ? PApplet.split(line, '\t') : splitLineCSV(line);
+  }
 
-          } else if (field.getType() == Double.TYPE) {
-            field.setDouble(item, row.getDouble(name));
 
-          } else if (field.getType() == Boolean.TYPE) {
-            String content = row.getString(name);
-            if (content != null) {
-              // Only bother setting if it's true,
-              // otherwise false by default anyway.
-              if (content.toLowerCase().equals("true") ||
-                  content.equals("1")) {
-                field.setBoolean(item, true);
-              }
-            }
-//            if (content == null) {
-//              field.setBoolean(item, false);  // necessary?
-//            } else if (content.toLowerCase().equals("true")) {
-//              field.setBoolean(item, true);
-//            } else if (content.equals("1")) {
-//              field.setBoolean(item, true);
-//            } else {
-//              field.setBoolean(item, false);  // necessary?
-//            }
-          } else if (field.getType() == Character.TYPE) {
-            String content = row.getString(name);
-            if (content != null && content.length() > 0) {
-              // Otherwise set to \0 anyway
-              field.setChar(item, content.charAt(0));
-            }
-          }
+  /**
+   * Parse a line of CSV or TSV directly into the typed columns of a row,
+   * without creating String objects for numeric entries. Entries are split
+   * the same way as splitLineCSV() or PApplet.split() with a tab.
+   * @return the number of entries found on the line
+   */
+  protected int parseLine(int row, String line, boolean tsv) {
+    int length = line.length();
+    if (lineBuffer == null || lineBuffer.length < length) {
+      lineBuffer = new char[Math.max(length, 128)];
+    }
+    char[] c = lineBuffer;
+    line.getChars(0, length, c, 0);
+
+    if (tsv) {
+      int count = 1;
+      for (int i = 0; i < length; i++) {
+        if (c[i] == '\t') {
+          count++;
         }
-//        list.add(item);
-        Array.set(outgoing, index++, item);
       }
-      if (!targetField.isAccessible()) {
-//        PApplet.println("setting target field to public");
-        targetField.setAccessible(true);
+      ensureBounds(row, count - 1);
+      int col = 0;
+      int start = 0;
+      for (int i = 0; i < length; i++) {
+        if (c[i] == '\t') {
+          setRowCol(row, col++, c, start, i);
+          start = i + 1;
+        }
       }
-      // Set the array in the sketch
-//      targetField.set(sketch, outgoing);
-      targetField.set(enclosingObject, outgoing);
-
-    } catch (InstantiationException e) {
-      e.printStackTrace();
-    } catch (IllegalAccessException e) {
-      e.printStackTrace();
-    } catch (IllegalArgumentException e) {
-      e.printStackTrace();
-    } catch (InvocationTargetException e) {
-      e.printStackTrace();
+      setRowCol(row, col, c, start, length);
+      return count;
     }
-  }
-
 
-  public boolean save(File file, String options) throws IOException {
-    return save(PApplet.createOutput(file),
-                Table.extensionOptions(false, file.getName(), options));
-  }
-
-
-  public boolean save(OutputStream output, String options) {
-    PrintWriter writer = PApplet.createWriter(output);
-    String extension = null;
-    if (options == null) {
-      throw new IllegalArgumentException("No extension specified for saving this Table");
-    }
-
-    String[] opts = PApplet.trim(PApplet.split(options, ','));
-    // Only option for save is the extension, so we can safely grab the last
-    extension = opts[opts.length - 1];
-    boolean found = false;
-    for (String ext : saveExtensions) {
-      if (extension.equals(ext)) {
-        found = true;
-        break;
+    int count = 1;  // at least one
+    boolean quote = false;
+    for (int i = 0; i < length; i++) {
+      if (!quote && (c[i] == ',')) {
+        count++;
+      } else if (c[i] == '\"') {
+        quote = !quote;
       }
     }
-    // Not providing a fallback; let's make users specify an extension
-    if (!found) {
-      throw new IllegalArgumentException("'" + extension + "' not available for Table");
-    }
-
-    if (extension.equals("csv")) {
-      writeCSV(writer);
-    } else if (extension.equals("tsv")) {
-      writeTSV(writer);
-    } else if (extension.equals("ods")) {
-      try {
-        saveODS(output);
-      } catch (IOException e) {
-        e.printStackTrace();
-        return false;
-      }
-    } else if (extension.equals("html")) {
-      writeHTML(writer);
-    } else if (extension.equals("bin")) {
-      try {
-        saveBinary(output);
-      } catch (IOException e) {
-        e.printStackTrace();
-        return false;
+    ensureBounds(row, count - 1);
+    int col = 0;
+    int offset = 0;
+    while (offset < length) {
+      int start = offset;
+      int stop = nextComma(c, offset, length);
+      offset = stop + 1;  // next time around, need to step over the comma
+      if (c[start] == '\"' && c[stop-1] == '\"') {
+        start++;
+        stop--;
       }
-    }
-    writer.flush();
-    writer.close();
-    return true;
-  }
-
-
-  protected void writeTSV(PrintWriter writer) {
-    if (columnTitles != null) {
-      for (int col = 0; col < columns.length; col++) {
-        if (col != 0) {
-          writer.print('\t');
+      int i = start;
+      int ii = start;
+      while (i < stop) {
+        if (c[i] == '\"') {
+          i++;  // skip over pairs of double quotes become one
+          if (i == length) {
+            break;  // stray quote at the end of the line
+          }
         }
-        if (columnTitles[col] != null) {
-          writer.print(columnTitles[col]);
+        if (i != ii) {
+          c[ii] = c[i];
         }
+        i++;
+        ii++;
       }
-      writer.println();
+      setRowCol(row, col++, c, start, Math.max(ii, start));
     }
-    for (int row = 0; row < rowCount; row++) {
-      for (int col = 0; col < getColumnCount(); col++) {
-        if (col != 0) {
-          writer.print('\t');
-        }
-        String entry = getString(row, col);
-        // just write null entries as blanks, rather than spewing 'null'
-        // all over the spreadsheet file.
-        if (entry != null) {
-          writer.print(entry);
-        }
-      }
-      writer.println();
+    // remaining entries are blank, same as splitLineCSV()
+    while (col < count) {
+      setRowCol(row, col++, c, 0, 0);
     }
-    writer.flush();
+    return count;
   }
 
 
-  protected void writeCSV(PrintWriter writer) {
-    if (columnTitles != null) {
-      for (int col = 0; col < columns.length; col++) {
-        if (col != 0) {
-          writer.print(',');
-        }
-        if (columnTitles[col] != null) {
-          writeEntryCSV(writer, columnTitles[col]);
-        }
-      }
-      writer.println();
+  /**
+   * Same as setRowCol(int, int, Object) but parses numbers straight from a
+   * range of characters, only creating a String when it's needed.
+   */
+  protected void setRowCol(int row, int col, char[] c, int start, int stop) {
+    ensureSettable(col);
+    switch (columnTypes[col]) {
+      case STRING:
+        String[] stringData = (String[]) columns[col];
+        stringData[row] = new String(c, start, stop - start);
+        break;
+      case INT:
+        putInt(col, row, parseInt(c, start, stop, missingInt));
+        break;
+      case LONG:
+        putLong(col, row, parseLong(c, start, stop, missingLong));
+        break;
+      case FLOAT:
+        putFloat(col, row, parseFloat(c, start, stop, missingFloat));
+        break;
+      case DOUBLE:
+        putDouble(col, row, parseDouble(c, start, stop, missingDouble));
+        break;
+      default:
+        setRowCol(row, col, new String(c, start, stop - start));
     }
-    for (int row = 0; row < rowCount; row++) {
-      for (int col = 0; col < getColumnCount(); col++) {
-        if (col != 0) {
-          writer.print(',');
-        }
-        String entry = getString(row, col);
-        // just write null entries as blanks, rather than spewing 'null'
-        // all over the spreadsheet file.
-        if (entry != null) {
-          writeEntryCSV(writer, entry);
-        }
-      }
-      // Prints the newline for the row, even if it's missing
-      writer.println();
+    if (indexes != null || stats != null) {
+      updateIndex(row, col);
     }
-    writer.flush();
   }
 
 
-  protected void writeEntryCSV(PrintWriter writer, String entry) {
-    if (entry != null) {
-      if (entry.indexOf('\"') != -1) {  // convert quotes to double quotes
-        char[] c = entry.toCharArray();
-        writer.print('\"');
-        for (int i = 0; i < c.length; i++) {
-          if (c[i] == '\"') {
-            writer.print("\"\"");
-          } else {
-            writer.print(c[i]);
-          }
-        }
-        writer.print('\"');
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
 
-        // add quotes if commas or CR/LF are in the entry
-      } else if (entry.indexOf(',') != -1  ||
-                 entry.indexOf('\n') != -1 ||
-                 entry.indexOf('\r') != -1) {
-        writer.print('\"');
-        writer.print(entry);
-        writer.print('\"');
 
+  // Parsing numbers from a char array. Common cases are handled directly,
+  // and anything unusual (overflow, exponents out of range, hex, NaN and
+  // friends, non-ASCII digits) falls back to the same String-based parsing
+  // used by setRowCol(), so the results are identical.
 
-        // add quotes if leading or trailing space
-      } else if ((entry.length() > 0) &&
-                 (entry.charAt(0) == ' ' ||
-                  entry.charAt(entry.length() - 1) == ' ')) {
-        writer.print('\"');
-        writer.print(entry);
-        writer.print('\"');
 
-      } else {
-        writer.print(entry);
+  /** Same as PApplet.parseInt(String, int) */
+  static protected int parseInt(char[] c, int start, int stop, int missing) {
+    int end = start;
+    while (end < stop && c[end] != '.') {
+      end++;
+    }
+    int i = start;
+    boolean negative = false;
+    if (i < end && (c[i] == '-' || c[i] == '+')) {
+      negative = c[i] == '-';
+      i++;
+    }
+    if (i == end || end - i > 9) {
+      return PApplet.parseInt(new String(c, start, stop - start), missing);
+    }
+    int value = 0;
+    for (; i < end; i++) {
+      int digit = c[i] - '0';
+      if (digit < 0 || digit > 9) {
+        return PApplet.parseInt(new String(c, start, stop - start), missing);
       }
+      value = value*10 + digit;
     }
+    return negative ? -value : value;
   }
 
 
-  protected void writeHTML(PrintWriter writer) {
-    writer.println("<html>");
-
-    writer.println("<head>");
-    writer.println("  <meta http-equiv=\"content-type\" content=\"text/html;charset=utf-8\" />");
-    writer.println("</head>");
-
-    writer.println("<body>");
-    writer.println("  <table>");
-    for (int row = 0; row < getRowCount(); row++) {
-      writer.println("    <tr>");
-      for (int col = 0; col < getColumnCount(); col++) {
-        String entry = getString(row, col);
-        writer.print("      <td>");
-        writeEntryHTML(writer, entry);
-        writer.println("      </td>");
+  /** Same as Long.parseLong(), but returns 'missing' if it's not a number. */
+  static protected long parseLong(char[] c, int start, int stop, long missing) {
+    int i = start;
+    boolean negative = false;
+    if (i < stop && (c[i] == '-' || c[i] == '+')) {
+      negative = c[i] == '-';
+      i++;
+    }
+    if (i == stop || stop - i > 18) {
+      return parseLongString(new String(c, start, stop - start), missing);
+    }
+    long value = 0;
+    for (; i < stop; i++) {
+      int digit = c[i] - '0';
+      if (digit < 0 || digit > 9) {
+        return parseLongString(new String(c, start, stop - start), missing);
       }
-      writer.println("    </tr>");
+      value = value*10 + digit;
     }
-    writer.println("  </table>");
-    writer.println("</body>");
+    return negative ? -value : value;
+  }
 
-    writer.println("</html>");
-    writer.flush();
+
+  static private long parseLongString(String str, long missing) {
+    try {
+      return Long.parseLong(str);
+    } catch (NumberFormatException nfe) {
+      return missing;
+    }
   }
 
 
-  protected void writeEntryHTML(PrintWriter writer, String entry) {
-    //char[] chars = entry.toCharArray();
-    for (char c : entry.toCharArray()) {  //chars) {
-      if (c == '<') {
-        writer.print("&lt;");
-      } else if (c == '>') {
-        writer.print("&gt;");
-      } else if (c == '&') {
-        writer.print("&amp;");
-      } else if (c == '\'') {
-        writer.print("&apos;");
-      } else if (c == '"') {
-        writer.print("&quot;");
+  static private final double[] DOUBLE_POW10 = {
+    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+    1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
 
-      // not necessary with UTF-8?
-//      } else if (c < 32 || c > 127) {
-//        writer.print("&#");
-//        writer.print((int) c);
-//        writer.print(';');
+  static private final float[] FLOAT_POW10 = {
+    1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f
+  };
 
-      } else {
-        writer.print(c);
+
+  /**
+   * Scan a plain decimal number (optional sign, digits, optional fraction
+   * and exponent). Returns false if it's not in that form, or has more than
+   * maxDigits significant digits, or an exponent larger than maxExponent.
+   * Those are the limits where the value (mantissa times or divided by a
+   * power of ten) can be computed exactly and then correctly rounded.
+   * <p>
+   * So that nothing is allocated per entry, the result is packed into one
+   * long: the mantissa shifted left 8 bits, the power of ten plus 64 in
+   * bits 1 to 7, and bit 0 set if there was a minus sign. Returns -1 if
+   * the number isn't one that can be handled this way.
+   */
+  static private long scanDecimal(char[] c, int start, int stop,
+                                  int maxDigits, int maxExponent) {
+    int i = start;
+    boolean negative = false;
+    if (i < stop && (c[i] == '-' || c[i] == '+')) {
+      negative = c[i] == '-';
+      i++;
+    }
+    long mantissa = 0;
+    int digits = 0;
+    int exponent = 0;
+    boolean any = false;
+    while (i < stop && c[i] >= '0' && c[i] <= '9') {
+      int digit = c[i++] - '0';
+      if (mantissa != 0 || digit != 0) {
+        if (++digits > maxDigits) return -1;
+        mantissa = mantissa*10 + digit;
+      }
+      any = true;
+    }
+    if (i < stop && c[i] == '.') {
+      i++;
+      while (i < stop && c[i] >= '0' && c[i] <= '9') {
+        int digit = c[i++] - '0';
+        if (mantissa != 0 || digit != 0) {
+          if (++digits > maxDigits) return -1;
+          mantissa = mantissa*10 + digit;
+        }
+        exponent--;
+        any = true;
+      }
+    }
+    if (!any) return -1;
+    if (i < stop && (c[i] == 'e' || c[i] == 'E')) {
+      i++;
+      boolean negativeExp = false;
+      if (i < stop && (c[i] == '-' || c[i] == '+')) {
+        negativeExp = c[i] == '-';
+        i++;
       }
+      if (i == stop || stop - i > 3) return -1;
+      int value = 0;
+      for (; i < stop; i++) {
+        int digit = c[i] - '0';
+        if (digit < 0 || digit > 9) return -1;
+        value = value*10 + digit;
+      }
+      exponent += negativeExp ? -value : value;
+    }
+    if (i != stop) return -1;
+    if (mantissa == 0) {
+      exponent = 0;
     }
+    if (exponent < -maxExponent || exponent > maxExponent) return -1;
+    // at most 15 digits, so the mantissa fits in the top 56 bits
+    return (mantissa << 8) | ((exponent + 64) << 1) | (negative ? 1 : 0);
   }
 
 
-  protected void saveODS(OutputStream os) throws IOException {
-    ZipOutputStream zos = new ZipOutputStream(os);
+  /** Same as PApplet.parseFloat(String, float) */
+  static protected float parseFloat(char[] c, int start, int stop, float missing) {
+    long scanned = scanDecimal(c, start, stop, 7, 10);
+    if (scanned != -1) {
+      float value = scanned >>> 8;
+      int exponent = (int) ((scanned >>> 1) & 0x7F) - 64;
+      value = (exponent < 0) ?
+        value / FLOAT_POW10[-exponent] : value * FLOAT_POW10[exponent];
+      return ((scanned & 1) != 0) ? -value : value;
+    }
+    return PApplet.parseFloat(new String(c, start, stop - start), missing);
+  }
 
-    final String xmlHeader = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>";
 
-    ZipEntry entry = new ZipEntry("META-INF/manifest.xml");
-    String[] lines = new String[] {
-      xmlHeader,
-      "<manifest:manifest xmlns:manifest=\"urn:oasis:names:tc:opendocument:xmlns:manifest:1.0\">",
-      "  <manifest:file-entry manifest:media-type=\"application/vnd.oasis.opendocument.spreadsheet\" manifest:version=\"1.2\" manifest:full-path=\"/\"/>",
-      "  <manifest:file-entry manifest:media-type=\"text/xml\" manifest:full-path=\"content.xml\"/>",
-      "  <manifest:file-entry manifest:media-type=\"text/xml\" manifest:full-path=\"styles.xml\"/>",
-      "  <manifest:file-entry manifest:media-type=\"text/xml\" manifest:full-path=\"meta.xml\"/>",
-      "  <manifest:file-entry manifest:media-type=\"text/xml\" manifest:full-path=\"settings.xml\"/>",
-      "</manifest:manifest>"
-    };
-    zos.putNextEntry(entry);
-    zos.write(PApplet.join(lines, "\n").getBytes());
-    zos.closeEntry();
+  /** Same as Double.parseDouble(), but returns 'missing' if it's not a number. */
+  static protected double parseDouble(char[] c, int start, int stop, double missing) {
+    long scanned = scanDecimal(c, start, stop, 15, 22);
+    if (scanned != -1) {
+      double value = scanned >>> 8;
+      int exponent = (int) ((scanned >>> 1) & 0x7F) - 64;
+      value = (exponent < 0) ?
+        value / DOUBLE_POW10[-exponent] : value * DOUBLE_POW10[exponent];
+      return ((scanned & 1) != 0) ? -value : value;
+    }
+    try {
+      return Double.parseDouble(new String(c, start, stop - start));
+    } catch (NumberFormatException nfe) {
+      return missing;
+    }
+  }
 
-    /*
-    entry = new ZipEntry("meta.xml");
-    lines = new String[] {
-      xmlHeader,
-      "<office:document-meta office:version=\"1.0\"" +
-      " xmlns:office=\"urn:oasis:names:tc:opendocument:xmlns:office:1.0\" />"
-    };
-    zos.putNextEntry(entry);
-    zos.write(PApplet.join(lines, "\n").getBytes());
-    zos.closeEntry();
-
-    entry = new ZipEntry("meta.xml");
-    lines = new String[] {
-      xmlHeader,
-      "<office:document-settings office:version=\"1.0\"" +
-      " xmlns:config=\"urn:oasis:names:tc:opendocument:xmlns:config:1.0\"" +
-      " xmlns:office=\"urn:oasis:names:tc:opendocument:xmlns:office:1.0\"" +
-      " xmlns:ooo=\"http://openoffice.org/2004/office\"" +
-      " xmlns:xlink=\"http://www.w3.org/1999/xlink\" />"
-    };
-    zos.putNextEntry(entry);
-    zos.write(PApplet.join(lines, "\n").getBytes());
-    zos.closeEntry();
-
-    entry = new ZipEntry("settings.xml");
-    lines = new String[] {
-      xmlHeader,
-      "<office:document-settings office:version=\"1.0\"" +
-      " xmlns:config=\"urn:oasis:names:tc:opendocument:xmlns:config:1.0\"" +
-      " xmlns:office=\"urn:oasis:names:tc:opendocument:xmlns:office:1.0\"" +
-      " xmlns:ooo=\"http://openoffice.org/2004/office\"" +
-      " xmlns:xlink=\"http://www.w3.org/1999/xlink\" />"
-    };
-    zos.putNextEntry(entry);
-    zos.write(PApplet.join(lines, "\n").getBytes());
-    zos.closeEntry();
-
-    entry = new ZipEntry("styles.xml");
-    lines = new String[] {
-      xmlHeader,
-      "<office:document-styles office:version=\"1.0\"" +
-      " xmlns:office=\"urn:oasis:names:tc:opendocument:xmlns:office:1.0\" />"
-    };
-    zos.putNextEntry(entry);
-    zos.write(PApplet.join(lines, "\n").getBytes());
-    zos.closeEntry();
-    */
 
-    final String[] dummyFiles = new String[] {
-      "meta.xml", "settings.xml", "styles.xml"
-    };
-    lines = new String[] {
-      xmlHeader,
-      "<office:document-meta office:version=\"1.0\"" +
-      " xmlns:office=\"urn:oasis:names:tc:opendocument:xmlns:office:1.0\" />"
-    };
-    byte[] dummyBytes = PApplet.join(lines, "\n").getBytes();
-    for (String filename : dummyFiles) {
-      entry = new ZipEntry(filename);
-      zos.putNextEntry(entry);
-      zos.write(dummyBytes);
-      zos.closeEntry();
-    }
+//  public void convertTSV(BufferedReader reader, File outputFile) throws IOException {
+//    convertBasic(reader, true, outputFile);
+//  }
 
-    //
 
-    entry = new ZipEntry("mimetype");
-    zos.putNextEntry(entry);
-    zos.write("application/vnd.oasis.opendocument.spreadsheet".getBytes());
-    zos.closeEntry();
+  protected void parseAwfulCSV(BufferedReader reader,
+                               boolean header) throws IOException {
+    char[] c = new char[100];
+    int count = 0;
+    boolean insideQuote = false;
 
-    //
+    int alloc = 100;
+    setRowCount(100);
 
-    entry = new ZipEntry("content.xml");
-    zos.putNextEntry(entry);
-    //lines = new String[] {
-    writeUTF(zos, new String[] {
-      xmlHeader,
-      "<office:document-content" +
-        " xmlns:office=\"urn:oasis:names:tc:opendocument:xmlns:office:1.0\"" +
-        " xmlns:text=\"urn:oasis:names:tc:opendocument:xmlns:text:1.0\"" +
-        " xmlns:table=\"urn:oasis:names:tc:opendocument:xmlns:table:1.0\"" +
-        " office:version=\"1.2\">",
-     "  <office:body>",
-     "    <office:spreadsheet>",
-     "      <table:table table:name=\"Sheet1\" table:print=\"false\">"
-    });
-    //zos.write(PApplet.join(lines, "\n").getBytes());
+    int row = 0;
+    int col = 0;
+    int ch;
+    while ((ch = reader.read()) != -1) {
+      if (insideQuote) {
+        if (ch == '\"') {
+          // this is either the end of a quoted entry, or a quote character
+          reader.mark(1);
+          if (reader.read() == '\"') {
+            // it's "", which means a quote character
+            if (count == c.length) {
+              c = PApplet.expand(c);
+            }
+            c[count++] = '\"';
+          } else {
+            // nope, just the end of a quoted csv entry
+            reader.reset();
+            insideQuote = false;
+            // TODO nothing here that prevents bad csv data from showing up
+            // after the quote and before the comma...
+//            set(row, col, new String(c, 0, count));
+//            count = 0;
+//            col++;
+//            insideQuote = false;
+          }
+        } else {  // inside a quote, but the character isn't a quote
+          if (count == c.length) {
+            c = PApplet.expand(c);
+          }
+          c[count++] = (char) ch;
+        }
+      } else {  // not inside a quote
+        if (ch == '\"') {
+          insideQuote = true;
 
-    byte[] rowStart = "        <table:table-row>\n".getBytes();
-    byte[] rowStop = "        </table:table-row>\n".getBytes();
+        } else if (ch == '\r' || ch == '\n') {
+          if (ch == '\r') {
+            // check to see if next is a '\n'
+            reader.mark(1);
+            if (reader.read() != '\n') {
+              reader.reset();
+            }
+          }
+          setString(row, col, new String(c, 0, count));
+          count = 0;
+          row++;
+          if (row == 1 && header) {
+            // Use internal row removal (efficient because only one row).
+            removeTitleRow();
+            // Un-set the header variable so that next time around, we don't
+            // just get stuck into a loop, removing the 0th row repeatedly.
+            header = false;
+            // Reset the number of rows (removeTitleRow() won't reset our local 'row' counter)
+            row = 0;
+          }
+//          if (row % 1000 == 0) {
+//            PApplet.println(PApplet.nfc(row));
+//          }
+          if (row == alloc) {
+            alloc *= 2;
+            setRowCount(alloc);
+          }
+          col = 0;
 
-    if (hasColumnTitles()) {
-      zos.write(rowStart);
-      for (int i = 0; i < getColumnCount(); i++) {
-        saveStringODS(zos, columnTitles[i]);
-      }
-      zos.write(rowStop);
-    }
+        } else if (ch == ',') {
+          setString(row, col, new String(c, 0, count));
+          count = 0;
+          // starting a new column, make sure we have room
+          col++;
+          ensureColumn(col);
 
-    for (TableRow row : rows()) {
-      zos.write(rowStart);
-      for (int i = 0; i < getColumnCount(); i++) {
-        if (columnTypes[i] == STRING || columnTypes[i] == CATEGORY) {
-          saveStringODS(zos, row.getString(i));
-        } else {
-          saveNumberODS(zos, row.getString(i));
+        } else {  // just a regular character, add it
+          if (count == c.length) {
+            c = PApplet.expand(c);
+          }
+          c[count++] = (char) ch;
         }
       }
-      zos.write(rowStop);
     }
+    // catch any leftovers
+    if (count > 0) {
+      setString(row, col, new String(c, 0, count));
+    }
+    row++;  // set row to row count (the current row index + 1)
+    if (alloc != row) {
+      setRowCount(row);  // shrink to the actual size
+    }
+  }
 
-    //lines = new String[] {
-    writeUTF(zos, new String[] {
-      "      </table:table>",
-      "    </office:spreadsheet>",
-      "  </office:body>",
-      "</office:document-content>"
-    });
-    //zos.write(PApplet.join(lines, "\n").getBytes());
-    zos.closeEntry();
 
-    zos.flush();
-    zos.close();
+  /**
+   * Open a CSV or TSV file for reading one row at a time, rather than loading
+   * the whole thing into memory. Options are the same as for loading a Table,
+   * though "ods", "bin", and "tbl" files can't be streamed.
+   *
+   * @nowebref
+   */
+  static public RowStream stream(File file, String options) throws IOException {
+    return new RowStream(new Table(), PApplet.createInput(file),
+                         extensionOptions(true, file.getName(), options));
   }
 
 
-  void saveStringODS(OutputStream output, String text) throws IOException {
-    // At this point, I should have just used the XML library. But this does
-    // save us from having to create the entire document in memory again before
-    // writing to the file. So while it's dorky, the outcome is still useful.
-    StringBuilder sanitized = new StringBuilder();
-    if (text != null) {
-      char[] array = text.toCharArray();
-      for (char c : array) {
-        if (c == '&') {
-          sanitized.append("&amp;");
-        } else if (c == '\'') {
-          sanitized.append("&apos;");
-        } else if (c == '"') {
-          sanitized.append("&quot;");
-        } else if (c == '<') {
-          sanitized.append("&lt;");
-        } else if (c == '>') {
-          sanitized.append("&rt;");
-        } else if (c < 32 || c > 127) {
-          sanitized.append("&#" + ((int) c) + ";");
-        } else {
-          sanitized.append(c);
-        }
-      }
-    }
-
-    writeUTF(output,
-             "          <table:table-cell office:value-type=\"string\">",
-             "            <text:p>" + sanitized + "</text:p>",
-             "          </table:table-cell>");
+  /**
+   * @nowebref
+   */
+  static public RowStream stream(InputStream input, String options) throws IOException {
+    return new RowStream(new Table(), input, options);
   }
 
 
-  void saveNumberODS(OutputStream output, String text) throws IOException {
-    writeUTF(output,
-             "          <table:table-cell office:value-type=\"float\" office:value=\"" + text + "\">",
-             "            <text:p>" + text + "</text:p>",
-             "          </table:table-cell>");
+  /**
+   * Same as stream(), but uses the titles and types from this table (usually
+   * a dictionary loaded separately) for the rows being read.
+   *
+   * @nowebref
+   */
+  public RowStream typedStream(InputStream input, String options) throws IOException {
+    Table table = new Table();
+    table.setColumnTypes(this);
+    return new RowStream(table, input, options);
   }
 
 
-  static Charset utf8;
-
-  static void writeUTF(OutputStream output, String... lines) throws IOException {
-    if (utf8 == null) {
-      utf8 = Charset.forName("UTF-8");
-    }
-    for (String str : lines) {
-      output.write(str.getBytes(utf8));
-      output.write('\n');
+  /**
+   * Read a single record from a CSV file that may contain newlines inside
+   * quoted entries. Returns null when there are no more records.
+   */
+  static protected String readRecordCSV(BufferedReader reader) throws IOException {
+    String line = reader.readLine();
+    if (line == null) {
+      return null;
+    }
+    int quotes = countQuotes(line);
+    if ((quotes & 1) == 0) {
+      return line;  // the common case
+    }
+    StringBuilder record = new StringBuilder(line);
+    while ((quotes & 1) != 0) {
+      line = reader.readLine();
+      if (line == null) {
+        break;  // unbalanced quote at the end of the file
+      }
+      record.append('\n');
+      record.append(line);
+      quotes += countQuotes(line);
     }
+    return record.toString();
   }
 
 
-  protected void saveBinary(OutputStream os) throws IOException {
-    DataOutputStream output = new DataOutputStream(new BufferedOutputStream(os));
-    output.writeInt(0x9007AB1E);  // version
-    output.writeInt(getRowCount());
-    output.writeInt(getColumnCount());
-    if (columnTitles != null) {
-      output.writeBoolean(true);
-      for (String title : columnTitles) {
-        output.writeUTF(title);
+  static private int countQuotes(String line) {
+    int count = 0;
+    for (int i = 0; i < line.length(); i++) {
+      if (line.charAt(i) == '\"') {
+        count++;
       }
-    } else {
-      output.writeBoolean(false);
-    }
-    for (int i = 0; i < getColumnCount(); i++) {
-      //System.out.println(i + " is " + columnTypes[i]);
-      output.writeInt(columnTypes[i]);
     }
+    return count;
+  }
 
-    for (int i = 0; i < getColumnCount(); i++) {
-      if (columnTypes[i] == CATEGORY) {
-        columnCategories[i].write(output);
+
+  /**
+   * Parse a line of text as comma-separated values, returning each value as
+   * one entry in an array of String objects. Remove quotes from entries that
+   * begin and end with them, and convert 'escaped' quotes to actual quotes.
+   * @param line line of text to be parsed
+   * @return an array of the individual values formerly separated by commas
+   */
+  static protected String[] splitLineCSV(String line) {
+    char[] c = line.toCharArray();
+    int rough = 1;  // at least one
+    boolean quote = false;
+    for (int i = 0; i < c.length; i++) {
+      if (!quote && (c[i] == ',')) {
+        rough++;
+      } else if (c[i] == '\"') {
+        quote = !quote;
       }
     }
-    if (missingString == null) {
-      output.writeBoolean(false);
-    } else {
-      output.writeBoolean(true);
-      output.writeUTF(missingString);
-    }
-    output.writeInt(missingInt);
-    output.writeLong(missingLong);
-    output.writeFloat(missingFloat);
-    output.writeDouble(missingDouble);
-    output.writeInt(missingCategory);
-
-    for (TableRow row : rows()) {
-      for (int col = 0; col < getColumnCount(); col++) {
-        switch (columnTypes[col]) {
-        case STRING:
-          String str = row.getString(col);
-          if (str == null) {
-            output.writeBoolean(false);
-          } else {
-            output.writeBoolean(true);
-            output.writeUTF(str);
-          }
-          break;
-        case INT:
-          output.writeInt(row.getInt(col));
-          break;
-        case LONG:
-          output.writeLong(row.getLong(col));
-          break;
-        case FLOAT:
-          output.writeFloat(row.getFloat(col));
-          break;
-        case DOUBLE:
-          output.writeDouble(row.getDouble(col));
-          break;
-        case CATEGORY:
-          String peace = row.getString(col);
-          if (peace.equals(missingString)) {
-            output.writeInt(missingCategory);
-          } else {
-            output.writeInt(columnCategories[col].index(peace));
-          }
-          break;
+    String[] pieces = new String[rough];
+    int pieceCount = 0;
+    int offset = 0;
+    while (offset < c.length) {
+      int start = offset;
+      int stop = nextComma(c, offset);
+      offset = stop + 1;  // next time around, need to step over the comment
+      if (c[start] == '\"' && c[stop-1] == '\"') {
+        start++;
+        stop--;
+      }
+      int i = start;
+      int ii = start;
+      while (i < stop) {
+        if (c[i] == '\"') {
+          i++;  // skip over pairs of double quotes become one
+        }
+        if (i != ii) {
+          c[ii] = c[i];
         }
+        i++;
+        ii++;
       }
+      String s = new String(c, start, ii - start);
+      pieces[pieceCount++] = s;
     }
+    // make any remaining entries blanks instead of nulls
+    for (int i = pieceCount; i < pieces.length; i++) {
+      pieces[i] = "";
 
-    output.flush();
-    output.close();
+    }
+    return pieces;
   }
 
 
-  protected void loadBinary(InputStream is) throws IOException {
-    DataInputStream input = new DataInputStream(new BufferedInputStream(is));
-
-    int magic = input.readInt();
-    if (magic != 0x9007AB1E) {
-      throw new IOException("Not a compatible binary table (magic was " + PApplet.hex(magic) + ")");
-    }
-    int rowCount = input.readInt();
-    setRowCount(rowCount);
-    int columnCount = input.readInt();
-    setColumnCount(columnCount);
+  static protected int nextComma(char[] c, int index) {
+    return nextComma(c, index, c.length);
+  }
 
-    boolean hasTitles = input.readBoolean();
-    if (hasTitles) {
-      columnTitles = new String[getColumnCount()];
-      for (int i = 0; i < columnCount; i++) {
-        //columnTitles[i] = input.readUTF();
-        setColumnTitle(i, input.readUTF());
-      }
-    }
-    for (int column = 0; column < columnCount; column++) {
-      int newType = input.readInt();
-      columnTypes[column] = newType;
-      switch (newType) {
-      case INT:
-        columns[column] = new int[rowCount];
-        break;
-      case LONG:
-        columns[column] = new long[rowCount];;
-        break;
-      case FLOAT:
-        columns[column] = new float[rowCount];;
-        break;
-      case DOUBLE:
-        columns[column] = new double[rowCount];;
-        break;
-      case STRING:
-        columns[column] = new String[rowCount];;
-        break;
-      case CATEGORY:
-        columns[column] = new int[rowCount];;
-        break;
-      default:
-        throw new IllegalArgumentException(newType + " is not a valid column type.");
-      }
-    }
 
-    for (int i = 0; i < columnCount; i++) {
-      if (columnTypes[i] == CATEGORY) {
-        columnCategories[i] = new HashMapBlows(input);
+  static protected int nextComma(char[] c, int index, int length) {
+    boolean quote = false;
+    for (int i = index; i < length; i++) {
+      if (!quote && (c[i] == ',')) {
+        return i;
+      } else if (c[i] == '\"') {
+        quote = !quote;
       }
     }
+    return length;
+  }
 
-    if (input.readBoolean()) {
-      missingString = input.readUTF();
-    } else {
-      missingString = null;
-    }
-    missingInt = input.readInt();
-    missingLong = input.readLong();
-    missingFloat = input.readFloat();
-    missingDouble = input.readDouble();
-    missingCategory = input.readInt();
 
-    for (int row = 0; row < rowCount; row++) {
-      for (int col = 0; col < columnCount; col++) {
-        switch (columnTypes[col]) {
-        case STRING:
-          String str = null;
-          if (input.readBoolean()) {
-            str = input.readUTF();
-          }
-          setString(row, col, str);
-          break;
-        case INT:
-          setInt(row, col, input.readInt());
-          break;
-        case LONG:
-          setLong(row, col, input.readLong());
-          break;
-        case FLOAT:
-          setFloat(row, col, input.readFloat());
-          break;
-        case DOUBLE:
-          setDouble(row, col, input.readDouble());
-          break;
-        case CATEGORY:
-          int index = input.readInt();
-          //String name = columnCategories[col].key(index);
-          setInt(row, col, index);
-          break;
+  /**
+   * Read a .ods (OpenDoc spreadsheet) zip file from an InputStream, and
+   * return the InputStream for content.xml contained inside.
+   */
+  private InputStream odsFindContentXML(InputStream input) {
+    ZipInputStream zis = new ZipInputStream(input);
+    ZipEntry entry = null;
+    try {
+      while ((entry = zis.getNextEntry()) != null) {
+        if (entry.getName().equals("content.xml")) {
+          return zis;
         }
       }
+    } catch (IOException e) {
+      e.printStackTrace();
     }
-
-    input.close();
+    return null;
   }
 
 
-  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
-
+  protected void odsParse(InputStream input, String worksheet, boolean header) {
+    try {
+      InputStream contentStream = odsFindContentXML(input);
+      OdsHandler handler = new OdsHandler(this, worksheet, header);
+      try {
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.newSAXParser().parse(contentStream, handler);
+      } catch (SAXException e) {
+        if (e != OdsHandler.DONE) {
+          throw e;
+        }
+      }
+      handler.finish();
 
-  /**
-   * @webref table:method
-   * @brief Adds a new column to a table
-   * @see Table#removeColumn(String)
-   */
-  public void addColumn() {
-    addColumn(null, STRING);
+      if (!handler.found) {
+        if (worksheet == null) {
+          throw new RuntimeException("No worksheets found in the ODS file.");
+        } else {
+          throw new RuntimeException("No worksheet named " + worksheet +
+                                     " found in the ODS file.");
+        }
+      }
+    } catch (UnsupportedEncodingException e) {
+      e.printStackTrace();
+    } catch (IOException e) {
+      e.printStackTrace();
+    } catch (ParserConfigurationException e) {
+      e.printStackTrace();
+    } catch (SAXException e) {
+      e.printStackTrace();
+    }
   }
 
 
   /**
-   * @param title the title to be used for the new column
+   * Reads the rows of a worksheet from content.xml as the parser goes by,
+   * instead of loading the whole document first. Each row is collected,
+   * then stored into the table with setRowCol(), so values go straight into
+   * the column types that are already set.
+   * <p>
+   * Extra <p> or <a> tags inside the text tag for the cell will be stripped.
+   * Different from showing formulas, and not quite the same as 'save as
+   * displayed' option when saving from inside OpenOffice. Only time we
+   * wouldn't want this would be so that we could parse hyperlinks and
+   * styling information intact, but that's out of scope for the p5 version.
    */
-  public void addColumn(String title) {
-    addColumn(title, STRING);
-  }
+  static class OdsHandler extends DefaultHandler {
+    // thrown to stop parsing once the only sheet needed has been read
+    static final SAXException DONE = new SAXException("done");
 
+    Table table;
+    String worksheet;
+    boolean header;
+    boolean found;
+
+    int sheetDepth;  // nesting of table:table elements
+    boolean reading;  // inside a sheet that's being loaded
+
+    int rowIndex;
+    int rowRepeat;
+    int rowCount;  // rows actually filled in
+    List<String> cells = new ArrayList<String>();
+
+    boolean inCell;
+    int cellRepeat;
+    String cellValue;  // office:value, used instead of the text if present
+    StringBuilder text = new StringBuilder();
+    int paragraphs;
+    int paragraphDepth;
+    int ignoreDepth;  // inside annotations and links, text is skipped
+
+    OdsHandler(Table table, String worksheet, boolean header) {
+      this.table = table;
+      this.worksheet = worksheet;
+      this.header = header;
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName,
+                             Attributes attributes) throws SAXException {
+      if (qName.equals("table:table")) {
+        sheetDepth++;
+        if (sheetDepth == 1) {
+          if (found && worksheet == null) {
+            throw DONE;  // only read the first sheet
+          }
+          if (worksheet == null ||
+              worksheet.equals(attributes.getValue("table:name"))) {
+            found = true;
+            reading = true;
+          }
+        }
+      } else if (!reading || sheetDepth != 1) {
+        return;
+
+      } else if (qName.equals("table:table-row")) {
+        rowRepeat = repeat(attributes, "table:number-rows-repeated");
+        cells.clear();
+
+      } else if (qName.equals("table:table-cell") ||
+                 qName.equals("table:covered-table-cell")) {
+        inCell = true;
+        cellRepeat = repeat(attributes, "table:number-columns-repeated");
+        cellValue = attributes.getValue("office:value");
+        text.setLength(0);
+        paragraphs = 0;
+
+      } else if (inCell) {
+        if (ignoreDepth != 0 || qName.equals("office:annotation")) {
+          ignoreDepth++;
+
+        } else if (qName.equals("text:p")) {
+          if (paragraphDepth == 0 && paragraphs++ != 0) {
+            text.append('\n');
+          }
+          paragraphDepth++;
 
-  /**
-   * @param type the type to be used for the new column: INT, LONG, FLOAT, DOUBLE, STRING, or CATEGORY
-   */
-  public void addColumn(String title, int type) {
-    insertColumn(columns.length, title, type);
-  }
+        } else if (paragraphDepth != 0) {
+          if (qName.equals("text:s")) {
+            int spaceCount = repeat(attributes, "text:c");
+            for (int space = 0; space < spaceCount; space++) {
+              text.append(' ');
+            }
+          } else if (qName.equals("text:tab")) {
+            text.append('\t');
+          } else if (qName.equals("text:line-break")) {
+            text.append('\n');
+          } else if (qName.equals("text:a")) {
+            // <text:a xlink:href="http://blah.com/">blah.com</text:a>
+            text.append(attributes.getValue("xlink:href"));
+            ignoreDepth++;
+          }
+        }
+      }
+    }
 
+    @Override
+    public void characters(char[] ch, int start, int length) {
+      if (inCell && paragraphDepth != 0 && ignoreDepth == 0) {
+        text.append(ch, start, length);
+      }
+    }
 
-  public void insertColumn(int index) {
-    insertColumn(index, null, STRING);
-  }
+    @Override
+    public void endElement(String uri, String localName, String qName) {
+      if (qName.equals("table:table")) {
+        if (sheetDepth-- == 1) {
+          reading = false;
+        }
+      } else if (!reading || sheetDepth != 1) {
+        return;
 
+      } else if (qName.equals("table:table-row")) {
+        endRow();
 
-  public void insertColumn(int index, String title) {
-    insertColumn(index, title, STRING);
-  }
+      } else if (qName.equals("table:table-cell") ||
+                 qName.equals("table:covered-table-cell")) {
+        String cellData = cellValue;
+        if (cellData == null && paragraphs != 0) {
+          cellData = text.toString();
+        }
+        for (int r = 0; r < cellRepeat; r++) {
+          cells.add(cellData);
+        }
+        inCell = false;
 
+      } else if (ignoreDepth != 0) {
+        ignoreDepth--;
 
-  public void insertColumn(int index, String title, int type) {
-    if (title != null && columnTitles == null) {
-      columnTitles = new String[columns.length];
+      } else if (qName.equals("text:p")) {
+        paragraphDepth--;
+      }
     }
-    if (columnTitles != null) {
-      columnTitles = PApplet.splice(columnTitles, title, index);
-      columnIndices = null;
+
+    void endRow() {
+      // empty cells at the end don't add columns
+      int count = cells.size();
+      while (count > 0 && cells.get(count - 1) == null) {
+        count--;
+      }
+      if (header) {
+        table.setColumnTitles(cells.subList(0, count).toArray(new String[0]));
+        header = false;
+        return;
+      }
+      if (count != 0) {
+        table.ensureColumn(count - 1);
+        int stop = rowIndex + rowRepeat;
+        if (stop > table.rowCount) {
+          // grow in larger steps, trimmed to size in finish()
+          table.setRowCount(Math.max(stop, table.rowCount << 1));
+        }
+        for (int row = rowIndex; row < stop; row++) {
+          for (int col = 0; col < count; col++) {
+            table.setRowCol(row, col, cells.get(col));
+          }
+        }
+        rowCount = stop;
+      }
+      rowIndex += rowRepeat;
     }
-    columnTypes = PApplet.splice(columnTypes, type, index);
 
-//    columnCategories = (HashMapBlows[])
-//      PApplet.splice(columnCategories, new HashMapBlows(), index);
-    HashMapBlows[] catTemp = new HashMapBlows[columns.length + 1];
-    // Faster than arrayCopy for a dozen or so entries
-    for (int i = 0; i < index; i++) {
-      catTemp[i] = columnCategories[i];
-    }
-    catTemp[index] = new HashMapBlows();
-    for (int i = index; i < columns.length; i++) {
-      catTemp[i+1] = columnCategories[i];
+    /** Trim the extra rows that were allocated along the way. */
+    void finish() {
+      if (found) {
+        table.setRowCount(rowCount);
+      }
     }
-    columnCategories = catTemp;
-
-    Object[] temp = new Object[columns.length + 1];
-    System.arraycopy(columns, 0, temp, 0, index);
-    System.arraycopy(columns, index, temp, index+1, columns.length - index);
-    columns = temp;
 
-    switch (type) {
-      case INT: columns[index] = new int[rowCount]; break;
-      case LONG: columns[index] = new long[rowCount]; break;
-      case FLOAT: columns[index] = new float[rowCount]; break;
-      case DOUBLE: columns[index] = new double[rowCount]; break;
-      case STRING: columns[index] = new String[rowCount]; break;
-      case CATEGORY: columns[index] = new int[rowCount]; break;
+    static int repeat(Attributes attributes, String name) {
+      String value = attributes.getValue(name);
+      return (value == null) ? 1 : PApplet.parseInt(value, 1);
     }
   }
 
- /**
-   * @webref table:method
-   * @brief Removes a column from a table
-   * @param columnName the title of the column to be removed
-   * @see Table#addColumn()
-   */
-  public void removeColumn(String columnName) {
-    removeColumn(getColumnIndex(columnName));
-  }
-
- /**
-   * @param column the index number of the column to be removed
-   */
-  public void removeColumn(int column) {
-    int newCount = columns.length - 1;
 
-    Object[] columnsTemp = new Object[newCount];
-    HashMapBlows[] catTemp = new HashMapBlows[newCount];
+  // A 'Class' object is used here, so the syntax for this function is:
+  // Table t = loadTable("cars3.tsv", "header");
+  // Record[] records = (Record[]) t.parse(Record.class);
+  // While t.parse("Record") might be nicer, the class is likely to be an
+  // inner class (another tab in a PDE sketch) or even inside a package,
+  // so additional information would be needed to locate it. The name of the
+  // inner class would be "SketchName$Record" which isn't acceptable syntax
+  // to make people use. Better to just introduce the '.class' syntax.
 
-    for (int i = 0; i < column; i++) {
-      columnsTemp[i] = columns[i];
-      catTemp[i] = columnCategories[i];
-    }
-    for (int i = column; i < newCount; i++) {
-      columnsTemp[i] = columns[i+1];
-      catTemp[i] = columnCategories[i+1];
-    }
+  // Unlike the Table class itself, this accepts char and boolean fields in
+  // the target class, since they're much more prevalent, and don't require
+  // a zillion extra methods and special cases in the rest of the class here.
 
-    columns = columnsTemp;
-    columnCategories = catTemp;
+  // since this is likely an inner class, needs a reference to its parent,
+  // because that's passed to the constructor parameter (inserted by the
+  // compiler) of an inner class by the runtime.
 
-    if (columnTitles != null) {
-      String[] titlesTemp = new String[newCount];
-      for (int i = 0; i < column; i++) {
-        titlesTemp[i] = columnTitles[i];
+  /**
+   * Fill an array field of the enclosing object (usually the sketch) with
+   * one record per row, as with parse(). The array is replaced, not reused.
+   */
+  public void parseInto(Object enclosingObject, String fieldName) {
+    try {
+      Field targetField = enclosingObject.getClass().getDeclaredField(fieldName);
+      Class<?> targetArray = targetField.getType();
+      if (!targetArray.isArray()) {
+        throw new IllegalArgumentException(fieldName + " is not an array");
       }
-      for (int i = column; i < newCount; i++) {
-        titlesTemp[i] = columnTitles[i+1];
+      Object outgoing = parse(targetArray.getComponentType(), enclosingObject);
+      if (!targetField.isAccessible()) {
+        targetField.setAccessible(true);
       }
-      columnTitles = titlesTemp;
-      columnIndices = null;
-    }
-  }
+      targetField.set(enclosingObject, outgoing);
 
-  /**
-   * @webref table:method
-   * @brief Gets the number of columns in a table
-   * @see Table#getRowCount()
-   */
-  public int getColumnCount() {
-    return columns.length;
+    } catch (NoSuchFieldException e) {
+      e.printStackTrace();
+    } catch (IllegalAccessException e) {
+      e.printStackTrace();
+    }
   }
 
 
   /**
-   * Change the number of columns in this table. Resizes all rows to ensure
-   * the same number of columns in each row. Entries in the additional (empty)
-   * columns will be set to null.
-   * @param newCount
+   * Make an object of the given class for each row, and set its fields from
+   * the columns that have the same name. String, int, long, float, double,
+   * boolean ("true" or "1"), and char (first character) fields are
+   * supported, others are left alone. The class needs a constructor with no
+   * parameters. Fields are set a column at a time, and the field lookups
+   * for each class are kept for the next time it's used.
+   * <pre>
+   * Record[] records = table.parse(Record.class, this);
+   * </pre>
+   *
+   * @param enclosingObject the object that an inner class (like a class in
+   * another tab of a sketch) belongs to, or null for other classes
    */
-  public void setColumnCount(int newCount) {
-    int oldCount = columns.length;
-    if (oldCount != newCount) {
-      columns = (Object[]) PApplet.expand(columns, newCount);
-      // create new columns, default to String as the data type
-      for (int c = oldCount; c < newCount; c++) {
-        columns[c] = new String[rowCount];
-      }
-
-      if (columnTitles != null) {
-        columnTitles = PApplet.expand(columnTitles, newCount);
+  public <T> T[] parse(Class<T> target, final Object enclosingObject) {
+    final RecordBinder binder = RecordBinder.get(target);
+    @SuppressWarnings("unchecked")
+    T[] outgoing = (T[]) Array.newInstance(target, rowCount);
+    final Object[] items = outgoing;
+
+    // make the objects in parallel chunks, then fill one field per task
+    List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+    for (int start = 0; start < rowCount; start += PARALLEL_ROWS) {
+      final int first = start;
+      final int last = Math.min(start + PARALLEL_ROWS, rowCount);
+      tasks.add(new RecursiveAction() {
+        @Override
+        protected void compute() {
+          for (int row = first; row < last; row++) {
+            items[row] = binder.create(enclosingObject);
+          }
+        }
+      });
+    }
+    runTasks(tasks);
+
+    tasks.clear();
+    for (int i = 0; i < binder.fields.length; i++) {
+      final int field = i;
+      final int column = getColumnIndex(binder.fields[i].getName(), false);
+      if (column != -1) {
+        tasks.add(new RecursiveAction() {
+          @Override
+          protected void compute() {
+            binder.read(Table.this, column, field, items);
+          }
+        });
       }
-      columnTypes = PApplet.expand(columnTypes, newCount);
-      columnCategories = (HashMapBlows[])
-        PApplet.expand(columnCategories, newCount);
     }
+    runTasks(tasks);
+    return outgoing;
   }
 
 
-  public void setColumnType(String columnName, String columnType) {
-    setColumnType(checkColumnIndex(columnName), columnType);
+  /**
+   * Version of parse() for classes that aren't inner classes.
+   */
+  public <T> T[] parse(Class<T> target) {
+    return parse(target, null);
   }
 
 
   /**
-   * Set the data type for a column so that using it is more efficient.
-   * @param column the column to change
-   * @param columnType One of int, long, float, double, string, or category.
+   * Make a table from an array of objects, with a column for each of the
+   * fields that parse() would set, in the order they're declared. boolean
+   * and char fields are stored as Strings. Null entries become empty rows.
    */
-  public void setColumnType(int column, String columnType) {
-    columnType = columnType.toLowerCase();
-    int type = -1;
-    if (columnType.equals("string")) {
-      type = STRING;
-    } else if (columnType.equals("int")) {
-      type = INT;
-    } else if (columnType.equals("long")) {
-      type = LONG;
-    } else if (columnType.equals("float")) {
-      type = FLOAT;
-    } else if (columnType.equals("double")) {
-      type = DOUBLE;
-    } else if (columnType.equals("category")) {
-      type = CATEGORY;
-    } else {
-      throw new IllegalArgumentException("'" + columnType + "' is not a valid column type.");
+  public Table(Object[] records) {
+    init();
+    Class<?> target = records.getClass().getComponentType();
+    if (target == Object.class && records.length != 0 && records[0] != null) {
+      target = records[0].getClass();
+    }
+    final RecordBinder binder = RecordBinder.get(target);
+    Field[] fields = binder.fields;
+    setColumnCount(fields.length);
+    for (int col = 0; col < fields.length; col++) {
+      setColumnTitle(col, fields[col].getName());
+      int kind = binder.kinds[col];
+      setColumnType(col, (kind == RecordBinder.BOOLEAN ||
+                          kind == RecordBinder.CHAR) ? STRING : kind);
+    }
+    setRowCount(records.length);
+
+    List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+    for (int col = 0; col < fields.length; col++) {
+      final int column = col;
+      final Object[] items = records;
+      tasks.add(new RecursiveAction() {
+        @Override
+        protected void compute() {
+          binder.write(Table.this, column, items);
+        }
+      });
     }
-    setColumnType(column, type);
-  }
-
-
-  public void setColumnType(String columnName, int newType) {
-    setColumnType(checkColumnIndex(columnName), newType);
+    runTasks(tasks);
   }
 
 
   /**
-   * Sets the column type. If data already exists, then it'll be converted to
-   * the new type.
-   * @param column the column whose type should be changed
-   * @param newType something fresh, maybe try an int or a float for size?
+   * The constructor and fields of a record class, looked up once and kept
+   * for later calls to parse() and the Table(Object[]) constructor.
    */
-  public void setColumnType(int column, int newType) {
-    switch (newType) {
-      case INT: {
-        int[] intData = new int[rowCount];
-        for (int row = 0; row < rowCount; row++) {
-          String s = getString(row, column);
-          intData[row] = (s == null) ? missingInt : PApplet.parseInt(s, missingInt);
-        }
-        columns[column] = intData;
-        break;
-      }
-      case LONG: {
-        long[] longData = new long[rowCount];
-        for (int row = 0; row < rowCount; row++) {
-          String s = getString(row, column);
-          try {
-            longData[row] = (s == null) ? missingLong : Long.parseLong(s);
-          } catch (NumberFormatException nfe) {
-            longData[row] = missingLong;
-          }
-        }
-        columns[column] = longData;
-        break;
+  static class RecordBinder {
+    static final int BOOLEAN = 100;
+    static final int CHAR = 101;
+
+    static final Map<Class<?>, RecordBinder> binders =
+      new HashMap<Class<?>, RecordBinder>();
+
+    Constructor<?> constructor;
+    boolean inner;  // constructor takes the enclosing object
+    Field[] fields;
+    int[] kinds;  // column type for each field, or BOOLEAN or CHAR
+
+
+    static synchronized RecordBinder get(Class<?> target) {
+      RecordBinder binder = binders.get(target);
+      if (binder == null) {
+        binder = new RecordBinder(target);
+        binders.put(target, binder);
       }
-      case FLOAT: {
-        float[] floatData = new float[rowCount];
-        for (int row = 0; row < rowCount; row++) {
-          String s = getString(row, column);
-          floatData[row] = (s == null) ? missingFloat : PApplet.parseFloat(s, missingFloat);
+      return binder;
+    }
+
+
+    RecordBinder(Class<?> target) {
+      inner = target.getEnclosingClass() != null &&
+        !Modifier.isStatic(target.getModifiers());
+      try {
+        if (inner) {
+          constructor = target.getDeclaredConstructor(target.getEnclosingClass());
+        } else {
+          constructor = target.getDeclaredConstructor();
         }
-        columns[column] = floatData;
-        break;
+      } catch (NoSuchMethodException e) {
+        throw new IllegalArgumentException(target.getName() +
+                                           " needs a constructor with no parameters");
       }
-      case DOUBLE: {
-        double[] doubleData = new double[rowCount];
-        for (int row = 0; row < rowCount; row++) {
-          String s = getString(row, column);
-          try {
-            doubleData[row] = (s == null) ? missingDouble : Double.parseDouble(s);
-          } catch (NumberFormatException nfe) {
-            doubleData[row] = missingDouble;
-          }
-        }
-        columns[column] = doubleData;
-        break;
+      if (!constructor.isAccessible()) {
+        constructor.setAccessible(true);
       }
-      case STRING: {
-        if (columnTypes[column] != STRING) {
-          String[] stringData = new String[rowCount];
-          for (int row = 0; row < rowCount; row++) {
-            stringData[row] = getString(row, column);
+
+      ArrayList<Field> found = new ArrayList<Field>();
+      IntList foundKinds = new IntList();
+      for (Field field : target.getDeclaredFields()) {
+        int kind = kind(field.getType());
+        if (kind != -1 && !field.isSynthetic() &&
+            !Modifier.isStatic(field.getModifiers())) {
+          if (!field.isAccessible()) {
+            field.setAccessible(true);
           }
-          columns[column] = stringData;
-        }
-        break;
-      }
-      case CATEGORY: {
-        int[] indexData = new int[rowCount];
-        HashMapBlows categories = new HashMapBlows();
-        for (int row = 0; row < rowCount; row++) {
-          String s = getString(row, column);
-          indexData[row] = categories.index(s);
+          found.add(field);
+          foundKinds.append(kind);
         }
-        columnCategories[column] = categories;
-        columns[column] = indexData;
-        break;
-      }
-      default: {
-        throw new IllegalArgumentException("That's not a valid column type.");
       }
+      fields = found.toArray(new Field[found.size()]);
+      kinds = foundKinds.array();
     }
-//    System.out.println("new type is " + newType);
-    columnTypes[column] = newType;
-  }
 
 
-  /**
-   * Set the entire table to a specific data type.
-   */
-  public void setTableType(String type) {
-    for (int col = 0; col < getColumnCount(); col++) {
-      setColumnType(col, type);
+    static int kind(Class<?> type) {
+      if (type == String.class) return STRING;
+      if (type == Integer.TYPE) return INT;
+      if (type == Long.TYPE) return LONG;
+      if (type == Float.TYPE) return FLOAT;
+      if (type == Double.TYPE) return DOUBLE;
+      if (type == Boolean.TYPE) return BOOLEAN;
+      if (type == Character.TYPE) return CHAR;
+      return -1;
     }
-  }
 
 
-  public void setColumnTypes(int[] types) {
-    ensureColumn(types.length - 1);
-    for (int col = 0; col < types.length; col++) {
-      setColumnType(col, types[col]);
+    Object create(Object enclosingObject) {
+      try {
+        if (inner) {
+          return constructor.newInstance(enclosingObject);
+        }
+        return constructor.newInstance();
+      } catch (InvocationTargetException e) {
+        throw new RuntimeException(e.getCause());
+      } catch (ReflectiveOperationException e) {
+        throw new RuntimeException(e);
+      }
     }
-  }
 
 
-  /**
-   * Set the titles (and if a second column is present) the data types for
-   * this table based on a file loaded separately. This will look for the
-   * title in column 0, and the type in column 1. Better yet, specify a
-   * column named "title" and another named "type" in the dictionary table
-   * to future-proof the code.
-   * @param dictionary
-   */
-  public void setColumnTypes(final Table dictionary) {
-    ensureColumn(dictionary.getRowCount() - 1);
-    int titleCol = 0;
-    int typeCol = 1;
-    if (dictionary.hasColumnTitles()) {
-      titleCol = dictionary.getColumnIndex("title", true);
-      typeCol = dictionary.getColumnIndex("type", true);
-    }
-    setColumnTitles(dictionary.getStringColumn(titleCol));
-    final String[] typeNames = dictionary.getStringColumn(typeCol);
-
-    if (dictionary.getColumnCount() > 1) {
-      if (getRowCount() > 1000) {
-        int proc = Runtime.getRuntime().availableProcessors();
-        ExecutorService pool = Executors.newFixedThreadPool(proc/2);
-        for (int i = 0; i < dictionary.getRowCount(); i++) {
-          final int col = i;
-          pool.execute(new Runnable() {
-            public void run() {
-              setColumnType(col, typeNames[col]);
+    /** Set one field of each item from a column of the table. */
+    void read(Table table, int column, int index, Object[] items) {
+      Field field = fields[index];
+      try {
+        switch (kinds[index]) {
+        case STRING:
+          for (int row = 0; row < items.length; row++) {
+            field.set(items[row], table.getString(row, column));
+          }
+          break;
+        case INT:
+          for (int row = 0; row < items.length; row++) {
+            field.setInt(items[row], table.getInt(row, column));
+          }
+          break;
+        case LONG:
+          for (int row = 0; row < items.length; row++) {
+            field.setLong(items[row], table.getLong(row, column));
+          }
+          break;
+        case FLOAT:
+          for (int row = 0; row < items.length; row++) {
+            field.setFloat(items[row], table.getFloat(row, column));
+          }
+          break;
+        case DOUBLE:
+          for (int row = 0; row < items.length; row++) {
+            field.setDouble(items[row], table.getDouble(row, column));
+          }
+          break;
+        case BOOLEAN:
+          for (int row = 0; row < items.length; row++) {
+            String content = table.getString(row, column);
+            // only set if it's true, otherwise false by default anyway
+            if (content != null &&
+                (content.equalsIgnoreCase("true") || content.equals("1"))) {
+              field.setBoolean(items[row], true);
             }
-          });
-        }
-        pool.shutdown();
-        while (!pool.isTerminated()) {
-          Thread.yield();
-        }
-
-      } else {
-        for (int col = 0; col < dictionary.getRowCount(); col++) {
-//          setColumnType(i, dictionary.getString(i, typeCol));
-          setColumnType(col, typeNames[col]);
+          }
+          break;
+        case CHAR:
+          for (int row = 0; row < items.length; row++) {
+            String content = table.getString(row, column);
+            if (content != null && content.length() > 0) {
+              field.setChar(items[row], content.charAt(0));
+            }
+          }
+          break;
         }
+      } catch (IllegalAccessException e) {
+        throw new RuntimeException(e);
       }
     }
-  }
 
 
-  public int getColumnType(String columnName) {
-    return getColumnType(getColumnIndex(columnName));
+    /** Copy one field of each item into a column of the table. */
+    void write(Table table, int index, Object[] items) {
+      Field field = fields[index];
+      Object data = table.columns[index];
+      try {
+        for (int row = 0; row < items.length; row++) {
+          Object item = items[row];
+          if (item != null) {
+            switch (kinds[index]) {
+            case STRING:
+              ((String[]) data)[row] = (String) field.get(item);
+              break;
+            case INT:
+              ((int[]) data)[row] = field.getInt(item);
+              break;
+            case LONG:
+              ((long[]) data)[row] = field.getLong(item);
+              break;
+            case FLOAT:
+              ((float[]) data)[row] = field.getFloat(item);
+              break;
+            case DOUBLE:
+              ((double[]) data)[row] = field.getDouble(item);
+              break;
+            case BOOLEAN:
+              ((String[]) data)[row] = String.valueOf(field.getBoolean(item));
+              break;
+            case CHAR:
+              char c = field.getChar(item);
+              ((String[]) data)[row] = (c == 0) ? null : String.valueOf(c);
+              break;
+            }
+          }
+        }
+      } catch (IllegalAccessException e) {
+        throw new RuntimeException(e);
+      }
+    }
   }
 
 
-  /** Returns one of Table.STRING, Table.INT, etc... */
-  public int getColumnType(int column) {
-    return columnTypes[column];
+  public boolean save(File file, String options) throws IOException {
+    return save(PApplet.createOutput(file),
+                Table.extensionOptions(false, file.getName(), options));
   }
 
 
-  public int[] getColumnTypes() {
-    return columnTypes;
+  public boolean save(OutputStream output, String options) {
+    return save(output, options, null);
   }
 
 
-  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
-
-
   /**
-   * Remove the first row from the data set, and use it as the column titles.
-   * Use loadTable("table.csv", "header") instead.
+   * Save only the listed rows (or all of them if rows is null). CSV, TSV,
+   * and HTML are written straight from the columns, other formats need a
+   * copy of the rows first.
    */
-  @Deprecated
-  public String[] removeTitleRow() {
-    String[] titles = getStringRow(0);
-    removeRow(0);
-    setColumnTitles(titles);
-    return titles;
-  }
-
-
-  public void setColumnTitles(String[] titles) {
-    if (titles != null) {
-      ensureColumn(titles.length - 1);
+  protected boolean save(OutputStream output, String options, int[] rows) {
+    PrintWriter writer = PApplet.createWriter(output);
+    String extension = null;
+    if (options == null) {
+      throw new IllegalArgumentException("No extension specified for saving this Table");
     }
-    columnTitles = titles;
-    columnIndices = null;  // remove the cache
-  }
 
-
-  public void setColumnTitle(int column, String title) {
-    ensureColumn(column);
-    if (columnTitles == null) {
-      columnTitles = new String[getColumnCount()];
+    String[] opts = PApplet.trim(PApplet.split(options, ','));
+    // Only option for save is the extension, so we can safely grab the last
+    extension = opts[opts.length - 1];
+    boolean found = false;
+    for (String ext : saveExtensions) {
+      if (extension.equals(ext)) {
+        found = true;
+        break;
+      }
+    }
+    // Not providing a fallback; let's make users specify an extension
+    if (!found) {
+      throw new IllegalArgumentException("'" + extension + "' not available for Table");
     }
-    columnTitles[column] = title;
-    columnIndices = null;  // reset these fellas
-  }
 
+    if (rows != null && !extension.equals("csv") &&
+        !extension.equals("tsv") && !extension.equals("html")) {
+      return copyRows(rows).save(output, options, null);
+    }
 
-  public boolean hasColumnTitles() {
-    return columnTitles != null;
+    if (extension.equals("csv")) {
+      writeCSV(writer, rows);
+    } else if (extension.equals("tsv")) {
+      writeTSV(writer, rows);
+    } else if (extension.equals("ods")) {
+      try {
+        saveODS(output);
+      } catch (IOException e) {
+        e.printStackTrace();
+        return false;
+      }
+    } else if (extension.equals("html")) {
+      writeHTML(writer, rows);
+    } else if (extension.equals("bin")) {
+      try {
+        saveBinary(output);
+      } catch (IOException e) {
+        e.printStackTrace();
+        return false;
+      }
+    } else if (extension.equals("tbl")) {
+      try {
+        saveColumnar(output);
+      } catch (IOException e) {
+        e.printStackTrace();
+        return false;
+      }
+    }
+    writer.flush();
+    writer.close();
+    return true;
   }
 
 
-  public String[] getColumnTitles() {
-    return columnTitles;
+  protected void writeTSV(PrintWriter writer) {
+    writeTSV(writer, null);
   }
 
 
-  public String getColumnTitle(int col) {
-    return (columnTitles == null) ? null : columnTitles[col];
+  protected void writeTSV(PrintWriter writer, int[] rows) {
+    if (columnTitles != null) {
+      for (int col = 0; col < columns.length; col++) {
+        if (col != 0) {
+          writer.print('\t');
+        }
+        if (columnTitles[col] != null) {
+          writer.print(columnTitles[col]);
+        }
+      }
+      writer.println();
+    }
+    int count = (rows == null) ? rowCount : rows.length;
+    for (int i = 0; i < count; i++) {
+      int row = (rows == null) ? i : rows[i];
+      for (int col = 0; col < getColumnCount(); col++) {
+        if (col != 0) {
+          writer.print('\t');
+        }
+        String entry = getString(row, col);
+        // just write null entries as blanks, rather than spewing 'null'
+        // all over the spreadsheet file.
+        if (entry != null) {
+          writer.print(entry);
+        }
+      }
+      writer.println();
+    }
+    writer.flush();
   }
 
 
-  public int getColumnIndex(String columnName) {
-    return getColumnIndex(columnName, true);
+  protected void writeCSV(PrintWriter writer) {
+    writeCSV(writer, null);
   }
 
 
-  /**
-   * Get the index of a column.
-   * @param name Name of the column.
-   * @param report Whether to throw an exception if the column wasn't found.
-   * @return index of the found column, or -1 if not found.
-   */
-  protected int getColumnIndex(String name, boolean report) {
-    if (columnTitles == null) {
-      if (report) {
-        throw new IllegalArgumentException("This table has no header, so no column titles are set.");
-      }
-      return -1;
-    }
-    // only create this on first get(). subsequent calls to set the title will
-    // also update this array, but only if it exists.
-    if (columnIndices == null) {
-      columnIndices = new HashMap<String, Integer>();
+  protected void writeCSV(PrintWriter writer, int[] rows) {
+    if (columnTitles != null) {
       for (int col = 0; col < columns.length; col++) {
-        columnIndices.put(columnTitles[col], col);
+        if (col != 0) {
+          writer.print(',');
+        }
+        if (columnTitles[col] != null) {
+          writeEntryCSV(writer, columnTitles[col]);
+        }
       }
+      writer.println();
     }
-    Integer index = columnIndices.get(name);
-    if (index == null) {
-      if (report) {
-        // Throws an exception here because the name is known and therefore most useful.
-        // (Rather than waiting for it to fail inside, say, getInt())
-        throw new IllegalArgumentException("This table has no column named '" + name + "'");
+    int count = (rows == null) ? rowCount : rows.length;
+    for (int i = 0; i < count; i++) {
+      int row = (rows == null) ? i : rows[i];
+      for (int col = 0; col < getColumnCount(); col++) {
+        if (col != 0) {
+          writer.print(',');
+        }
+        String entry = getString(row, col);
+        // just write null entries as blanks, rather than spewing 'null'
+        // all over the spreadsheet file.
+        if (entry != null) {
+          writeEntryCSV(writer, entry);
+        }
       }
-      return -1;
+      // Prints the newline for the row, even if it's missing
+      writer.println();
     }
-    return index.intValue();
+    writer.flush();
   }
 
 
-  /**
-   * Same as getColumnIndex(), but creates the column if it doesn't exist.
-   * Named this way to not conflict with checkColumn(), an internal function
-   * used to ensure that a columns exists, and also to denote that it returns
-   * an int for the column index.
-   * @param title column title
-   * @return index of a new or previously existing column
-   */
-  public int checkColumnIndex(String title) {
-    int index = getColumnIndex(title, false);
-    if (index != -1) {
-      return index;
-    }
-    addColumn(title);
-    return getColumnCount() - 1;
-  }
+  protected void writeEntryCSV(PrintWriter writer, String entry) {
+    if (entry != null) {
+      if (entry.indexOf('\"') != -1) {  // convert quotes to double quotes
+        char[] c = entry.toCharArray();
+        writer.print('\"');
+        for (int i = 0; i < c.length; i++) {
+          if (c[i] == '\"') {
+            writer.print("\"\"");
+          } else {
+            writer.print(c[i]);
+          }
+        }
+        writer.print('\"');
 
+        // add quotes if commas or CR/LF are in the entry
+      } else if (entry.indexOf(',') != -1  ||
+                 entry.indexOf('\n') != -1 ||
+                 entry.indexOf('\r') != -1) {
+        writer.print('\"');
+        writer.print(entry);
+        writer.print('\"');
 
-  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
 
-  /**
-   * @webref table:method
-   * @brief Gets the number of rows in a table
-   * @see Table#getColumnCount()
-   */
-  public int getRowCount() {
-    return rowCount;
+        // add quotes if leading or trailing space
+      } else if ((entry.length() > 0) &&
+                 (entry.charAt(0) == ' ' ||
+                  entry.charAt(entry.length() - 1) == ' ')) {
+        writer.print('\"');
+        writer.print(entry);
+        writer.print('\"');
+
+      } else {
+        writer.print(entry);
+      }
+    }
   }
 
 
-  public int lastRowIndex() {
-    return getRowCount() - 1;
+  protected void writeHTML(PrintWriter writer) {
+    writeHTML(writer, null);
   }
 
 
-  /**
-   * @webref table:method
-   * @brief Removes all rows from a table
-   * @see Table#addRow()
-   * @see Table#removeRow(int)
-   */
-  public void clearRows() {
-    setRowCount(0);
-  }
+  protected void writeHTML(PrintWriter writer, int[] rows) {
+    writer.println("<html>");
 
+    writer.println("<head>");
+    writer.println("  <meta http-equiv=\"content-type\" content=\"text/html;charset=utf-8\" />");
+    writer.println("</head>");
 
-  public void setRowCount(int newCount) {
-    if (newCount != rowCount) {
-      if (newCount > 1000000) {
-        System.out.print("Note: setting maximum row count to " + PApplet.nfc(newCount));
-      }
-      long t = System.currentTimeMillis();
-      for (int col = 0; col < columns.length; col++) {
-        switch (columnTypes[col]) {
-          case INT: columns[col] = PApplet.expand((int[]) columns[col], newCount); break;
-          case LONG: columns[col] = PApplet.expand((long[]) columns[col], newCount); break;
-          case FLOAT: columns[col] = PApplet.expand((float[]) columns[col], newCount); break;
-          case DOUBLE: columns[col] = PApplet.expand((double[]) columns[col], newCount); break;
-          case STRING: columns[col] = PApplet.expand((String[]) columns[col], newCount); break;
-          case CATEGORY: columns[col] = PApplet.expand((int[]) columns[col], newCount); break;
-        }
-        if (newCount > 1000000) {
-          try {
-            Thread.sleep(10);  // gc time!
-          } catch (InterruptedException e) {
-            e.printStackTrace();
-          }
-        }
-      }
-      if (newCount > 1000000) {
-        int ms = (int) (System.currentTimeMillis() - t);
-        System.out.println(" (resize took " + PApplet.nfc(ms) + " ms)");
+    writer.println("<body>");
+    writer.println("  <table>");
+    int count = (rows == null) ? rowCount : rows.length;
+    for (int i = 0; i < count; i++) {
+      int row = (rows == null) ? i : rows[i];
+      writer.println("    <tr>");
+      for (int col = 0; col < getColumnCount(); col++) {
+        String entry = getString(row, col);
+        writer.print("      <td>");
+        writeEntryHTML(writer, entry);
+        writer.println("      </td>");
       }
+      writer.println("    </tr>");
     }
-    rowCount = newCount;
+    writer.println("  </table>");
+    writer.println("</body>");
+
+    writer.println("</html>");
+    writer.flush();
   }
 
 
- /**
-   * @webref table:method
-   * @brief Adds a row to a table
-   * @see Table#removeRow(int)
-   * @see Table#clearRows()
-   */
-  public TableRow addRow() {
-    //if (rowIncrement == 0) {
-    setRowCount(rowCount + 1);
-    return new RowPointer(this, rowCount - 1);
-  }
+  protected void writeEntryHTML(PrintWriter writer, String entry) {
+    //char[] chars = entry.toCharArray();
+    for (char c : entry.toCharArray()) {  //chars) {
+      if (c == '<') {
+        writer.print("&lt;");
+      } else if (c == '>') {
+        writer.print("&gt;");
+      } else if (c == '&') {
+        writer.print("&amp;");
+      } else if (c == '\'') {
+        writer.print("&apos;");
+      } else if (c == '"') {
+        writer.print("&quot;");
 
+      // not necessary with UTF-8?
+//      } else if (c < 32 || c > 127) {
+//        writer.print("&#");
+//        writer.print((int) c);
+//        writer.print(';');
 
- /**
-   * @param source a reference to the original row to be duplicated
-   */
-  public TableRow addRow(TableRow source) {
-    return setRow(rowCount, source);
+      } else {
+        writer.print(c);
+      }
+    }
   }
 
 
-  public TableRow setRow(int row, TableRow source) {
-    // Make sure there are enough columns to add this data
-    ensureBounds(row, source.getColumnCount() - 1);
+  protected void saveODS(OutputStream os) throws IOException {
+    ZipOutputStream zos = new ZipOutputStream(os);
 
-    for (int col = 0; col < columns.length; col++) {
-      switch (columnTypes[col]) {
-      case INT:
-        setInt(row, col, source.getInt(col));
-        break;
-      case LONG:
-        setLong(row, col, source.getLong(col));
-        break;
-      case FLOAT:
-        setFloat(row, col, source.getFloat(col));
-        break;
-      case DOUBLE:
-        setDouble(row, col, source.getDouble(col));
-        break;
-      case STRING:
-        setString(row, col, source.getString(col));
-        break;
-      case CATEGORY:
-        int index = source.getInt(col);
-        setInt(row, col, index);
-        if (!columnCategories[col].hasCategory(index)) {
-          columnCategories[col].setCategory(index, source.getString(col));
-        }
-        break;
+    final String xmlHeader = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>";
 
-      default:
-        throw new RuntimeException("no types");
-      }
-    }
-    return new RowPointer(this, row);
-  }
+    ZipEntry entry = new ZipEntry("META-INF/manifest.xml");
+    String[] lines = new String[] {
+      xmlHeader,
+      "<manifest:manifest xmlns:manifest=\"urn:oasis:names:tc:opendocument:xmlns:manifest:1.0\">",
+      "  <manifest:file-entry manifest:media-type=\"application/vnd.oasis.opendocument.spreadsheet\" manifest:version=\"1.2\" manifest:full-path=\"/\"/>",
+      "  <manifest:file-entry manifest:media-type=\"text/xml\" manifest:full-path=\"content.xml\"/>",
+      "  <manifest:file-entry manifest:media-type=\"text/xml\" manifest:full-path=\"styles.xml\"/>",
+      "  <manifest:file-entry manifest:media-type=\"text/xml\" manifest:full-path=\"meta.xml\"/>",
+      "  <manifest:file-entry manifest:media-type=\"text/xml\" manifest:full-path=\"settings.xml\"/>",
+      "</manifest:manifest>"
+    };
+    zos.putNextEntry(entry);
+    zos.write(PApplet.join(lines, "\n").getBytes());
+    zos.closeEntry();
+
+    /*
+    entry = new ZipEntry("meta.xml");
+    lines = new String[] {
+      xmlHeader,
+      "<office:document-meta office:version=\"1.0\"" +
+      " xmlns:office=\"urn:oasis:names:tc:opendocument:xmlns:office:1.0\" />"
+    };
+    zos.putNextEntry(entry);
+    zos.write(PApplet.join(lines, "\n").getBytes());
+    zos.closeEntry();
 
+    entry = new ZipEntry("meta.xml");
+    lines = new String[] {
+      xmlHeader,
+      "<office:document-settings office:version=\"1.0\"" +
+      " xmlns:config=\"urn:oasis:names:tc:opendocument:xmlns:config:1.0\"" +
+      " xmlns:office=\"urn:oasis:names:tc:opendocument:xmlns:office:1.0\"" +
+      " xmlns:ooo=\"http://openoffice.org/2004/office\"" +
+      " xmlns:xlink=\"http://www.w3.org/1999/xlink\" />"
+    };
+    zos.putNextEntry(entry);
+    zos.write(PApplet.join(lines, "\n").getBytes());
+    zos.closeEntry();
 
- /**
-   * @nowebref
-   */
-  public TableRow addRow(Object[] columnData) {
-    setRow(getRowCount(), columnData);
-    return new RowPointer(this, rowCount - 1);
-  }
+    entry = new ZipEntry("settings.xml");
+    lines = new String[] {
+      xmlHeader,
+      "<office:document-settings office:version=\"1.0\"" +
+      " xmlns:config=\"urn:oasis:names:tc:opendocument:xmlns:config:1.0\"" +
+      " xmlns:office=\"urn:oasis:names:tc:opendocument:xmlns:office:1.0\"" +
+      " xmlns:ooo=\"http://openoffice.org/2004/office\"" +
+      " xmlns:xlink=\"http://www.w3.org/1999/xlink\" />"
+    };
+    zos.putNextEntry(entry);
+    zos.write(PApplet.join(lines, "\n").getBytes());
+    zos.closeEntry();
 
+    entry = new ZipEntry("styles.xml");
+    lines = new String[] {
+      xmlHeader,
+      "<office:document-styles office:version=\"1.0\"" +
+      " xmlns:office=\"urn:oasis:names:tc:opendocument:xmlns:office:1.0\" />"
+    };
+    zos.putNextEntry(entry);
+    zos.write(PApplet.join(lines, "\n").getBytes());
+    zos.closeEntry();
+    */
 
-  public void addRows(Table source) {
-    int index = getRowCount();
-    setRowCount(index + source.getRowCount());
-    for (TableRow row : source.rows()) {
-      setRow(index++, row);
+    final String[] dummyFiles = new String[] {
+      "meta.xml", "settings.xml", "styles.xml"
+    };
+    lines = new String[] {
+      xmlHeader,
+      "<office:document-meta office:version=\"1.0\"" +
+      " xmlns:office=\"urn:oasis:names:tc:opendocument:xmlns:office:1.0\" />"
+    };
+    byte[] dummyBytes = PApplet.join(lines, "\n").getBytes();
+    for (String filename : dummyFiles) {
+      entry = new ZipEntry(filename);
+      zos.putNextEntry(entry);
+      zos.write(dummyBytes);
+      zos.closeEntry();
     }
-  }
 
+    //
 
-  public void insertRow(int insert, Object[] columnData) {
-    for (int col = 0; col < columns.length; col++) {
-      switch (columnTypes[col]) {
-        case CATEGORY:
-        case INT: {
-          int[] intTemp = new int[rowCount+1];
-          System.arraycopy(columns[col], 0, intTemp, 0, insert);
-          System.arraycopy(columns[col], insert, intTemp, insert+1, rowCount - insert);
-          columns[col] = intTemp;
-          break;
-        }
-        case LONG: {
-          long[] longTemp = new long[rowCount+1];
-          System.arraycopy(columns[col], 0, longTemp, 0, insert);
-          System.arraycopy(columns[col], insert, longTemp, insert+1, rowCount - insert);
-          columns[col] = longTemp;
-          break;
-        }
-        case FLOAT: {
-          float[] floatTemp = new float[rowCount+1];
-          System.arraycopy(columns[col], 0, floatTemp, 0, insert);
-          System.arraycopy(columns[col], insert, floatTemp, insert+1, rowCount - insert);
-          columns[col] = floatTemp;
-          break;
-        }
-        case DOUBLE: {
-          double[] doubleTemp = new double[rowCount+1];
-          System.arraycopy(columns[col], 0, doubleTemp, 0, insert);
-          System.arraycopy(columns[col], insert, doubleTemp, insert+1, rowCount - insert);
-          columns[col] = doubleTemp;
-          break;
-        }
-        case STRING: {
-          String[] stringTemp = new String[rowCount+1];
-          System.arraycopy(columns[col], 0, stringTemp, 0, insert);
-          System.arraycopy(columns[col], insert, stringTemp, insert+1, rowCount - insert);
-          columns[col] = stringTemp;
-          break;
-        }
+    entry = new ZipEntry("mimetype");
+    zos.putNextEntry(entry);
+    zos.write("application/vnd.oasis.opendocument.spreadsheet".getBytes());
+    zos.closeEntry();
+
+    //
+
+    entry = new ZipEntry("content.xml");
+    zos.putNextEntry(entry);
+    // rows are written as they're read from the table, nothing is built up
+    Writer writer = new BufferedWriter(new OutputStreamWriter(zos, "UTF-8"));
+    writeLines(writer,
+      xmlHeader,
+      "<office:document-content" +
+        " xmlns:office=\"urn:oasis:names:tc:opendocument:xmlns:office:1.0\"" +
+        " xmlns:text=\"urn:oasis:names:tc:opendocument:xmlns:text:1.0\"" +
+        " xmlns:table=\"urn:oasis:names:tc:opendocument:xmlns:table:1.0\"" +
+        " office:version=\"1.2\">",
+      "  <office:body>",
+      "    <office:spreadsheet>",
+      "      <table:table table:name=\"Sheet1\" table:print=\"false\">");
+
+    final String rowStart = "        <table:table-row>\n";
+    final String rowStop = "        </table:table-row>\n";
+
+    if (hasColumnTitles()) {
+      writer.write(rowStart);
+      for (int i = 0; i < getColumnCount(); i++) {
+        saveStringODS(writer, columnTitles[i]);
       }
+      writer.write(rowStop);
     }
-    setRow(insert, columnData);
-    rowCount++;
-  }
 
-  /**
-   * @webref table:method
-   * @brief Removes a row from a table
-   * @param row ID number of the row to remove
-   * @see Table#addRow()
-   * @see Table#clearRows()
-   */
-  public void removeRow(int row) {
-    for (int col = 0; col < columns.length; col++) {
-      switch (columnTypes[col]) {
-        case CATEGORY:
-        case INT: {
-          int[] intTemp = new int[rowCount-1];
-//          int[] intData = (int[]) columns[col];
-//          System.arraycopy(intData, 0, intTemp, 0, dead);
-//          System.arraycopy(intData, dead+1, intTemp, dead, (rowCount - dead) + 1);
-          System.arraycopy(columns[col], 0, intTemp, 0, row);
-          System.arraycopy(columns[col], row+1, intTemp, row, (rowCount - row) - 1);
-          columns[col] = intTemp;
-          break;
-        }
-        case LONG: {
-          long[] longTemp = new long[rowCount-1];
-//          long[] longData = (long[]) columns[col];
-//          System.arraycopy(longData, 0, longTemp, 0, dead);
-//          System.arraycopy(longData, dead+1, longTemp, dead, (rowCount - dead) + 1);
-          System.arraycopy(columns[col], 0, longTemp, 0, row);
-          System.arraycopy(columns[col], row+1, longTemp, row, (rowCount - row) - 1);
-          columns[col] = longTemp;
+    for (int row = 0; row < rowCount; row++) {
+      writer.write(rowStart);
+      for (int i = 0; i < getColumnCount(); i++) {
+        switch (columnTypes[i]) {
+        case INT:
+          saveNumberODS(writer, String.valueOf(getInt(row, i)));
           break;
-        }
-        case FLOAT: {
-          float[] floatTemp = new float[rowCount-1];
-//          float[] floatData = (float[]) columns[col];
-//          System.arraycopy(floatData, 0, floatTemp, 0, dead);
-//          System.arraycopy(floatData, dead+1, floatTemp, dead, (rowCount - dead) + 1);
-          System.arraycopy(columns[col], 0, floatTemp, 0, row);
-          System.arraycopy(columns[col], row+1, floatTemp, row, (rowCount - row) - 1);
-          columns[col] = floatTemp;
+        case LONG:
+          saveNumberODS(writer, String.valueOf(getLong(row, i)));
           break;
-        }
-        case DOUBLE: {
-          double[] doubleTemp = new double[rowCount-1];
-//          double[] doubleData = (double[]) columns[col];
-//          System.arraycopy(doubleData, 0, doubleTemp, 0, dead);
-//          System.arraycopy(doubleData, dead+1, doubleTemp, dead, (rowCount - dead) + 1);
-          System.arraycopy(columns[col], 0, doubleTemp, 0, row);
-          System.arraycopy(columns[col], row+1, doubleTemp, row, (rowCount - row) - 1);
-          columns[col] = doubleTemp;
+        case FLOAT:
+        case DOUBLE:
+          double value = getDouble(row, i);
+          if (Double.isNaN(value)) {
+            writer.write("          <table:table-cell/>\n");
+          } else if (columnTypes[i] == FLOAT) {
+            saveNumberODS(writer, String.valueOf((float) value));
+          } else {
+            saveNumberODS(writer, String.valueOf(value));
+          }
           break;
+        default:
+          saveStringODS(writer, getString(row, i));
         }
-        case STRING: {
-          String[] stringTemp = new String[rowCount-1];
-          System.arraycopy(columns[col], 0, stringTemp, 0, row);
-          System.arraycopy(columns[col], row+1, stringTemp, row, (rowCount - row) - 1);
-          columns[col] = stringTemp;
+      }
+      writer.write(rowStop);
+    }
+
+    writeLines(writer,
+      "      </table:table>",
+      "    </office:spreadsheet>",
+      "  </office:body>",
+      "</office:document-content>");
+    writer.flush();
+    zos.closeEntry();
+
+    zos.flush();
+    zos.close();
+  }
+
+
+  void saveStringODS(Writer output, String text) throws IOException {
+    // At this point, I should have just used the XML library. But this does
+    // save us from having to create the entire document in memory again before
+    // writing to the file. So while it's dorky, the outcome is still useful.
+    output.write("          <table:table-cell office:value-type=\"string\">\n");
+    output.write("            <text:p>");
+    if (text != null) {
+      int length = text.length();
+      for (int i = 0; i < length; i++) {
+        char c = text.charAt(i);
+        if (c == '&') {
+          output.write("&amp;");
+        } else if (c == '\'') {
+          output.write("&apos;");
+        } else if (c == '"') {
+          output.write("&quot;");
+        } else if (c == '<') {
+          output.write("&lt;");
+        } else if (c == '>') {
+          output.write("&gt;");
+        } else if (c < 32) {
+          output.write("&#" + ((int) c) + ";");
+        } else {
+          output.write(c);  // the writer handles UTF-8
         }
       }
     }
-    rowCount--;
+    output.write("</text:p>\n");
+    output.write("          </table:table-cell>\n");
   }
 
 
-  /*
-  public void setRow(int row, String[] pieces) {
-    checkSize(row, pieces.length - 1);
-    // pieces.length may be less than columns.length, so loop over pieces
-    for (int col = 0; col < pieces.length; col++) {
-      setRowCol(row, col, pieces[col]);
+  void saveNumberODS(Writer output, String text) throws IOException {
+    writeLines(output,
+               "          <table:table-cell office:value-type=\"float\" office:value=\"" + text + "\">",
+               "            <text:p>" + text + "</text:p>",
+               "          </table:table-cell>");
+  }
+
+
+  static void writeLines(Writer output, String... lines) throws IOException {
+    for (String str : lines) {
+      output.write(str);
+      output.write('\n');
     }
   }
 
 
-  protected void setRowCol(int row, int col, String piece) {
-    switch (columnTypes[col]) {
-    case STRING:
-      String[] stringData = (String[]) columns[col];
-      stringData[row] = piece;
-      break;
-    case INT:
-      int[] intData = (int[]) columns[col];
-      intData[row] = PApplet.parseInt(piece, missingInt);
-      break;
-    case LONG:
-      long[] longData = (long[]) columns[col];
-      try {
-        longData[row] = Long.parseLong(piece);
-      } catch (NumberFormatException nfe) {
-        longData[row] = missingLong;
-      }
-      break;
-    case FLOAT:
-      float[] floatData = (float[]) columns[col];
-      floatData[row] = PApplet.parseFloat(piece, missingFloat);
-      break;
-    case DOUBLE:
-      double[] doubleData = (double[]) columns[col];
-      try {
-        doubleData[row] = Double.parseDouble(piece);
-      } catch (NumberFormatException nfe) {
-        doubleData[row] = missingDouble;
+  protected void saveBinary(OutputStream os) throws IOException {
+    DataOutputStream output = new DataOutputStream(new BufferedOutputStream(os));
+    output.writeInt(0x9007AB1E);  // version
+    output.writeInt(getRowCount());
+    output.writeInt(getColumnCount());
+    if (columnTitles != null) {
+      output.writeBoolean(true);
+      for (String title : columnTitles) {
+        output.writeUTF(title);
       }
-      break;
-    case CATEGORY:
-      int[] indexData = (int[]) columns[col];
-      indexData[row] = columnCategories[col].index(piece);
-      break;
-    default:
-      throw new IllegalArgumentException("That's not a valid column type.");
+    } else {
+      output.writeBoolean(false);
+    }
+    // compacted columns may contain null, so they're written as Strings
+    int[] types = new int[getColumnCount()];
+    for (int i = 0; i < getColumnCount(); i++) {
+      types[i] = isCompacted(i) ? STRING : columnTypes[i];
+      //System.out.println(i + " is " + columnTypes[i]);
+      output.writeInt(types[i]);
     }
-  }
-  */
 
+    for (int i = 0; i < getColumnCount(); i++) {
+      if (types[i] == CATEGORY) {
+        columnCategories[i].write(output);
+      }
+    }
+    if (missingString == null) {
+      output.writeBoolean(false);
+    } else {
+      output.writeBoolean(true);
+      output.writeUTF(missingString);
+    }
+    output.writeInt(missingInt);
+    output.writeLong(missingLong);
+    output.writeFloat(missingFloat);
+    output.writeDouble(missingDouble);
+    output.writeInt(missingCategory);
 
-  public void setRow(int row, Object[] pieces) {
-    ensureBounds(row, pieces.length - 1);
-    // pieces.length may be less than columns.length, so loop over pieces
-    for (int col = 0; col < pieces.length; col++) {
-      setRowCol(row, col, pieces[col]);
+    for (TableRow row : rows()) {
+      for (int col = 0; col < getColumnCount(); col++) {
+        switch (types[col]) {
+        case STRING:
+          String str = row.getString(col);
+          if (str == null) {
+            output.writeBoolean(false);
+          } else {
+            output.writeBoolean(true);
+            output.writeUTF(str);
+          }
+          break;
+        case INT:
+          output.writeInt(row.getInt(col));
+          break;
+        case LONG:
+          output.writeLong(row.getLong(col));
+          break;
+        case FLOAT:
+          output.writeFloat(row.getFloat(col));
+          break;
+        case DOUBLE:
+          output.writeDouble(row.getDouble(col));
+          break;
+        case CATEGORY:
+          String peace = row.getString(col);
+          if (peace.equals(missingString)) {
+            output.writeInt(missingCategory);
+          } else {
+            output.writeInt(columnCategories[col].index(peace));
+          }
+          break;
+        }
+      }
     }
+
+    output.flush();
+    output.close();
   }
 
 
-  protected void setRowCol(int row, int col, Object piece) {
-    switch (columnTypes[col]) {
-      case STRING:
-        String[] stringData = (String[]) columns[col];
-        if (piece == null) {
-          stringData[row] = null;
-//        } else if (piece instanceof String) {
-//          stringData[row] = (String) piece;
-        } else {
-          // Calls toString() on the object, which is 'return this' for String
-          stringData[row] = String.valueOf(piece);
-        }
-        break;
-      case INT:
-        int[] intData = (int[]) columns[col];
-        //intData[row] = PApplet.parseInt(piece, missingInt);
-        if (piece == null) {
-          intData[row] = missingInt;
-        } else if (piece instanceof Integer) {
-          intData[row] = (Integer) piece;
-        } else {
-          intData[row] = PApplet.parseInt(String.valueOf(piece), missingInt);
-        }
+  protected void loadBinary(InputStream is) throws IOException {
+    DataInputStream input = new DataInputStream(new BufferedInputStream(is));
+
+    int magic = input.readInt();
+    if (magic != 0x9007AB1E) {
+      throw new IOException("Not a compatible binary table (magic was " + PApplet.hex(magic) + ")");
+    }
+    int rowCount = input.readInt();
+    setRowCount(rowCount);
+    int columnCount = input.readInt();
+    setColumnCount(columnCount);
+
+    boolean hasTitles = input.readBoolean();
+    if (hasTitles) {
+      columnTitles = new String[getColumnCount()];
+      for (int i = 0; i < columnCount; i++) {
+        //columnTitles[i] = input.readUTF();
+        setColumnTitle(i, input.readUTF());
+      }
+    }
+    for (int column = 0; column < columnCount; column++) {
+      int newType = input.readInt();
+      columnTypes[column] = newType;
+      switch (newType) {
+      case INT:
+        columns[column] = new int[rowCount];
         break;
       case LONG:
-        long[] longData = (long[]) columns[col];
-        if (piece == null) {
-          longData[row] = missingLong;
-        } else if (piece instanceof Long) {
-          longData[row] = (Long) piece;
-        } else {
-          try {
-            longData[row] = Long.parseLong(String.valueOf(piece));
-          } catch (NumberFormatException nfe) {
-            longData[row] = missingLong;
-          }
-        }
+        columns[column] = new long[rowCount];;
         break;
       case FLOAT:
-        float[] floatData = (float[]) columns[col];
-        if (piece == null) {
-          floatData[row] = missingFloat;
-        } else if (piece instanceof Float) {
-          floatData[row] = (Float) piece;
-        } else {
-          floatData[row] = PApplet.parseFloat(String.valueOf(piece), missingFloat);
-        }
+        columns[column] = new float[rowCount];;
         break;
       case DOUBLE:
-        double[] doubleData = (double[]) columns[col];
-        if (piece == null) {
-          doubleData[row] = missingDouble;
-        } else if (piece instanceof Double) {
-          doubleData[row] = (Double) piece;
-        } else {
-          try {
-            doubleData[row] = Double.parseDouble(String.valueOf(piece));
-          } catch (NumberFormatException nfe) {
-            doubleData[row] = missingDouble;
-          }
-        }
+        columns[column] = new double[rowCount];;
+        break;
+      case STRING:
+        columns[column] = new String[rowCount];;
         break;
       case CATEGORY:
-        int[] indexData = (int[]) columns[col];
-        if (piece == null) {
-          indexData[row] = missingCategory;
-        } else {
-          String peace = String.valueOf(piece);
-          if (peace.equals(missingString)) {  // missingString might be null
-            indexData[row] = missingCategory;
+        columns[column] = new int[rowCount];;
+        break;
+      default:
+        throw new IllegalArgumentException(newType + " is not a valid column type.");
+      }
+    }
+
+    for (int i = 0; i < columnCount; i++) {
+      if (columnTypes[i] == CATEGORY) {
+        columnCategories[i] = new HashMapBlows(input);
+      }
+    }
+
+    if (input.readBoolean()) {
+      missingString = input.readUTF();
+    } else {
+      missingString = null;
+    }
+    missingInt = input.readInt();
+    missingLong = input.readLong();
+    missingFloat = input.readFloat();
+    missingDouble = input.readDouble();
+    missingCategory = input.readInt();
+
+    for (int row = 0; row < rowCount; row++) {
+      for (int col = 0; col < columnCount; col++) {
+        switch (columnTypes[col]) {
+        case STRING:
+          String str = null;
+          if (input.readBoolean()) {
+            str = input.readUTF();
+          }
+          setString(row, col, str);
+          break;
+        case INT:
+          setInt(row, col, input.readInt());
+          break;
+        case LONG:
+          setLong(row, col, input.readLong());
+          break;
+        case FLOAT:
+          setFloat(row, col, input.readFloat());
+          break;
+        case DOUBLE:
+          setDouble(row, col, input.readDouble());
+          break;
+        case CATEGORY:
+          int index = input.readInt();
+          //String name = columnCategories[col].key(index);
+          setInt(row, col, index);
+          break;
+        }
+      }
+    }
+
+    input.close();
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  // "tbl" files store each column as one contiguous block of little endian
+  // values, so they can be mapped into memory and read in place. STRING
+  // columns are the UTF-8 bytes followed by the end offset of each entry
+  // (negative for null). The footer holds the titles, types, block offsets,
+  // category dictionaries, stats (since version 2), and missing values; the
+  // file ends with the position of the footer and the magic number.
+
+  static final int COLUMNAR_MAGIC = 0x9007C015;
+  static final int COLUMNAR_VERSION = 2;
+
+
+  /** True if these options will load or save a "tbl" file. */
+  static public boolean isColumnar(String options) {
+    boolean columnar = false;
+    if (options != null) {
+      for (String opt : PApplet.trim(PApplet.split(options, ','))) {
+        if (opt.equals("tbl")) {
+          columnar = true;
+        } else if (opt.equals("csv") || opt.equals("tsv") ||
+                   opt.equals("ods") || opt.equals("bin") ||
+                   opt.equals("newlines")) {
+          columnar = false;  // the last extension wins, same as parse()
+        }
+      }
+    }
+    return columnar;
+  }
+
+
+  protected void saveColumnar(OutputStream os) throws IOException {
+    WritableByteChannel channel = Channels.newChannel(os);
+    ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    buffer.putInt(COLUMNAR_MAGIC);
+    buffer.putInt(COLUMNAR_VERSION);
+    long position = 8;
+
+    int columnCount = getColumnCount();
+    long[] offsets = new long[columnCount];
+    long[] dataOffsets = new long[columnCount];
+    Charset utf8 = Charset.forName("UTF-8");
+
+    for (int col = 0; col < columnCount; col++) {
+      int type = columnTypes[col];
+      if (type == STRING) {
+        dataOffsets[col] = position;
+        long[] ends = new long[rowCount];
+        long length = 0;
+        for (int row = 0; row < rowCount; row++) {
+          String str = getString(row, col);
+          if (str == null) {
+            ends[row] = -1 - length;
           } else {
-            indexData[row] = columnCategories[col].index(peace);
+            byte[] bytes = str.getBytes(utf8);
+            int index = 0;
+            while (index < bytes.length) {
+              if (!buffer.hasRemaining()) {
+                drain(channel, buffer);
+              }
+              int amount = Math.min(buffer.remaining(), bytes.length - index);
+              buffer.put(bytes, index, amount);
+              index += amount;
+            }
+            length += bytes.length;
+            ends[row] = length;
           }
         }
-        break;
-      default:
-        throw new IllegalArgumentException("That's not a valid column type.");
+        position += length;
+        position += pad(channel, buffer, position);
+        offsets[col] = position;
+        for (int row = 0; row < rowCount; row++) {
+          if (buffer.remaining() < 8) {
+            drain(channel, buffer);
+          }
+          buffer.putLong(ends[row]);
+        }
+        position += 8L * rowCount;
+
+      } else {
+        position += pad(channel, buffer, position);
+        offsets[col] = position;
+        for (int row = 0; row < rowCount; row++) {
+          if (buffer.remaining() < 8) {
+            drain(channel, buffer);
+          }
+          switch (type) {
+          case INT:
+          case CATEGORY:
+            buffer.putInt(getInt(row, col));
+            break;
+          case LONG:
+            buffer.putLong(getLong(row, col));
+            break;
+          case FLOAT:
+            buffer.putFloat(getFloat(row, col));
+            break;
+          case DOUBLE:
+            buffer.putDouble(getDouble(row, col));
+            break;
+          }
+        }
+        position += (long) BufferColumn.size(type) * rowCount;
+      }
+    }
+    drain(channel, buffer);
+
+    DataOutputStream output = new DataOutputStream(new BufferedOutputStream(os));
+    output.writeInt(rowCount);
+    output.writeInt(columnCount);
+    for (int col = 0; col < columnCount; col++) {
+      String title = (columnTitles == null) ? null : columnTitles[col];
+      writeNullableUTF(output, title);
+      output.writeInt(columnTypes[col]);
+      output.writeLong(offsets[col]);
+      output.writeLong(dataOffsets[col]);
+      if (columnTypes[col] == CATEGORY) {
+        HashMapBlows categories = columnCategories[col];
+        output.writeInt(categories.size());
+        for (int i = 0; i < categories.size(); i++) {
+          writeNullableUTF(output, categories.key(i));
+        }
+      }
+      output.writeBoolean(hasStats(col));
+      if (hasStats(col)) {
+        prepareStats(col, true).write(output);
+      }
+    }
+    writeNullableUTF(output, missingString);
+    output.writeInt(missingInt);
+    output.writeLong(missingLong);
+    output.writeFloat(missingFloat);
+    output.writeDouble(missingDouble);
+    output.writeInt(missingCategory);
+    output.writeLong(position);  // where the footer begins
+    output.writeInt(COLUMNAR_MAGIC);
+    output.flush();
+    output.close();
+  }
+
+
+  static private void drain(WritableByteChannel channel,
+                            ByteBuffer buffer) throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+
+  /** Write zeroes until position is a multiple of 8, return the count. */
+  static private int pad(WritableByteChannel channel, ByteBuffer buffer,
+                         long position) throws IOException {
+    int count = (int) (-position & 7);
+    if (buffer.remaining() < count) {
+      drain(channel, buffer);
+    }
+    for (int i = 0; i < count; i++) {
+      buffer.put((byte) 0);
+    }
+    return count;
+  }
+
+
+  static private void writeNullableUTF(DataOutputStream output,
+                                       String str) throws IOException {
+    output.writeBoolean(str != null);
+    if (str != null) {
+      output.writeUTF(str);
+    }
+  }
+
+
+  static private String readNullableUTF(DataInputStream input) throws IOException {
+    return input.readBoolean() ? input.readUTF() : null;
+  }
+
+
+  /**
+   * Map a "tbl" file into memory. Only the footer is read, the columns stay
+   * on disk until they're used (or modified, which copies that column into
+   * an ordinary array). The file shouldn't be changed while it's mapped.
+   */
+  protected void loadColumnar(File file) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = raf.getChannel();
+      long size = channel.size();
+      int count = (int) ((size + BufferColumn.CHUNK_MASK) >>> BufferColumn.CHUNK_SHIFT);
+      ByteBuffer[] chunks = new ByteBuffer[count];
+      for (int i = 0; i < count; i++) {
+        long start = (long) i << BufferColumn.CHUNK_SHIFT;
+        long length = Math.min(size - start, 1L << BufferColumn.CHUNK_SHIFT);
+        chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        chunks[i].order(ByteOrder.LITTLE_ENDIAN);
+      }
+      loadColumnar(chunks, size);
+    } finally {
+      raf.close();  // the mappings remain valid after closing
+    }
+  }
+
+
+  /** Read a "tbl" file from a stream, which needs to fit in memory. */
+  protected void loadColumnar(InputStream input) throws IOException {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    byte[] temp = new byte[1 << 16];
+    int count;
+    while ((count = input.read(temp)) != -1) {
+      baos.write(temp, 0, count);
+    }
+    input.close();
+    ByteBuffer buffer = ByteBuffer.wrap(baos.toByteArray());
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    loadColumnar(new ByteBuffer[] { buffer }, buffer.capacity());
+  }
+
+
+  protected void loadColumnar(ByteBuffer[] chunks, long size) throws IOException {
+    if (size < 20 || chunks[0].getInt(0) != COLUMNAR_MAGIC) {
+      throw new IOException("Not a columnar table file");
+    }
+    int version = chunks[0].getInt(4);
+    if (version < 1 || version > COLUMNAR_VERSION) {
+      throw new IOException("Unsupported columnar table version " + version);
+    }
+    byte[] trailer = new byte[12];
+    BufferColumn.get(chunks, size - 12, trailer);
+    DataInputStream input =
+      new DataInputStream(new ByteArrayInputStream(trailer));
+    long footer = input.readLong();
+    if (input.readInt() != COLUMNAR_MAGIC || footer < 8 || footer > size - 12) {
+      throw new IOException("Columnar table file is damaged or incomplete");
+    }
+    byte[] footerBytes = new byte[(int) (size - 12 - footer)];
+    BufferColumn.get(chunks, footer, footerBytes);
+    input = new DataInputStream(new ByteArrayInputStream(footerBytes));
+
+    int newRowCount = input.readInt();
+    int columnCount = input.readInt();
+    String[] titles = new String[columnCount];
+    boolean hasTitles = false;
+    columns = new Object[columnCount];
+    columnTypes = new int[columnCount];
+    columnCategories = new HashMapBlows[columnCount];
+    stats = null;
+    for (int col = 0; col < columnCount; col++) {
+      titles[col] = readNullableUTF(input);
+      hasTitles |= (titles[col] != null);
+      int type = input.readInt();
+      if (type < STRING || type > CATEGORY) {
+        throw new IOException(type + " is not a valid column type.");
+      }
+      columnTypes[col] = type;
+      long offset = input.readLong();
+      long data = input.readLong();
+      columns[col] = new BufferColumn(chunks, type, offset, data, newRowCount);
+      if (type == CATEGORY) {
+        HashMapBlows categories = new HashMapBlows();
+        int entries = input.readInt();
+        for (int i = 0; i < entries; i++) {
+          categories.setCategory(i, readNullableUTF(input));
+        }
+        columnCategories[col] = categories;
+      }
+      if (version >= 2 && input.readBoolean()) {
+        if (stats == null) {
+          stats = new ColumnStats[columnCount];
+        }
+        stats[col] = new ColumnStats();
+        stats[col].read(input);
+      }
+    }
+    columnTitles = hasTitles ? titles : null;
+    columnIndices = null;
+    indexes = null;
+    rowCount = newRowCount;
+
+    missingString = readNullableUTF(input);
+    missingInt = input.readInt();
+    missingLong = input.readLong();
+    missingFloat = input.readFloat();
+    missingDouble = input.readDouble();
+    missingCategory = input.readInt();
+  }
+
+
+  /**
+   * Copy a column that's still backed by a file (or buffer) into an
+   * ordinary array so that it can be modified.
+   */
+  protected void ensureWritable(int column) {
+    Object data = columns[column];
+    if (data instanceof BufferColumn) {
+      columns[column] = ((BufferColumn) data).toArray();
+    }
+    if (shared != null && column < shared.length && shared[column]) {
+      shared[column] = false;
+      if (columns[column] == data) {
+        columns[column] = copyColumn(data);
+      }
+      if (columnCategories[column] != null) {
+        columnCategories[column] = new HashMapBlows(columnCategories[column]);
+      }
+    }
+  }
+
+
+  static Object copyColumn(Object data) {
+    if (data instanceof int[]) {
+      return ((int[]) data).clone();
+    } else if (data instanceof long[]) {
+      return ((long[]) data).clone();
+    } else if (data instanceof float[]) {
+      return ((float[]) data).clone();
+    } else if (data instanceof double[]) {
+      return ((double[]) data).clone();
+    } else if (data instanceof String[]) {
+      return ((String[]) data).clone();
+    }
+    return data;  // BufferColumn is read-only
+  }
+
+
+  /** Make all columns writable, before rows are added, removed or moved. */
+  protected void ensureWritable() {
+    for (int col = 0; col < columns.length; col++) {
+      ensureWritable(col);
+    }
+  }
+
+
+  /**
+   * Get a column ready for single values to be set: an ordinary array, or
+   * with setOffHeap(), a writable off-heap column. Either way, a column
+   * that's shared with a copy() is copied first.
+   */
+  protected Object ensureSettable(int column) {
+    Object data = columns[column];
+    if (data instanceof BufferColumn && columnTypes[column] != STRING &&
+        (offHeap || ((BufferColumn) data).writable)) {
+      BufferColumn buffer = (BufferColumn) data;
+      boolean copy = !buffer.writable;  // mapped from a file
+      if (shared != null && column < shared.length && shared[column]) {
+        shared[column] = false;
+        copy = true;
+        if (columnCategories[column] != null) {
+          columnCategories[column] = new HashMapBlows(columnCategories[column]);
+        }
+      }
+      if (copy) {
+        columns[column] = buffer.copy();
+      }
+    } else {
+      ensureWritable(column);
+    }
+    return columns[column];
+  }
+
+
+  /** Move a column into direct buffers if it isn't already, and return it. */
+  protected BufferColumn offHeapColumn(int column) {
+    Object data = columns[column];
+    if (data instanceof BufferColumn) {
+      return (BufferColumn) ensureSettable(column);
     }
+    BufferColumn buffer = BufferColumn.allocate(columnTypes[column], rowCount);
+    buffer.put(0, data, rowCount);
+    columns[column] = buffer;
+    if (shared != null && column < shared.length && shared[column]) {
+      shared[column] = false;
+      if (columnCategories[column] != null) {
+        columnCategories[column] = new HashMapBlows(columnCategories[column]);
+      }
+    }
+    return buffer;
+  }
+
+
+  /**
+   * Keep the numeric and CATEGORY columns in direct buffers outside the
+   * Java heap, so that a large table doesn't count against the heap or
+   * slow down garbage collection. The buffers are split into chunks, so a
+   * column can hold more than 2 GB. String columns stay on the heap (use
+   * compact() for repetitive text). Getting and setting values, adding
+   * rows, and loading all work in place. Operations that rearrange rows
+   * (like sort(), insertRow(), or removeRow()) or change a column's type
+   * use ordinary arrays, and those columns go back into direct buffers the
+   * next time the table grows, or when this is called again.
+   * <p>
+   * Java only allows as much direct memory as the maximum heap size,
+   * unless it's started with a larger -XX:MaxDirectMemorySize. The
+   * "offheap" option does the same thing when loading a table.
+   */
+  public void setOffHeap(boolean offHeap) {
+    this.offHeap = offHeap;
+    for (int col = 0; col < columns.length; col++) {
+      Object data = columns[col];
+      if (offHeap) {
+        // columns mapped from a "tbl" file stay there until they're changed
+        if (columnTypes[col] != STRING && !(data instanceof BufferColumn)) {
+          offHeapColumn(col);
+        }
+      } else if (data instanceof BufferColumn && ((BufferColumn) data).writable) {
+        ensureWritable(col);
+      }
+    }
+  }
+
+
+  public boolean isOffHeap() {
+    return offHeap;
+  }
+
+
+  private void putInt(int column, int row, int value) {
+    Object data = columns[column];
+    if (data instanceof BufferColumn) {
+      ((BufferColumn) data).putInt(row, value);
+    } else {
+      ((int[]) data)[row] = value;
+    }
+  }
+
+
+  private void putLong(int column, int row, long value) {
+    Object data = columns[column];
+    if (data instanceof BufferColumn) {
+      ((BufferColumn) data).putLong(row, value);
+    } else {
+      ((long[]) data)[row] = value;
+    }
+  }
+
+
+  private void putFloat(int column, int row, float value) {
+    Object data = columns[column];
+    if (data instanceof BufferColumn) {
+      ((BufferColumn) data).putFloat(row, value);
+    } else {
+      ((float[]) data)[row] = value;
+    }
+  }
+
+
+  private void putDouble(int column, int row, double value) {
+    Object data = columns[column];
+    if (data instanceof BufferColumn) {
+      ((BufferColumn) data).putDouble(row, value);
+    } else {
+      ((double[]) data)[row] = value;
+    }
+  }
+
+
+  /**
+   * Read-only column data that lives in (usually memory-mapped) buffers.
+   * The buffers are split into 1 GB chunks because a single ByteBuffer
+   * can't be larger than 2 GB. Blocks start on 8 byte boundaries, so
+   * numeric values never straddle two chunks. Only absolute reads are
+   * used, so a column can be read from several threads at once.
+   */
+  static class BufferColumn {
+    static final int CHUNK_SHIFT = 30;
+    static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+
+    ByteBuffer[] chunks;
+    int type;
+    long offset;  // values, or the entry end offsets for STRING
+    long data;  // start of the UTF-8 bytes for STRING
+    int count;
+    boolean writable;  // direct buffers from setOffHeap(), rather than a file
+
+    BufferColumn(ByteBuffer[] chunks, int type,
+                 long offset, long data, int count) {
+      this.chunks = chunks;
+      this.type = type;
+      this.offset = offset;
+      this.data = data;
+      this.count = count;
+    }
+
+    /** Number of bytes used by each entry of this type. */
+    static int size(int type) {
+      return (type == INT || type == FLOAT || type == CATEGORY) ? 4 : 8;
+    }
+
+    int getInt(int row) {
+      long pos = offset + ((long) row << 2);
+      return chunks[(int) (pos >>> CHUNK_SHIFT)].getInt((int) (pos & CHUNK_MASK));
+    }
+
+    long getLong(int row) {
+      long pos = offset + ((long) row << 3);
+      return chunks[(int) (pos >>> CHUNK_SHIFT)].getLong((int) (pos & CHUNK_MASK));
+    }
+
+    float getFloat(int row) {
+      long pos = offset + ((long) row << 2);
+      return chunks[(int) (pos >>> CHUNK_SHIFT)].getFloat((int) (pos & CHUNK_MASK));
+    }
+
+    double getDouble(int row) {
+      long pos = offset + ((long) row << 3);
+      return chunks[(int) (pos >>> CHUNK_SHIFT)].getDouble((int) (pos & CHUNK_MASK));
+    }
+
+    String getString(int row) {
+      long stop = getLong(row);
+      if (stop < 0) {
+        return null;
+      }
+      long start = (row == 0) ? 0 : getLong(row - 1);
+      if (start < 0) {
+        start = -1 - start;
+      }
+      byte[] bytes = new byte[(int) (stop - start)];
+      get(chunks, data + start, bytes);
+      return new String(bytes, UTF8);
+    }
+
+    /** Copy bytes that may span more than one chunk. */
+    static void get(ByteBuffer[] chunks, long pos, byte[] target) {
+      int index = 0;
+      while (index < target.length) {
+        ByteBuffer chunk = chunks[(int) (pos >>> CHUNK_SHIFT)].duplicate();
+        chunk.position((int) (pos & CHUNK_MASK));
+        int amount = Math.min(chunk.remaining(), target.length - index);
+        chunk.get(target, index, amount);
+        index += amount;
+        pos += amount;
+      }
+    }
+
+    /** Copy the column to a primitive (or String) array. */
+    Object toArray() {
+      switch (type) {
+      case INT:
+      case CATEGORY: {
+        int[] outgoing = new int[count];
+        int row = 0;
+        while (row < count) {
+          ByteBuffer chunk = view(row, 4);
+          int amount = Math.min(chunk.remaining() >> 2, count - row);
+          chunk.asIntBuffer().get(outgoing, row, amount);
+          row += amount;
+        }
+        return outgoing;
+      }
+      case LONG: {
+        long[] outgoing = new long[count];
+        int row = 0;
+        while (row < count) {
+          ByteBuffer chunk = view(row, 8);
+          int amount = Math.min(chunk.remaining() >> 3, count - row);
+          chunk.asLongBuffer().get(outgoing, row, amount);
+          row += amount;
+        }
+        return outgoing;
+      }
+      case FLOAT: {
+        float[] outgoing = new float[count];
+        int row = 0;
+        while (row < count) {
+          ByteBuffer chunk = view(row, 4);
+          int amount = Math.min(chunk.remaining() >> 2, count - row);
+          chunk.asFloatBuffer().get(outgoing, row, amount);
+          row += amount;
+        }
+        return outgoing;
+      }
+      case DOUBLE: {
+        double[] outgoing = new double[count];
+        int row = 0;
+        while (row < count) {
+          ByteBuffer chunk = view(row, 8);
+          int amount = Math.min(chunk.remaining() >> 3, count - row);
+          chunk.asDoubleBuffer().get(outgoing, row, amount);
+          row += amount;
+        }
+        return outgoing;
+      }
+      default: {
+        String[] outgoing = new String[count];
+        for (int row = 0; row < count; row++) {
+          outgoing[row] = getString(row);
+        }
+        return outgoing;
+      }
+      }
+    }
+
+    /** Writable column in direct buffers, outside the Java heap. */
+    static BufferColumn allocate(int type, int count) {
+      BufferColumn column = new BufferColumn(new ByteBuffer[0], type, 0, 0, 0);
+      column.writable = true;
+      column.setCount(count);
+      return column;
+    }
+
+    /**
+     * Change the number of rows of a writable column. The last chunk
+     * doubles in size as needed, so adding rows a few at a time doesn't
+     * copy the whole column each time. New rows are zero, as in an array.
+     */
+    void setCount(int newCount) {
+      int size = size(type);
+      if (newCount < count) {
+        for (int row = newCount; row < count; row++) {
+          if (size == 4) {
+            putInt(row, 0);
+          } else {
+            putLong(row, 0);
+          }
+        }
+      }
+      long bytes = (long) newCount * size;
+      int full = (int) (bytes >>> CHUNK_SHIFT);
+      int needed = full + ((bytes & CHUNK_MASK) != 0 ? 1 : 0);
+      if (needed != chunks.length) {
+        chunks = Arrays.copyOf(chunks, needed);
+      }
+      for (int i = 0; i < needed; i++) {
+        long want = (i < full) ? (1L << CHUNK_SHIFT) : (bytes & CHUNK_MASK);
+        ByteBuffer chunk = chunks[i];
+        if (chunk == null || chunk.capacity() < want) {
+          long capacity = Math.max(1 << 12, Long.highestOneBit(want - 1) << 1);
+          ByteBuffer bigger =
+            ByteBuffer.allocateDirect((int) Math.min(capacity, 1L << CHUNK_SHIFT));
+          bigger.order(ByteOrder.LITTLE_ENDIAN);
+          if (chunk != null) {
+            ByteBuffer old = chunk.duplicate();
+            old.clear();
+            bigger.put(old);
+            bigger.clear();
+          }
+          chunks[i] = bigger;
+        }
+      }
+      count = newCount;
+    }
+
+    /** Writable copy of this column, in new direct buffers. */
+    BufferColumn copy() {
+      BufferColumn outgoing = allocate(type, count);
+      long length = (long) count * size(type);
+      byte[] temp = new byte[1 << 16];
+      for (long pos = 0; pos < length; pos += temp.length) {
+        if (length - pos < temp.length) {
+          temp = new byte[(int) (length - pos)];
+        }
+        get(chunks, offset + pos, temp);
+        put(outgoing.chunks, pos, temp);
+      }
+      return outgoing;
+    }
+
+    /**
+     * Move 'keep' rows starting at 'drop' to the start of this writable
+     * column, and drop everything after them.
+     */
+    void shift(int drop, int keep) {
+      int size = size(type);
+      long from = offset + (long) drop * size;
+      long length = (long) keep * size;
+      byte[] temp = new byte[1 << 16];
+      // the target is always before the source, so copy front to back
+      for (long pos = 0; pos < length; pos += temp.length) {
+        if (length - pos < temp.length) {
+          temp = new byte[(int) (length - pos)];
+        }
+        get(chunks, from + pos, temp);
+        put(chunks, offset + pos, temp);
+      }
+      setCount(keep);
+    }
+
+    void putInt(int row, int value) {
+      long pos = offset + ((long) row << 2);
+      chunks[(int) (pos >>> CHUNK_SHIFT)].putInt((int) (pos & CHUNK_MASK), value);
+    }
+
+    void putLong(int row, long value) {
+      long pos = offset + ((long) row << 3);
+      chunks[(int) (pos >>> CHUNK_SHIFT)].putLong((int) (pos & CHUNK_MASK), value);
+    }
+
+    void putFloat(int row, float value) {
+      long pos = offset + ((long) row << 2);
+      chunks[(int) (pos >>> CHUNK_SHIFT)].putFloat((int) (pos & CHUNK_MASK), value);
+    }
+
+    void putDouble(int row, double value) {
+      long pos = offset + ((long) row << 3);
+      chunks[(int) (pos >>> CHUNK_SHIFT)].putDouble((int) (pos & CHUNK_MASK), value);
+    }
+
+    /** Copy 'length' values from a primitive array into rows from 'row'. */
+    void put(int row, Object source, int length) {
+      int size = size(type);
+      int index = 0;
+      while (index < length) {
+        ByteBuffer chunk = view(row + index, size);
+        int amount = Math.min(chunk.remaining() / size, length - index);
+        switch (type) {
+        case INT:
+        case CATEGORY:
+          chunk.asIntBuffer().put((int[]) source, index, amount);
+          break;
+        case LONG:
+          chunk.asLongBuffer().put((long[]) source, index, amount);
+          break;
+        case FLOAT:
+          chunk.asFloatBuffer().put((float[]) source, index, amount);
+          break;
+        case DOUBLE:
+          chunk.asDoubleBuffer().put((double[]) source, index, amount);
+          break;
+        }
+        index += amount;
+      }
+    }
+
+    /** Copy bytes into chunks, the reverse of get(). */
+    static void put(ByteBuffer[] chunks, long pos, byte[] source) {
+      int index = 0;
+      while (index < source.length) {
+        ByteBuffer chunk = chunks[(int) (pos >>> CHUNK_SHIFT)].duplicate();
+        chunk.position((int) (pos & CHUNK_MASK));
+        int amount = Math.min(chunk.remaining(), source.length - index);
+        chunk.put(source, index, amount);
+        index += amount;
+        pos += amount;
+      }
+    }
+
+    /** Little endian view of the chunk holding this row, positioned there. */
+    private ByteBuffer view(int row, int size) {
+      long pos = offset + (long) row * size;
+      ByteBuffer chunk = chunks[(int) (pos >>> CHUNK_SHIFT)].duplicate();
+      chunk.order(ByteOrder.LITTLE_ENDIAN);
+      chunk.position((int) (pos & CHUNK_MASK));
+      return chunk;
+    }
+
+    static final Charset UTF8 = Charset.forName("UTF-8");
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * @webref table:method
+   * @brief Adds a new column to a table
+   * @see Table#removeColumn(String)
+   */
+  public void addColumn() {
+    addColumn(null, STRING);
+  }
+
+
+  /**
+   * @param title the title to be used for the new column
+   */
+  public void addColumn(String title) {
+    addColumn(title, STRING);
+  }
+
+
+  /**
+   * @param type the type to be used for the new column: INT, LONG, FLOAT, DOUBLE, STRING, or CATEGORY
+   */
+  public void addColumn(String title, int type) {
+    insertColumn(columns.length, title, type);
+  }
+
+
+  public void insertColumn(int index) {
+    insertColumn(index, null, STRING);
+  }
+
+
+  public void insertColumn(int index, String title) {
+    insertColumn(index, title, STRING);
+  }
+
+
+  public void insertColumn(int index, String title, int type) {
+    if (title != null && columnTitles == null) {
+      columnTitles = new String[columns.length];
+    }
+    if (columnTitles != null) {
+      columnTitles = PApplet.splice(columnTitles, title, index);
+      columnIndices = null;
+    }
+    columnTypes = PApplet.splice(columnTypes, type, index);
+
+//    columnCategories = (HashMapBlows[])
+//      PApplet.splice(columnCategories, new HashMapBlows(), index);
+    HashMapBlows[] catTemp = new HashMapBlows[columns.length + 1];
+    // Faster than arrayCopy for a dozen or so entries
+    for (int i = 0; i < index; i++) {
+      catTemp[i] = columnCategories[i];
+    }
+    catTemp[index] = new HashMapBlows();
+    for (int i = index; i < columns.length; i++) {
+      catTemp[i+1] = columnCategories[i];
+    }
+    columnCategories = catTemp;
+
+    if (indexes != null) {
+      ColumnIndex[] indexTemp = new ColumnIndex[columns.length + 1];
+      for (int i = 0; i < indexes.length; i++) {
+        indexTemp[i < index ? i : i+1] = indexes[i];
+      }
+      indexes = indexTemp;
+    }
+    if (stats != null) {
+      ColumnStats[] statsTemp = new ColumnStats[columns.length + 1];
+      for (int i = 0; i < stats.length; i++) {
+        statsTemp[i < index ? i : i+1] = stats[i];
+      }
+      stats = statsTemp;
+    }
+    if (shared != null) {
+      boolean[] sharedTemp = new boolean[columns.length + 1];
+      for (int i = 0; i < shared.length; i++) {
+        sharedTemp[i < index ? i : i+1] = shared[i];
+      }
+      shared = sharedTemp;
+    }
+
+    Object[] temp = new Object[columns.length + 1];
+    System.arraycopy(columns, 0, temp, 0, index);
+    System.arraycopy(columns, index, temp, index+1, columns.length - index);
+    columns = temp;
+
+    switch (type) {
+      case INT: columns[index] = new int[rowCount]; break;
+      case LONG: columns[index] = new long[rowCount]; break;
+      case FLOAT: columns[index] = new float[rowCount]; break;
+      case DOUBLE: columns[index] = new double[rowCount]; break;
+      case STRING: columns[index] = new String[rowCount]; break;
+      case CATEGORY: columns[index] = new int[rowCount]; break;
+    }
+  }
+
+ /**
+   * @webref table:method
+   * @brief Removes a column from a table
+   * @param columnName the title of the column to be removed
+   * @see Table#addColumn()
+   */
+  public void removeColumn(String columnName) {
+    removeColumn(getColumnIndex(columnName));
+  }
+
+ /**
+   * @param column the index number of the column to be removed
+   */
+  public void removeColumn(int column) {
+    int newCount = columns.length - 1;
+
+    Object[] columnsTemp = new Object[newCount];
+    HashMapBlows[] catTemp = new HashMapBlows[newCount];
+
+    for (int i = 0; i < column; i++) {
+      columnsTemp[i] = columns[i];
+      catTemp[i] = columnCategories[i];
+    }
+    for (int i = column; i < newCount; i++) {
+      columnsTemp[i] = columns[i+1];
+      catTemp[i] = columnCategories[i+1];
+    }
+
+    columns = columnsTemp;
+    columnCategories = catTemp;
+    columnTypes = PApplet.concat(PApplet.subset(columnTypes, 0, column),
+                                 PApplet.subset(columnTypes, column + 1));
+
+    if (indexes != null) {
+      ColumnIndex[] indexTemp = new ColumnIndex[newCount];
+      for (int i = 0; i < indexes.length; i++) {
+        if (i != column) {
+          indexTemp[i < column ? i : i-1] = indexes[i];
+        }
+      }
+      indexes = indexTemp;
+    }
+    if (stats != null) {
+      ColumnStats[] statsTemp = new ColumnStats[newCount];
+      for (int i = 0; i < stats.length; i++) {
+        if (i != column) {
+          statsTemp[i < column ? i : i-1] = stats[i];
+        }
+      }
+      stats = statsTemp;
+    }
+    if (shared != null) {
+      boolean[] sharedTemp = new boolean[newCount];
+      for (int i = 0; i < shared.length; i++) {
+        if (i != column) {
+          sharedTemp[i < column ? i : i-1] = shared[i];
+        }
+      }
+      shared = sharedTemp;
+    }
+
+    if (columnTitles != null) {
+      String[] titlesTemp = new String[newCount];
+      for (int i = 0; i < column; i++) {
+        titlesTemp[i] = columnTitles[i];
+      }
+      for (int i = column; i < newCount; i++) {
+        titlesTemp[i] = columnTitles[i+1];
+      }
+      columnTitles = titlesTemp;
+      columnIndices = null;
+    }
+  }
+
+  /**
+   * @webref table:method
+   * @brief Gets the number of columns in a table
+   * @see Table#getRowCount()
+   */
+  public int getColumnCount() {
+    return columns.length;
+  }
+
+
+  /**
+   * Change the number of columns in this table. Resizes all rows to ensure
+   * the same number of columns in each row. Entries in the additional (empty)
+   * columns will be set to null.
+   * @param newCount
+   */
+  public void setColumnCount(int newCount) {
+    int oldCount = columns.length;
+    if (oldCount != newCount) {
+      columns = (Object[]) PApplet.expand(columns, newCount);
+      // create new columns, default to String as the data type
+      for (int c = oldCount; c < newCount; c++) {
+        columns[c] = new String[rowCount];
+      }
+
+      if (columnTitles != null) {
+        columnTitles = PApplet.expand(columnTitles, newCount);
+      }
+      columnTypes = PApplet.expand(columnTypes, newCount);
+      columnCategories = (HashMapBlows[])
+        PApplet.expand(columnCategories, newCount);
+      if (indexes != null) {
+        indexes = (ColumnIndex[]) PApplet.expand(indexes, newCount);
+      }
+      if (stats != null) {
+        stats = (ColumnStats[]) PApplet.expand(stats, newCount);
+      }
+      if (shared != null) {
+        shared = PApplet.expand(shared, newCount);
+      }
+      if (dictionaryLimit != 0) {
+        for (int c = oldCount; c < newCount; c++) {
+          columns[c] = new int[rowCount];
+          columnTypes[c] = CATEGORY;
+          columnCategories[c] = new HashMapBlows(dictionaryLimit);
+        }
+      }
+    }
+  }
+
+
+  public void setColumnType(String columnName, String columnType) {
+    setColumnType(checkColumnIndex(columnName), columnType);
+  }
+
+
+  /**
+   * Set the data type for a column so that using it is more efficient.
+   * @param column the column to change
+   * @param columnType One of int, long, float, double, string, or category.
+   */
+  public void setColumnType(int column, String columnType) {
+    columnType = columnType.toLowerCase();
+    int type = -1;
+    if (columnType.equals("string")) {
+      type = STRING;
+    } else if (columnType.equals("int")) {
+      type = INT;
+    } else if (columnType.equals("long")) {
+      type = LONG;
+    } else if (columnType.equals("float")) {
+      type = FLOAT;
+    } else if (columnType.equals("double")) {
+      type = DOUBLE;
+    } else if (columnType.equals("category")) {
+      type = CATEGORY;
+    } else {
+      throw new IllegalArgumentException("'" + columnType + "' is not a valid column type.");
+    }
+    setColumnType(column, type);
+  }
+
+
+  public void setColumnType(String columnName, int newType) {
+    setColumnType(checkColumnIndex(columnName), newType);
+  }
+
+
+  /**
+   * Sets the column type. If data already exists, then it'll be converted to
+   * the new type.
+   * @param column the column whose type should be changed
+   * @param newType something fresh, maybe try an int or a float for size?
+   */
+  public void setColumnType(int column, int newType) {
+    invalidateIndex(column);
+    switch (newType) {
+      case INT: {
+        int[] intData = new int[rowCount];
+        for (int row = 0; row < rowCount; row++) {
+          String s = getString(row, column);
+          intData[row] = (s == null) ? missingInt : PApplet.parseInt(s, missingInt);
+        }
+        columns[column] = intData;
+        break;
+      }
+      case LONG: {
+        long[] longData = new long[rowCount];
+        for (int row = 0; row < rowCount; row++) {
+          String s = getString(row, column);
+          try {
+            longData[row] = (s == null) ? missingLong : Long.parseLong(s);
+          } catch (NumberFormatException nfe) {
+            longData[row] = missingLong;
+          }
+        }
+        columns[column] = longData;
+        break;
+      }
+      case FLOAT: {
+        float[] floatData = new float[rowCount];
+        for (int row = 0; row < rowCount; row++) {
+          String s = getString(row, column);
+          floatData[row] = (s == null) ? missingFloat : PApplet.parseFloat(s, missingFloat);
+        }
+        columns[column] = floatData;
+        break;
+      }
+      case DOUBLE: {
+        double[] doubleData = new double[rowCount];
+        for (int row = 0; row < rowCount; row++) {
+          String s = getString(row, column);
+          try {
+            doubleData[row] = (s == null) ? missingDouble : Double.parseDouble(s);
+          } catch (NumberFormatException nfe) {
+            doubleData[row] = missingDouble;
+          }
+        }
+        columns[column] = doubleData;
+        break;
+      }
+      case STRING: {
+        if (columnTypes[column] != STRING) {
+          String[] stringData = new String[rowCount];
+          for (int row = 0; row < rowCount; row++) {
+            stringData[row] = getString(row, column);
+          }
+          columns[column] = stringData;
+        }
+        break;
+      }
+      case CATEGORY: {
+        int[] indexData = new int[rowCount];
+        HashMapBlows categories = new HashMapBlows();
+        for (int row = 0; row < rowCount; row++) {
+          String s = getString(row, column);
+          indexData[row] = categories.index(s);
+        }
+        columnCategories[column] = categories;
+        columns[column] = indexData;
+        break;
+      }
+      default: {
+        throw new IllegalArgumentException("That's not a valid column type.");
+      }
+    }
+//    System.out.println("new type is " + newType);
+    columnTypes[column] = newType;
+  }
+
+
+  /**
+   * Set the entire table to a specific data type.
+   */
+  public void setTableType(String type) {
+    for (int col = 0; col < getColumnCount(); col++) {
+      setColumnType(col, type);
+    }
+  }
+
+
+  /**
+   * Save memory by storing each String column that has only a modest number
+   * of distinct values (65536 or fewer) as a dictionary of those values plus
+   * an int for each row. This is the same as the "compact" option when
+   * loading a table.
+   * <p>
+   * Compacted columns report CATEGORY as their type, but getString() and
+   * setString() work as before, and they sort alphabetically like Strings.
+   * Setting too many different values turns a column back into a String
+   * column.
+   */
+  public void compact() {
+    compact(DICTIONARY_LIMIT);
+  }
+
+
+  /**
+   * @param limit most distinct values a column can have and still be compacted
+   */
+  public void compact(final int limit) {
+    if (limit <= 0) {
+      return;
+    }
+    final int[][] indexData = new int[columns.length][];
+    final HashMapBlows[] categories = new HashMapBlows[columns.length];
+    List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+    for (int col = 0; col < columns.length; col++) {
+      if (columnTypes[col] == STRING) {
+        final int column = col;
+        tasks.add(new RecursiveAction() {
+          @Override
+          protected void compute() {
+            HashMapBlows dictionary = new HashMapBlows(limit);
+            int[] ids = new int[rowCount];
+            for (int row = 0; row < rowCount; row++) {
+              String value = getString(row, column);
+              if (dictionary.full() &&
+                  !dictionary.dataToIndex.containsKey(value)) {
+                return;  // too many different values, leave it alone
+              }
+              ids[row] = dictionary.index(value);
+            }
+            indexData[column] = ids;
+            categories[column] = dictionary;
+          }
+        });
+      }
+    }
+    runTasks(tasks);
+    for (int col = 0; col < columns.length; col++) {
+      if (indexData[col] != null) {
+        invalidateIndex(col);
+        columns[col] = indexData[col];
+        columnCategories[col] = categories[col];
+        columnTypes[col] = CATEGORY;
+      }
+    }
+  }
+
+
+  /** True if the column is a String column that was dictionary-encoded. */
+  protected boolean isCompacted(int column) {
+    return columnTypes[column] == CATEGORY &&
+      columnCategories[column] != null && columnCategories[column].limit != 0;
+  }
+
+
+  /** Turn a compacted column back into a plain String column. */
+  protected void uncompact(int column) {
+    setColumnType(column, STRING);
+    columnCategories[column] = new HashMapBlows();
+  }
+
+
+  /**
+   * Estimate how many bytes of memory are used by the data in this table:
+   * the columns, the Strings they hold, category dictionaries, indexes, and
+   * stats. Columns that are memory-mapped from a "tbl" file, or kept off
+   * the heap with setOffHeap(), aren't counted. A String that's used in several
+   * rows is counted each time.
+   */
+  public long memoryUsage() {
+    long total = 0;
+    for (int col = 0; col < columns.length; col++) {
+      Object data = columns[col];
+      if (data instanceof String[]) {
+        String[] stringData = (String[]) data;
+        total += arrayBytes(stringData.length, REFERENCE_BYTES);
+        for (String str : stringData) {
+          total += stringBytes(str);
+        }
+      } else if (data instanceof int[]) {
+        total += arrayBytes(((int[]) data).length, 4);
+      } else if (data instanceof long[]) {
+        total += arrayBytes(((long[]) data).length, 8);
+      } else if (data instanceof float[]) {
+        total += arrayBytes(((float[]) data).length, 4);
+      } else if (data instanceof double[]) {
+        total += arrayBytes(((double[]) data).length, 8);
+      }
+      if (columnTypes[col] == CATEGORY && columnCategories[col] != null) {
+        total += columnCategories[col].memoryUsage();
+      }
+    }
+    if (indexes != null) {
+      for (ColumnIndex index : indexes) {
+        if (index != null) {
+          total += index.memoryUsage();
+        }
+      }
+    }
+    if (stats != null) {
+      for (ColumnStats columnStats : stats) {
+        if (columnStats != null) {
+          total += columnStats.memoryUsage();
+        }
+      }
+    }
+    return total;
+  }
+
+
+  static long arrayBytes(long length, int size) {
+    return (ARRAY_HEADER + length * size + 7) & ~7L;
+  }
+
+
+  static long stringBytes(String str) {
+    return (str == null) ? 0 : STRING_BYTES + arrayBytes(str.length(), 2);
+  }
+
+
+  public void setColumnTypes(int[] types) {
+    ensureColumn(types.length - 1);
+    for (int col = 0; col < types.length; col++) {
+      setColumnType(col, types[col]);
+    }
+  }
+
+
+  /**
+   * Set the titles (and if a second column is present) the data types for
+   * this table based on a file loaded separately. This will look for the
+   * title in column 0, and the type in column 1. Better yet, specify a
+   * column named "title" and another named "type" in the dictionary table
+   * to future-proof the code.
+   * @param dictionary
+   */
+  public void setColumnTypes(final Table dictionary) {
+    ensureColumn(dictionary.getRowCount() - 1);
+    int titleCol = 0;
+    int typeCol = 1;
+    if (dictionary.hasColumnTitles()) {
+      titleCol = dictionary.getColumnIndex("title", true);
+      typeCol = dictionary.getColumnIndex("type", true);
+    }
+    setColumnTitles(dictionary.getStringColumn(titleCol));
+    final String[] typeNames = dictionary.getStringColumn(typeCol);
+
+    if (dictionary.getColumnCount() > 1) {
+      if (getRowCount() > 1000) {
+        // each column is converted separately, so split them across cores
+        List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+        for (int i = 0; i < dictionary.getRowCount(); i++) {
+          final int col = i;
+          tasks.add(new RecursiveAction() {
+            @Override
+            protected void compute() {
+              setColumnType(col, typeNames[col]);
+            }
+          });
+        }
+        runTasks(tasks);
+
+      } else {
+        for (int col = 0; col < dictionary.getRowCount(); col++) {
+//          setColumnType(i, dictionary.getString(i, typeCol));
+          setColumnType(col, typeNames[col]);
+        }
+      }
+    }
+  }
+
+
+  public int getColumnType(String columnName) {
+    return getColumnType(getColumnIndex(columnName));
+  }
+
+
+  /** Returns one of Table.STRING, Table.INT, etc... */
+  public int getColumnType(int column) {
+    return columnTypes[column];
+  }
+
+
+  public int[] getColumnTypes() {
+    return columnTypes;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Remove the first row from the data set, and use it as the column titles.
+   * Use loadTable("table.csv", "header") instead.
+   */
+  @Deprecated
+  public String[] removeTitleRow() {
+    String[] titles = getStringRow(0);
+    removeRow(0);
+    setColumnTitles(titles);
+    return titles;
+  }
+
+
+  public void setColumnTitles(String[] titles) {
+    if (titles != null) {
+      ensureColumn(titles.length - 1);
+    }
+    columnTitles = titles;
+    columnIndices = null;  // remove the cache
+  }
+
+
+  public void setColumnTitle(int column, String title) {
+    ensureColumn(column);
+    if (columnTitles == null) {
+      columnTitles = new String[getColumnCount()];
+    }
+    columnTitles[column] = title;
+    columnIndices = null;  // reset these fellas
+  }
+
+
+  public boolean hasColumnTitles() {
+    return columnTitles != null;
+  }
+
+
+  public String[] getColumnTitles() {
+    return columnTitles;
+  }
+
+
+  public String getColumnTitle(int col) {
+    return (columnTitles == null) ? null : columnTitles[col];
+  }
+
+
+  public int getColumnIndex(String columnName) {
+    return getColumnIndex(columnName, true);
+  }
+
+
+  /**
+   * Get the index of a column.
+   * @param name Name of the column.
+   * @param report Whether to throw an exception if the column wasn't found.
+   * @return index of the found column, or -1 if not found.
+   */
+  protected int getColumnIndex(String name, boolean report) {
+    if (columnTitles == null) {
+      if (report) {
+        throw new IllegalArgumentException("This table has no header, so no column titles are set.");
+      }
+      return -1;
+    }
+    // only create this on first get(). subsequent calls to set the title will
+    // also update this array, but only if it exists.
+    if (columnIndices == null) {
+      columnIndices = new HashMap<String, Integer>();
+      for (int col = 0; col < columns.length; col++) {
+        columnIndices.put(columnTitles[col], col);
+      }
+    }
+    Integer index = columnIndices.get(name);
+    if (index == null) {
+      if (report) {
+        // Throws an exception here because the name is known and therefore most useful.
+        // (Rather than waiting for it to fail inside, say, getInt())
+        throw new IllegalArgumentException("This table has no column named '" + name + "'");
+      }
+      return -1;
+    }
+    return index.intValue();
+  }
+
+
+  /**
+   * Same as getColumnIndex(), but creates the column if it doesn't exist.
+   * Named this way to not conflict with checkColumn(), an internal function
+   * used to ensure that a columns exists, and also to denote that it returns
+   * an int for the column index.
+   * @param title column title
+   * @return index of a new or previously existing column
+   */
+  public int checkColumnIndex(String title) {
+    int index = getColumnIndex(title, false);
+    if (index != -1) {
+      return index;
+    }
+    addColumn(title);
+    return getColumnCount() - 1;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+  /**
+   * @webref table:method
+   * @brief Gets the number of rows in a table
+   * @see Table#getColumnCount()
+   */
+  public int getRowCount() {
+    return rowCount;
+  }
+
+
+  public int lastRowIndex() {
+    return getRowCount() - 1;
+  }
+
+
+  /**
+   * @webref table:method
+   * @brief Removes all rows from a table
+   * @see Table#addRow()
+   * @see Table#removeRow(int)
+   */
+  public void clearRows() {
+    setRowCount(0);
+  }
+
+
+  public void setRowCount(int newCount) {
+    if (newCount != rowCount) {
+      if (newCount < rowCount) {
+        invalidateIndexes();
+      }
+      if (newCount > 1000000) {
+        System.out.print("Note: setting maximum row count to " + PApplet.nfc(newCount));
+      }
+      long t = System.currentTimeMillis();
+      for (int col = 0; col < columns.length; col++) {
+        if (offHeap && columnTypes[col] != STRING) {
+          offHeapColumn(col).setCount(newCount);
+          continue;
+        }
+        ensureWritable(col);
+        switch (columnTypes[col]) {
+          case INT: columns[col] = PApplet.expand((int[]) columns[col], newCount); break;
+          case LONG: columns[col] = PApplet.expand((long[]) columns[col], newCount); break;
+          case FLOAT: columns[col] = PApplet.expand((float[]) columns[col], newCount); break;
+          case DOUBLE: columns[col] = PApplet.expand((double[]) columns[col], newCount); break;
+          case STRING: columns[col] = PApplet.expand((String[]) columns[col], newCount); break;
+          case CATEGORY: columns[col] = PApplet.expand((int[]) columns[col], newCount); break;
+        }
+      }
+      if (newCount > 1000000) {
+        int ms = (int) (System.currentTimeMillis() - t);
+        System.out.println(" (resize took " + PApplet.nfc(ms) + " ms)");
+      }
+    }
+    rowCount = newCount;
+  }
+
+
+ /**
+   * @webref table:method
+   * @brief Adds a row to a table
+   * @see Table#removeRow(int)
+   * @see Table#clearRows()
+   */
+  public TableRow addRow() {
+    //if (rowIncrement == 0) {
+    setRowCount(rowCount + 1);
+    return new RowPointer(this, rowCount - 1);
+  }
+
+
+ /**
+   * @param source a reference to the original row to be duplicated
+   */
+  public TableRow addRow(TableRow source) {
+    return setRow(rowCount, source);
+  }
+
+
+  public TableRow setRow(int row, TableRow source) {
+    // Make sure there are enough columns to add this data
+    ensureBounds(row, source.getColumnCount() - 1);
+
+    for (int col = 0; col < columns.length; col++) {
+      switch (columnTypes[col]) {
+      case INT:
+        setInt(row, col, source.getInt(col));
+        break;
+      case LONG:
+        setLong(row, col, source.getLong(col));
+        break;
+      case FLOAT:
+        setFloat(row, col, source.getFloat(col));
+        break;
+      case DOUBLE:
+        setDouble(row, col, source.getDouble(col));
+        break;
+      case STRING:
+        setString(row, col, source.getString(col));
+        break;
+      case CATEGORY:
+        int index = source.getInt(col);
+        setInt(row, col, index);
+        if (!columnCategories[col].hasCategory(index)) {
+          columnCategories[col].setCategory(index, source.getString(col));
+        }
+        break;
+
+      default:
+        throw new RuntimeException("no types");
+      }
+    }
+    return new RowPointer(this, row);
+  }
+
+
+ /**
+   * @nowebref
+   */
+  public TableRow addRow(Object[] columnData) {
+    setRow(getRowCount(), columnData);
+    return new RowPointer(this, rowCount - 1);
+  }
+
+
+  public void addRows(Table source) {
+    int index = getRowCount();
+    setRowCount(index + source.getRowCount());
+    for (TableRow row : source.rows()) {
+      setRow(index++, row);
+    }
+  }
+
+
+  public void insertRow(int insert, Object[] columnData) {
+    ensureWritable();
+    invalidateIndexes();
+    for (int col = 0; col < columns.length; col++) {
+      switch (columnTypes[col]) {
+        case CATEGORY:
+        case INT: {
+          int[] intTemp = new int[rowCount+1];
+          System.arraycopy(columns[col], 0, intTemp, 0, insert);
+          System.arraycopy(columns[col], insert, intTemp, insert+1, rowCount - insert);
+          columns[col] = intTemp;
+          break;
+        }
+        case LONG: {
+          long[] longTemp = new long[rowCount+1];
+          System.arraycopy(columns[col], 0, longTemp, 0, insert);
+          System.arraycopy(columns[col], insert, longTemp, insert+1, rowCount - insert);
+          columns[col] = longTemp;
+          break;
+        }
+        case FLOAT: {
+          float[] floatTemp = new float[rowCount+1];
+          System.arraycopy(columns[col], 0, floatTemp, 0, insert);
+          System.arraycopy(columns[col], insert, floatTemp, insert+1, rowCount - insert);
+          columns[col] = floatTemp;
+          break;
+        }
+        case DOUBLE: {
+          double[] doubleTemp = new double[rowCount+1];
+          System.arraycopy(columns[col], 0, doubleTemp, 0, insert);
+          System.arraycopy(columns[col], insert, doubleTemp, insert+1, rowCount - insert);
+          columns[col] = doubleTemp;
+          break;
+        }
+        case STRING: {
+          String[] stringTemp = new String[rowCount+1];
+          System.arraycopy(columns[col], 0, stringTemp, 0, insert);
+          System.arraycopy(columns[col], insert, stringTemp, insert+1, rowCount - insert);
+          columns[col] = stringTemp;
+          break;
+        }
+      }
+    }
+    setRow(insert, columnData);
+    rowCount++;
+  }
+
+  /**
+   * @webref table:method
+   * @brief Removes a row from a table
+   * @param row ID number of the row to remove
+   * @see Table#addRow()
+   * @see Table#clearRows()
+   */
+  public void removeRow(int row) {
+    ensureWritable();
+    invalidateIndexes();
+    for (int col = 0; col < columns.length; col++) {
+      switch (columnTypes[col]) {
+        case CATEGORY:
+        case INT: {
+          int[] intTemp = new int[rowCount-1];
+//          int[] intData = (int[]) columns[col];
+//          System.arraycopy(intData, 0, intTemp, 0, dead);
+//          System.arraycopy(intData, dead+1, intTemp, dead, (rowCount - dead) + 1);
+          System.arraycopy(columns[col], 0, intTemp, 0, row);
+          System.arraycopy(columns[col], row+1, intTemp, row, (rowCount - row) - 1);
+          columns[col] = intTemp;
+          break;
+        }
+        case LONG: {
+          long[] longTemp = new long[rowCount-1];
+//          long[] longData = (long[]) columns[col];
+//          System.arraycopy(longData, 0, longTemp, 0, dead);
+//          System.arraycopy(longData, dead+1, longTemp, dead, (rowCount - dead) + 1);
+          System.arraycopy(columns[col], 0, longTemp, 0, row);
+          System.arraycopy(columns[col], row+1, longTemp, row, (rowCount - row) - 1);
+          columns[col] = longTemp;
+          break;
+        }
+        case FLOAT: {
+          float[] floatTemp = new float[rowCount-1];
+//          float[] floatData = (float[]) columns[col];
+//          System.arraycopy(floatData, 0, floatTemp, 0, dead);
+//          System.arraycopy(floatData, dead+1, floatTemp, dead, (rowCount - dead) + 1);
+          System.arraycopy(columns[col], 0, floatTemp, 0, row);
+          System.arraycopy(columns[col], row+1, floatTemp, row, (rowCount - row) - 1);
+          columns[col] = floatTemp;
+          break;
+        }
+        case DOUBLE: {
+          double[] doubleTemp = new double[rowCount-1];
+//          double[] doubleData = (double[]) columns[col];
+//          System.arraycopy(doubleData, 0, doubleTemp, 0, dead);
+//          System.arraycopy(doubleData, dead+1, doubleTemp, dead, (rowCount - dead) + 1);
+          System.arraycopy(columns[col], 0, doubleTemp, 0, row);
+          System.arraycopy(columns[col], row+1, doubleTemp, row, (rowCount - row) - 1);
+          columns[col] = doubleTemp;
+          break;
+        }
+        case STRING: {
+          String[] stringTemp = new String[rowCount-1];
+          System.arraycopy(columns[col], 0, stringTemp, 0, row);
+          System.arraycopy(columns[col], row+1, stringTemp, row, (rowCount - row) - 1);
+          columns[col] = stringTemp;
+        }
+      }
+    }
+    rowCount--;
+  }
+
+
+  /*
+  public void setRow(int row, String[] pieces) {
+    checkSize(row, pieces.length - 1);
+    // pieces.length may be less than columns.length, so loop over pieces
+    for (int col = 0; col < pieces.length; col++) {
+      setRowCol(row, col, pieces[col]);
+    }
+  }
+
+
+  protected void setRowCol(int row, int col, String piece) {
+    switch (columnTypes[col]) {
+    case STRING:
+      String[] stringData = (String[]) columns[col];
+      stringData[row] = piece;
+      break;
+    case INT:
+      int[] intData = (int[]) columns[col];
+      intData[row] = PApplet.parseInt(piece, missingInt);
+      break;
+    case LONG:
+      long[] longData = (long[]) columns[col];
+      try {
+        longData[row] = Long.parseLong(piece);
+      } catch (NumberFormatException nfe) {
+        longData[row] = missingLong;
+      }
+      break;
+    case FLOAT:
+      float[] floatData = (float[]) columns[col];
+      floatData[row] = PApplet.parseFloat(piece, missingFloat);
+      break;
+    case DOUBLE:
+      double[] doubleData = (double[]) columns[col];
+      try {
+        doubleData[row] = Double.parseDouble(piece);
+      } catch (NumberFormatException nfe) {
+        doubleData[row] = missingDouble;
+      }
+      break;
+    case CATEGORY:
+      int[] indexData = (int[]) columns[col];
+      indexData[row] = columnCategories[col].index(piece);
+      break;
+    default:
+      throw new IllegalArgumentException("That's not a valid column type.");
+    }
+  }
+  */
+
+
+  public void setRow(int row, Object[] pieces) {
+    ensureBounds(row, pieces.length - 1);
+    // pieces.length may be less than columns.length, so loop over pieces
+    for (int col = 0; col < pieces.length; col++) {
+      setRowCol(row, col, pieces[col]);
+    }
+  }
+
+
+  protected void setRowCol(int row, int col, Object piece) {
+    ensureSettable(col);
+    switch (columnTypes[col]) {
+      case STRING:
+        String[] stringData = (String[]) columns[col];
+        if (piece == null) {
+          stringData[row] = null;
+//        } else if (piece instanceof String) {
+//          stringData[row] = (String) piece;
+        } else {
+          // Calls toString() on the object, which is 'return this' for String
+          stringData[row] = String.valueOf(piece);
+        }
+        break;
+      case INT:
+        //intData[row] = PApplet.parseInt(piece, missingInt);
+        if (piece == null) {
+          putInt(col, row, missingInt);
+        } else if (piece instanceof Integer) {
+          putInt(col, row, (Integer) piece);
+        } else {
+          putInt(col, row, PApplet.parseInt(String.valueOf(piece), missingInt));
+        }
+        break;
+      case LONG:
+        if (piece == null) {
+          putLong(col, row, missingLong);
+        } else if (piece instanceof Long) {
+          putLong(col, row, (Long) piece);
+        } else {
+          try {
+            putLong(col, row, Long.parseLong(String.valueOf(piece)));
+          } catch (NumberFormatException nfe) {
+            putLong(col, row, missingLong);
+          }
+        }
+        break;
+      case FLOAT:
+        if (piece == null) {
+          putFloat(col, row, missingFloat);
+        } else if (piece instanceof Float) {
+          putFloat(col, row, (Float) piece);
+        } else {
+          putFloat(col, row, PApplet.parseFloat(String.valueOf(piece), missingFloat));
+        }
+        break;
+      case DOUBLE:
+        if (piece == null) {
+          putDouble(col, row, missingDouble);
+        } else if (piece instanceof Double) {
+          putDouble(col, row, (Double) piece);
+        } else {
+          try {
+            putDouble(col, row, Double.parseDouble(String.valueOf(piece)));
+          } catch (NumberFormatException nfe) {
+            putDouble(col, row, missingDouble);
+          }
+        }
+        break;
+      case CATEGORY:
+        setCategory(row, col, (piece == null) ? null : String.valueOf(piece));
+        break;
+      default:
+        throw new IllegalArgumentException("That's not a valid column type.");
+    }
+    if (indexes != null || stats != null) {
+      updateIndex(row, col);
+    }
+  }
+
+
+  /**
+   * Store a String in a CATEGORY column, adding it to the column's categories
+   * if it's new. A column from compact() goes back to being a String column
+   * once it has too many distinct values.
+   */
+  protected void setCategory(int row, int col, String value) {
+    HashMapBlows categories = columnCategories[col];
+    if (categories.limit == 0) {
+      if (value == null || value.equals(missingString)) {
+        putInt(col, row, missingCategory);
+      } else {
+        putInt(col, row, categories.index(value));
+      }
+    } else if (!categories.full() ||
+               categories.dataToIndex.containsKey(value)) {
+      putInt(col, row, categories.index(value));
+    } else {
+      uncompact(col);
+      String[] stringData = (String[]) columns[col];
+      stringData[row] = value;
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+  /**
+   * @webref table:method
+   * @brief Gets a row from a table
+   * @param row ID number of the row to get
+   * @see Table#rows()
+   * @see Table#findRow(String, int)
+   * @see Table#findRows(String, int)
+   * @see Table#matchRow(String, int)
+   * @see Table#matchRows(String, int)
+   */
+  public TableRow getRow(int row) {
+    return new RowPointer(this, row);
+  }
+
+
+  /**
+   * Note that this one iterator instance is shared by any calls to iterate
+   * the rows of this table. This is very efficient, but not thread-safe.
+   * If you want to iterate in a multi-threaded manner, don't use the iterator.
+   *
+   * @webref table:method
+   * @brief Gets multiple rows from a table
+   * @see Table#getRow(int)
+   * @see Table#findRow(String, int)
+   * @see Table#findRows(String, int)
+   * @see Table#matchRow(String, int)
+   * @see Table#matchRows(String, int)
+   */
+  public Iterable<TableRow> rows() {
+    return new Iterable<TableRow>() {
+      public Iterator<TableRow> iterator() {
+        if (rowIterator == null) {
+          rowIterator = new RowIterator(Table.this);
+        } else {
+          rowIterator.reset();
+        }
+        return rowIterator;
+      }
+    };
+  }
+
+  /**
+   * @nowebref
+   */
+  public Iterable<TableRow> rows(final int[] indices) {
+    return new Iterable<TableRow>() {
+      public Iterator<TableRow> iterator() {
+        return new RowIndexIterator(Table.this, indices);
+      }
+    };
+  }
+
+
+  /**
+   * A view of all the rows in this table, which can be narrowed down with
+   * filter() without copying any of the data.
+   */
+  public TableView view() {
+    return new TableView(this);
+  }
+
+
+  /**
+   * A view of just these rows, in this order.
+   */
+  public TableView view(int[] indices) {
+    return new TableView(this, indices);
+  }
+
+
+  /**
+   * The rows that pass the filter, as a view rather than a copy.
+   */
+  public TableView filter(TableView.Filter filter) {
+    return view().filter(filter);
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  static class RowPointer implements TableRow {
+    Table table;
+    int row;
+
+    public RowPointer(Table table, int row) {
+      this.table = table;
+      this.row = row;
+    }
+
+    public void setRow(int row) {
+      this.row = row;
+    }
+
+    public String getString(int column) {
+      return table.getString(row, column);
+    }
+
+    public String getString(String columnName) {
+      return table.getString(row, columnName);
+    }
+
+    public int getInt(int column) {
+      return table.getInt(row, column);
+    }
+
+    public int getInt(String columnName) {
+      return table.getInt(row, columnName);
+    }
+
+    public long getLong(int column) {
+      return table.getLong(row, column);
+    }
+
+    public long getLong(String columnName) {
+      return table.getLong(row, columnName);
+    }
+
+    public float getFloat(int column) {
+      return table.getFloat(row, column);
+    }
+
+    public float getFloat(String columnName) {
+      return table.getFloat(row, columnName);
+    }
+
+    public double getDouble(int column) {
+      return table.getDouble(row, column);
+    }
+
+    public double getDouble(String columnName) {
+      return table.getDouble(row, columnName);
+    }
+
+    public void setString(int column, String value) {
+      table.setString(row, column, value);
+    }
+
+    public void setString(String columnName, String value) {
+      table.setString(row, columnName, value);
+    }
+
+    public void setInt(int column, int value) {
+      table.setInt(row, column, value);
+    }
+
+    public void setInt(String columnName, int value) {
+      table.setInt(row, columnName, value);
+    }
+
+    public void setLong(int column, long value) {
+      table.setLong(row, column, value);
+    }
+
+    public void setLong(String columnName, long value) {
+      table.setLong(row, columnName, value);
+    }
+
+    public void setFloat(int column, float value) {
+      table.setFloat(row, column, value);
+    }
+
+    public void setFloat(String columnName, float value) {
+      table.setFloat(row, columnName, value);
+    }
+
+    public void setDouble(int column, double value) {
+      table.setDouble(row, column, value);
+    }
+
+    public void setDouble(String columnName, double value) {
+      table.setDouble(row, columnName, value);
+    }
+
+    public int getColumnCount() {
+      return table.getColumnCount();
+    }
+
+    public int getColumnType(String columnName) {
+      return table.getColumnType(columnName);
+    }
+
+    public int getColumnType(int column) {
+      return table.getColumnType(column);
+    }
+
+    public int[] getColumnTypes() {
+      return table.getColumnTypes();
+    }
+
+    public String getColumnTitle(int column) {
+      return table.getColumnTitle(column);
+    }
+
+    public String[] getColumnTitles() {
+      return table.getColumnTitles();
+    }
+  }
+
+
+  static class RowIterator implements Iterator<TableRow> {
+    Table table;
+    RowPointer rp;
+    int row;
+
+    public RowIterator(Table table) {
+      this.table = table;
+      row = -1;
+      rp = new RowPointer(table, row);
+    }
+
+    public void remove() {
+      table.removeRow(row);
+    }
+
+    public TableRow next() {
+      rp.setRow(++row);
+      return rp;
+    }
+
+    public boolean hasNext() {
+      return row+1 < table.getRowCount();
+    }
+
+    public void reset() {
+      row = -1;
+    }
+  }
+
+
+  static class RowIndexIterator implements Iterator<TableRow> {
+    Table table;
+    RowPointer rp;
+    int[] indices;
+    int index;
+
+    public RowIndexIterator(Table table, int[] indices) {
+      this.table = table;
+      this.indices = indices;
+      index = -1;
+      // just set to something arbitrary
+      rp = new RowPointer(table, -1);
+    }
+
+    public void remove() {
+      table.removeRow(indices[index]);
+    }
+
+    public TableRow next() {
+      rp.setRow(indices[++index]);
+      return rp;
+    }
+
+    public boolean hasNext() {
+      //return row+1 < table.getRowCount();
+      return index + 1 < indices.length;
+    }
+
+    public void reset() {
+      index = -1;
+    }
+  }
+
+
+  /**
+   * Reads rows from a CSV or TSV file one at a time. Only a single row is
+   * held in memory: the same TableRow is returned by each call to next(),
+   * so copy out anything that needs to be kept before moving on. The stream
+   * is closed automatically once the last row has been read, otherwise call
+   * close() when finished.
+   */
+  static public class RowStream implements Iterable<TableRow>, Iterator<TableRow>, Closeable {
+    Table table;  // holds only the current row
+    RowPointer rp;
+    BufferedReader reader;
+    boolean tsv;
+    boolean awfulCSV;
+    String record;  // next record to be parsed, or null if not yet read
+    LinkedList<String> sample;  // records already read to infer types
+    int row;
+
+    RowStream(Table table, InputStream input, String options) throws IOException {
+      this.table = table;
+
+      boolean header = false;
+      String extension = null;
+      int inferCount = 0;
+      if (options != null) {
+        for (String opt : PApplet.trim(PApplet.split(options, ','))) {
+          if (opt.equals("tsv")) {
+            extension = "tsv";
+          } else if (opt.equals("csv")) {
+            extension = "csv";
+          } else if (opt.equals("newlines")) {
+            awfulCSV = true;
+            extension = "csv";
+          } else if (opt.equals("header")) {
+            header = true;
+          } else if (opt.equals("parallel") || opt.equals("offheap") ||
+                     opt.equals("compact") || opt.startsWith("compact=")) {
+            // ignored, rows are read one at a time
+          } else if (opt.equals("infer")) {
+            inferCount = INFER_COUNT;
+          } else if (opt.startsWith("infer=")) {
+            inferCount = PApplet.parseInt(opt.substring(6), INFER_COUNT);
+          } else if (opt.startsWith("dictionary=")) {
+            // ignore option, this is only handled by PApplet
+          } else if (opt.equals("ods") || opt.equals("bin") || opt.equals("tbl")) {
+            throw new IllegalArgumentException("'" + opt + "' files cannot be streamed, use loadTable() instead");
+          } else {
+            throw new IllegalArgumentException("'" + opt + "' is not a valid option for loading a Table");
+          }
+        }
+      }
+      if (extension == null) {
+        throw new IllegalArgumentException("No extension specified for this Table");
+      }
+      tsv = extension.equals("tsv");
+
+      reader = PApplet.createReader(input);
+      if (header) {
+        String line = readRecord(reader, awfulCSV);
+        if (line != null) {
+          table.setColumnTitles(splitLine(line, tsv));
+        }
+      }
+      if (inferCount > 0) {
+        // hang onto the sample, it's handed out before reading any further
+        sample = new LinkedList<String>();
+        String line = null;
+        while (sample.size() < inferCount &&
+               (line = readRecord(reader, awfulCSV)) != null) {
+          sample.add(line);
+        }
+        table.inferColumnTypes(sample, tsv);
+      }
+      table.setRowCount(1);
+      rp = new RowPointer(table, 0);
+    }
+
+    public Iterator<TableRow> iterator() {
+      return this;
+    }
+
+    public boolean hasNext() {
+      if (record == null && sample != null && !sample.isEmpty()) {
+        record = sample.removeFirst();
+      }
+      if (record == null && reader != null) {
+        try {
+          record = readRecord(reader, awfulCSV);
+        } catch (IOException e) {
+          throw new RuntimeException("Error reading table on line " + row, e);
+        }
+        if (record == null) {
+          close();
+        }
+      }
+      return record != null;
+    }
+
+    public TableRow next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      int count = table.parseLine(0, record, tsv);
+      record = null;
+      // clear out anything left over from a longer row
+      for (int col = count; col < table.getColumnCount(); col++) {
+        table.setRowCol(0, col, null);
+      }
+      row++;
+      return rp;
+    }
+
+    public void remove() {
+      throw new UnsupportedOperationException("remove() not supported");
+    }
+
+    /** Number of rows read so far. */
+    public int getRowCount() {
+      return row;
+    }
+
+    public int getColumnCount() {
+      return table.getColumnCount();
+    }
+
+    public String[] getColumnTitles() {
+      return table.getColumnTitles();
+    }
+
+    public int[] getColumnTypes() {
+      return table.getColumnTypes();
+    }
+
+    public void close() {
+      if (reader != null) {
+        try {
+          reader.close();
+        } catch (IOException e) {
+          e.printStackTrace();
+        }
+        reader = null;
+      }
+    }
+  }
+
+
+  /*
+  static public Iterator<TableRow> createIterator(final ResultSet rs) {
+    return new Iterator<TableRow>() {
+      boolean already;
+
+      public boolean hasNext() {
+        already = true;
+        try {
+          return rs.next();
+        } catch (SQLException e) {
+          throw new RuntimeException(e);
+        }
+      }
+
+
+      public TableRow next() {
+        if (!already) {
+          try {
+            rs.next();
+          } catch (SQLException e) {
+            throw new RuntimeException(e);
+          }
+        } else {
+          already = false;
+        }
+
+        return new TableRow() {
+          public double getDouble(int column) {
+            try {
+              return rs.getDouble(column);
+            } catch (SQLException e) {
+              throw new RuntimeException(e);
+            }
+          }
+
+          public double getDouble(String columnName) {
+            try {
+              return rs.getDouble(columnName);
+            } catch (SQLException e) {
+              throw new RuntimeException(e);
+            }
+          }
+
+          public float getFloat(int column) {
+            try {
+              return rs.getFloat(column);
+            } catch (SQLException e) {
+              throw new RuntimeException(e);
+            }
+          }
+
+          public float getFloat(String columnName) {
+            try {
+              return rs.getFloat(columnName);
+            } catch (SQLException e) {
+              throw new RuntimeException(e);
+            }
+          }
+
+          public int getInt(int column) {
+            try {
+              return rs.getInt(column);
+            } catch (SQLException e) {
+              throw new RuntimeException(e);
+            }
+          }
+
+          public int getInt(String columnName) {
+            try {
+              return rs.getInt(columnName);
+            } catch (SQLException e) {
+              throw new RuntimeException(e);
+            }
+          }
+
+          public long getLong(int column) {
+            try {
+              return rs.getLong(column);
+            } catch (SQLException e) {
+              throw new RuntimeException(e);
+            }
+          }
+
+          public long getLong(String columnName) {
+            try {
+              return rs.getLong(columnName);
+            } catch (SQLException e) {
+              throw new RuntimeException(e);
+            }
+          }
+
+          public String getString(int column) {
+            try {
+              return rs.getString(column);
+            } catch (SQLException e) {
+              throw new RuntimeException(e);
+            }
+          }
+
+          public String getString(String columnName) {
+            try {
+              return rs.getString(columnName);
+            } catch (SQLException e) {
+              throw new RuntimeException(e);
+            }
+          }
+
+          public void setString(int column, String value) { immutable(); }
+          public void setString(String columnName, String value) { immutable(); }
+          public void setInt(int column, int value) { immutable(); }
+          public void setInt(String columnName, int value) { immutable(); }
+          public void setLong(int column, long value) { immutable(); }
+          public void setLong(String columnName, long value) { immutable(); }
+          public void setFloat(int column, float value) { immutable(); }
+          public void setFloat(String columnName, float value) { immutable(); }
+          public void setDouble(int column, double value) { immutable(); }
+          public void setDouble(String columnName, double value) { immutable(); }
+
+          private void immutable() {
+            throw new IllegalArgumentException("This TableRow cannot be modified.");
+          }
+
+          public int getColumnCount() {
+            try {
+              return rs.getMetaData().getColumnCount();
+            } catch (SQLException e) {
+              e.printStackTrace();
+              return -1;
+            }
+          }
+
+
+          public int getColumnType(String columnName) {
+            // unimplemented
+          }
+
+
+          public int getColumnType(int column) {
+            // unimplemented
+          }
+
+        };
+      }
+
+      public void remove() {
+        throw new IllegalArgumentException("remove() not supported");
+      }
+    };
+  }
+  */
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * @webref table:method
+   * @brief Get an integer value from the specified row and column
+   * @param row ID number of the row to reference
+   * @param column ID number of the column to reference
+   * @see Table#getFloat(int, int)
+   * @see Table#getString(int, int)
+   * @see Table#getStringColumn(String)
+   * @see Table#setInt(int, int, int)
+   * @see Table#setFloat(int, int, float)
+   * @see Table#setString(int, int, String)
+   */
+  public int getInt(int row, int column) {
+    checkBounds(row, column);
+    if (columnTypes[column] == INT ||
+        columnTypes[column] == CATEGORY) {
+      Object data = columns[column];
+      if (data instanceof BufferColumn) {
+        return ((BufferColumn) data).getInt(row);
+      }
+      return ((int[]) data)[row];
+    }
+    String str = getString(row, column);
+    return (str == null || str.equals(missingString)) ?
+      missingInt : PApplet.parseInt(str, missingInt);
+  }
+
+  /**
+   * @param columnName title of the column to reference
+   */
+  public int getInt(int row, String columnName) {
+    return getInt(row, getColumnIndex(columnName));
+  }
+
+
+  public void setMissingInt(int value) {
+    missingInt = value;
+  }
+
+
+  /**
+   * @webref table:method
+   * @brief Store an integer value in the specified row and column
+   * @param row ID number of the target row
+   * @param column ID number of the target column
+   * @param value value to assign
+   * @see Table#setFloat(int, int, float)
+   * @see Table#setString(int, int, String)
+   * @see Table#getInt(int, int)
+   * @see Table#getFloat(int, int)
+   * @see Table#getString(int, int)
+   * @see Table#getStringColumn(String)
+   */
+  public void setInt(int row, int column, int value) {
+    if (columnTypes[column] == STRING) {
+      setString(row, column, String.valueOf(value));
+
+    } else {
+      ensureBounds(row, column);
+      if (columnTypes[column] != INT &&
+          columnTypes[column] != CATEGORY) {
+        throw new IllegalArgumentException("Column " + column + " is not an int column.");
+      }
+      ensureSettable(column);
+      putInt(column, row, value);
+      if (indexes != null || stats != null) {
+        updateIndex(row, column);
+      }
+    }
+  }
+
+  /**
+   * @param columnName title of the target column
+   */
+  public void setInt(int row, String columnName, int value) {
+    setInt(row, getColumnIndex(columnName), value);
+  }
+
+
+
+  public int[] getIntColumn(String name) {
+    int col = getColumnIndex(name);
+    return (col == -1) ? null : getIntColumn(col);
+  }
+
+
+  public int[] getIntColumn(int col) {
+    int[] outgoing = new int[rowCount];
+    for (int row = 0; row < rowCount; row++) {
+      outgoing[row] = getInt(row, col);
+    }
+    return outgoing;
+  }
+
+
+  public int[] getIntRow(int row) {
+    int[] outgoing = new int[columns.length];
+    for (int col = 0; col < columns.length; col++) {
+      outgoing[col] = getInt(row, col);
+    }
+    return outgoing;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  public long getLong(int row, int column) {
+    checkBounds(row, column);
+    if (columnTypes[column] == LONG) {
+      Object data = columns[column];
+      if (data instanceof BufferColumn) {
+        return ((BufferColumn) data).getLong(row);
+      }
+      return ((long[]) data)[row];
+    }
+    String str = getString(row, column);
+    if (str == null || str.equals(missingString)) {
+      return missingLong;
+    }
+    try {
+      return Long.parseLong(str);
+    } catch (NumberFormatException nfe) {
+      return missingLong;
+    }
+  }
+
+
+  public long getLong(int row, String columnName) {
+    return getLong(row, getColumnIndex(columnName));
+  }
+
+
+  public void setMissingLong(long value) {
+    missingLong = value;
+  }
+
+
+  public void setLong(int row, int column, long value) {
+    if (columnTypes[column] == STRING) {
+      setString(row, column, String.valueOf(value));
+
+    } else {
+      ensureBounds(row, column);
+      if (columnTypes[column] != LONG) {
+        throw new IllegalArgumentException("Column " + column + " is not a 'long' column.");
+      }
+      ensureSettable(column);
+      putLong(column, row, value);
+      if (indexes != null || stats != null) {
+        updateIndex(row, column);
+      }
+    }
+  }
+
+
+  public void setLong(int row, String columnName, long value) {
+    setLong(row, getColumnIndex(columnName), value);
+  }
+
+
+  public long[] getLongColumn(String name) {
+    int col = getColumnIndex(name);
+    return (col == -1) ? null : getLongColumn(col);
+  }
+
+
+  public long[] getLongColumn(int col) {
+    long[] outgoing = new long[rowCount];
+    for (int row = 0; row < rowCount; row++) {
+      outgoing[row] = getLong(row, col);
+    }
+    return outgoing;
+  }
+
+
+  public long[] getLongRow(int row) {
+    long[] outgoing = new long[columns.length];
+    for (int col = 0; col < columns.length; col++) {
+      outgoing[col] = getLong(row, col);
+    }
+    return outgoing;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Get a float value from the specified row and column. If the value is null
+   * or not parseable as a float, the "missing" value is returned. By default,
+   * this is Float.NaN, but can be controlled with setMissingFloat().
+   *
+   * @webref table:method
+   * @brief Get a float value from the specified row and column
+   * @param row ID number of the row to reference
+   * @param column ID number of the column to reference
+   * @see Table#getInt(int, int)
+   * @see Table#getString(int, int)
+   * @see Table#getStringColumn(String)
+   * @see Table#setInt(int, int, int)
+   * @see Table#setFloat(int, int, float)
+   * @see Table#setString(int, int, String)
+   */
+  public float getFloat(int row, int column) {
+    checkBounds(row, column);
+    if (columnTypes[column] == FLOAT) {
+      Object data = columns[column];
+      if (data instanceof BufferColumn) {
+        return ((BufferColumn) data).getFloat(row);
+      }
+      return ((float[]) data)[row];
+    }
+    String str = getString(row, column);
+    if (str == null || str.equals(missingString)) {
+      return missingFloat;
+    }
+    return PApplet.parseFloat(str, missingFloat);
+  }
+
+  /**
+   * @param columnName title of the column to reference
+   */
+  public float getFloat(int row, String columnName) {
+    return getFloat(row, getColumnIndex(columnName));
+  }
+
+
+  public void setMissingFloat(float value) {
+    missingFloat = value;
+  }
+
+
+  /**
+   * @webref table:method
+   * @brief Store a float value in the specified row and column
+   * @param row ID number of the target row
+   * @param column ID number of the target column
+   * @param value value to assign
+   * @see Table#setInt(int, int, int)
+   * @see Table#setString(int, int, String)
+   * @see Table#getInt(int, int)
+   * @see Table#getFloat(int, int)
+   * @see Table#getString(int, int)
+   * @see Table#getStringColumn(String)
+   */
+  public void setFloat(int row, int column, float value) {
+    if (columnTypes[column] == STRING) {
+      setString(row, column, String.valueOf(value));
+
+    } else {
+      ensureBounds(row, column);
+      if (columnTypes[column] != FLOAT) {
+        throw new IllegalArgumentException("Column " + column + " is not a float column.");
+      }
+      ensureSettable(column);
+      putFloat(column, row, value);
+      if (indexes != null || stats != null) {
+        updateIndex(row, column);
+      }
+    }
+  }
+
+  /**
+   * @param columnName title of the target column
+   */
+  public void setFloat(int row, String columnName, float value) {
+    setFloat(row, getColumnIndex(columnName), value);
+  }
+
+
+  public float[] getFloatColumn(String name) {
+    int col = getColumnIndex(name);
+    return (col == -1) ? null : getFloatColumn(col);
+  }
+
+
+  public float[] getFloatColumn(int col) {
+    float[] outgoing = new float[rowCount];
+    for (int row = 0; row < rowCount; row++) {
+      outgoing[row] = getFloat(row, col);
+    }
+    return outgoing;
+  }
+
+
+  public float[] getFloatRow(int row) {
+    float[] outgoing = new float[columns.length];
+    for (int col = 0; col < columns.length; col++) {
+      outgoing[col] = getFloat(row, col);
+    }
+    return outgoing;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  public double getDouble(int row, int column) {
+    checkBounds(row, column);
+    if (columnTypes[column] == DOUBLE) {
+      Object data = columns[column];
+      if (data instanceof BufferColumn) {
+        return ((BufferColumn) data).getDouble(row);
+      }
+      return ((double[]) data)[row];
+    }
+    String str = getString(row, column);
+    if (str == null || str.equals(missingString)) {
+      return missingDouble;
+    }
+    try {
+      return Double.parseDouble(str);
+    } catch (NumberFormatException nfe) {
+      return missingDouble;
+    }
+  }
+
+
+  public double getDouble(int row, String columnName) {
+    return getDouble(row, getColumnIndex(columnName));
+  }
+
+
+  public void setMissingDouble(double value) {
+    missingDouble = value;
+  }
+
+
+  public void setDouble(int row, int column, double value) {
+    if (columnTypes[column] == STRING) {
+      setString(row, column, String.valueOf(value));
+
+    } else {
+      ensureBounds(row, column);
+      if (columnTypes[column] != DOUBLE) {
+        throw new IllegalArgumentException("Column " + column + " is not a 'double' column.");
+      }
+      ensureSettable(column);
+      putDouble(column, row, value);
+      if (indexes != null || stats != null) {
+        updateIndex(row, column);
+      }
+    }
+  }
+
+
+  public void setDouble(int row, String columnName, double value) {
+    setDouble(row, getColumnIndex(columnName), value);
+  }
+
+
+  public double[] getDoubleColumn(String name) {
+    int col = getColumnIndex(name);
+    return (col == -1) ? null : getDoubleColumn(col);
+  }
+
+
+  public double[] getDoubleColumn(int col) {
+    double[] outgoing = new double[rowCount];
+    for (int row = 0; row < rowCount; row++) {
+      outgoing[row] = getDouble(row, col);
+    }
+    return outgoing;
+  }
+
+
+  public double[] getDoubleRow(int row) {
+    double[] outgoing = new double[columns.length];
+    for (int col = 0; col < columns.length; col++) {
+      outgoing[col] = getDouble(row, col);
+    }
+    return outgoing;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+//public long getTimestamp(String rowName, int column) {
+//return getTimestamp(getRowIndex(rowName), column);
+//}
+
+
+  /**
+   * Returns the time in milliseconds by parsing a SQL Timestamp at this cell.
+   */
+//  public long getTimestamp(int row, int column) {
+//    String str = get(row, column);
+//    java.sql.Timestamp timestamp = java.sql.Timestamp.valueOf(str);
+//    return timestamp.getTime();
+//  }
+
+
+//  public long getExcelTimestamp(int row, int column) {
+//    return parseExcelTimestamp(get(row, column));
+//  }
+
+
+//  static protected DateFormat excelDateFormat;
+
+//  static public long parseExcelTimestamp(String timestamp) {
+//    if (excelDateFormat == null) {
+//      excelDateFormat = new SimpleDateFormat("MM/dd/yy HH:mm");
+//    }
+//    try {
+//      return excelDateFormat.parse(timestamp).getTime();
+//    } catch (ParseException e) {
+//      e.printStackTrace();
+//      return -1;
+//    }
+//  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+//  public void setObject(int row, int column, Object value) {
+//    if (value == null) {
+//      data[row][column] = null;
+//    } else if (value instanceof String) {
+//      set(row, column, (String) value);
+//    } else if (value instanceof Float) {
+//      setFloat(row, column, ((Float) value).floatValue());
+//    } else if (value instanceof Integer) {
+//      setInt(row, column, ((Integer) value).intValue());
+//    } else {
+//      set(row, column, value.toString());
+//    }
+//  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Get a String value from the table. If the row is longer than the table
+   *
+   * @webref table:method
+   * @brief Get an String value from the specified row and column
+   * @param row ID number of the row to reference
+   * @param column ID number of the column to reference
+   * @see Table#getInt(int, int)
+   * @see Table#getFloat(int, int)
+   * @see Table#getStringColumn(String)
+   * @see Table#setInt(int, int, int)
+   * @see Table#setFloat(int, int, float)
+   * @see Table#setString(int, int, String)
+   */
+  public String getString(int row, int column) {
+    checkBounds(row, column);
+    if (columnTypes[column] == STRING) {
+      Object data = columns[column];
+      if (data instanceof BufferColumn) {
+        return ((BufferColumn) data).getString(row);
+      }
+      return ((String[]) data)[row];
+    } else if (columnTypes[column] == CATEGORY) {
+      int cat = getInt(row, column);
+      if (cat == missingCategory) {
+        return missingString;
+      }
+      return columnCategories[column].key(cat);
+    } else if (columnTypes[column] == FLOAT) {
+      float value = getFloat(row, column);
+      return Float.isNaN(value) ? null : String.valueOf(value);
+    } else if (columnTypes[column] == DOUBLE) {
+      double value = getDouble(row, column);
+      return Double.isNaN(value) ? null : String.valueOf(value);
+    } else if (columnTypes[column] == LONG) {
+      return String.valueOf(getLong(row, column));
+    }
+    return String.valueOf(getInt(row, column));
+  }
+
+
+  /**
+   * @param columnName title of the column to reference
+   */
+  public String getString(int row, String columnName) {
+    return getString(row, getColumnIndex(columnName));
+  }
+
+
+  /**
+   * Treat entries with this string as "missing". Also used for categorial.
+   */
+  public void setMissingString(String value) {
+    missingString = value;
+  }
+
+
+  /**
+   * @webref table:method
+   * @brief Store a String value in the specified row and column
+   * @param row ID number of the target row
+   * @param column ID number of the target column
+   * @param value value to assign
+   * @see Table#setInt(int, int, int)
+   * @see Table#setFloat(int, int, float)
+   * @see Table#getInt(int, int)
+   * @see Table#getFloat(int, int)
+   * @see Table#getString(int, int)
+   * @see Table#getStringColumn(String)
+   */
+  public void setString(int row, int column, String value) {
+    ensureBounds(row, column);
+    if (columnTypes[column] == CATEGORY) {
+      ensureSettable(column);
+      setCategory(row, column, value);
+    } else if (columnTypes[column] == STRING) {
+      ensureWritable(column);
+      String[] stringData = (String[]) columns[column];
+      stringData[row] = value;
+    } else {
+      throw new IllegalArgumentException("Column " + column + " is not a String column.");
+    }
+    if (indexes != null || stats != null) {
+      updateIndex(row, column);
+    }
+  }
+
+  /**
+   * @param columnName title of the target column
+   */
+  public void setString(int row, String columnName, String value) {
+    int column = checkColumnIndex(columnName);
+    setString(row, column, value);
   }
 
+  /**
+   * @webref table:method
+   * @brief Gets all values in the specified column
+   * @param columnName title of the column to search
+   * @see Table#getInt(int, int)
+   * @see Table#getFloat(int, int)
+   * @see Table#getString(int, int)
+   * @see Table#setInt(int, int, int)
+   * @see Table#setFloat(int, int, float)
+   * @see Table#setString(int, int, String)
+   */
+  public String[] getStringColumn(String columnName) {
+    int col = getColumnIndex(columnName);
+    return (col == -1) ? null : getStringColumn(col);
+  }
 
-  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
 
   /**
-   * @webref table:method
-   * @brief Gets a row from a table
-   * @param row ID number of the row to get
-   * @see Table#rows()
-   * @see Table#findRow(String, int)
-   * @see Table#findRows(String, int)
-   * @see Table#matchRow(String, int)
-   * @see Table#matchRows(String, int)
+   * @param column ID number of the column to search
    */
-  public TableRow getRow(int row) {
-    return new RowPointer(this, row);
+  public String[] getStringColumn(int column) {
+    String[] outgoing = new String[rowCount];
+    for (int i = 0; i < rowCount; i++) {
+      outgoing[i] = getString(i, column);
+    }
+    return outgoing;
+  }
+
+
+  public String[] getStringRow(int row) {
+    String[] outgoing = new String[columns.length];
+    for (int col = 0; col < columns.length; col++) {
+      outgoing[col] = getString(row, col);
+    }
+    return outgoing;
   }
 
 
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
   /**
-   * Note that this one iterator instance is shared by any calls to iterate
-   * the rows of this table. This is very efficient, but not thread-safe.
-   * If you want to iterate in a multi-threaded manner, don't use the iterator.
+   * Keep a hash index of the values in this column, so that findRow(),
+   * findRows(), findRowIndex() and findRowIndices() don't have to scan
+   * every row. The index is kept current as values are set, and rebuilt
+   * on the next lookup after rows are inserted, removed, or sorted.
    *
-   * @webref table:method
-   * @brief Gets multiple rows from a table
-   * @see Table#getRow(int)
-   * @see Table#findRow(String, int)
-   * @see Table#findRows(String, int)
-   * @see Table#matchRow(String, int)
-   * @see Table#matchRows(String, int)
+   * @param columnName title of the column to index
    */
-  public Iterable<TableRow> rows() {
-    return new Iterable<TableRow>() {
-      public Iterator<TableRow> iterator() {
-        if (rowIterator == null) {
-          rowIterator = new RowIterator(Table.this);
-        } else {
-          rowIterator.reset();
-        }
-        return rowIterator;
-      }
-    };
+  public void createIndex(String columnName) {
+    createIndex(getColumnIndex(columnName));
   }
 
+
   /**
-   * @nowebref
+   * @param column ID number of the column to index
    */
-  public Iterable<TableRow> rows(final int[] indices) {
-    return new Iterable<TableRow>() {
-      public Iterator<TableRow> iterator() {
-        return new RowIndexIterator(Table.this, indices);
-      }
-    };
+  public void createIndex(int column) {
+    checkColumn(column);
+    if (indexes == null) {
+      indexes = new ColumnIndex[columns.length];
+    }
+    indexes[column] = new ColumnIndex();
+  }
+
+
+  public void removeIndex(String columnName) {
+    removeIndex(getColumnIndex(columnName));
+  }
+
+
+  public void removeIndex(int column) {
+    checkColumn(column);
+    if (indexes != null) {
+      indexes[column] = null;
+    }
+  }
+
+
+  public boolean hasIndex(int column) {
+    return indexes != null && column < indexes.length && indexes[column] != null;
   }
 
 
   // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
 
 
-  static class RowPointer implements TableRow {
-    Table table;
-    int row;
+  /**
+   * Keep summary statistics for this column: the lowest and highest values,
+   * the number of missing entries, an estimate of the number of distinct
+   * values, and the range of values in each block of rows. getMin(),
+   * getMax() and the others can then answer without scanning the column,
+   * and rangeRowIndices() can skip blocks that are out of range. Rows added
+   * later are included as they're needed, and the stats are saved with
+   * "tbl" files.
+   *
+   * @param columnName title of the column to keep stats for
+   */
+  public void createStats(String columnName) {
+    createStats(getColumnIndex(columnName));
+  }
 
-    public RowPointer(Table table, int row) {
-      this.table = table;
-      this.row = row;
-    }
 
-    public void setRow(int row) {
-      this.row = row;
+  /**
+   * @param column ID number of the column to keep stats for
+   */
+  public void createStats(int column) {
+    checkColumn(column);
+    if (stats == null) {
+      stats = new ColumnStats[columns.length];
     }
+    stats[column] = new ColumnStats();
+  }
 
-    public String getString(int column) {
-      return table.getString(row, column);
-    }
 
-    public String getString(String columnName) {
-      return table.getString(row, columnName);
+  /** Keep stats for every column. */
+  public void createStats() {
+    for (int col = 0; col < columns.length; col++) {
+      createStats(col);
     }
+  }
 
-    public int getInt(int column) {
-      return table.getInt(row, column);
-    }
 
-    public int getInt(String columnName) {
-      return table.getInt(row, columnName);
-    }
+  public void removeStats(String columnName) {
+    removeStats(getColumnIndex(columnName));
+  }
 
-    public long getLong(int column) {
-      return table.getLong(row, column);
-    }
 
-    public long getLong(String columnName) {
-      return table.getLong(row, columnName);
+  public void removeStats(int column) {
+    checkColumn(column);
+    if (stats != null) {
+      stats[column] = null;
     }
+  }
 
-    public float getFloat(int column) {
-      return table.getFloat(row, column);
-    }
 
-    public float getFloat(String columnName) {
-      return table.getFloat(row, columnName);
-    }
+  public boolean hasStats(int column) {
+    return stats != null && column < stats.length && stats[column] != null;
+  }
 
-    public double getDouble(int column) {
-      return table.getDouble(row, column);
-    }
 
-    public double getDouble(String columnName) {
-      return table.getDouble(row, columnName);
-    }
+  /**
+   * Lowest value in a numeric column, not counting missing values.
+   * LONG values are converted to double. Returns NaN for String columns,
+   * or if every entry is missing.
+   */
+  public double getMin(int column) {
+    return prepareStats(column, true).min;
+  }
 
-    public void setString(int column, String value) {
-      table.setString(row, column, value);
-    }
 
-    public void setString(String columnName, String value) {
-      table.setString(row, columnName, value);
-    }
+  public double getMin(String columnName) {
+    return getMin(getColumnIndex(columnName));
+  }
 
-    public void setInt(int column, int value) {
-      table.setInt(row, column, value);
-    }
 
-    public void setInt(String columnName, int value) {
-      table.setInt(row, columnName, value);
-    }
+  /** Highest value in a numeric column, see getMin() for details. */
+  public double getMax(int column) {
+    return prepareStats(column, true).max;
+  }
 
-    public void setLong(int column, long value) {
-      table.setLong(row, column, value);
-    }
 
-    public void setLong(String columnName, long value) {
-      table.setLong(row, columnName, value);
-    }
+  public double getMax(String columnName) {
+    return getMax(getColumnIndex(columnName));
+  }
 
-    public void setFloat(int column, float value) {
-      table.setFloat(row, column, value);
-    }
 
-    public void setFloat(String columnName, float value) {
-      table.setFloat(row, columnName, value);
-    }
+  /** Average of a numeric column, not counting missing values. */
+  public double getMean(int column) {
+    ColumnStats columnStats = prepareStats(column, true);
+    return (columnStats.valueCount == 0 || columnTypes[column] == STRING ||
+            columnTypes[column] == CATEGORY) ?
+      Double.NaN : columnStats.sum / columnStats.valueCount;
+  }
 
-    public void setDouble(int column, double value) {
-      table.setDouble(row, column, value);
-    }
 
-    public void setDouble(String columnName, double value) {
-      table.setDouble(row, columnName, value);
-    }
+  public double getMean(String columnName) {
+    return getMean(getColumnIndex(columnName));
+  }
 
-    public int getColumnCount() {
-      return table.getColumnCount();
-    }
 
-    public int getColumnType(String columnName) {
-      return table.getColumnType(columnName);
-    }
+  /**
+   * Number of missing entries: null Strings, NaN, or the missing value set
+   * for the column's type. As with TableExpression, INT and LONG entries
+   * are only missing if the missing value isn't 0.
+   */
+  public int getMissingCount(int column) {
+    return prepareStats(column, true).missingCount;
+  }
 
-    public int getColumnType(int column) {
-      return table.getColumnType(column);
-    }
 
-    public int[] getColumnTypes() {
-      return table.getColumnTypes();
-    }
+  public int getMissingCount(String columnName) {
+    return getMissingCount(getColumnIndex(columnName));
+  }
 
-    public String getColumnTitle(int column) {
-      return table.getColumnTitle(column);
-    }
 
-    public String[] getColumnTitles() {
-      return table.getColumnTitles();
-    }
+  /**
+   * Estimate of the number of different values in the column, not counting
+   * missing values. Usually within a few percent, and exact for small counts.
+   */
+  public int getDistinctCount(int column) {
+    return prepareStats(column, true).distinct();
   }
 
 
-  static class RowIterator implements Iterator<TableRow> {
-    Table table;
-    RowPointer rp;
-    int row;
+  public int getDistinctCount(String columnName) {
+    return getDistinctCount(getColumnIndex(columnName));
+  }
 
-    public RowIterator(Table table) {
-      this.table = table;
-      row = -1;
-      rp = new RowPointer(table, row);
-    }
 
-    public void remove() {
-      table.removeRow(row);
+  /**
+   * Rows where a numeric column is between low and high (inclusive), in
+   * order. With createStats(), blocks of rows that are entirely outside
+   * (or inside) the range are handled without looking at each row.
+   */
+  public int[] rangeRowIndices(double low, double high, int column) {
+    checkColumn(column);
+    if (columnTypes[column] == STRING || columnTypes[column] == CATEGORY) {
+      throw new IllegalArgumentException("Column " + column + " is not a numeric column.");
+    }
+    ColumnStats columnStats = hasStats(column) ? prepareStats(column, false) : null;
+    IntList outgoing = new IntList();
+    for (int start = 0; start < rowCount; start += ColumnStats.ZONE_ROWS) {
+      int stop = Math.min(start + ColumnStats.ZONE_ROWS, rowCount);
+      if (columnStats != null) {
+        int zone = start >> ColumnStats.ZONE_SHIFT;
+        double zoneMin = columnStats.zoneMin[zone];
+        double zoneMax = columnStats.zoneMax[zone];
+        if (!(zoneMax >= low && zoneMin <= high)) {
+          continue;  // nothing in range, or nothing but missing values
+        }
+        if (!columnStats.loose && columnStats.zoneMissing[zone] == 0 &&
+            zoneMin >= low && zoneMax <= high) {
+          for (int row = start; row < stop; row++) {
+            outgoing.append(row);
+          }
+          continue;
+        }
+      }
+      for (int row = start; row < stop; row++) {
+        double value = statsValue(row, column);
+        if (value >= low && value <= high) {
+          outgoing.append(row);
+        }
+      }
     }
+    return outgoing.array();
+  }
 
-    public TableRow next() {
-      rp.setRow(++row);
-      return rp;
-    }
 
-    public boolean hasNext() {
-      return row+1 < table.getRowCount();
-    }
+  public int[] rangeRowIndices(double low, double high, String columnName) {
+    return rangeRowIndices(low, high, getColumnIndex(columnName));
+  }
 
-    public void reset() {
-      row = -1;
+
+  /**
+   * Stats for a column, brought up to date with any new rows, or worked out
+   * now for a column that doesn't keep them. If 'exact' is false, ranges
+   * that may be too wide (after values were changed in place) are fine.
+   */
+  protected ColumnStats prepareStats(int column, boolean exact) {
+    checkColumn(column);
+    ColumnStats columnStats = hasStats(column) ? stats[column] : new ColumnStats();
+    if (columnStats.stale || columnStats.count > rowCount ||
+        (exact && columnStats.loose)) {
+      columnStats.clear();
+    }
+    for (int row = columnStats.count; row < rowCount; row++) {
+      addStats(columnStats, row, column, false);
     }
+    columnStats.count = rowCount;
+    return columnStats;
   }
 
 
-  static class RowIndexIterator implements Iterator<TableRow> {
-    Table table;
-    RowPointer rp;
-    int[] indices;
-    int index;
-
-    public RowIndexIterator(Table table, int[] indices) {
-      this.table = table;
-      this.indices = indices;
-      index = -1;
-      // just set to something arbitrary
-      rp = new RowPointer(table, -1);
+  /**
+   * Add a row to the stats, or if 'changed' is set, a new value for a row
+   * that's already included.
+   */
+  private void addStats(ColumnStats columnStats, int row, int column,
+                        boolean changed) {
+    boolean missing;
+    double value = Double.NaN;
+    long hash;
+    if (columnTypes[column] == STRING) {
+      String str = getString(row, column);
+      missing = (str == null || str.equals(missingString));
+      hash = missing ? 0 : str.hashCode();
+    } else if (columnTypes[column] == CATEGORY) {
+      int index = getInt(row, column);
+      missing = (index == missingCategory);
+      hash = index;
+    } else {
+      value = statsValue(row, column);
+      missing = (value != value);
+      hash = Double.doubleToLongBits(value);
     }
-
-    public void remove() {
-      table.removeRow(indices[index]);
+    if (changed) {
+      columnStats.change(row, missing, value);
+    } else {
+      columnStats.add(row, missing, value, hash);
     }
+  }
 
-    public TableRow next() {
-      rp.setRow(indices[++index]);
-      return rp;
-    }
 
-    public boolean hasNext() {
-      //return row+1 < table.getRowCount();
-      return index + 1 < indices.length;
+  /** Entry from a numeric column as a double, or NaN if it's missing. */
+  private double statsValue(int row, int column) {
+    switch (columnTypes[column]) {
+    case INT: {
+      int value = getInt(row, column);
+      return (value == missingInt && missingInt != 0) ? Double.NaN : value;
+    }
+    case LONG: {
+      long value = getLong(row, column);
+      return (value == missingLong && missingLong != 0) ? Double.NaN : value;
+    }
+    case FLOAT: {
+      float value = getFloat(row, column);
+      return (value == missingFloat) ? Double.NaN : value;
+    }
+    default: {
+      double value = getDouble(row, column);
+      return (value == missingDouble) ? Double.NaN : value;
     }
-
-    public void reset() {
-      index = -1;
     }
   }
 
 
-  /*
-  static public Iterator<TableRow> createIterator(final ResultSet rs) {
-    return new Iterator<TableRow>() {
-      boolean already;
-
-      public boolean hasNext() {
-        already = true;
-        try {
-          return rs.next();
-        } catch (SQLException e) {
-          throw new RuntimeException(e);
+  /** Called after a value has been set, to keep any index or stats current. */
+  protected void updateIndex(int row, int column) {
+    if (hasStats(column)) {
+      ColumnStats columnStats = stats[column];
+      if (!columnStats.stale && row < columnStats.count) {
+        addStats(columnStats, row, column, true);
+      }
+    }
+    ColumnIndex index = (hasIndex(column)) ? indexes[column] : null;
+    if (index != null && !index.stale) {
+      if (row < index.count) {
+        int id = indexId(index, row, column);
+        if (id != index.rowId[row]) {
+          index.remove(row);
+          index.append(row, id);
         }
+      } else {
+        extendIndex(index, column, row + 1);
       }
+    }
+  }
 
 
-      public TableRow next() {
-        if (!already) {
-          try {
-            rs.next();
-          } catch (SQLException e) {
-            throw new RuntimeException(e);
-          }
-        } else {
-          already = false;
+  /** Indexes need rebuilding after rows are inserted, removed, or moved. */
+  protected void invalidateIndexes() {
+    if (indexes != null) {
+      for (ColumnIndex index : indexes) {
+        if (index != null) {
+          index.stale = true;
         }
+      }
+    }
+    if (stats != null) {
+      for (ColumnStats columnStats : stats) {
+        if (columnStats != null) {
+          columnStats.stale = true;
+        }
+      }
+    }
+  }
 
-        return new TableRow() {
-          public double getDouble(int column) {
-            try {
-              return rs.getDouble(column);
-            } catch (SQLException e) {
-              throw new RuntimeException(e);
-            }
-          }
-
-          public double getDouble(String columnName) {
-            try {
-              return rs.getDouble(columnName);
-            } catch (SQLException e) {
-              throw new RuntimeException(e);
-            }
-          }
-
-          public float getFloat(int column) {
-            try {
-              return rs.getFloat(column);
-            } catch (SQLException e) {
-              throw new RuntimeException(e);
-            }
-          }
 
-          public float getFloat(String columnName) {
-            try {
-              return rs.getFloat(columnName);
-            } catch (SQLException e) {
-              throw new RuntimeException(e);
-            }
-          }
+  protected void invalidateIndex(int column) {
+    if (hasIndex(column)) {
+      indexes[column].stale = true;
+    }
+    if (hasStats(column)) {
+      stats[column].stale = true;
+    }
+  }
 
-          public int getInt(int column) {
-            try {
-              return rs.getInt(column);
-            } catch (SQLException e) {
-              throw new RuntimeException(e);
-            }
-          }
 
-          public int getInt(String columnName) {
-            try {
-              return rs.getInt(columnName);
-            } catch (SQLException e) {
-              throw new RuntimeException(e);
-            }
-          }
+  /** Rebuild the index if necessary, then add any rows appended since. */
+  protected ColumnIndex prepareIndex(int column) {
+    ColumnIndex index = indexes[column];
+    if (index.stale) {
+      index.clear(rowCount);
+    }
+    if (index.count < rowCount) {
+      extendIndex(index, column, rowCount);
+    }
+    return index;
+  }
 
-          public long getLong(int column) {
-            try {
-              return rs.getLong(column);
-            } catch (SQLException e) {
-              throw new RuntimeException(e);
-            }
-          }
 
-          public long getLong(String columnName) {
-            try {
-              return rs.getLong(columnName);
-            } catch (SQLException e) {
-              throw new RuntimeException(e);
-            }
-          }
+  private void extendIndex(ColumnIndex index, int column, int count) {
+    index.ensureRows(count);
+    for (int row = index.count; row < count; row++) {
+      index.append(row, indexId(index, row, column));
+    }
+    index.count = count;
+  }
 
-          public String getString(int column) {
-            try {
-              return rs.getString(column);
-            } catch (SQLException e) {
-              throw new RuntimeException(e);
-            }
-          }
 
-          public String getString(String columnName) {
-            try {
-              return rs.getString(columnName);
-            } catch (SQLException e) {
-              throw new RuntimeException(e);
-            }
-          }
+  /** Id for the value in this row, added to the index if it's new. */
+  private int indexId(ColumnIndex index, int row, int column) {
+    switch (columnTypes[column]) {
+    case STRING:
+      return index.id(getString(row, column));
+    case LONG:
+      return index.id(getLong(row, column));
+    case FLOAT:
+      return index.id(Float.floatToIntBits(getFloat(row, column)));
+    case DOUBLE:
+      return index.id(Double.doubleToLongBits(getDouble(row, column)));
+    default:  // INT and CATEGORY
+      return index.id(getInt(row, column));
+    }
+  }
 
-          public void setString(int column, String value) { immutable(); }
-          public void setString(String columnName, String value) { immutable(); }
-          public void setInt(int column, int value) { immutable(); }
-          public void setInt(String columnName, int value) { immutable(); }
-          public void setLong(int column, long value) { immutable(); }
-          public void setLong(String columnName, long value) { immutable(); }
-          public void setFloat(int column, float value) { immutable(); }
-          public void setFloat(String columnName, float value) { immutable(); }
-          public void setDouble(int column, double value) { immutable(); }
-          public void setDouble(String columnName, double value) { immutable(); }
 
-          private void immutable() {
-            throw new IllegalArgumentException("This TableRow cannot be modified.");
+  /**
+   * Look up the rows whose getString() would equal this value. Returns
+   * the ids of the matching values (or -1), at most two for CATEGORY.
+   */
+  private int[] indexLookup(ColumnIndex index, String value, int column) {
+    int id = -1;
+    int other = -1;
+    switch (columnTypes[column]) {
+    case STRING:
+      id = index.find(value);
+      break;
+    case INT:
+      if (value != null) {
+        try {
+          int number = Integer.parseInt(value);
+          if (String.valueOf(number).equals(value)) {
+            id = index.find(number);
           }
-
-          public int getColumnCount() {
-            try {
-              return rs.getMetaData().getColumnCount();
-            } catch (SQLException e) {
-              e.printStackTrace();
-              return -1;
-            }
+        } catch (NumberFormatException nfe) { }
+      }
+      break;
+    case LONG:
+      if (value != null) {
+        try {
+          long number = Long.parseLong(value);
+          if (String.valueOf(number).equals(value)) {
+            id = index.find(number);
           }
-
-
-          public int getColumnType(String columnName) {
-            // unimplemented
+        } catch (NumberFormatException nfe) { }
+      }
+      break;
+    case FLOAT:
+      if (value == null) {  // NaN entries come back as null
+        id = index.find(Float.floatToIntBits(Float.NaN));
+      } else {
+        try {
+          float number = Float.parseFloat(value);
+          if (!Float.isNaN(number) && String.valueOf(number).equals(value)) {
+            id = index.find(Float.floatToIntBits(number));
           }
-
-
-          public int getColumnType(int column) {
-            // unimplemented
+        } catch (NumberFormatException nfe) { }
+      }
+      break;
+    case DOUBLE:
+      if (value == null) {
+        id = index.find(Double.doubleToLongBits(Double.NaN));
+      } else {
+        try {
+          double number = Double.parseDouble(value);
+          if (!Double.isNaN(number) && String.valueOf(number).equals(value)) {
+            id = index.find(Double.doubleToLongBits(number));
           }
-
-        };
+        } catch (NumberFormatException nfe) { }
       }
-
-      public void remove() {
-        throw new IllegalArgumentException("remove() not supported");
+      break;
+    case CATEGORY:
+      Integer category = columnCategories[column].dataToIndex.get(value);
+      if (category != null && category != missingCategory) {
+        id = index.find(category);
       }
-    };
+      if (value == null ? missingString == null : value.equals(missingString)) {
+        other = index.find(missingCategory);
+      }
+      break;
+    }
+    return new int[] { id, other };
   }
-  */
-
-
-  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
 
 
   /**
-   * @webref table:method
-   * @brief Get an integer value from the specified row and column
-   * @param row ID number of the row to reference
-   * @param column ID number of the column to reference
-   * @see Table#getFloat(int, int)
-   * @see Table#getString(int, int)
-   * @see Table#getStringColumn(String)
-   * @see Table#setInt(int, int, int)
-   * @see Table#setFloat(int, int, float)
-   * @see Table#setString(int, int, String)
+   * Hash index for a single column. Each distinct value gets an id, and the
+   * rows for each id are kept in a doubly linked list, so that a row can
+   * be moved to another id in constant time when its value is set. A moved
+   * row goes at the end of its new list, which is then sorted by row number
+   * the next time it's looked up, so that results come back in the same
+   * order as a scan. An id whose rows are all gone is reused.
    */
-  public int getInt(int row, int column) {
-    checkBounds(row, column);
-    if (columnTypes[column] == INT ||
-        columnTypes[column] == CATEGORY) {
-      int[] intData = (int[]) columns[column];
-      return intData[row];
+  static class ColumnIndex {
+    HashMap<String, Integer> stringIds = new HashMap<String, Integer>();
+    LongHash numberIds = new LongHash();
+    int idCount;
+    int[] head = new int[16];  // first row for each id
+    int[] tail = new int[16];  // last row for each id
+    int[] size = new int[16];  // number of rows for each id
+    boolean[] unsorted = new boolean[16];  // rows for the id out of order
+    String[] idStrings;  // value for each id, when they're Strings
+    long[] idNumbers = new long[16];  // value for each id, otherwise
+    int[] freeIds = new int[0];  // ids with no rows, ready for reuse
+    int freeCount;
+    int[] next = new int[0];  // following row with the same value, or -1
+    int[] prev = new int[0];  // previous row with the same value, or -1
+    int[] rowId = new int[0];  // value id for each row
+    int count;  // number of rows that have been indexed
+    boolean stale = true;
+
+    long memoryUsage() {
+      return arrayBytes(head.length, 4 + 4 + 4 + 1 + 8) +
+        (idStrings == null ? 0 : arrayBytes(idStrings.length, 4)) +
+        arrayBytes(freeIds.length, 4) +
+        arrayBytes(next.length, 4) + arrayBytes(prev.length, 4) +
+        arrayBytes(rowId.length, 4) +
+        (long) stringIds.size() * MAP_ENTRY_BYTES +
+        arrayBytes(numberIds.keys.length, 8 + 4 + 1);
+    }
+
+    void clear(int rows) {
+      stringIds.clear();
+      numberIds.clear();
+      idCount = 0;
+      idStrings = null;
+      freeCount = 0;
+      next = new int[rows];
+      prev = new int[rows];
+      rowId = new int[rows];
+      count = 0;
+      stale = false;
+    }
+
+    void ensureRows(int rows) {
+      if (rows > next.length) {
+        int length = Math.max(rows, next.length << 1);
+        next = PApplet.expand(next, length);
+        prev = PApplet.expand(prev, length);
+        rowId = PApplet.expand(rowId, length);
+      }
     }
-    String str = getString(row, column);
-    return (str == null || str.equals(missingString)) ?
-      missingInt : PApplet.parseInt(str, missingInt);
-  }
-
-  /**
-   * @param columnName title of the column to reference
-   */
-  public int getInt(int row, String columnName) {
-    return getInt(row, getColumnIndex(columnName));
-  }
 
+    int find(String key) {
+      Integer id = stringIds.get(key);
+      return (id == null) ? -1 : id;
+    }
 
-  public void setMissingInt(int value) {
-    missingInt = value;
-  }
+    int find(long key) {
+      return numberIds.get(key);
+    }
 
+    int id(String key) {
+      Integer id = stringIds.get(key);
+      if (id == null) {
+        id = addId();
+        if (idStrings == null) {
+          idStrings = new String[head.length];
+        }
+        idStrings[id] = key;
+        stringIds.put(key, id);
+      }
+      return id;
+    }
 
-  /**
-   * @webref table:method
-   * @brief Store an integer value in the specified row and column
-   * @param row ID number of the target row
-   * @param column ID number of the target column
-   * @param value value to assign
-   * @see Table#setFloat(int, int, float)
-   * @see Table#setString(int, int, String)
-   * @see Table#getInt(int, int)
-   * @see Table#getFloat(int, int)
-   * @see Table#getString(int, int)
-   * @see Table#getStringColumn(String)
-   */
-  public void setInt(int row, int column, int value) {
-    if (columnTypes[column] == STRING) {
-      setString(row, column, String.valueOf(value));
+    int id(long key) {
+      int id = numberIds.get(key);
+      if (id == -1) {
+        id = addId();
+        idNumbers[id] = key;
+        numberIds.put(key, id);
+      }
+      return id;
+    }
 
-    } else {
-      ensureBounds(row, column);
-      if (columnTypes[column] != INT &&
-          columnTypes[column] != CATEGORY) {
-        throw new IllegalArgumentException("Column " + column + " is not an int column.");
+    private int addId() {
+      int id;
+      if (freeCount != 0) {
+        id = freeIds[--freeCount];
+      } else {
+        if (idCount == head.length) {
+          int length = idCount << 1;
+          head = PApplet.expand(head, length);
+          tail = PApplet.expand(tail, length);
+          size = PApplet.expand(size, length);
+          unsorted = PApplet.expand(unsorted, length);
+          idNumbers = PApplet.expand(idNumbers, length);
+          if (idStrings != null) {
+            idStrings = PApplet.expand(idStrings, length);
+          }
+        }
+        id = idCount++;
+      }
+      head[id] = -1;
+      tail[id] = -1;
+      size[id] = 0;
+      unsorted[id] = false;
+      return id;
+    }
+
+    /** Take the value for an id out of the lookup, and keep the id for reuse. */
+    private void freeId(int id) {
+      if (idStrings != null) {
+        stringIds.remove(idStrings[id]);
+        idStrings[id] = null;
+      } else {
+        numberIds.remove(idNumbers[id]);
+      }
+      if (freeCount == freeIds.length) {
+        freeIds = PApplet.expand(freeIds, Math.max(16, freeCount << 1));
       }
-      int[] intData = (int[]) columns[column];
-      intData[row] = value;
+      freeIds[freeCount++] = id;
     }
-  }
 
-  /**
-   * @param columnName title of the target column
-   */
-  public void setInt(int row, String columnName, int value) {
-    setInt(row, getColumnIndex(columnName), value);
-  }
+    /** Add a row to the end of the list for its id. */
+    void append(int row, int id) {
+      rowId[row] = id;
+      next[row] = -1;
+      prev[row] = tail[id];
+      if (head[id] == -1) {
+        head[id] = row;
+      } else {
+        if (tail[id] > row) {
+          unsorted[id] = true;
+        }
+        next[tail[id]] = row;
+      }
+      tail[id] = row;
+      size[id]++;
+    }
 
+    void remove(int row) {
+      int id = rowId[row];
+      if (prev[row] == -1) {
+        head[id] = next[row];
+      } else {
+        next[prev[row]] = next[row];
+      }
+      if (next[row] == -1) {
+        tail[id] = prev[row];
+      } else {
+        prev[next[row]] = prev[row];
+      }
+      if (--size[id] == 0) {
+        freeId(id);
+      }
+    }
 
+    /** Put the rows for an id back in order, if they've been moved. */
+    private void sortRows(int id) {
+      int[] rows = new int[size[id]];
+      int i = 0;
+      for (int row = head[id]; row != -1; row = next[row]) {
+        rows[i++] = row;
+      }
+      Arrays.sort(rows);
+      int last = -1;
+      for (int row : rows) {
+        prev[row] = last;
+        if (last == -1) {
+          head[id] = row;
+        } else {
+          next[last] = row;
+        }
+        last = row;
+      }
+      next[last] = -1;
+      tail[id] = last;
+      unsorted[id] = false;
+    }
+
+    /** Rows for one or two ids (either may be -1), in order. */
+    int[] rows(int id, int other) {
+      int length = 0;
+      if (id != -1) length += size[id];
+      if (other != -1) length += size[other];
+      int[] outgoing = new int[length];
+      int a = first(id);
+      int b = first(other);
+      for (int i = 0; i < length; i++) {
+        if (b == -1 || (a != -1 && a < b)) {
+          outgoing[i] = a;
+          a = next[a];
+        } else {
+          outgoing[i] = b;
+          b = next[b];
+        }
+      }
+      return outgoing;
+    }
 
-  public int[] getIntColumn(String name) {
-    int col = getColumnIndex(name);
-    return (col == -1) ? null : getIntColumn(col);
+    /** Lowest row for an id, or -1. */
+    int first(int id) {
+      if (id == -1) {
+        return -1;
+      }
+      if (unsorted[id]) {
+        sortRows(id);
+      }
+      return head[id];
+    }
   }
 
 
-  public int[] getIntColumn(int col) {
-    int[] outgoing = new int[rowCount];
-    for (int row = 0; row < rowCount; row++) {
-      outgoing[row] = getInt(row, col);
+  /** Open addressing map from long keys to non-negative int values. */
+  static class LongHash {
+    long[] keys = new long[16];
+    int[] values = new int[16];
+    boolean[] used = new boolean[16];
+    int size;
+
+    int get(long key) {
+      int mask = keys.length - 1;
+      int slot = hash(key) & mask;
+      while (used[slot]) {
+        if (keys[slot] == key) {
+          return values[slot];
+        }
+        slot = (slot + 1) & mask;
+      }
+      return -1;
     }
-    return outgoing;
-  }
 
+    void put(long key, int value) {
+      if ((size + 1) * 2 > keys.length) {
+        rehash(keys.length << 1);
+      }
+      int mask = keys.length - 1;
+      int slot = hash(key) & mask;
+      while (used[slot]) {
+        if (keys[slot] == key) {
+          values[slot] = value;
+          return;
+        }
+        slot = (slot + 1) & mask;
+      }
+      used[slot] = true;
+      keys[slot] = key;
+      values[slot] = value;
+      size++;
+    }
 
-  public int[] getIntRow(int row) {
-    int[] outgoing = new int[columns.length];
-    for (int col = 0; col < columns.length; col++) {
-      outgoing[col] = getInt(row, col);
+    void remove(long key) {
+      int mask = keys.length - 1;
+      int hole = hash(key) & mask;
+      while (used[hole] && keys[hole] != key) {
+        hole = (hole + 1) & mask;
+      }
+      if (!used[hole]) {
+        return;
+      }
+      // move later entries back into the hole, so there are no tombstones
+      for (int i = (hole + 1) & mask; used[i]; i = (i + 1) & mask) {
+        int home = hash(keys[i]) & mask;
+        if (((i - home) & mask) >= ((i - hole) & mask)) {
+          keys[hole] = keys[i];
+          values[hole] = values[i];
+          hole = i;
+        }
+      }
+      used[hole] = false;
+      size--;
+    }
+
+    void clear() {
+      Arrays.fill(used, false);
+      size = 0;
+    }
+
+    private void rehash(int length) {
+      long[] oldKeys = keys;
+      int[] oldValues = values;
+      boolean[] oldUsed = used;
+      keys = new long[length];
+      values = new int[length];
+      used = new boolean[length];
+      size = 0;
+      for (int i = 0; i < oldKeys.length; i++) {
+        if (oldUsed[i]) {
+          put(oldKeys[i], oldValues[i]);
+        }
+      }
+    }
+
+    static int hash(long key) {
+      long h = key * 0x9E3779B97F4A7C15L;
+      return (int) (h ^ (h >>> 32));
     }
-    return outgoing;
   }
 
 
-  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+  /**
+   * Running totals for a column, and the lowest and highest values in each
+   * block of ZONE_ROWS rows (a "zone map"). Rows added at the end are
+   * included one at a time. A value changed in place can only widen the
+   * ranges, so they stay safe for skipping blocks, but the totals are
+   * marked 'loose' and worked out again when they're next needed. The
+   * distinct count is a HyperLogLog estimate.
+   */
+  static class ColumnStats {
+    static final int ZONE_SHIFT = 12;
+    static final int ZONE_ROWS = 1 << ZONE_SHIFT;
+    // 1024 registers gives estimates within about 3%
+    static final int SKETCH_BITS = 10;
+
+    double min;
+    double max;
+    double sum;
+    int valueCount;
+    int missingCount;
+    byte[] sketch = new byte[1 << SKETCH_BITS];
+    double[] zoneMin;
+    double[] zoneMax;
+    int[] zoneMissing;
+    int count;  // number of rows that have been included
+    boolean stale = true;  // needs to be worked out from the start
+    boolean loose;  // values changed in place since it was worked out
+
+    void clear() {
+      min = Double.NaN;
+      max = Double.NaN;
+      sum = 0;
+      valueCount = 0;
+      missingCount = 0;
+      Arrays.fill(sketch, (byte) 0);
+      zoneMin = new double[0];
+      zoneMax = new double[0];
+      zoneMissing = new int[0];
+      count = 0;
+      stale = false;
+      loose = false;
+    }
+
+    void add(int row, boolean missing, double value, long hash) {
+      int zone = row >> ZONE_SHIFT;
+      if (zone >= zoneMin.length) {
+        int length = Math.max(zone + 1, zoneMin.length << 1);
+        int old = zoneMin.length;
+        zoneMin = Arrays.copyOf(zoneMin, length);
+        zoneMax = Arrays.copyOf(zoneMax, length);
+        zoneMissing = Arrays.copyOf(zoneMissing, length);
+        Arrays.fill(zoneMin, old, length, Double.NaN);
+        Arrays.fill(zoneMax, old, length, Double.NaN);
+      }
+      if (missing) {
+        missingCount++;
+        zoneMissing[zone]++;
+      } else {
+        valueCount++;
+        addHash(hash);
+        if (value == value) {
+          sum += value;
+          widen(zone, value);
+        }
+      }
+    }
 
+    void change(int row, boolean missing, double value) {
+      loose = true;
+      if (!missing && value == value) {
+        widen(row >> ZONE_SHIFT, value);
+      }
+    }
 
-  public long getLong(int row, int column) {
-    checkBounds(row, column);
-    if (columnTypes[column] == LONG) {
-      long[] longData = (long[]) columns[column];
-      return longData[row];
+    // written as !(a >= b) so that the NaN starting values are replaced
+    private void widen(int zone, double value) {
+      if (!(value >= min)) min = value;
+      if (!(value <= max)) max = value;
+      if (!(value >= zoneMin[zone])) zoneMin[zone] = value;
+      if (!(value <= zoneMax[zone])) zoneMax[zone] = value;
+    }
+
+    private void addHash(long hash) {
+      // mix the bits, since Strings and small numbers hash poorly
+      hash ^= hash >>> 33;
+      hash *= 0xff51afd7ed558ccdL;
+      hash ^= hash >>> 33;
+      hash *= 0xc4ceb9fe1a85ec53L;
+      hash ^= hash >>> 33;
+      int register = (int) (hash >>> (64 - SKETCH_BITS));
+      int rank = Long.numberOfLeadingZeros((hash << SKETCH_BITS) |
+                                           (1L << (SKETCH_BITS - 1))) + 1;
+      if (rank > sketch[register]) {
+        sketch[register] = (byte) rank;
+      }
     }
-    String str = getString(row, column);
-    if (str == null || str.equals(missingString)) {
-      return missingLong;
+
+    int distinct() {
+      int m = sketch.length;
+      double total = 0;
+      int zeros = 0;
+      for (byte rank : sketch) {
+        total += 1.0 / (1L << rank);
+        if (rank == 0) {
+          zeros++;
+        }
+      }
+      double estimate = 0.7213 / (1 + 1.079 / m) * m * m / total;
+      if (estimate <= 2.5 * m && zeros != 0) {
+        estimate = m * Math.log((double) m / zeros);  // small range correction
+      }
+      return (int) Math.min(Math.round(estimate), valueCount);
     }
-    try {
-      return Long.parseLong(str);
-    } catch (NumberFormatException nfe) {
-      return missingLong;
+
+    long memoryUsage() {
+      return arrayBytes(sketch.length, 1) + arrayBytes(zoneMin.length, 8) +
+        arrayBytes(zoneMax.length, 8) + arrayBytes(zoneMissing.length, 4);
     }
-  }
 
+    void write(DataOutputStream output) throws IOException {
+      output.writeInt(count);
+      output.writeDouble(min);
+      output.writeDouble(max);
+      output.writeDouble(sum);
+      output.writeInt(valueCount);
+      output.writeInt(missingCount);
+      output.write(sketch);
+      int zones = (count + ZONE_ROWS - 1) >> ZONE_SHIFT;
+      output.writeInt(zones);
+      for (int zone = 0; zone < zones; zone++) {
+        output.writeDouble(zoneMin[zone]);
+        output.writeDouble(zoneMax[zone]);
+        output.writeInt(zoneMissing[zone]);
+      }
+    }
 
-  public long getLong(int row, String columnName) {
-    return getLong(row, getColumnIndex(columnName));
+    void read(DataInputStream input) throws IOException {
+      count = input.readInt();
+      min = input.readDouble();
+      max = input.readDouble();
+      sum = input.readDouble();
+      valueCount = input.readInt();
+      missingCount = input.readInt();
+      input.readFully(sketch);
+      int zones = input.readInt();
+      zoneMin = new double[zones];
+      zoneMax = new double[zones];
+      zoneMissing = new int[zones];
+      for (int zone = 0; zone < zones; zone++) {
+        zoneMin[zone] = input.readDouble();
+        zoneMax[zone] = input.readDouble();
+        zoneMissing[zone] = input.readInt();
+      }
+      stale = false;
+      loose = false;
+    }
   }
 
 
-  public void setMissingLong(long value) {
-    missingLong = value;
-  }
-
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
 
-  public void setLong(int row, int column, long value) {
-    if (columnTypes[column] == STRING) {
-      setString(row, column, String.valueOf(value));
 
-    } else {
-      ensureBounds(row, column);
-      if (columnTypes[column] != LONG) {
-        throw new IllegalArgumentException("Column " + column + " is not a 'long' column.");
+  /**
+   * Return the row that contains the first String that matches.
+   * @param value the String to match
+   * @param column ID number of the column to search
+   */
+  public int findRowIndex(String value, int column) {
+    checkColumn(column);
+    if (hasIndex(column)) {
+      ColumnIndex index = prepareIndex(column);
+      int[] ids = indexLookup(index, value, column);
+      int a = index.first(ids[0]);
+      int b = index.first(ids[1]);
+      return (a == -1 || (b != -1 && b < a)) ? b : a;
+    }
+    if (columns[column] instanceof String[]) {
+      String[] stringData = (String[]) columns[column];
+      if (value == null) {
+        for (int row = 0; row < rowCount; row++) {
+          if (stringData[row] == null) return row;
+        }
+      } else {
+        for (int row = 0; row < rowCount; row++) {
+          if (stringData[row] != null && stringData[row].equals(value)) {
+            return row;
+          }
+        }
+      }
+    } else {  // less efficient, includes conversion as necessary
+      for (int row = 0; row < rowCount; row++) {
+        String str = getString(row, column);
+        if (str == null) {
+          if (value == null) {
+            return row;
+          }
+        } else if (str.equals(value)) {
+          return row;
+        }
       }
-      long[] longData = (long[]) columns[column];
-      longData[row] = value;
     }
+    return -1;
   }
 
 
-  public void setLong(int row, String columnName, long value) {
-    setLong(row, getColumnIndex(columnName), value);
+  /**
+   * Return the row that contains the first String that matches.
+   * @param value the String to match
+   * @param columnName title of the column to search
+   */
+  public int findRowIndex(String value, String columnName) {
+    return findRowIndex(value, getColumnIndex(columnName));
   }
 
 
-  public long[] getLongColumn(String name) {
-    int col = getColumnIndex(name);
-    return (col == -1) ? null : getLongColumn(col);
-  }
+  /**
+   * Return a list of rows that contain the String passed in. If there are no
+   * matches, a zero length array will be returned (not a null array).
+   * @param value the String to match
+   * @param column ID number of the column to search
+   */
+  public int[] findRowIndices(String value, int column) {
+    checkColumn(column);
+    if (hasIndex(column)) {
+      ColumnIndex index = prepareIndex(column);
+      int[] ids = indexLookup(index, value, column);
+      return index.rows(ids[0], ids[1]);
+    }
 
+    int[] outgoing = new int[rowCount];
+    int count = 0;
 
-  public long[] getLongColumn(int col) {
-    long[] outgoing = new long[rowCount];
-    for (int row = 0; row < rowCount; row++) {
-      outgoing[row] = getLong(row, col);
+    if (columns[column] instanceof String[]) {
+      String[] stringData = (String[]) columns[column];
+      if (value == null) {
+        for (int row = 0; row < rowCount; row++) {
+          if (stringData[row] == null) {
+            outgoing[count++] = row;
+          }
+        }
+      } else {
+        for (int row = 0; row < rowCount; row++) {
+          if (stringData[row] != null && stringData[row].equals(value)) {
+            outgoing[count++] = row;
+          }
+        }
+      }
+    } else {  // less efficient, includes conversion as necessary
+      for (int row = 0; row < rowCount; row++) {
+        String str = getString(row, column);
+        if (str == null) {
+          if (value == null) {
+            outgoing[count++] = row;
+          }
+        } else if (str.equals(value)) {
+          outgoing[count++] = row;
+        }
+      }
     }
-    return outgoing;
+    return PApplet.subset(outgoing, 0, count);
   }
 
 
-  public long[] getLongRow(int row) {
-    long[] outgoing = new long[columns.length];
-    for (int col = 0; col < columns.length; col++) {
-      outgoing[col] = getLong(row, col);
-    }
-    return outgoing;
+  /**
+   * Return a list of rows that contain the String passed in. If there are no
+   * matches, a zero length array will be returned (not a null array).
+   * @param value the String to match
+   * @param columnName title of the column to search
+   */
+  public int[] findRowIndices(String value, String columnName) {
+    return findRowIndices(value, getColumnIndex(columnName));
   }
 
 
   // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
 
-
   /**
-   * Get a float value from the specified row and column. If the value is null
-   * or not parseable as a float, the "missing" value is returned. By default,
-   * this is Float.NaN, but can be controlled with setMissingFloat().
-   *
    * @webref table:method
-   * @brief Get a float value from the specified row and column
-   * @param row ID number of the row to reference
-   * @param column ID number of the column to reference
-   * @see Table#getInt(int, int)
-   * @see Table#getString(int, int)
-   * @see Table#getStringColumn(String)
-   * @see Table#setInt(int, int, int)
-   * @see Table#setFloat(int, int, float)
-   * @see Table#setString(int, int, String)
-   */
-  public float getFloat(int row, int column) {
-    checkBounds(row, column);
-    if (columnTypes[column] == FLOAT) {
-      float[] floatData = (float[]) columns[column];
-      return floatData[row];
-    }
-    String str = getString(row, column);
-    if (str == null || str.equals(missingString)) {
-      return missingFloat;
-    }
-    return PApplet.parseFloat(str, missingFloat);
-  }
-
-  /**
-   * @param columnName title of the column to reference
+   * @brief Finds a row that contains the given value
+   * @param value the value to match
+   * @param column ID number of the column to search
+   * @see Table#getRow(int)
+   * @see Table#rows()
+   * @see Table#findRows(String, int)
+   * @see Table#matchRow(String, int)
+   * @see Table#matchRows(String, int)
    */
-  public float getFloat(int row, String columnName) {
-    return getFloat(row, getColumnIndex(columnName));
+  public TableRow findRow(String value, int column) {
+    int row = findRowIndex(value, column);
+    return (row == -1) ? null : new RowPointer(this, row);
   }
 
 
-  public void setMissingFloat(float value) {
-    missingFloat = value;
+  /**
+   * @param columnName title of the column to search
+   */
+  public TableRow findRow(String value, String columnName) {
+    return findRow(value, getColumnIndex(columnName));
   }
 
 
   /**
    * @webref table:method
-   * @brief Store a float value in the specified row and column
-   * @param row ID number of the target row
-   * @param column ID number of the target column
-   * @param value value to assign
-   * @see Table#setInt(int, int, int)
-   * @see Table#setString(int, int, String)
-   * @see Table#getInt(int, int)
-   * @see Table#getFloat(int, int)
-   * @see Table#getString(int, int)
-   * @see Table#getStringColumn(String)
+   * @brief Finds multiple rows that contain the given value
+   * @param value the value to match
+   * @param column ID number of the column to search
+   * @see Table#getRow(int)
+   * @see Table#rows()
+   * @see Table#findRow(String, int)
+   * @see Table#matchRow(String, int)
+   * @see Table#matchRows(String, int)
    */
-  public void setFloat(int row, int column, float value) {
-    if (columnTypes[column] == STRING) {
-      setString(row, column, String.valueOf(value));
-
-    } else {
-      ensureBounds(row, column);
-      if (columnTypes[column] != FLOAT) {
-        throw new IllegalArgumentException("Column " + column + " is not a float column.");
+  public Iterable<TableRow> findRows(final String value, final int column) {
+    return new Iterable<TableRow>() {
+      public Iterator<TableRow> iterator() {
+        return findRowIterator(value, column);
       }
-      float[] longData = (float[]) columns[column];
-      longData[row] = value;
-    }
+    };
   }
 
+
   /**
-   * @param columnName title of the target column
+   * @param columnName title of the column to search
    */
-  public void setFloat(int row, String columnName, float value) {
-    setFloat(row, getColumnIndex(columnName), value);
-  }
-
-
-  public float[] getFloatColumn(String name) {
-    int col = getColumnIndex(name);
-    return (col == -1) ? null : getFloatColumn(col);
+  public Iterable<TableRow> findRows(final String value, final String columnName) {
+    return findRows(value, getColumnIndex(columnName));
   }
 
 
-  public float[] getFloatColumn(int col) {
-    float[] outgoing = new float[rowCount];
-    for (int row = 0; row < rowCount; row++) {
-      outgoing[row] = getFloat(row, col);
-    }
-    return outgoing;
+  /**
+   * @brief Finds multiple rows that contain the given value
+   * @param value the value to match
+   * @param column ID number of the column to search
+   */
+  public Iterator<TableRow> findRowIterator(String value, int column) {
+    return new RowIndexIterator(this, findRowIndices(value, column));
   }
 
 
-  public float[] getFloatRow(int row) {
-    float[] outgoing = new float[columns.length];
-    for (int col = 0; col < columns.length; col++) {
-      outgoing[col] = getFloat(row, col);
-    }
-    return outgoing;
+  /**
+   * @param columnName title of the column to search
+   */
+  public Iterator<TableRow> findRowIterator(String value, String columnName) {
+    return findRowIterator(value, getColumnIndex(columnName));
   }
 
 
   // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
 
 
-  public double getDouble(int row, int column) {
-    checkBounds(row, column);
-    if (columnTypes[column] == DOUBLE) {
-      double[] doubleData = (double[]) columns[column];
-      return doubleData[row];
-    }
-    String str = getString(row, column);
-    if (str == null || str.equals(missingString)) {
-      return missingDouble;
-    }
-    try {
-      return Double.parseDouble(str);
-    } catch (NumberFormatException nfe) {
-      return missingDouble;
-    }
-  }
-
-
-  public double getDouble(int row, String columnName) {
-    return getDouble(row, getColumnIndex(columnName));
+  /**
+   * Return the row that contains the first String that matches.
+   * @param regexp the String to match
+   * @param column ID number of the column to search
+   */
+  public int matchRowIndex(String regexp, int column) {
+    checkColumn(column);
+    Matcher matcher = matchPattern(regexp).matcher("");
+    return matchRange(matcher, column, 0, rowCount, null);
   }
 
 
-  public void setMissingDouble(double value) {
-    missingDouble = value;
+  /**
+   * Return the row that contains the first String that matches.
+   * @param what the String to match
+   * @param columnName title of the column to search
+   */
+  public int matchRowIndex(String what, String columnName) {
+    return matchRowIndex(what, getColumnIndex(columnName));
   }
 
 
-  public void setDouble(int row, int column, double value) {
-    if (columnTypes[column] == STRING) {
-      setString(row, column, String.valueOf(value));
-
+  /**
+   * Return a list of rows that contain the String passed in. If there are no
+   * matches, a zero length array will be returned (not a null array).
+   * @param what the String to match
+   * @param column ID number of the column to search
+   */
+  public int[] matchRowIndices(String regexp, final int column) {
+    checkColumn(column);
+    final Pattern pattern = matchPattern(regexp);
+    final List<IntList> found = new ArrayList<IntList>();
+    List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+    for (int start = 0; start < rowCount; start += PARALLEL_ROWS) {
+      final int first = start;
+      final int last = Math.min(start + PARALLEL_ROWS, rowCount);
+      final IntList rows = new IntList();
+      found.add(rows);
+      tasks.add(new RecursiveAction() {
+        @Override
+        protected void compute() {
+          matchRange(pattern.matcher(""), column, first, last, rows);
+        }
+      });
+    }
+    if (tasks.size() == 1) {
+      tasks.get(0).invoke();
     } else {
-      ensureBounds(row, column);
-      if (columnTypes[column] != DOUBLE) {
-        throw new IllegalArgumentException("Column " + column + " is not a 'double' column.");
-      }
-      double[] doubleData = (double[]) columns[column];
-      doubleData[row] = value;
+      runTasks(tasks);
     }
-  }
-
-
-  public void setDouble(int row, String columnName, double value) {
-    setDouble(row, getColumnIndex(columnName), value);
-  }
-
-
-  public double[] getDoubleColumn(String name) {
-    int col = getColumnIndex(name);
-    return (col == -1) ? null : getDoubleColumn(col);
-  }
-
-
-  public double[] getDoubleColumn(int col) {
-    double[] outgoing = new double[rowCount];
-    for (int row = 0; row < rowCount; row++) {
-      outgoing[row] = getDouble(row, col);
+    int count = 0;
+    for (IntList rows : found) {
+      count += rows.count;
     }
-    return outgoing;
-  }
-
-
-  public double[] getDoubleRow(int row) {
-    double[] outgoing = new double[columns.length];
-    for (int col = 0; col < columns.length; col++) {
-      outgoing[col] = getDouble(row, col);
+    int[] outgoing = new int[count];
+    int index = 0;
+    for (IntList rows : found) {
+      System.arraycopy(rows.data, 0, outgoing, index, rows.count);
+      index += rows.count;
     }
     return outgoing;
   }
 
 
-  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
-
-
-//public long getTimestamp(String rowName, int column) {
-//return getTimestamp(getRowIndex(rowName), column);
-//}
+  /** Same flags as PApplet.match(), but compiled once for the whole column. */
+  static Pattern matchPattern(String regexp) {
+    return Pattern.compile(regexp, Pattern.MULTILINE | Pattern.DOTALL);
+  }
 
 
   /**
-   * Returns the time in milliseconds by parsing a SQL Timestamp at this cell.
+   * Find the rows from first to last (not inclusive) that have a match in
+   * the column, and add them to 'outgoing'. If 'outgoing' is null, returns
+   * the first of them instead (or -1). Each category of a CATEGORY column
+   * is only tested once.
    */
-//  public long getTimestamp(int row, int column) {
-//    String str = get(row, column);
-//    java.sql.Timestamp timestamp = java.sql.Timestamp.valueOf(str);
-//    return timestamp.getTime();
-//  }
-
-
-//  public long getExcelTimestamp(int row, int column) {
-//    return parseExcelTimestamp(get(row, column));
-//  }
-
-
-//  static protected DateFormat excelDateFormat;
-
-//  static public long parseExcelTimestamp(String timestamp) {
-//    if (excelDateFormat == null) {
-//      excelDateFormat = new SimpleDateFormat("MM/dd/yy HH:mm");
-//    }
-//    try {
-//      return excelDateFormat.parse(timestamp).getTime();
-//    } catch (ParseException e) {
-//      e.printStackTrace();
-//      return -1;
-//    }
-//  }
-
-
-  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
-
-
-//  public void setObject(int row, int column, Object value) {
-//    if (value == null) {
-//      data[row][column] = null;
-//    } else if (value instanceof String) {
-//      set(row, column, (String) value);
-//    } else if (value instanceof Float) {
-//      setFloat(row, column, ((Float) value).floatValue());
-//    } else if (value instanceof Integer) {
-//      setInt(row, column, ((Integer) value).intValue());
-//    } else {
-//      set(row, column, value.toString());
-//    }
-//  }
-
-
-  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+  private int matchRange(Matcher matcher, int column,
+                         int first, int last, IntList outgoing) {
+    Object data = columns[column];
+    byte[] matched = null;  // 0 for not tested yet, 1 for match, 2 for none
+    if (columnTypes[column] == CATEGORY) {
+      matched = new byte[columnCategories[column].size()];
+    }
+    for (int row = first; row < last; row++) {
+      boolean found;
+      if (data instanceof String[]) {
+        String str = ((String[]) data)[row];
+        found = str != null && matcher.reset(str).find();
+      } else {  // less efficient, includes conversion as necessary
+        int cat = (matched == null) ? -1 : getInt(row, column);
+        if (cat >= 0 && cat < matched.length && matched[cat] != 0) {
+          found = matched[cat] == 1;
+        } else {
+          String str = getString(row, column);
+          found = str != null && matcher.reset(str).find();
+          if (cat >= 0 && cat < matched.length) {
+            matched[cat] = (byte) (found ? 1 : 2);
+          }
+        }
+      }
+      if (found) {
+        if (outgoing == null) {
+          return row;
+        }
+        outgoing.append(row);
+      }
+    }
+    return -1;
+  }
 
 
   /**
-   * Get a String value from the table. If the row is longer than the table
-   *
-   * @webref table:method
-   * @brief Get an String value from the specified row and column
-   * @param row ID number of the row to reference
-   * @param column ID number of the column to reference
-   * @see Table#getInt(int, int)
-   * @see Table#getFloat(int, int)
-   * @see Table#getStringColumn(String)
-   * @see Table#setInt(int, int, int)
-   * @see Table#setFloat(int, int, float)
-   * @see Table#setString(int, int, String)
+   * Return a list of rows that match the regex passed in. If there are no
+   * matches, a zero length array will be returned (not a null array).
+   * @param what the String to match
+   * @param columnName title of the column to search
    */
-  public String getString(int row, int column) {
-    checkBounds(row, column);
-    if (columnTypes[column] == STRING) {
-      String[] stringData = (String[]) columns[column];
-      return stringData[row];
-    } else if (columnTypes[column] == CATEGORY) {
-      int cat = getInt(row, column);
-      if (cat == missingCategory) {
-        return missingString;
-      }
-      return columnCategories[column].key(cat);
-    } else if (columnTypes[column] == FLOAT) {
-      if (Float.isNaN(getFloat(row, column))) {
-        return null;
-      }
-    } else if (columnTypes[column] == DOUBLE) {
-      if (Double.isNaN(getFloat(row, column))) {
-        return null;
-      }
-    }
-    return String.valueOf(Array.get(columns[column], row));
+  public int[] matchRowIndices(String what, String columnName) {
+    return matchRowIndices(what, getColumnIndex(columnName));
   }
 
 
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
   /**
-   * @param columnName title of the column to reference
+   * @webref table:method
+   * @brief Finds a row that matches the given expression
+   * @param regexp the regular expression to match
+   * @param column ID number of the column to search
+   * @see Table#getRow(int)
+   * @see Table#rows()
+   * @see Table#findRow(String, int)
+   * @see Table#findRows(String, int)
+   * @see Table#matchRows(String, int)
    */
-  public String getString(int row, String columnName) {
-    return getString(row, getColumnIndex(columnName));
+  public TableRow matchRow(String regexp, int column) {
+    int row = matchRowIndex(regexp, column);
+    return (row == -1) ? null : new RowPointer(this, row);
   }
 
 
   /**
-   * Treat entries with this string as "missing". Also used for categorial.
+   * @param columnName title of the column to search
    */
-  public void setMissingString(String value) {
-    missingString = value;
+  public TableRow matchRow(String regexp, String columnName) {
+    return matchRow(regexp, getColumnIndex(columnName));
   }
 
 
   /**
    * @webref table:method
-   * @brief Store a String value in the specified row and column
-   * @param row ID number of the target row
-   * @param column ID number of the target column
-   * @param value value to assign
-   * @see Table#setInt(int, int, int)
-   * @see Table#setFloat(int, int, float)
-   * @see Table#getInt(int, int)
-   * @see Table#getFloat(int, int)
-   * @see Table#getString(int, int)
-   * @see Table#getStringColumn(String)
+   * @brief Finds multiple rows that match the given expression
+   * @param regexp the regular expression to match
+   * @param column ID number of the column to search
+   * @see Table#getRow(int)
+   * @see Table#rows()
+   * @see Table#findRow(String, int)
+   * @see Table#findRows(String, int)
+   * @see Table#matchRow(String, int)
    */
-  public void setString(int row, int column, String value) {
-    ensureBounds(row, column);
-    if (columnTypes[column] != STRING) {
-      throw new IllegalArgumentException("Column " + column + " is not a String column.");
-    }
-    String[] stringData = (String[]) columns[column];
-    stringData[row] = value;
+  public Iterable<TableRow> matchRows(final String regexp, final int column) {
+    return new Iterable<TableRow>() {
+      public Iterator<TableRow> iterator() {
+        return matchRowIterator(regexp, column);
+      }
+    };
   }
 
-  /**
-   * @param columnName title of the target column
-   */
-  public void setString(int row, String columnName, String value) {
-    int column = checkColumnIndex(columnName);
-    setString(row, column, value);
-  }
 
   /**
-   * @webref table:method
-   * @brief Gets all values in the specified column
    * @param columnName title of the column to search
-   * @see Table#getInt(int, int)
-   * @see Table#getFloat(int, int)
-   * @see Table#getString(int, int)
-   * @see Table#setInt(int, int, int)
-   * @see Table#setFloat(int, int, float)
-   * @see Table#setString(int, int, String)
    */
-  public String[] getStringColumn(String columnName) {
-    int col = getColumnIndex(columnName);
-    return (col == -1) ? null : getStringColumn(col);
+  public Iterable<TableRow> matchRows(String regexp, String columnName) {
+    return matchRows(regexp, getColumnIndex(columnName));
   }
 
 
   /**
+   * @webref table:method
+   * @brief Finds multiple rows that match the given expression
+   * @param value the regular expression to match
    * @param column ID number of the column to search
    */
-  public String[] getStringColumn(int column) {
-    String[] outgoing = new String[rowCount];
-    for (int i = 0; i < rowCount; i++) {
-      outgoing[i] = getString(i, column);
-    }
-    return outgoing;
+  public Iterator<TableRow> matchRowIterator(String value, int column) {
+    return new RowIndexIterator(this, matchRowIndices(value, column));
   }
 
 
-  public String[] getStringRow(int row) {
-    String[] outgoing = new String[columns.length];
-    for (int col = 0; col < columns.length; col++) {
-      outgoing[col] = getString(row, col);
-    }
-    return outgoing;
+  /**
+   * @param columnName title of the column to search
+   */
+  public Iterator<TableRow> matchRowIterator(String value, String columnName) {
+    return matchRowIterator(value, getColumnIndex(columnName));
   }
 
 
@@ -3311,760 +7374,1586 @@ public class Table {
 
 
   /**
-   * Return the row that contains the first String that matches.
-   * @param value the String to match
-   * @param column ID number of the column to search
+   * Replace a String with another. Set empty entries null by using
+   * replace("", null) or use replace(null, "") to go the other direction.
+   * If this is a typed table, only String columns will be modified.
+   * @param orig
+   * @param replacement
    */
-  public int findRowIndex(String value, int column) {
-    checkColumn(column);
-    if (columnTypes[column] == STRING) {
-      String[] stringData = (String[]) columns[column];
-      if (value == null) {
-        for (int row = 0; row < rowCount; row++) {
-          if (stringData[row] == null) return row;
-        }
-      } else {
+  public void replace(String orig, String replacement) {
+    for (int col = 0; col < columns.length; col++) {
+      replace(orig, replacement, col);
+    }
+  }
+
+
+  public void replace(String orig, String replacement, int col) {
+    if (columnTypes[col] == STRING) {
+      ensureWritable(col);
+      invalidateIndex(col);
+      String[] stringData = (String[]) columns[col];
+
+      if (orig != null) {
         for (int row = 0; row < rowCount; row++) {
-          if (stringData[row] != null && stringData[row].equals(value)) {
-            return row;
+          if (orig.equals(stringData[row])) {
+            stringData[row] = replacement;
           }
         }
-      }
-    } else {  // less efficient, includes conversion as necessary
-      for (int row = 0; row < rowCount; row++) {
-        String str = getString(row, column);
-        if (str == null) {
-          if (value == null) {
-            return row;
+      } else {  // null is a special case (and faster anyway)
+        for (int row = 0; row < rowCount; row++) {
+          if (stringData[row] == null) {
+            stringData[row] = replacement;
           }
-        } else if (str.equals(value)) {
-          return row;
         }
       }
     }
-    return -1;
   }
 
 
+  public void replace(String orig, String replacement, String colName) {
+    replace(orig, replacement, getColumnIndex(colName));
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
   /**
-   * Return the row that contains the first String that matches.
-   * @param value the String to match
+   * Run String.replaceAll() on every String column. The expression is only
+   * compiled once, and the columns are done in parallel.
+   * @return the number of entries that were changed
+   */
+  public int replaceAll(String regex, String replacement) {
+    return editStrings(replaceEdit(regex, replacement), stringColumns(false));
+  }
+
+
+  public int replaceAll(String regex, String replacement, int column) {
+    checkColumn(column);
+    if (columnTypes[column] == STRING || isCompacted(column)) {
+      return editStrings(replaceEdit(regex, replacement), column);
+    } else {
+      throw new IllegalArgumentException("replaceAll() can only be used on String columns");
+    }
+  }
+
+
+  /**
+   * Run String.replaceAll() on all entries in a column.
+   * Only works with columns that are already String values.
+   * @param what the String to match
    * @param columnName title of the column to search
    */
-  public int findRowIndex(String value, String columnName) {
-    return findRowIndex(value, getColumnIndex(columnName));
+  public int replaceAll(String regex, String replacement, String columnName) {
+    return replaceAll(regex, replacement, getColumnIndex(columnName));
+  }
+
+
+  static TextEdit replaceEdit(String regex, final String replacement) {
+    final Pattern pattern = Pattern.compile(regex);
+    return new TextEdit() {
+      String apply(String str) {
+        return pattern.matcher(str).replaceAll(replacement);
+      }
+    };
   }
 
 
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
   /**
-   * Return a list of rows that contain the String passed in. If there are no
-   * matches, a zero length array will be returned (not a null array).
-   * @param value the String to match
-   * @param column ID number of the column to search
+   * Remove any of the specified characters from the entire table.
+   *
+   * @webref table:method
+   * @brief Removes characters from the table
+   * @param tokens a list of individual characters to be removed
+   * @return the number of entries that were changed
+   * @see Table#trim()
    */
-  public int[] findRowIndices(String value, int column) {
-    int[] outgoing = new int[rowCount];
-    int count = 0;
+  public int removeTokens(String tokens) {
+    return editStrings(tokenEdit(tokens), stringColumns(true));
+  }
 
+
+  /**
+   * Removed any of the specified characters from a column. For instance,
+   * the following code removes dollar signs and commas from column 2:
+   * <pre>
+   * table.removeTokens(",$", 2);
+   * </pre>
+   *
+   * @param column ID number of the column to process
+   */
+  public int removeTokens(String tokens, int column) {
     checkColumn(column);
-    if (columnTypes[column] == STRING) {
-      String[] stringData = (String[]) columns[column];
-      if (value == null) {
-        for (int row = 0; row < rowCount; row++) {
-          if (stringData[row] == null) {
-            outgoing[count++] = row;
-          }
-        }
-      } else {
-        for (int row = 0; row < rowCount; row++) {
-          if (stringData[row] != null && stringData[row].equals(value)) {
-            outgoing[count++] = row;
-          }
+    TextEdit edit = tokenEdit(tokens);
+    if (columnTypes[column] == STRING || columnTypes[column] == CATEGORY) {
+      return editStrings(edit, column);
+    }
+    int count = 0;
+    for (int row = 0; row < rowCount; row++) {
+      String s = getString(row, column);
+      if (s != null) {
+        String t = edit.apply(s);
+        if (t != s) {
+          setString(row, column, t);
+          count++;
         }
       }
-    } else {  // less efficient, includes conversion as necessary
-      for (int row = 0; row < rowCount; row++) {
-        String str = getString(row, column);
-        if (str == null) {
-          if (value == null) {
-            outgoing[count++] = row;
+    }
+    return count;
+  }
+
+  /**
+   * @param columnName title of the column to process
+   */
+  public int removeTokens(String tokens, String columnName) {
+    return removeTokens(tokens, getColumnIndex(columnName));
+  }
+
+
+  static TextEdit tokenEdit(final String tokens) {
+    // lookup table for the usual case of ASCII tokens
+    final boolean[] ascii = new boolean[128];
+    for (int i = 0; i < tokens.length(); i++) {
+      char c = tokens.charAt(i);
+      if (c < 128) {
+        ascii[c] = true;
+      }
+    }
+    return new TextEdit() {
+      String apply(String str) {
+        char[] c = null;
+        int index = 0;
+        for (int j = 0; j < str.length(); j++) {
+          char ch = str.charAt(j);
+          boolean remove = (ch < 128) ? ascii[ch] : tokens.indexOf(ch) != -1;
+          if (remove) {
+            if (c == null) {
+              c = str.toCharArray();
+              index = j;
+            }
+          } else if (c != null) {
+            c[index++] = ch;
           }
-        } else if (str.equals(value)) {
-          outgoing[count++] = row;
         }
+        return (c == null) ? str : new String(c, 0, index);
       }
-    }
-    return PApplet.subset(outgoing, 0, count);
+    };
   }
 
 
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+  /**
+   * @webref table:method
+   * @brief Trims whitespace from values
+   * @return the number of entries that were changed
+   * @see Table#removeTokens(String)
+   */
+  public int trim() {
+    return editStrings(TRIM, stringColumns(false));
+  }
+
+  /**
+   * @param column ID number of the column to trim
+   */
+  public int trim(int column) {
+    checkColumn(column);
+    if (columnTypes[column] == STRING || isCompacted(column)) {
+      return editStrings(TRIM, column);
+    }
+    return 0;
+  }
+
   /**
-   * Return a list of rows that contain the String passed in. If there are no
-   * matches, a zero length array will be returned (not a null array).
-   * @param value the String to match
-   * @param columnName title of the column to search
+   * @param columnName title of the column to trim
    */
-  public int[] findRowIndices(String value, String columnName) {
-    return findRowIndices(value, getColumnIndex(columnName));
+  public int trim(String columnName) {
+    return trim(getColumnIndex(columnName));
   }
 
 
+  static final TextEdit TRIM = new TextEdit() {
+    String apply(String str) {
+      return PApplet.trim(str);
+    }
+  };
+
+
   // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
 
+
   /**
-   * @webref table:method
-   * @brief Finds a row that contains the given value
-   * @param value the value to match
-   * @param column ID number of the column to search
-   * @see Table#getRow(int)
-   * @see Table#rows()
-   * @see Table#findRows(String, int)
-   * @see Table#matchRow(String, int)
-   * @see Table#matchRows(String, int)
+   * A change made to each entry by replaceAll(), removeTokens() and trim().
+   * Returns the same String object when there's nothing to change, and
+   * must be safe to use from several threads at once.
    */
-  public TableRow findRow(String value, int column) {
-    int row = findRowIndex(value, column);
-    return (row == -1) ? null : new RowPointer(this, row);
+  static abstract class TextEdit {
+    abstract String apply(String str);
   }
 
 
   /**
-   * @param columnName title of the column to search
+   * Columns that hold String values: STRING columns, compacted columns,
+   * and other CATEGORY columns if 'categories' is set.
    */
-  public TableRow findRow(String value, String columnName) {
-    return findRow(value, getColumnIndex(columnName));
+  private int[] stringColumns(boolean categories) {
+    IntList outgoing = new IntList();
+    for (int col = 0; col < columns.length; col++) {
+      if (columnTypes[col] == STRING || isCompacted(col) ||
+          (categories && columnTypes[col] == CATEGORY)) {
+        outgoing.append(col);
+      }
+    }
+    return outgoing.array();
   }
 
 
   /**
-   * @webref table:method
-   * @brief Finds multiple rows that contain the given value
-   * @param value the value to match
-   * @param column ID number of the column to search
-   * @see Table#getRow(int)
-   * @see Table#rows()
-   * @see Table#findRow(String, int)
-   * @see Table#matchRow(String, int)
-   * @see Table#matchRows(String, int)
+   * Apply an edit to each of the String or CATEGORY columns in 'targets',
+   * one column per task.
+   * @return the number of entries that were changed
    */
-  public Iterable<TableRow> findRows(final String value, final int column) {
-    return new Iterable<TableRow>() {
-      public Iterator<TableRow> iterator() {
-        return findRowIterator(value, column);
+  protected int editStrings(final TextEdit edit, int... targets) {
+    final int[] changed = new int[targets.length];
+    List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+    for (int i = 0; i < targets.length; i++) {
+      final int index = i;
+      final int column = targets[i];
+      ensureWritable(column);
+      tasks.add(new RecursiveAction() {
+        @Override
+        protected void compute() {
+          changed[index] = editColumn(edit, column);
+        }
+      });
+    }
+    if (tasks.size() == 1) {
+      tasks.get(0).invoke();
+    } else {
+      runTasks(tasks);
+    }
+    int count = 0;
+    for (int i = 0; i < targets.length; i++) {
+      if (changed[i] != 0) {
+        invalidateIndex(targets[i]);
+        count += changed[i];
       }
-    };
+    }
+    return count;
   }
 
 
   /**
-   * @param columnName title of the column to search
+   * Apply an edit to one column. For a CATEGORY column, each category is
+   * only edited once. A compacted column gets a new dictionary, so that
+   * values that are no longer used don't count against its limit.
    */
-  public Iterable<TableRow> findRows(final String value, final String columnName) {
-    return findRows(value, getColumnIndex(columnName));
+  private int editColumn(TextEdit edit, int column) {
+    int count = 0;
+    if (columnTypes[column] == STRING) {
+      String[] stringData = (String[]) columns[column];
+      for (int row = 0; row < rowCount; row++) {
+        String str = stringData[row];
+        if (str != null) {
+          String result = edit.apply(str);
+          if (result != str && !result.equals(str)) {
+            stringData[row] = result;
+            count++;
+          }
+        }
+      }
+
+    } else {
+      HashMapBlows categories = columnCategories[column];
+      int size = categories.size();
+      HashMapBlows target = (categories.limit == 0) ?
+        categories : new HashMapBlows(categories.limit);
+      int[] remap = new int[size];
+      boolean[] different = new boolean[size];
+      boolean any = false;
+      for (int i = 0; i < size; i++) {
+        String str = categories.key(i);
+        String result = (str == null) ? null : edit.apply(str);
+        if (result != str && !result.equals(str)) {
+          different[i] = true;
+          any = true;
+        } else {
+          result = str;
+        }
+        remap[i] = (target == categories && !different[i]) ? i : target.index(result);
+      }
+      if (!any) {
+        return 0;
+      }
+      int[] indexData = (int[]) columns[column];
+      for (int row = 0; row < rowCount; row++) {
+        int cat = indexData[row];
+        if (cat >= 0 && cat < size) {
+          if (different[cat]) {
+            count++;
+          }
+          indexData[row] = remap[cat];
+        }
+      }
+      columnCategories[column] = target;
+    }
+    return count;
   }
 
 
-  /**
-   * @brief Finds multiple rows that contain the given value
-   * @param value the value to match
-   * @param column ID number of the column to search
-   */
-  public Iterator<TableRow> findRowIterator(String value, int column) {
-    return new RowIndexIterator(this, findRowIndices(value, column));
+  /** Make sure this is a legit column, and if not, expand the table. */
+  protected void ensureColumn(int col) {
+    if (col >= columns.length) {
+      setColumnCount(col + 1);
+    }
   }
 
 
-  /**
-   * @param columnName title of the column to search
-   */
-  public Iterator<TableRow> findRowIterator(String value, String columnName) {
-    return findRowIterator(value, getColumnIndex(columnName));
+  /** Make sure this is a legit row, and if not, expand the table. */
+  protected void ensureRow(int row) {
+    if (row >= rowCount) {
+      setRowCount(row + 1);
+    }
   }
 
 
-  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+  /** Make sure this is a legit row and column. If not, expand the table. */
+  protected void ensureBounds(int row, int col) {
+    ensureRow(row);
+    ensureColumn(col);
+  }
 
 
-  /**
-   * Return the row that contains the first String that matches.
-   * @param regexp the String to match
-   * @param column ID number of the column to search
-   */
-  public int matchRowIndex(String regexp, int column) {
+  /** Throw an error if this row doesn't exist. */
+  protected void checkRow(int row) {
+    if (row < 0 || row >= rowCount) {
+      throw new ArrayIndexOutOfBoundsException("Row " + row + " does not exist.");
+    }
+  }
+
+
+  /** Throw an error if this column doesn't exist. */
+  protected void checkColumn(int column) {
+    if (column < 0 || column >= columns.length) {
+      throw new ArrayIndexOutOfBoundsException("Column " + column + " does not exist.");
+    }
+  }
+
+
+  /** Throw an error if this entry is out of bounds. */
+  protected void checkBounds(int row, int column) {
+    checkRow(row);
     checkColumn(column);
-    if (columnTypes[column] == STRING) {
-      String[] stringData = (String[]) columns[column];
-      for (int row = 0; row < rowCount; row++) {
-        if (stringData[row] != null &&
-            PApplet.match(stringData[row], regexp) != null) {
-          return row;
-        }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  static class HashMapBlows {
+    HashMap<String,Integer> dataToIndex = new HashMap<String, Integer>();
+    ArrayList<String> indexToData = new ArrayList<String>();
+    // for a column from compact(), the most entries it can have before going
+    // back to being a String column; 0 for regular categories
+    int limit;
+
+    HashMapBlows() { }
+
+    /**
+     * Categories for a compacted String column. Entry 0 is null, so that
+     * new rows start out empty just like they do in a String column.
+     */
+    HashMapBlows(int limit) {
+      this.limit = limit;
+      if (limit != 0) {
+        index(null);
       }
-    } else {  // less efficient, includes conversion as necessary
-      for (int row = 0; row < rowCount; row++) {
-        String str = getString(row, column);
-        if (str != null &&
-            PApplet.match(str, regexp) != null) {
-          return row;
-        }
+    }
+
+    HashMapBlows(HashMapBlows source) {
+      dataToIndex = new HashMap<String, Integer>(source.dataToIndex);
+      indexToData = new ArrayList<String>(source.indexToData);
+      limit = source.limit;
+    }
+
+    HashMapBlows(DataInputStream input) throws IOException {
+      read(input);
+    }
+
+    /** gets the index, and creates one if it doesn't already exist. */
+    int index(String key) {
+      Integer value = dataToIndex.get(key);
+      if (value != null) {
+        return value;
+      }
+
+      int v = dataToIndex.size();
+      dataToIndex.put(key, v);
+      indexToData.add(key);
+      return v;
+    }
+
+    String key(int index) {
+      return indexToData.get(index);
+    }
+
+    boolean hasCategory(int index) {
+      return index < size() && indexToData.get(index) != null;
+    }
+
+    void setCategory(int index, String name) {
+      while (indexToData.size() <= index) {
+        indexToData.add(null);
+      }
+      indexToData.set(index, name);
+      dataToIndex.put(name, index);
+    }
+
+    int size() {
+      return dataToIndex.size();
+    }
+
+    /** True if a compacted column has as many values as it can hold. */
+    boolean full() {
+      return size() > limit;  // not counting the null entry
+    }
+
+    long memoryUsage() {
+      long total = arrayBytes(indexToData.size(), REFERENCE_BYTES) +
+        arrayBytes(dataToIndex.size() * 4 / 3, REFERENCE_BYTES) +
+        (long) dataToIndex.size() * MAP_ENTRY_BYTES;
+      for (String str : indexToData) {
+        total += stringBytes(str);
+      }
+      return total;
+    }
+
+    void write(DataOutputStream output) throws IOException {
+      output.writeInt(size());
+      for (String str : indexToData) {
+        output.writeUTF(str);
+      }
+    }
+
+    private void writeln(PrintWriter writer) throws IOException {
+      for (String str : indexToData) {
+        writer.println(str);
+      }
+      writer.flush();
+      writer.close();
+    }
+
+    void read(DataInputStream input) throws IOException {
+      int count = input.readInt();
+      //System.out.println("found " + count + " entries in category map");
+      dataToIndex = new HashMap<String, Integer>(count);
+      for (int i = 0; i < count; i++) {
+        String str = input.readUTF();
+        //System.out.println(i + " " + str);
+        dataToIndex.put(str, i);
+        indexToData.add(str);
       }
     }
-    return -1;
   }
 
 
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+//  class HashMapSucks extends HashMap<String,Integer> {
+//
+//    void increment(String what) {
+//      Integer value = get(what);
+//      if (value == null) {
+//        put(what, 1);
+//      } else {
+//        put(what, value + 1);
+//      }
+//    }
+//
+//    void check(String what) {
+//      if (get(what) == null) {
+//        put(what, 0);
+//      }
+//    }
+//  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
   /**
-   * Return the row that contains the first String that matches.
-   * @param what the String to match
-   * @param columnName title of the column to search
+   * Calculate an expression for every row, and store the results in a
+   * column. A new column is DOUBLE; an existing numeric column keeps its
+   * type, with missing results stored as the missing value for that type.
+   * <pre>
+   * table.compute("ratio", TableExpression.col("a").div(TableExpression.col("b")));
+   * </pre>
+   * @param columnName title of the column for the results
+   * @see TableExpression
    */
-  public int matchRowIndex(String what, String columnName) {
-    return matchRowIndex(what, getColumnIndex(columnName));
+  public void compute(String columnName, TableExpression expression) {
+    double[] values = evaluate(expression);
+    int column = getColumnIndex(columnName, false);
+    if (column == -1) {
+      addColumn(columnName, DOUBLE);
+      column = getColumnIndex(columnName);
+    }
+    compute(column, values);
   }
 
 
   /**
-   * Return a list of rows that contain the String passed in. If there are no
-   * matches, a zero length array will be returned (not a null array).
-   * @param what the String to match
-   * @param column ID number of the column to search
+   * @param column index of the column for the results
    */
-  public int[] matchRowIndices(String regexp, int column) {
-    int[] outgoing = new int[rowCount];
-    int count = 0;
+  public void compute(int column, TableExpression expression) {
+    double[] values = evaluate(expression);
+    if (column >= columns.length) {
+      ensureColumn(column);
+      setColumnType(column, DOUBLE);
+    }
+    compute(column, values);
+  }
 
-    checkColumn(column);
-    if (columnTypes[column] == STRING) {
-      String[] stringData = (String[]) columns[column];
+
+  private void compute(int column, double[] values) {
+    invalidateIndex(column);
+    switch (columnTypes[column]) {
+    case INT: {
+      int[] intData = new int[rowCount];
       for (int row = 0; row < rowCount; row++) {
-        if (stringData[row] != null &&
-            PApplet.match(stringData[row], regexp) != null) {
-          outgoing[count++] = row;
-        }
+        double value = values[row];
+        intData[row] = (value != value) ? missingInt : (int) value;
       }
-    } else {  // less efficient, includes conversion as necessary
+      columns[column] = intData;
+      break;
+    }
+    case LONG: {
+      long[] longData = new long[rowCount];
       for (int row = 0; row < rowCount; row++) {
-        String str = getString(row, column);
-        if (str != null &&
-            PApplet.match(str, regexp) != null) {
-          outgoing[count++] = row;
+        double value = values[row];
+        longData[row] = (value != value) ? missingLong : (long) value;
+      }
+      columns[column] = longData;
+      break;
+    }
+    case FLOAT: {
+      float[] floatData = new float[rowCount];
+      for (int row = 0; row < rowCount; row++) {
+        double value = values[row];
+        floatData[row] = (value != value) ? missingFloat : (float) value;
+      }
+      columns[column] = floatData;
+      break;
+    }
+    case DOUBLE: {
+      if (missingDouble == missingDouble) {
+        for (int row = 0; row < rowCount; row++) {
+          if (values[row] != values[row]) {
+            values[row] = missingDouble;
+          }
         }
       }
+      columns[column] = values;
+      break;
+    }
+    default:
+      throw new IllegalArgumentException("Column " + column + " is not a numeric column.");
     }
-    return PApplet.subset(outgoing, 0, count);
   }
 
 
   /**
-   * Return a list of rows that match the regex passed in. If there are no
-   * matches, a zero length array will be returned (not a null array).
-   * @param what the String to match
-   * @param columnName title of the column to search
+   * Calculate an expression for every row, without changing the table.
+   * @return one value for each row, with NaN for missing values
    */
-  public int[] matchRowIndices(String what, String columnName) {
-    return matchRowIndices(what, getColumnIndex(columnName));
+  public double[] evaluate(TableExpression expression) {
+    final TableExpression bound = expression.bind(this);
+    final double[] outgoing = new double[rowCount];
+    List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+    for (int start = 0; start < rowCount; start += PARALLEL_ROWS) {
+      final int first = start;
+      final int last = Math.min(start + PARALLEL_ROWS, rowCount);
+      tasks.add(new RecursiveAction() {
+        @Override
+        protected void compute() {
+          double[] block = new double[TableExpression.BLOCK];
+          double[][] scratch = new double[bound.depth()][TableExpression.BLOCK];
+          for (int row = first; row < last; row += block.length) {
+            int count = Math.min(block.length, last - row);
+            bound.eval(Table.this, row, count, block, scratch, 0);
+            System.arraycopy(block, 0, outgoing, row, count);
+          }
+        }
+      });
+    }
+    if (tasks.size() == 1) {
+      tasks.get(0).invoke();
+    } else {
+      runTasks(tasks);
+    }
+    return outgoing;
   }
 
 
   // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
 
-  /**
-   * @webref table:method
-   * @brief Finds a row that matches the given expression
-   * @param regexp the regular expression to match
-   * @param column ID number of the column to search
-   * @see Table#getRow(int)
-   * @see Table#rows()
-   * @see Table#findRow(String, int)
-   * @see Table#findRows(String, int)
-   * @see Table#matchRows(String, int)
-   */
-  public TableRow matchRow(String regexp, int column) {
-    int row = matchRowIndex(regexp, column);
-    return (row == -1) ? null : new RowPointer(this, row);
+
+  public void sort(String columnName) {
+    sort(getColumnIndex(columnName), false);
   }
 
 
-  /**
-   * @param columnName title of the column to search
-   */
-  public TableRow matchRow(String regexp, String columnName) {
-    return matchRow(regexp, getColumnIndex(columnName));
+  public void sort(int column) {
+    sort(column, false);
   }
 
 
-  /**
-   * @webref table:method
-   * @brief Finds multiple rows that match the given expression
-   * @param regexp the regular expression to match
-   * @param column ID number of the column to search
-   * @see Table#getRow(int)
-   * @see Table#rows()
-   * @see Table#findRow(String, int)
-   * @see Table#findRows(String, int)
-   * @see Table#matchRow(String, int)
-   */
-  public Iterable<TableRow> matchRows(final String regexp, final int column) {
-    return new Iterable<TableRow>() {
-      public Iterator<TableRow> iterator() {
-        return matchRowIterator(regexp, column);
-      }
-    };
+  public void sortReverse(String columnName) {
+    sort(getColumnIndex(columnName), true);
   }
 
 
-  /**
-   * @param columnName title of the column to search
-   */
-  public Iterable<TableRow> matchRows(String regexp, String columnName) {
-    return matchRows(regexp, getColumnIndex(columnName));
+  public void sortReverse(int column) {
+    sort(column, true);
   }
 
 
-  /**
-   * @webref table:method
-   * @brief Finds multiple rows that match the given expression
-   * @param value the regular expression to match
-   * @param column ID number of the column to search
-   */
-  public Iterator<TableRow> matchRowIterator(String value, int column) {
-    return new RowIndexIterator(this, matchRowIndices(value, column));
+  protected void sort(int column, boolean reverse) {
+    sort(new int[] { column }, new boolean[] { reverse });
   }
 
 
   /**
-   * @param columnName title of the column to search
+   * Sort by several columns: rows are ordered by the first column, rows
+   * with the same value there are ordered by the second, and so on.
+   * Rows that are equal in every column keep their original order.
+   * @param columnNames titles of the columns to sort by
    */
-  public Iterator<TableRow> matchRowIterator(String value, String columnName) {
-    return matchRowIterator(value, getColumnIndex(columnName));
+  public void sort(String... columnNames) {
+    sort(columnNames, new boolean[columnNames.length]);
   }
 
 
-  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+  /**
+   * @param reverse true for each column that should be sorted high to low
+   */
+  public void sort(String[] columnNames, boolean[] reverse) {
+    int[] sortColumns = new int[columnNames.length];
+    for (int i = 0; i < columnNames.length; i++) {
+      sortColumns[i] = getColumnIndex(columnNames[i]);
+    }
+    sort(sortColumns, reverse);
+  }
 
 
   /**
-   * Replace a String with another. Set empty entries null by using
-   * replace("", null) or use replace(null, "") to go the other direction.
-   * If this is a typed table, only String columns will be modified.
-   * @param orig
-   * @param replacement
+   * Numbers (and CATEGORY ids) are sorted by value, Strings alphabetically
+   * ignoring case. Null and NaN entries always go last.
+   * @param sortColumns ID numbers of the columns to sort by
    */
-  public void replace(String orig, String replacement) {
+  public void sort(int[] sortColumns, boolean[] reverse) {
+    final int[] order = sortOrder(IntList.fromRange(rowCount).array(),
+                                  sortColumns, reverse);
+    invalidateIndexes();
+    // move the data in each column once, with the columns in parallel
+    List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
     for (int col = 0; col < columns.length; col++) {
-      replace(orig, replacement, col);
+      final int column = col;
+      tasks.add(new RecursiveAction() {
+        @Override
+        protected void compute() {
+          columns[column] = gather(column, order);
+        }
+      });
     }
+    runTasks(tasks);
   }
 
 
-  public void replace(String orig, String replacement, int col) {
-    if (columnTypes[col] == STRING) {
-      String[] stringData = (String[]) columns[col];
-
-      if (orig != null) {
-        for (int row = 0; row < rowCount; row++) {
-          if (orig.equals(stringData[row])) {
-            stringData[row] = replacement;
+  /**
+   * Stable sort of a list of rows, by one or more columns. The sort is done
+   * one column at a time from the last to the first, each pass keeping the
+   * order from the previous one. Numeric columns are radix sorted on their
+   * bits, String columns use a parallel merge sort.
+   */
+  protected int[] sortOrder(int[] order, int[] sortColumns, boolean[] reverse) {
+    if (reverse.length != sortColumns.length) {
+      throw new IllegalArgumentException("Need one reverse setting for each column");
+    }
+    for (int k = sortColumns.length - 1; k >= 0; --k) {
+      int column = sortColumns[k];
+      checkColumn(column);
+      boolean down = reverse[k];
+      int count = order.length;
+      int type = columnTypes[column];
+      if (isCompacted(column)) {
+        type = -1;  // sorted as Strings
+      }
+      switch (type) {
+      case INT:
+      case CATEGORY: {
+        int[] keys = new int[count];
+        for (int i = 0; i < count; i++) {
+          int key = getInt(order[i], column) ^ Integer.MIN_VALUE;
+          keys[i] = down ? ~key : key;
+        }
+        radixSort(keys, order);
+        break;
+      }
+      case -1: {
+        // sort the dictionary once, then radix sort by position in it
+        int[] rank = categoryRanks(column);
+        int[] keys = new int[count];
+        for (int i = 0; i < count; i++) {
+          int id = getInt(order[i], column);
+          int key = (id < 0 || id >= rank.length) ? -1 : rank[id];
+          keys[i] = (down && key != -1) ? rank.length - key : key;
+        }
+        radixSort(keys, order);
+        break;
+      }
+      case FLOAT: {
+        int[] keys = new int[count];
+        for (int i = 0; i < count; i++) {
+          float value = getFloat(order[i], column);
+          if (value != value) {
+            keys[i] = -1;  // NaN goes last
+          } else {
+            int bits = Float.floatToIntBits(value + 0.0f);  // no -0.0
+            int key = bits ^ ((bits >> 31) | Integer.MIN_VALUE);
+            keys[i] = down ? ~key : key;
           }
         }
-      } else {  // null is a special case (and faster anyway)
-        for (int row = 0; row < rowCount; row++) {
-          if (stringData[row] == null) {
-            stringData[row] = replacement;
+        radixSort(keys, order);
+        break;
+      }
+      case LONG: {
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+          long key = getLong(order[i], column) ^ Long.MIN_VALUE;
+          keys[i] = down ? ~key : key;
+        }
+        radixSort(keys, order);
+        break;
+      }
+      case DOUBLE: {
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+          double value = getDouble(order[i], column);
+          if (value != value) {
+            keys[i] = -1;
+          } else {
+            long bits = Double.doubleToLongBits(value + 0.0);
+            long key = bits ^ ((bits >> 63) | Long.MIN_VALUE);
+            keys[i] = down ? ~key : key;
           }
         }
+        radixSort(keys, order);
+        break;
+      }
+      default: {
+        String[] values = new String[count];
+        for (int i = 0; i < count; i++) {
+          values[i] = getString(order[i], column);
+        }
+        int[] positions = IntList.fromRange(count).array();
+        getPool().invoke(new StringSort(values, down, positions,
+                                        new int[count], 0, count));
+        int[] sorted = new int[count];
+        for (int i = 0; i < count; i++) {
+          sorted[i] = order[positions[i]];
+        }
+        order = sorted;
+      }
       }
     }
+    return order;
   }
 
 
-  public void replace(String orig, String replacement, String colName) {
-    replace(orig, replacement, getColumnIndex(colName));
+  /**
+   * Alphabetical position (ignoring case) of each of a column's categories,
+   * with equal values sharing a position. Null is -1.
+   */
+  protected int[] categoryRanks(int column) {
+    HashMapBlows categories = columnCategories[column];
+    String[] keys = categories.indexToData.toArray(new String[0]);
+    int[] positions = IntList.fromRange(keys.length).array();
+    StringSort sorter =
+      new StringSort(keys, false, positions, new int[keys.length], 0, keys.length);
+    sorter.sort(0, keys.length);
+    int[] rank = new int[keys.length];
+    int position = 0;
+    for (int i = 0; i < keys.length; i++) {
+      if (i > 0 && sorter.compare(positions[i-1], positions[i]) != 0) {
+        position++;
+      }
+      rank[positions[i]] = (keys[positions[i]] == null) ? -1 : position;
+    }
+    return rank;
   }
 
 
-  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
-
-
-  public void replaceAll(String regex, String replacement) {
-    for (int col = 0; col < columns.length; col++) {
-      replaceAll(regex, replacement, col);
+  /**
+   * Stable LSD radix sort of order by keys (compared as unsigned), one byte
+   * at a time, skipping bytes that are the same for every key.
+   */
+  static protected void radixSort(int[] keys, int[] order) {
+    int count = keys.length;
+    int[] keys2 = new int[count];
+    int[] order2 = new int[count];
+    int[] offsets = new int[256];
+    int[] source = order;
+    for (int shift = 0; shift < 32; shift += 8) {
+      Arrays.fill(offsets, 0);
+      for (int i = 0; i < count; i++) {
+        offsets[(keys[i] >>> shift) & 0xFF]++;
+      }
+      if (count == 0 || offsets[(keys[0] >>> shift) & 0xFF] == count) {
+        continue;
+      }
+      int total = 0;
+      for (int b = 0; b < 256; b++) {
+        int amount = offsets[b];
+        offsets[b] = total;
+        total += amount;
+      }
+      for (int i = 0; i < count; i++) {
+        int index = offsets[(keys[i] >>> shift) & 0xFF]++;
+        keys2[index] = keys[i];
+        order2[index] = source[i];
+      }
+      int[] temp = keys; keys = keys2; keys2 = temp;
+      temp = source; source = order2; order2 = temp;
+    }
+    if (source != order) {
+      System.arraycopy(source, 0, order, 0, count);
     }
   }
 
 
-  public void replaceAll(String regex, String replacement, int column) {
-    checkColumn(column);
-    if (columnTypes[column] == STRING) {
-      String[] stringData = (String[]) columns[column];
-      for (int row = 0; row < rowCount; row++) {
-        if (stringData[row] != null) {
-          stringData[row] = stringData[row].replaceAll(regex, replacement);
-        }
+  static protected void radixSort(long[] keys, int[] order) {
+    int count = keys.length;
+    long[] keys2 = new long[count];
+    int[] order2 = new int[count];
+    int[] offsets = new int[256];
+    int[] source = order;
+    for (int shift = 0; shift < 64; shift += 8) {
+      Arrays.fill(offsets, 0);
+      for (int i = 0; i < count; i++) {
+        offsets[(int) (keys[i] >>> shift) & 0xFF]++;
       }
-    } else {
-      throw new IllegalArgumentException("replaceAll() can only be used on String columns");
+      if (count == 0 || offsets[(int) (keys[0] >>> shift) & 0xFF] == count) {
+        continue;
+      }
+      int total = 0;
+      for (int b = 0; b < 256; b++) {
+        int amount = offsets[b];
+        offsets[b] = total;
+        total += amount;
+      }
+      for (int i = 0; i < count; i++) {
+        int index = offsets[(int) (keys[i] >>> shift) & 0xFF]++;
+        keys2[index] = keys[i];
+        order2[index] = source[i];
+      }
+      long[] temp = keys; keys = keys2; keys2 = temp;
+      int[] temp2 = source; source = order2; order2 = temp2;
+    }
+    if (source != order) {
+      System.arraycopy(source, 0, order, 0, count);
     }
   }
 
 
   /**
-   * Run String.replaceAll() on all entries in a column.
-   * Only works with columns that are already String values.
-   * @param what the String to match
-   * @param columnName title of the column to search
+   * Stable merge sort of positions into a String array, with the halves
+   * sorted in parallel when they're large enough. Strings are compared
+   * ignoring case, and nulls go last.
    */
-  public void replaceAll(String regex, String replacement, String columnName) {
-    replaceAll(regex, replacement, getColumnIndex(columnName));
-  }
-
+  @SuppressWarnings("serial")
+  static class StringSort extends RecursiveAction {
+    static final int SERIAL = 1 << 13;
+    static final int INSERTION = 16;
+
+    String[] values;
+    boolean reverse;
+    int[] positions;
+    int[] temp;
+    int lo, hi;
+
+    StringSort(String[] values, boolean reverse,
+               int[] positions, int[] temp, int lo, int hi) {
+      this.values = values;
+      this.reverse = reverse;
+      this.positions = positions;
+      this.temp = temp;
+      this.lo = lo;
+      this.hi = hi;
+    }
+
+    @Override
+    protected void compute() {
+      if (hi - lo <= SERIAL) {
+        sort(lo, hi);
+      } else {
+        int mid = (lo + hi) >>> 1;
+        invokeAll(new StringSort(values, reverse, positions, temp, lo, mid),
+                  new StringSort(values, reverse, positions, temp, mid, hi));
+        merge(lo, mid, hi);
+      }
+    }
 
-  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+    void sort(int start, int stop) {
+      if (stop - start <= INSERTION) {
+        for (int i = start + 1; i < stop; i++) {
+          int p = positions[i];
+          int j = i - 1;
+          while (j >= start && compare(positions[j], p) > 0) {
+            positions[j + 1] = positions[j];
+            j--;
+          }
+          positions[j + 1] = p;
+        }
+      } else {
+        int mid = (start + stop) >>> 1;
+        sort(start, mid);
+        sort(mid, stop);
+        merge(start, mid, stop);
+      }
+    }
 
+    void merge(int start, int mid, int stop) {
+      if (compare(positions[mid - 1], positions[mid]) <= 0) {
+        return;  // already in order
+      }
+      System.arraycopy(positions, start, temp, start, stop - start);
+      int a = start;
+      int b = mid;
+      for (int i = start; i < stop; i++) {
+        if (b == stop || (a < mid && compare(temp[a], temp[b]) <= 0)) {
+          positions[i] = temp[a++];
+        } else {
+          positions[i] = temp[b++];
+        }
+      }
+    }
 
-  /**
-   * Remove any of the specified characters from the entire table.
-   *
-   * @webref table:method
-   * @brief Removes characters from the table
-   * @param tokens a list of individual characters to be removed
-   * @see Table#trim()
-   */
-  public void removeTokens(String tokens) {
-    for (int col = 0; col < getColumnCount(); col++) {
-      removeTokens(tokens, col);
+    int compare(int a, int b) {
+      String s1 = values[a];
+      String s2 = values[b];
+      if (s1 == null || s2 == null) {
+        return (s1 == null ? 1 : 0) - (s2 == null ? 1 : 0);
+      }
+      int result = s1.compareToIgnoreCase(s2);
+      return reverse ? -result : result;
     }
   }
 
 
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
   /**
-   * Removed any of the specified characters from a column. For instance,
-   * the following code removes dollar signs and commas from column 2:
+   * Group rows by the values in one or more columns, then use agg() on the
+   * result to count, sum, average, or find the min or max for each group.
    * <pre>
-   * table.removeTokens(",$", 2);
+   * Table totals = table.groupBy("region").agg("count", "sum(sales)");
    * </pre>
-   *
-   * @param column ID number of the column to process
+   * @param columnNames titles of the key columns
    */
-  public void removeTokens(String tokens, int column) {
-    for (int row = 0; row < rowCount; row++) {
-      String s = getString(row, column);
-      if (s != null) {
-        char[] c = s.toCharArray();
-        int index = 0;
-        for (int j = 0; j < c.length; j++) {
-          if (tokens.indexOf(c[j]) == -1) {
-            if (index != j) {
-              c[index] = c[j];
-            }
-            index++;
-          }
-        }
-        if (index != c.length) {
-          setString(row, column, new String(c, 0, index));
-        }
-      }
+  public TableGroup groupBy(String... columnNames) {
+    int[] keyColumns = new int[columnNames.length];
+    for (int i = 0; i < columnNames.length; i++) {
+      keyColumns[i] = getColumnIndex(columnNames[i]);
     }
+    return new TableGroup(this, keyColumns);
   }
 
+
   /**
-   * @param columnName title of the column to process
+   * @param columns ID numbers of the key columns
    */
-  public void removeTokens(String tokens, String columnName) {
-    removeTokens(tokens, getColumnIndex(columnName));
+  public TableGroup groupBy(int... columns) {
+    return new TableGroup(this, columns);
   }
 
 
-  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
-
   /**
-   * @webref table:method
-   * @brief Trims whitespace from values
-   * @see Table#removeTokens(String)
+   * Summarize one column by another, with a row for each value of rowKey
+   * and a column for each value of colKey (titled with that value), in the
+   * order they first appear. The aggregate is "count", "sum", "mean",
+   * "min", or "max", the same as TableGroup.agg(). Combinations that don't
+   * appear in the table are 0 for count and sum, NaN for the others.
+   * <pre>
+   * Table sales = table.pivot("region", "year", "amount", "sum");
+   * </pre>
+   * @param valueColumn title of the column to summarize, or null for count
    */
-  public void trim() {
-    for (int col = 0; col < getColumnCount(); col++) {
-      trim(col);
-    }
+  public Table pivot(String rowKey, String colKey,
+                     String valueColumn, String aggregate) {
+    return pivot(getColumnIndex(rowKey), getColumnIndex(colKey),
+                 valueColumn == null ? -1 : getColumnIndex(valueColumn),
+                 aggregate);
   }
 
+
   /**
-   * @param column ID number of the column to trim
+   * @param valueColumn ID number of the column to summarize, or -1 for count
    */
-  public void trim(int column) {
-    if (columnTypes[column] == STRING) {
-      String[] stringData = (String[]) columns[column];
-      for (int row = 0; row < rowCount; row++) {
-        if (stringData[row] != null) {
-          stringData[row] = PApplet.trim(stringData[row]);
-        }
+  public Table pivot(int rowKey, int colKey, int valueColumn, String aggregate) {
+    int op = TableGroup.op(aggregate);
+    boolean count = (op == TableGroup.COUNT);
+    // pass the column number itself, since a title could look like a number
+    TableGroup group = groupBy(rowKey, colKey);
+    Table totals = group.agg(new TableGroup.Aggregate[] {
+      group.new Aggregate(op, count ? -1 : valueColumn)
+    });
+
+    // the totals table is one row per combination, so it's small
+    TableGroup rows = new TableGroup(totals, 0);
+    TableGroup cols = new TableGroup(totals, 1);
+    int type = count ? INT : (op == TableGroup.SUM ? totals.getColumnType(2) : DOUBLE);
+
+    Table outgoing = new Table();
+    outgoing.addColumn(getColumnTitle(rowKey), totals.getColumnType(0));
+    for (int col = 0; col < cols.groupCount; col++) {
+      outgoing.addColumn(String.valueOf(totals.getString(cols.firstRows[col], 1)), type);
+    }
+    outgoing.setRowCount(rows.groupCount);
+    rows.copyKeys(outgoing);
+    if (type == DOUBLE && op != TableGroup.SUM) {
+      for (int col = 1; col < outgoing.columns.length; col++) {
+        Arrays.fill((double[]) outgoing.columns[col], Double.NaN);
+      }
+    }
+    for (int i = 0; i < totals.rowCount; i++) {
+      int row = rows.groups[i];
+      int col = 1 + cols.groups[i];
+      switch (type) {
+      case INT:
+        outgoing.setInt(row, col, totals.getInt(i, 2));
+        break;
+      case LONG:
+        outgoing.setLong(row, col, totals.getLong(i, 2));
+        break;
+      default:
+        outgoing.setDouble(row, col, totals.getDouble(i, 2));
       }
     }
+    return outgoing;
   }
 
+
   /**
-   * @param columnName title of the column to trim
+   * Count the values of a numeric column in equal-width bins, from the
+   * lowest value to the highest (see getMin() and getMax(), which are
+   * quick if the column has stats). Missing values aren't counted.
+   * @return the number of values in each bin
    */
-  public void trim(String columnName) {
-    trim(getColumnIndex(columnName));
+  public IntList histogram(int column, int bins) {
+    double low = getMin(column);
+    if (low != low) {  // nothing but missing values
+      return new IntList(new int[Math.max(bins, 0)]);
+    }
+    return histogram(column, bins, low, getMax(column));
   }
 
 
-  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
-
-
-  /** Make sure this is a legit column, and if not, expand the table. */
-  protected void ensureColumn(int col) {
-    if (col >= columns.length) {
-      setColumnCount(col + 1);
-    }
+  public IntList histogram(String columnName, int bins) {
+    return histogram(getColumnIndex(columnName), bins);
   }
 
 
-  /** Make sure this is a legit row, and if not, expand the table. */
-  protected void ensureRow(int row) {
-    if (row >= rowCount) {
-      setRowCount(row + 1);
+  /**
+   * Count values in bins that split low to high evenly, so that bin i
+   * starts at low + i * (high - low) / bins. Values outside the range
+   * aren't counted, and values equal to high go into the last bin.
+   */
+  public IntList histogram(final int column, final int bins,
+                           final double low, final double high) {
+    checkColumn(column);
+    if (columnTypes[column] == STRING || columnTypes[column] == CATEGORY) {
+      throw new IllegalArgumentException("Column " + column + " is not a numeric column.");
+    }
+    if (bins < 1 || !(high >= low)) {
+      throw new IllegalArgumentException("histogram() needs at least one bin, and low <= high");
+    }
+    List<RecursiveTask<int[]>> tasks = new ArrayList<RecursiveTask<int[]>>();
+    for (int start = 0; start < rowCount; start += PARALLEL_ROWS) {
+      final int first = start;
+      final int last = Math.min(start + PARALLEL_ROWS, rowCount);
+      tasks.add(new RecursiveTask<int[]>() {
+        @Override
+        protected int[] compute() {
+          int[] counts = new int[bins];
+          histogram(column, first, last, low, high, counts);
+          return counts;
+        }
+      });
+    }
+    runTasks(tasks);
+    int[] outgoing = new int[bins];
+    for (RecursiveTask<int[]> task : tasks) {
+      int[] counts = task.getRawResult();
+      for (int i = 0; i < bins; i++) {
+        outgoing[i] += counts[i];
+      }
     }
+    return new IntList(outgoing);
   }
 
 
-  /** Make sure this is a legit row and column. If not, expand the table. */
-  protected void ensureBounds(int row, int col) {
-    ensureRow(row);
-    ensureColumn(col);
+  public IntList histogram(String columnName, int bins, double low, double high) {
+    return histogram(getColumnIndex(columnName), bins, low, high);
   }
 
 
-  /** Throw an error if this row doesn't exist. */
-  protected void checkRow(int row) {
-    if (row < 0 || row >= rowCount) {
-      throw new ArrayIndexOutOfBoundsException("Row " + row + " does not exist.");
+  /** Add the rows from first to last (not inclusive) to the bin counts. */
+  private void histogram(int column, int first, int last,
+                         double low, double high, int[] counts) {
+    int bins = counts.length;
+    double scale = (high > low) ? bins / (high - low) : 0;
+    Object data = columns[column];
+    if (data instanceof int[]) {
+      int[] values = (int[]) data;
+      boolean skip = (missingInt != 0);
+      for (int row = first; row < last; row++) {
+        int value = values[row];
+        if (value >= low && value <= high && !(skip && value == missingInt)) {
+          counts[Math.min((int) ((value - low) * scale), bins - 1)]++;
+        }
+      }
+    } else if (data instanceof long[]) {
+      long[] values = (long[]) data;
+      boolean skip = (missingLong != 0);
+      for (int row = first; row < last; row++) {
+        long value = values[row];
+        if (value >= low && value <= high && !(skip && value == missingLong)) {
+          counts[Math.min((int) ((value - low) * scale), bins - 1)]++;
+        }
+      }
+    } else if (data instanceof float[]) {
+      float[] values = (float[]) data;
+      for (int row = first; row < last; row++) {
+        float value = values[row];
+        if (value >= low && value <= high && value != missingFloat) {
+          counts[Math.min((int) ((value - low) * scale), bins - 1)]++;
+        }
+      }
+    } else if (data instanceof double[]) {
+      double[] values = (double[]) data;
+      for (int row = first; row < last; row++) {
+        double value = values[row];
+        if (value >= low && value <= high && value != missingDouble) {
+          counts[Math.min((int) ((value - low) * scale), bins - 1)]++;
+        }
+      }
+    } else {  // mapped from a file
+      for (int row = first; row < last; row++) {
+        double value = statsValue(row, column);
+        if (value >= low && value <= high) {
+          counts[Math.min((int) ((value - low) * scale), bins - 1)]++;
+        }
+      }
     }
   }
 
 
-  /** Throw an error if this column doesn't exist. */
-  protected void checkColumn(int column) {
-    if (column < 0 || column >= columns.length) {
-      throw new ArrayIndexOutOfBoundsException("Column " + column + " does not exist.");
+  /**
+   * Combine each row of this table with the rows of another table that
+   * have the same value in their key columns. INNER_JOIN keeps only the
+   * rows that have a match, LEFT_JOIN keeps every row of this table and
+   * uses missing values where there's no match. Rows come back in the
+   * order of this table (then the order of the other table). The results
+   * have every column of this table, followed by the columns of the other
+   * table except its key; titles that are already taken get "_2" added.
+   * Entries that are null or NaN never match.
+   * <pre>
+   * Table orders = sales.join(products, "product_id", "id", Table.LEFT_JOIN);
+   * </pre>
+   * @param other the table to join with this one
+   * @param leftKey title of the key column in this table
+   * @param rightKey title of the key column in the other table
+   * @param joinType INNER_JOIN or LEFT_JOIN
+   */
+  public Table join(Table other, String leftKey, String rightKey, int joinType) {
+    return join(other, getColumnIndex(leftKey),
+                other.getColumnIndex(rightKey), joinType);
+  }
+
+
+  public Table join(Table other, int leftKey, int rightKey, int joinType) {
+    checkColumn(leftKey);
+    other.checkColumn(rightKey);
+    if (joinType != INNER_JOIN && joinType != LEFT_JOIN) {
+      throw new IllegalArgumentException("Use INNER_JOIN or LEFT_JOIN");
+    }
+    JoinKey left = new JoinKey(this, leftKey, null);
+    JoinKey right = new JoinKey(other, rightKey, left);
+    left.strings = right.strings;
+
+    // the hash table goes on the smaller side, the other side probes it
+    boolean buildLeft = rowCount < other.rowCount;
+    final JoinKey build = buildLeft ? left : right;
+    final JoinKey probe = buildLeft ? right : left;
+    final ColumnIndex index = build.index();
+    final boolean[] matched = (buildLeft && joinType == LEFT_JOIN) ?
+      new boolean[rowCount] : null;
+    final boolean keepUnmatched = !buildLeft && joinType == LEFT_JOIN;
+
+    int probeCount = probe.table.rowCount;
+    int parts = 1;
+    if (probeCount >= PARALLEL_ROWS * 2) {
+      parts = Math.min(getPool().getParallelism(), probeCount / PARALLEL_ROWS);
+    }
+    List<JoinProbe> tasks = new ArrayList<JoinProbe>();
+    for (int i = 0; i < parts; i++) {
+      int start = (int) ((long) probeCount * i / parts);
+      int stop = (int) ((long) probeCount * (i + 1) / parts);
+      tasks.add(new JoinProbe(probe, index, start, stop, keepUnmatched, matched));
+    }
+    if (parts == 1) {
+      tasks.get(0).compute();
+    } else {
+      runTasks(tasks);
     }
-  }
-
 
-  /** Throw an error if this entry is out of bounds. */
-  protected void checkBounds(int row, int column) {
-    checkRow(row);
-    checkColumn(column);
+    // collect the matching pairs, in order of the probe side
+    int count = 0;
+    for (JoinProbe task : tasks) {
+      count += task.probeRows.size();
+    }
+    if (matched != null) {
+      for (boolean m : matched) {
+        if (!m) count++;
+      }
+    }
+    int[] leftRows = new int[count];
+    int[] rightRows = new int[count];
+    int offset = 0;
+    for (JoinProbe task : tasks) {
+      int size = task.probeRows.size();
+      System.arraycopy(task.probeRows.array(), 0,
+                       buildLeft ? rightRows : leftRows, offset, size);
+      System.arraycopy(task.buildRows.array(), 0,
+                       buildLeft ? leftRows : rightRows, offset, size);
+      offset += size;
+    }
+    if (buildLeft) {
+      if (matched != null) {
+        for (int row = 0; row < rowCount; row++) {
+          if (!matched[row]) {
+            leftRows[offset] = row;
+            rightRows[offset++] = -1;
+          }
+        }
+      }
+      // put back into the order of this table
+      long[] order = new long[count];
+      for (int i = 0; i < count; i++) {
+        order[i] = ((long) leftRows[i] << 32) | (rightRows[i] + 1L);
+      }
+      Arrays.sort(order);
+      for (int i = 0; i < count; i++) {
+        leftRows[i] = (int) (order[i] >>> 32);
+        rightRows[i] = (int) order[i] - 1;
+      }
+    }
+    return joinColumns(other, rightKey, leftRows, rightRows);
+  }
+
+
+  /** Assemble the joined table one column at a time, in parallel. */
+  protected Table joinColumns(final Table other, int rightKey,
+                              final int[] leftRows, final int[] rightRows) {
+    int leftCount = getColumnCount();
+    int columnCount = leftCount + other.getColumnCount() - 1;
+    final Table outgoing = new Table();
+    outgoing.copyMissing(this);
+    outgoing.columns = new Object[columnCount];
+    outgoing.columnTypes = new int[columnCount];
+    outgoing.columnCategories = new HashMapBlows[columnCount];
+    outgoing.rowCount = leftRows.length;
+
+    final int[] sourceColumns = new int[columnCount];
+    String[] titles = new String[columnCount];
+    HashSet<String> used = new HashSet<String>();
+    boolean hasTitles = false;
+    for (int col = 0; col < columnCount; col++) {
+      Table source = (col < leftCount) ? this : other;
+      int column = (col < leftCount) ? col : col - leftCount;
+      if (source == other && column >= rightKey) {
+        column++;  // skip over the right key
+      }
+      sourceColumns[col] = column;
+      outgoing.columnTypes[col] = source.columnTypes[column];
+      if (source.columnCategories[column] != null) {
+        outgoing.columnCategories[col] =
+          new HashMapBlows(source.columnCategories[column]);
+      }
+      String title = source.getColumnTitle(column);
+      if (title != null) {
+        hasTitles = true;
+        while (used.contains(title)) {
+          title += "_2";
+        }
+        used.add(title);
+      }
+      titles[col] = title;
+    }
+    outgoing.columnTitles = hasTitles ? titles : null;
+
+    List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+    for (int col = 0; col < columnCount; col++) {
+      final int target = col;
+      final boolean fromLeft = col < leftCount;
+      tasks.add(new RecursiveAction() {
+        @Override
+        protected void compute() {
+          outgoing.columns[target] = fromLeft ?
+            gather(sourceColumns[target], leftRows) :
+            other.gather(sourceColumns[target], rightRows);
+        }
+      });
+    }
+    runTasks(tasks);
+    return outgoing;
   }
 
 
-  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
-
-
-  static class HashMapBlows {
-    HashMap<String,Integer> dataToIndex = new HashMap<String, Integer>();
-    ArrayList<String> indexToData = new ArrayList<String>();
-
-    HashMapBlows() { }
-
-    HashMapBlows(DataInputStream input) throws IOException {
-      read(input);
-    }
-
-    /** gets the index, and creates one if it doesn't already exist. */
-    int index(String key) {
-      Integer value = dataToIndex.get(key);
-      if (value != null) {
-        return value;
+  /** New table with just these rows, copied one column at a time. */
+  protected Table copyRows(final int[] rows) {
+    int columnCount = columns.length;
+    final Table outgoing = new Table();
+    outgoing.copyMissing(this);
+    outgoing.columns = new Object[columnCount];
+    outgoing.columnTypes = columnTypes.clone();
+    outgoing.columnCategories = new HashMapBlows[columnCount];
+    for (int col = 0; col < columnCount; col++) {
+      if (columnCategories[col] != null) {
+        outgoing.columnCategories[col] = new HashMapBlows(columnCategories[col]);
       }
-
-      int v = dataToIndex.size();
-      dataToIndex.put(key, v);
-      indexToData.add(key);
-      return v;
     }
+    outgoing.columnTitles = (columnTitles == null) ? null : columnTitles.clone();
+    outgoing.rowCount = rows.length;
 
-    String key(int index) {
-      return indexToData.get(index);
+    List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+    for (int col = 0; col < columnCount; col++) {
+      final int column = col;
+      tasks.add(new RecursiveAction() {
+        @Override
+        protected void compute() {
+          outgoing.columns[column] = gather(column, rows);
+        }
+      });
     }
+    runTasks(tasks);
+    return outgoing;
+  }
 
-    boolean hasCategory(int index) {
-      return index < size() && indexToData.get(index) != null;
-    }
 
-    void setCategory(int index, String name) {
-      while (indexToData.size() <= index) {
-        indexToData.add(null);
+  /**
+   * New array with the entries of a column for each of the rows listed,
+   * using the missing value for this type where the row is -1.
+   */
+  protected Object gather(int column, int[] rows) {
+    int count = rows.length;
+    Object data = columns[column];
+    BufferColumn buffer = (data instanceof BufferColumn) ? (BufferColumn) data : null;
+    switch (columnTypes[column]) {
+    case INT:
+    case CATEGORY: {
+      int missing = (columnTypes[column] == INT) ? missingInt : missingCategory;
+      int[] source = (buffer == null) ? (int[]) data : null;
+      int[] outgoing = new int[count];
+      for (int i = 0; i < count; i++) {
+        int row = rows[i];
+        outgoing[i] = (row == -1) ? missing :
+          (source != null ? source[row] : buffer.getInt(row));
       }
-      indexToData.set(index, name);
-      dataToIndex.put(name, index);
+      return outgoing;
     }
-
-    int size() {
-      return dataToIndex.size();
+    case LONG: {
+      long[] source = (buffer == null) ? (long[]) data : null;
+      long[] outgoing = new long[count];
+      for (int i = 0; i < count; i++) {
+        int row = rows[i];
+        outgoing[i] = (row == -1) ? missingLong :
+          (source != null ? source[row] : buffer.getLong(row));
+      }
+      return outgoing;
     }
-
-    void write(DataOutputStream output) throws IOException {
-      output.writeInt(size());
-      for (String str : indexToData) {
-        output.writeUTF(str);
+    case FLOAT: {
+      float[] source = (buffer == null) ? (float[]) data : null;
+      float[] outgoing = new float[count];
+      for (int i = 0; i < count; i++) {
+        int row = rows[i];
+        outgoing[i] = (row == -1) ? missingFloat :
+          (source != null ? source[row] : buffer.getFloat(row));
       }
+      return outgoing;
     }
-
-    private void writeln(PrintWriter writer) throws IOException {
-      for (String str : indexToData) {
-        writer.println(str);
+    case DOUBLE: {
+      double[] source = (buffer == null) ? (double[]) data : null;
+      double[] outgoing = new double[count];
+      for (int i = 0; i < count; i++) {
+        int row = rows[i];
+        outgoing[i] = (row == -1) ? missingDouble :
+          (source != null ? source[row] : buffer.getDouble(row));
       }
-      writer.flush();
-      writer.close();
+      return outgoing;
     }
-
-    void read(DataInputStream input) throws IOException {
-      int count = input.readInt();
-      //System.out.println("found " + count + " entries in category map");
-      dataToIndex = new HashMap<String, Integer>(count);
+    default: {
+      String[] source = (buffer == null) ? (String[]) data : null;
+      String[] outgoing = new String[count];
       for (int i = 0; i < count; i++) {
-        String str = input.readUTF();
-        //System.out.println(i + " " + str);
-        dataToIndex.put(str, i);
-        indexToData.add(str);
+        int row = rows[i];
+        outgoing[i] = (row == -1) ? missingString :
+          (source != null ? source[row] : buffer.getString(row));
       }
+      return outgoing;
+    }
     }
   }
 
 
-  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
-
-
-//  class HashMapSucks extends HashMap<String,Integer> {
-//
-//    void increment(String what) {
-//      Integer value = get(what);
-//      if (value == null) {
-//        put(what, 1);
-//      } else {
-//        put(what, value + 1);
-//      }
-//    }
-//
-//    void check(String what) {
-//      if (get(what) == null) {
-//        put(what, 0);
-//      }
-//    }
-//  }
-
-
-  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
-
-
-  public void sort(String columnName) {
-    sort(getColumnIndex(columnName), false);
-  }
-
-
-  public void sort(int column) {
-    sort(column, false);
-  }
-
-
-  public void sortReverse(String columnName) {
-    sort(getColumnIndex(columnName), true);
-  }
-
-
-  public void sortReverse(int column) {
-    sort(column, true);
-  }
-
-
-  protected void sort(final int column, final boolean reverse) {
-    final int[] order = IntList.fromRange(getRowCount()).array();
-    Sort s = new Sort() {
-
-      @Override
-      public int size() {
-        return getRowCount();
-      }
-
-      @Override
-      public float compare(int index1, int index2) {
-        int a = reverse ? order[index2] : order[index1];
-        int b = reverse ? order[index1] : order[index2];
+  /**
+   * Key column for one side of a join. Keys are compared as primitive
+   * bits when both columns have the same numeric type, as category ids
+   * (translated to the left side's ids) when both are CATEGORY columns,
+   * and as Strings otherwise.
+   */
+  static class JoinKey {
+    Table table;
+    int column;
+    int type;
+    boolean strings;
+    int[] categoryMap;  // from this side's category ids to the left side's
 
-        switch (getColumnType(column)) {
-        case INT:
-          return getInt(a, column) - getInt(b, column);
-        case LONG:
-          return getLong(a, column) - getLong(b, column);
-        case FLOAT:
-          return getFloat(a, column) - getFloat(b, column);
-        case DOUBLE:
-          return (float) (getDouble(a, column) - getDouble(b, column));
-        case STRING:
-          return getString(a, column).compareToIgnoreCase(getString(b, column));
-        case CATEGORY:
-          return getInt(a, column) - getInt(b, column);
-        default:
-          throw new IllegalArgumentException("Invalid column type: " + getColumnType(column));
+    JoinKey(Table table, int column, JoinKey left) {
+      this.table = table;
+      this.column = column;
+      type = table.columnTypes[column];
+      if (left != null) {
+        strings = (type != left.type || type == STRING);
+        if (type == CATEGORY && left.type == CATEGORY) {
+          HashMapBlows ours = table.columnCategories[column];
+          HashMapBlows theirs = left.table.columnCategories[left.column];
+          categoryMap = new int[ours.indexToData.size()];
+          for (int i = 0; i < categoryMap.length; i++) {
+            Integer id = theirs.dataToIndex.get(ours.indexToData.get(i));
+            categoryMap[i] = (id == null) ? -1 : id;
+          }
         }
       }
+    }
 
-      @Override
-      public void swap(int a, int b) {
-        int temp = order[a];
-        order[a] = order[b];
-        order[b] = temp;
+    /** False for entries that can't match anything. */
+    boolean valid(int row) {
+      if (strings) {
+        return table.getString(row, column) != null;
       }
-
-    };
-    s.run();
-
-    //Object[] newColumns = new Object[getColumnCount()];
-    for (int col = 0; col < getColumnCount(); col++) {
-      switch (getColumnType(col)) {
-      case INT:
+      switch (type) {
+      case FLOAT:
+        return !Float.isNaN(table.getFloat(row, column));
+      case DOUBLE:
+        return !Double.isNaN(table.getDouble(row, column));
       case CATEGORY:
-        int[] oldInt = (int[]) columns[col];
-        int[] newInt = new int[rowCount];
-        for (int row = 0; row < getRowCount(); row++) {
-          newInt[row] = oldInt[order[row]];
+        int id = table.getInt(row, column);
+        List<String> keys = table.columnCategories[column].indexToData;
+        if (id == table.missingCategory || id < 0 ||
+            id >= keys.size() || keys.get(id) == null) {
+          return false;
         }
-        columns[col] = newInt;
-        break;
+        return categoryMap == null || categoryMap[id] != -1;
+      default:
+        return true;
+      }
+    }
+
+    long bits(int row) {
+      switch (type) {
       case LONG:
-        long[] oldLong = (long[]) columns[col];
-        long[] newLong = new long[rowCount];
-        for (int row = 0; row < getRowCount(); row++) {
-          newLong[row] = oldLong[order[row]];
-        }
-        columns[col] = newLong;
-        break;
+        return table.getLong(row, column);
       case FLOAT:
-        float[] oldFloat = (float[]) columns[col];
-        float[] newFloat = new float[rowCount];
-        for (int row = 0; row < getRowCount(); row++) {
-          newFloat[row] = oldFloat[order[row]];
-        }
-        columns[col] = newFloat;
-        break;
+        return Float.floatToIntBits(table.getFloat(row, column));
       case DOUBLE:
-        double[] oldDouble = (double[]) columns[col];
-        double[] newDouble = new double[rowCount];
-        for (int row = 0; row < getRowCount(); row++) {
-          newDouble[row] = oldDouble[order[row]];
+        return Double.doubleToLongBits(table.getDouble(row, column));
+      case CATEGORY:
+        int id = table.getInt(row, column);
+        return (categoryMap == null) ? id : categoryMap[id];
+      default:
+        return table.getInt(row, column);
+      }
+    }
+
+    /** Hash table from each key to the rows that have it. */
+    ColumnIndex index() {
+      ColumnIndex index = new ColumnIndex();
+      index.clear(table.rowCount);
+      for (int row = 0; row < table.rowCount; row++) {
+        if (valid(row)) {
+          int id = strings ?
+            index.id(table.getString(row, column)) : index.id(bits(row));
+          index.append(row, id);
         }
-        columns[col] = newDouble;
-        break;
-      case STRING:
-        String[] oldString = (String[]) columns[col];
-        String[] newString = new String[rowCount];
-        for (int row = 0; row < getRowCount(); row++) {
-          newString[row] = oldString[order[row]];
+      }
+      index.count = table.rowCount;
+      return index;
+    }
+
+    int find(ColumnIndex index, int row) {
+      return strings ?
+        index.find(table.getString(row, column)) : index.find(bits(row));
+    }
+  }
+
+
+  /** Look up a range of rows from the probe side of a join. */
+  @SuppressWarnings("serial")
+  static class JoinProbe extends RecursiveAction {
+    JoinKey probe;
+    ColumnIndex index;
+    int start, stop;
+    boolean keepUnmatched;
+    boolean[] matched;
+    IntList probeRows = new IntList();
+    IntList buildRows = new IntList();
+
+    JoinProbe(JoinKey probe, ColumnIndex index, int start, int stop,
+              boolean keepUnmatched, boolean[] matched) {
+      this.probe = probe;
+      this.index = index;
+      this.start = start;
+      this.stop = stop;
+      this.keepUnmatched = keepUnmatched;
+      this.matched = matched;
+    }
+
+    @Override
+    protected void compute() {
+      for (int row = start; row < stop; row++) {
+        int first = -1;
+        if (probe.valid(row)) {
+          int id = probe.find(index, row);
+          first = index.first(id);
+          for (int other = first; other != -1; other = index.next[other]) {
+            probeRows.append(row);
+            buildRows.append(other);
+            if (matched != null) {
+              matched[other] = true;
+            }
+          }
+        }
+        if (first == -1 && keepUnmatched) {
+          probeRows.append(row);
+          buildRows.append(-1);
         }
-        columns[col] = newString;
-        break;
       }
     }
   }
@@ -4079,8 +8968,7 @@ public class Table {
 
 
   public String[] getUnique(int column) {
-    StringList list = new StringList(getStringColumn(column));
-    return list.getUnique();
+    return getTally(column).keyArray();
   }
 
 
@@ -4089,9 +8977,39 @@ public class Table {
   }
 
 
+  /**
+   * Count how many times each value is found in a column, in the order
+   * they first appear. INT, LONG, and CATEGORY columns are counted by
+   * value, and only converted to a String once for each distinct value.
+   */
   public IntDict getTally(int column) {
-    StringList list = new StringList(getStringColumn(column));
-    return list.getTally();
+    checkColumn(column);
+    int type = columnTypes[column];
+    if (type != INT && type != LONG && type != CATEGORY) {
+      StringList list = new StringList(getStringColumn(column));
+      return list.getTally();
+    }
+    LongHash ids = new LongHash();
+    IntList firstRows = new IntList();
+    IntList counts = new IntList();
+    for (int row = 0; row < rowCount; row++) {
+      long value = (type == LONG) ? getLong(row, column) : getInt(row, column);
+      int id = ids.get(value);
+      if (id == -1) {
+        id = counts.size();
+        ids.put(value, id);
+        firstRows.append(row);
+        counts.append(0);
+      }
+      counts.data[id]++;
+    }
+    // add() rather than set(), since a compacted column's null entry
+    // and missing values both come back as null
+    IntDict outgoing = new IntDict();
+    for (int i = 0; i < counts.size(); i++) {
+      outgoing.add(getString(firstRows.get(i), column), counts.get(i));
+    }
+    return outgoing;
   }
 
 
@@ -4529,8 +9447,38 @@ public class Table {
   */
 
 
-  /** Make a copy of the current table */
+  /**
+   * Make a copy of this table. The two tables share their column data
+   * until one of them changes a column, which then gets its own copy of
+   * just that column. So copy() takes the same (short) time no matter how
+   * many rows there are, and a copy that's only read is nearly free.
+   * Indexes and stats aren't copied.
+   */
   public Table copy() {
-    return new Table(rows());
+    Table outgoing = new Table();
+    outgoing.rowCount = rowCount;
+    outgoing.columns = columns.clone();
+    outgoing.columnTypes = columnTypes.clone();
+    outgoing.columnCategories = columnCategories.clone();
+    if (columnTitles != null) {
+      outgoing.columnTitles = columnTitles.clone();
+    }
+    outgoing.copyMissing(this);
+    outgoing.expandIncrement = expandIncrement;
+    outgoing.offHeap = offHeap;
+
+    shared = new boolean[columns.length];
+    Arrays.fill(shared, true);
+    outgoing.shared = shared.clone();
+    return outgoing;
+  }
+
+
+  /**
+   * A view of the rows from start up to (but not including) stop, without
+   * copying anything. Use view.toTable() for a separate table.
+   */
+  public TableView slice(int start, int stop) {
+    return new TableView(this, start, stop);
   }
 }
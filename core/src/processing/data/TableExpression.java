@@ -0,0 +1,448 @@
+package processing.data;
+
+
+/**
+ * A calculation on whole columns of a Table, used with table.compute() to
+ * make a new column, or table.evaluate() to get the results as an array.
+ * The expression is worked out a block of rows at a time, straight from the
+ * table's arrays, and split across cores for large tables.
+ *
+ * <pre>
+ * table.compute("ratio", TableExpression.col("a").div(TableExpression.col("b")));
+ * table.compute("scaled", TableExpression.col("mag").normalize());
+ * </pre>
+ *
+ * Missing values come through as NaN, and anything calculated from NaN is
+ * also NaN. A FLOAT or DOUBLE entry equal to the table's missing value is
+ * treated as missing, and the same for INT and LONG, unless the missing
+ * value is 0 (the default), since that can't be told apart from a real 0.
+ *
+ * @see Table#compute(String, TableExpression)
+ * @see Table#evaluate(TableExpression)
+ */
+public class TableExpression {
+  static final int COLUMN = 0;
+  static final int VALUE = 1;
+
+  static final int ADD = 2;
+  static final int SUB = 3;
+  static final int MUL = 4;
+  static final int DIV = 5;
+  static final int POW = 6;
+  static final int LESSER = 7;
+  static final int GREATER = 8;
+
+  static final int NEG = 9;
+  static final int ABS = 10;
+  static final int SQRT = 11;
+  static final int LOG = 12;
+  static final int EXP = 13;
+
+  // calculated once over every row, then used as a value
+  static final int MIN = 14;
+  static final int MAX = 15;
+  static final int MEAN = 16;
+  static final int SUM = 17;
+  static final int NORMALIZE = 18;
+
+  // number of rows worked on at a time, small enough to stay in the cache
+  static final int BLOCK = 1024;
+
+  int op;
+  TableExpression a;
+  TableExpression b;
+  String name;
+  int column = -1;
+  double value;
+
+
+  TableExpression(int op, TableExpression a, TableExpression b) {
+    this.op = op;
+    this.a = a;
+    this.b = b;
+  }
+
+
+  /** The values from a column, by its title. */
+  static public TableExpression col(String name) {
+    TableExpression outgoing = new TableExpression(COLUMN, null, null);
+    outgoing.name = name;
+    return outgoing;
+  }
+
+
+  /** The values from a column, by its index. */
+  static public TableExpression col(int column) {
+    TableExpression outgoing = new TableExpression(COLUMN, null, null);
+    outgoing.column = column;
+    return outgoing;
+  }
+
+
+  /** The same number for every row. */
+  static public TableExpression value(double value) {
+    TableExpression outgoing = new TableExpression(VALUE, null, null);
+    outgoing.value = value;
+    return outgoing;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  public TableExpression add(TableExpression other) {
+    return new TableExpression(ADD, this, other);
+  }
+
+
+  public TableExpression add(double amount) {
+    return add(value(amount));
+  }
+
+
+  public TableExpression sub(TableExpression other) {
+    return new TableExpression(SUB, this, other);
+  }
+
+
+  public TableExpression sub(double amount) {
+    return sub(value(amount));
+  }
+
+
+  public TableExpression mul(TableExpression other) {
+    return new TableExpression(MUL, this, other);
+  }
+
+
+  public TableExpression mul(double amount) {
+    return mul(value(amount));
+  }
+
+
+  public TableExpression div(TableExpression other) {
+    return new TableExpression(DIV, this, other);
+  }
+
+
+  public TableExpression div(double amount) {
+    return div(value(amount));
+  }
+
+
+  public TableExpression pow(TableExpression other) {
+    return new TableExpression(POW, this, other);
+  }
+
+
+  public TableExpression pow(double exponent) {
+    return pow(value(exponent));
+  }
+
+
+  /** The smaller of the two values in each row. */
+  public TableExpression min(TableExpression other) {
+    return new TableExpression(LESSER, this, other);
+  }
+
+
+  /** The larger of the two values in each row. */
+  public TableExpression max(TableExpression other) {
+    return new TableExpression(GREATER, this, other);
+  }
+
+
+  public TableExpression neg() {
+    return new TableExpression(NEG, this, null);
+  }
+
+
+  public TableExpression abs() {
+    return new TableExpression(ABS, this, null);
+  }
+
+
+  public TableExpression sqrt() {
+    return new TableExpression(SQRT, this, null);
+  }
+
+
+  /** Natural logarithm. */
+  public TableExpression log() {
+    return new TableExpression(LOG, this, null);
+  }
+
+
+  public TableExpression exp() {
+    return new TableExpression(EXP, this, null);
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /** Smallest value over all the rows, skipping missing values. */
+  public TableExpression min() {
+    return new TableExpression(MIN, this, null);
+  }
+
+
+  /** Largest value over all the rows, skipping missing values. */
+  public TableExpression max() {
+    return new TableExpression(MAX, this, null);
+  }
+
+
+  /** Average over all the rows, skipping missing values. */
+  public TableExpression mean() {
+    return new TableExpression(MEAN, this, null);
+  }
+
+
+  /** Total over all the rows, skipping missing values. */
+  public TableExpression sum() {
+    return new TableExpression(SUM, this, null);
+  }
+
+
+  /**
+   * Scale the values to go from 0 to 1. If they're all the same, they
+   * all become 0.
+   */
+  public TableExpression normalize() {
+    return new TableExpression(NORMALIZE, this, null);
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Copy of this expression ready to be used with a specific table: column
+   * titles are looked up, and totals over all the rows are worked out.
+   */
+  TableExpression bind(Table table) {
+    switch (op) {
+    case COLUMN: {
+      int index = (name != null) ? table.getColumnIndex(name) : column;
+      table.checkColumn(index);
+      int type = table.getColumnType(index);
+      if (type == Table.STRING || type == Table.CATEGORY) {
+        throw new IllegalArgumentException("Column " + (name != null ? name : index) +
+                                           " is not a numeric column.");
+      }
+      return col(index);
+    }
+    case VALUE:
+      return this;
+    case MIN:
+    case MAX:
+    case MEAN:
+    case SUM:
+      return value(total(table.evaluate(a)));
+    case NORMALIZE: {
+      // one pass over the values for both ends of the range
+      TableExpression bound = a.bind(table);
+      double low = Double.POSITIVE_INFINITY;
+      double high = Double.NEGATIVE_INFINITY;
+      for (double v : table.evaluate(bound)) {
+        if (v < low) low = v;
+        if (v > high) high = v;
+      }
+      if (!(high > low)) {  // a single value, or nothing but NaN
+        return bound.mul(value(0));
+      }
+      return bound.sub(value(low)).div(value(high - low));
+    }
+    }
+    return new TableExpression(op, a.bind(table),
+                               (b == null) ? null : b.bind(table));
+  }
+
+
+  private double total(double[] values) {
+    double min = Double.POSITIVE_INFINITY;
+    double max = Double.NEGATIVE_INFINITY;
+    double sum = 0;
+    int count = 0;
+    for (double v : values) {
+      if (v == v) {
+        if (v < min) min = v;
+        if (v > max) max = v;
+        sum += v;
+        count++;
+      }
+    }
+    if (count == 0) {
+      return Double.NaN;
+    }
+    switch (op) {
+    case MIN: return min;
+    case MAX: return max;
+    case MEAN: return sum / count;
+    }
+    return sum;
+  }
+
+
+  /**
+   * Number of blocks of scratch space that eval() will need, one for each
+   * level of nesting on the right side of an operation.
+   */
+  int depth() {
+    if (a == null) {
+      return 0;
+    }
+    if (b == null || b.op == VALUE) {
+      return a.depth();
+    }
+    return Math.max(a.depth(), b.depth() + 1);
+  }
+
+
+  /**
+   * Calculate 'count' rows, starting with row 'start', into out[0..count).
+   * Only used on an expression returned by bind(). Right-hand operands are
+   * calculated into scratch[level], and a single value is used directly.
+   */
+  void eval(Table table, int start, int count, double[] out,
+            double[][] scratch, int level) {
+    switch (op) {
+    case COLUMN:
+      read(table, start, count, out);
+      return;
+    case VALUE:
+      for (int i = 0; i < count; i++) {
+        out[i] = value;
+      }
+      return;
+    }
+
+    a.eval(table, start, count, out, scratch, level);
+    if (b != null && b.op == VALUE) {
+      double v = b.value;
+      switch (op) {
+      case ADD:
+        for (int i = 0; i < count; i++) out[i] += v;
+        break;
+      case SUB:
+        for (int i = 0; i < count; i++) out[i] -= v;
+        break;
+      case MUL:
+        for (int i = 0; i < count; i++) out[i] *= v;
+        break;
+      case DIV:
+        for (int i = 0; i < count; i++) out[i] /= v;
+        break;
+      case POW:
+        for (int i = 0; i < count; i++) out[i] = Math.pow(out[i], v);
+        break;
+      case LESSER:
+        for (int i = 0; i < count; i++) out[i] = Math.min(out[i], v);
+        break;
+      case GREATER:
+        for (int i = 0; i < count; i++) out[i] = Math.max(out[i], v);
+        break;
+      }
+    } else if (b != null) {
+      double[] other = scratch[level];
+      b.eval(table, start, count, other, scratch, level + 1);
+      switch (op) {
+      case ADD:
+        for (int i = 0; i < count; i++) out[i] += other[i];
+        break;
+      case SUB:
+        for (int i = 0; i < count; i++) out[i] -= other[i];
+        break;
+      case MUL:
+        for (int i = 0; i < count; i++) out[i] *= other[i];
+        break;
+      case DIV:
+        for (int i = 0; i < count; i++) out[i] /= other[i];
+        break;
+      case POW:
+        for (int i = 0; i < count; i++) out[i] = Math.pow(out[i], other[i]);
+        break;
+      case LESSER:
+        for (int i = 0; i < count; i++) out[i] = Math.min(out[i], other[i]);
+        break;
+      case GREATER:
+        for (int i = 0; i < count; i++) out[i] = Math.max(out[i], other[i]);
+        break;
+      }
+    } else {
+      switch (op) {
+      case NEG:
+        for (int i = 0; i < count; i++) out[i] = -out[i];
+        break;
+      case ABS:
+        for (int i = 0; i < count; i++) out[i] = Math.abs(out[i]);
+        break;
+      case SQRT:
+        for (int i = 0; i < count; i++) out[i] = Math.sqrt(out[i]);
+        break;
+      case LOG:
+        for (int i = 0; i < count; i++) out[i] = Math.log(out[i]);
+        break;
+      case EXP:
+        for (int i = 0; i < count; i++) out[i] = Math.exp(out[i]);
+        break;
+      }
+    }
+  }
+
+
+  /** Copy part of a column as doubles, with missing values as NaN. */
+  private void read(Table table, int start, int count, double[] out) {
+    Object data = table.columns[column];
+    if (data instanceof Table.BufferColumn) {
+      for (int i = 0; i < count; i++) {
+        out[i] = table.getDouble(start + i, column);
+      }
+      checkMissing(table, out, count);
+      return;
+    }
+    switch (table.columnTypes[column]) {
+    case Table.INT: {
+      int[] source = (int[]) data;
+      for (int i = 0; i < count; i++) out[i] = source[start + i];
+      break;
+    }
+    case Table.LONG: {
+      long[] source = (long[]) data;
+      for (int i = 0; i < count; i++) out[i] = source[start + i];
+      break;
+    }
+    case Table.FLOAT: {
+      float[] source = (float[]) data;
+      for (int i = 0; i < count; i++) out[i] = source[start + i];
+      break;
+    }
+    case Table.DOUBLE: {
+      double[] source = (double[]) data;
+      System.arraycopy(source, start, out, 0, count);
+      break;
+    }
+    }
+    checkMissing(table, out, count);
+  }
+
+
+  /** Replace the table's missing value for this column type with NaN. */
+  private void checkMissing(Table table, double[] out, int count) {
+    double missing;
+    switch (table.columnTypes[column]) {
+    case Table.INT: missing = (table.missingInt == 0) ? Double.NaN : table.missingInt; break;
+    case Table.LONG: missing = (table.missingLong == 0) ? Double.NaN : table.missingLong; break;
+    case Table.FLOAT: missing = table.missingFloat; break;
+    default: missing = table.missingDouble;
+    }
+    if (missing == missing) {  // nothing to do if it's NaN already
+      for (int i = 0; i < count; i++) {
+        if (out[i] == missing) {
+          out[i] = Double.NaN;
+        }
+      }
+    }
+  }
+}
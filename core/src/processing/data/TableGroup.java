@@ -0,0 +1,548 @@
+package processing.data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import processing.core.PApplet;
+
+
+/**
+ * Rows of a Table grouped by the values in one or more key columns, created
+ * with Table.groupBy(). Use agg() to calculate counts, sums, means, minimums
+ * and maximums for each group, which are returned as a new Table with one
+ * row per group, in the order each group first appears.
+ *
+ * <pre>
+ * Table totals = table.groupBy("region", "year").agg("count", "sum(sales)", "mean(price)");
+ * </pre>
+ *
+ * @see Table#groupBy(String...)
+ */
+public class TableGroup {
+  static final int COUNT = 0;
+  static final int SUM = 1;
+  static final int MEAN = 2;
+  static final int MIN = 3;
+  static final int MAX = 4;
+  static final String[] opNames = { "count", "sum", "mean", "min", "max" };
+
+  protected Table table;
+  protected int[] keyColumns;
+
+  protected int groupCount;
+  protected int[] groups;  // group for each row
+  protected int[] firstRows;  // first row of each group
+
+
+  public TableGroup(Table table, int... keyColumns) {
+    this.table = table;
+    this.keyColumns = keyColumns;
+    for (int column : keyColumns) {
+      table.checkColumn(column);
+    }
+    assign();
+  }
+
+
+  /** Number of distinct keys (and rows in the results from agg). */
+  public int getGroupCount() {
+    return groupCount;
+  }
+
+
+  /**
+   * Calculate one or more values for each group. Each entry is one of
+   * "count", "sum(column)", "mean(column)", "min(column)", or "max(column)",
+   * where column is a title or a column number. The results have the key
+   * columns first, followed by a column for each entry, titled the same way.
+   * NaN values in FLOAT and DOUBLE columns are skipped.
+   */
+  public Table agg(String... specs) {
+    Aggregate[] aggs = new Aggregate[specs.length];
+    for (int i = 0; i < specs.length; i++) {
+      aggs[i] = new Aggregate(specs[i]);
+    }
+    return agg(aggs);
+  }
+
+
+  Table agg(Aggregate[] aggs) {
+    Table outgoing = new Table();
+    for (int column : keyColumns) {
+      outgoing.addColumn(table.getColumnTitle(column), table.getColumnType(column));
+    }
+    for (Aggregate agg : aggs) {
+      outgoing.addColumn(agg.title, agg.outputType());
+    }
+    outgoing.setRowCount(groupCount);
+    copyKeys(outgoing);
+
+    int rowCount = groups.length;
+    int parts = 1;
+    if (rowCount >= Table.PARALLEL_ROWS * 2) {
+      ForkJoinPool pool = Table.getPool();
+      parts = Math.min(pool.getParallelism(), rowCount / Table.PARALLEL_ROWS);
+      // each part keeps its own totals, so don't split when keys are sparse
+      parts = Math.max(1, Math.min(parts, rowCount / Math.max(1, groupCount)));
+    }
+    Partial result;
+    if (parts == 1) {
+      result = new Partial(aggs, 0, rowCount).compute();
+    } else {
+      List<Partial> tasks = new ArrayList<Partial>();
+      for (int i = 0; i < parts; i++) {
+        long start = (long) rowCount * i / parts;
+        long stop = (long) rowCount * (i + 1) / parts;
+        tasks.add(new Partial(aggs, (int) start, (int) stop));
+      }
+      Table.runTasks(tasks);
+      result = tasks.get(0).getRawResult();
+      for (int i = 1; i < parts; i++) {
+        result.merge(tasks.get(i).getRawResult());
+      }
+    }
+
+    for (int i = 0; i < aggs.length; i++) {
+      result.store(outgoing, keyColumns.length + i);
+    }
+    return outgoing;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Give each row a group number. Each key column is first reduced to
+   * dense ids, then the ids are combined one column at a time, so the
+   * hashing is all on primitive keys (except for STRING columns).
+   */
+  protected void assign() {
+    int rowCount = table.getRowCount();
+    if (keyColumns.length == 0) {
+      groups = new int[rowCount];
+      groupCount = (rowCount == 0) ? 0 : 1;
+      firstRows = new int[groupCount];
+      return;
+    }
+    // the key columns are independent, so find their ids in parallel
+    List<RecursiveTask<int[]>> tasks = new ArrayList<RecursiveTask<int[]>>();
+    for (final int column : keyColumns) {
+      tasks.add(new RecursiveTask<int[]>() {
+        @Override
+        protected int[] compute() {
+          return columnIds(column);
+        }
+      });
+    }
+    Table.runTasks(tasks);
+    groups = tasks.get(0).getRawResult();
+    for (int k = 1; k < keyColumns.length; k++) {
+      int[] ids = tasks.get(k).getRawResult();
+      Table.LongHash combined = new Table.LongHash();
+      int count = 0;
+      for (int row = 0; row < rowCount; row++) {
+        long key = ((long) groups[row] << 32) | ids[row];
+        int id = combined.get(key);
+        if (id == -1) {
+          id = count++;
+          combined.put(key, id);
+        }
+        groups[row] = id;
+      }
+    }
+    firstRows = new int[rowCount];
+    groupCount = 0;
+    for (int row = 0; row < rowCount; row++) {
+      if (groups[row] == groupCount) {  // ids are handed out in row order
+        firstRows[groupCount++] = row;
+      }
+    }
+    firstRows = PApplet.subset(firstRows, 0, groupCount);
+  }
+
+
+  /** Dense ids for the values in one column, in order of appearance. */
+  protected int[] columnIds(int column) {
+    int rowCount = table.getRowCount();
+    int[] ids = new int[rowCount];
+    int count = 0;
+    if (table.getColumnType(column) == Table.STRING) {
+      HashMap<String, Integer> lookup = new HashMap<String, Integer>();
+      for (int row = 0; row < rowCount; row++) {
+        String key = table.getString(row, column);
+        Integer id = lookup.get(key);
+        if (id == null) {
+          id = count++;
+          lookup.put(key, id);
+        }
+        ids[row] = id;
+      }
+    } else {
+      Table.LongHash lookup = new Table.LongHash();
+      for (int row = 0; row < rowCount; row++) {
+        long key = keyBits(row, column);
+        int id = lookup.get(key);
+        if (id == -1) {
+          id = count++;
+          lookup.put(key, id);
+        }
+        ids[row] = id;
+      }
+    }
+    return ids;
+  }
+
+
+  protected long keyBits(int row, int column) {
+    switch (table.getColumnType(column)) {
+    case Table.LONG:
+      return table.getLong(row, column);
+    case Table.FLOAT:
+      return Float.floatToIntBits(table.getFloat(row, column));
+    case Table.DOUBLE:
+      return Double.doubleToLongBits(table.getDouble(row, column));
+    default:  // INT and CATEGORY
+      return table.getInt(row, column);
+    }
+  }
+
+
+  protected void copyKeys(Table outgoing) {
+    for (int k = 0; k < keyColumns.length; k++) {
+      int column = keyColumns[k];
+      int type = table.getColumnType(column);
+      if (type == Table.CATEGORY) {
+        Table.HashMapBlows source = table.columnCategories[column];
+        Table.HashMapBlows target = outgoing.columnCategories[k];
+        for (int i = 0; i < source.size(); i++) {
+          target.setCategory(i, source.key(i));
+        }
+      }
+      for (int group = 0; group < groupCount; group++) {
+        int row = firstRows[group];
+        switch (type) {
+        case Table.INT:
+        case Table.CATEGORY:
+          outgoing.setInt(group, k, table.getInt(row, column));
+          break;
+        case Table.LONG:
+          outgoing.setLong(group, k, table.getLong(row, column));
+          break;
+        case Table.FLOAT:
+          outgoing.setFloat(group, k, table.getFloat(row, column));
+          break;
+        case Table.DOUBLE:
+          outgoing.setDouble(group, k, table.getDouble(row, column));
+          break;
+        default:
+          outgoing.setString(group, k, table.getString(row, column));
+        }
+      }
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /** The operation named count, sum, mean, min, or max. */
+  static int op(String name) {
+    for (int i = 0; i < opNames.length; i++) {
+      if (opNames[i].equals(name.trim().toLowerCase())) {
+        return i;
+      }
+    }
+    throw new IllegalArgumentException("'" + name + "' is not one of count, sum, mean, min, or max");
+  }
+
+
+  /** One entry passed to agg(), parsed into an operation and a column. */
+  class Aggregate {
+    int op;
+    int column = -1;
+    int type;  // type of the source column
+    String title;
+
+    Aggregate(String spec) {
+      title = spec.trim();
+      String name = title;
+      String param = null;
+      int paren = title.indexOf('(');
+      if (paren != -1) {
+        if (!title.endsWith(")")) {
+          throw new IllegalArgumentException("Missing ) in '" + spec + "'");
+        }
+        name = title.substring(0, paren).trim();
+        param = title.substring(paren + 1, title.length() - 1).trim();
+      }
+      op = op(name);
+      if (param != null && param.length() != 0 && !param.equals("*")) {
+        column = table.getColumnIndex(param, false);
+        if (column == -1) {
+          try {
+            column = Integer.parseInt(param);
+          } catch (NumberFormatException nfe) {
+            throw new IllegalArgumentException("This table has no column named '" + param + "'");
+          }
+        }
+        setColumn(column);
+      } else if (op != COUNT) {
+        throw new IllegalArgumentException(name + "() needs a column");
+      }
+    }
+
+    /** An operation on a column that's already known, or -1 for count. */
+    Aggregate(int op, int column) {
+      this.op = op;
+      if (column != -1) {
+        setColumn(column);
+      } else if (op != COUNT) {
+        throw new IllegalArgumentException(opNames[op] + "() needs a column");
+      }
+      title = (column == -1) ? opNames[op] : opNames[op] + "(" + column + ")";
+    }
+
+    private void setColumn(int column) {
+      table.checkColumn(column);
+      this.column = column;
+      type = table.getColumnType(column);
+    }
+
+    /** True if totals are kept as long rather than double. */
+    boolean integral() {
+      return op != MEAN && (type == Table.INT || type == Table.LONG);
+    }
+
+    int outputType() {
+      switch (op) {
+      case COUNT:
+        return Table.INT;
+      case SUM:
+        return integral() ? Table.LONG : Table.DOUBLE;
+      case MIN:
+      case MAX:
+        if (type == Table.INT || type == Table.LONG ||
+            type == Table.FLOAT || type == Table.DOUBLE) {
+          return type;
+        }
+        return Table.DOUBLE;
+      default:
+        return Table.DOUBLE;
+      }
+    }
+  }
+
+
+  /**
+   * Totals for a range of rows. Each aggregate keeps a count per group,
+   * plus long or double totals (or minimums and maximums) per group.
+   */
+  @SuppressWarnings("serial")
+  class Partial extends RecursiveTask<Partial> {
+    Aggregate[] aggs;
+    int start, stop;
+    int[][] counts;
+    long[][] longs;
+    double[][] doubles;
+
+    Partial(Aggregate[] aggs, int start, int stop) {
+      this.aggs = aggs;
+      this.start = start;
+      this.stop = stop;
+    }
+
+    @Override
+    protected Partial compute() {
+      counts = new int[aggs.length][];
+      longs = new long[aggs.length][];
+      doubles = new double[aggs.length][];
+      for (int i = 0; i < aggs.length; i++) {
+        accumulate(i);
+      }
+      return this;
+    }
+
+    void accumulate(int i) {
+      Aggregate agg = aggs[i];
+      int[] count = new int[groupCount];
+      counts[i] = count;
+      if (agg.op == COUNT) {
+        for (int row = start; row < stop; row++) {
+          count[groups[row]]++;
+        }
+        return;
+      }
+
+      int column = agg.column;
+      Object data = table.columns[column];
+      if (agg.integral()) {
+        long[] total = new long[groupCount];
+        longs[i] = total;
+        if (data instanceof int[] && agg.type == Table.INT) {
+          int[] values = (int[]) data;
+          for (int row = start; row < stop; row++) {
+            int g = groups[row];
+            total[g] = combine(agg.op, total[g], values[row], count[g]++);
+          }
+        } else if (data instanceof long[]) {
+          long[] values = (long[]) data;
+          for (int row = start; row < stop; row++) {
+            int g = groups[row];
+            total[g] = combine(agg.op, total[g], values[row], count[g]++);
+          }
+        } else {  // mapped from a file
+          for (int row = start; row < stop; row++) {
+            int g = groups[row];
+            long value = (agg.type == Table.INT) ?
+              table.getInt(row, column) : table.getLong(row, column);
+            total[g] = combine(agg.op, total[g], value, count[g]++);
+          }
+        }
+
+      } else {
+        double[] total = new double[groupCount];
+        doubles[i] = total;
+        int op = (agg.op == MEAN) ? SUM : agg.op;
+        if (data instanceof float[]) {
+          float[] values = (float[]) data;
+          for (int row = start; row < stop; row++) {
+            float value = values[row];
+            if (value == value) {  // not NaN
+              int g = groups[row];
+              total[g] = combine(op, total[g], value, count[g]++);
+            }
+          }
+        } else if (data instanceof double[]) {
+          double[] values = (double[]) data;
+          for (int row = start; row < stop; row++) {
+            double value = values[row];
+            if (value == value) {
+              int g = groups[row];
+              total[g] = combine(op, total[g], value, count[g]++);
+            }
+          }
+        } else if (data instanceof int[] && agg.type == Table.INT) {
+          int[] values = (int[]) data;  // mean of an INT column
+          for (int row = start; row < stop; row++) {
+            int g = groups[row];
+            total[g] += values[row];
+            count[g]++;
+          }
+        } else if (data instanceof long[]) {
+          long[] values = (long[]) data;
+          for (int row = start; row < stop; row++) {
+            int g = groups[row];
+            total[g] += values[row];
+            count[g]++;
+          }
+        } else {  // STRING and CATEGORY are parsed, or mapped columns
+          for (int row = start; row < stop; row++) {
+            double value = getDouble(row, column, agg.type);
+            if (value == value) {
+              int g = groups[row];
+              total[g] = combine(op, total[g], value, count[g]++);
+            }
+          }
+        }
+      }
+    }
+
+    double getDouble(int row, int column, int type) {
+      switch (type) {
+      case Table.INT:
+        return table.getInt(row, column);
+      case Table.LONG:
+        return table.getLong(row, column);
+      case Table.FLOAT:
+        return table.getFloat(row, column);
+      default:
+        return table.getDouble(row, column);
+      }
+    }
+
+    /** Add in the totals from the rows of another part. */
+    void merge(Partial other) {
+      for (int i = 0; i < aggs.length; i++) {
+        int op = (aggs[i].op == MEAN) ? SUM : aggs[i].op;
+        int[] count = counts[i];
+        for (int g = 0; g < groupCount; g++) {
+          int seen = other.counts[i][g];
+          if (seen != 0) {
+            if (longs[i] != null) {
+              longs[i][g] = combine(op, longs[i][g], other.longs[i][g], count[g]);
+            } else if (doubles[i] != null) {
+              doubles[i][g] = combine(op, doubles[i][g], other.doubles[i][g], count[g]);
+            }
+            count[g] += seen;
+          }
+        }
+      }
+    }
+
+    /** Write the results for aggregate i into a column of the outgoing table. */
+    void store(Table outgoing, int column) {
+      int i = column - keyColumns.length;
+      Aggregate agg = aggs[i];
+      int[] count = counts[i];
+      int type = agg.outputType();
+      for (int g = 0; g < groupCount; g++) {
+        if (agg.op == COUNT) {
+          outgoing.setInt(g, column, count[g]);
+        } else if (agg.op == MEAN) {
+          outgoing.setDouble(g, column, count[g] == 0 ? Double.NaN : doubles[i][g] / count[g]);
+        } else if (longs[i] != null) {
+          if (type == Table.INT) {
+            outgoing.setInt(g, column, (int) longs[i][g]);
+          } else {
+            outgoing.setLong(g, column, longs[i][g]);
+          }
+        } else {
+          double value = doubles[i][g];
+          if (count[g] == 0 && agg.op != SUM) {
+            value = Double.NaN;  // no min or max when every entry was NaN
+          }
+          if (type == Table.FLOAT) {
+            outgoing.setFloat(g, column, (float) value);
+          } else {
+            outgoing.setDouble(g, column, value);
+          }
+        }
+      }
+    }
+  }
+
+
+  /** Fold a value into a total, seen is how many were folded in before. */
+  static long combine(int op, long total, long value, int seen) {
+    if (seen == 0 && op != SUM) {
+      return value;
+    }
+    switch (op) {
+    case MIN:
+      return Math.min(total, value);
+    case MAX:
+      return Math.max(total, value);
+    default:
+      return total + value;
+    }
+  }
+
+
+  static double combine(int op, double total, double value, int seen) {
+    if (seen == 0 && op != SUM) {
+      return value;
+    }
+    switch (op) {
+    case MIN:
+      return Math.min(total, value);
+    case MAX:
+      return Math.max(total, value);
+    default:
+      return total + value;
+    }
+  }
+}
@@ -0,0 +1,385 @@
+package processing.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+
+import processing.core.PApplet;
+
+
+/**
+ * A selection of rows from a Table, which shares the Table's data rather
+ * than copying it. Views are made with table.view() or table.filter(), and
+ * can be narrowed further with filter(). Use toTable() when a separate copy
+ * is needed.
+ *
+ * A view holds row numbers, so it won't follow rows that are later added,
+ * removed, or sorted in the table it came from.
+ *
+ * @see Table#view()
+ * @see Table#filter(TableView.Filter)
+ */
+public class TableView {
+  protected Table table;
+
+  // selected rows, or null when the view covers start to stop
+  protected IntList rows;
+  protected int start;
+  protected int stop;
+
+
+  /** Decides which rows are kept by filter(). */
+  public interface Filter {
+    public boolean test(TableRow row);
+  }
+
+
+  /**
+   * A view of every row in the table.
+   */
+  public TableView(Table table) {
+    this.table = table;
+    start = 0;
+    stop = table.getRowCount();
+  }
+
+
+  /**
+   * A view of the rows from start up to (but not including) stop.
+   */
+  public TableView(Table table, int start, int stop) {
+    if (start < 0 || stop > table.getRowCount() || start > stop) {
+      throw new ArrayIndexOutOfBoundsException("Rows " + start + " to " + stop +
+                                               " are not in the table.");
+    }
+    this.table = table;
+    this.start = start;
+    this.stop = stop;
+  }
+
+
+  public TableView(Table table, int[] rows) {
+    this(table, new IntList(rows));
+  }
+
+
+  public TableView(Table table, IntList rows) {
+    this.table = table;
+    int rowCount = table.getRowCount();
+    for (int i = 0; i < rows.count; i++) {
+      int row = rows.data[i];
+      if (row < 0 || row >= rowCount) {
+        throw new ArrayIndexOutOfBoundsException("Row " + row + " does not exist.");
+      }
+    }
+    this.rows = rows;
+  }
+
+
+  /** The Table that this is a view of. */
+  public Table getTable() {
+    return table;
+  }
+
+
+  public int getRowCount() {
+    return (rows == null) ? stop - start : rows.size();
+  }
+
+
+  /**
+   * Row number in the underlying table for a row of this view.
+   */
+  public int getRowIndex(int row) {
+    if (rows == null) {
+      if (row < 0 || row >= stop - start) {
+        throw new ArrayIndexOutOfBoundsException("Row " + row + " does not exist.");
+      }
+      return start + row;
+    }
+    return rows.get(row);
+  }
+
+
+  /**
+   * Row numbers in the underlying table, in the order of this view.
+   */
+  public int[] getRowIndices() {
+    if (rows == null) {
+      return IntList.fromRange(start, stop).array();
+    }
+    return rows.array();
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Keep the rows that pass the filter, as a new view of the same table.
+   * <pre>
+   * TableView big = table.filter(new TableView.Filter() {
+   *   public boolean test(TableRow row) {
+   *     return row.getFloat("mag") &gt; 5;
+   *   }
+   * });
+   * </pre>
+   */
+  public TableView filter(Filter filter) {
+    Table.RowPointer pointer = new Table.RowPointer(table, 0);
+    IntList outgoing = new IntList();
+    int count = getRowCount();
+    for (int i = 0; i < count; i++) {
+      int row = (rows == null) ? start + i : rows.data[i];
+      pointer.setRow(row);
+      if (filter.test(pointer)) {
+        outgoing.append(row);
+      }
+    }
+    return new TableView(table, outgoing);
+  }
+
+
+  /**
+   * Rows from start up to (but not including) stop of this view.
+   */
+  public TableView slice(int start, int stop) {
+    int count = getRowCount();
+    if (start < 0 || stop > count || start > stop) {
+      throw new ArrayIndexOutOfBoundsException("Rows " + start + " to " + stop +
+                                               " are not in this view.");
+    }
+    if (rows == null) {
+      return new TableView(table, this.start + start, this.start + stop);
+    }
+    return new TableView(table, rows.getSubset(start, stop - start));
+  }
+
+
+  /**
+   * Reorder the rows of this view by a column, leaving the table as-is.
+   */
+  public void sort(String columnName) {
+    sort(new int[] { table.getColumnIndex(columnName) }, new boolean[1]);
+  }
+
+
+  public void sortReverse(String columnName) {
+    sort(new int[] { table.getColumnIndex(columnName) }, new boolean[] { true });
+  }
+
+
+  /**
+   * Reorder the rows of this view by several columns, the same way as
+   * Table.sort(int[], boolean[]).
+   */
+  public void sort(int[] columns, boolean[] reverse) {
+    rows = new IntList(table.sortOrder(getRowIndices(), columns, reverse));
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  public int getColumnCount() {
+    return table.getColumnCount();
+  }
+
+
+  public String[] getColumnTitles() {
+    return table.getColumnTitles();
+  }
+
+
+  public String getColumnTitle(int column) {
+    return table.getColumnTitle(column);
+  }
+
+
+  public int getColumnIndex(String columnName) {
+    return table.getColumnIndex(columnName);
+  }
+
+
+  public int getColumnType(int column) {
+    return table.getColumnType(column);
+  }
+
+
+  public int[] getColumnTypes() {
+    return table.getColumnTypes();
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  public TableRow getRow(int row) {
+    return new Table.RowPointer(table, getRowIndex(row));
+  }
+
+
+  public Iterable<TableRow> rows() {
+    return new Iterable<TableRow>() {
+      public Iterator<TableRow> iterator() {
+        return new Table.RowIndexIterator(table, getRowIndices());
+      }
+    };
+  }
+
+
+  public String getString(int row, int column) {
+    return table.getString(getRowIndex(row), column);
+  }
+
+
+  public String getString(int row, String columnName) {
+    return table.getString(getRowIndex(row), columnName);
+  }
+
+
+  public int getInt(int row, int column) {
+    return table.getInt(getRowIndex(row), column);
+  }
+
+
+  public int getInt(int row, String columnName) {
+    return table.getInt(getRowIndex(row), columnName);
+  }
+
+
+  public long getLong(int row, int column) {
+    return table.getLong(getRowIndex(row), column);
+  }
+
+
+  public long getLong(int row, String columnName) {
+    return table.getLong(getRowIndex(row), columnName);
+  }
+
+
+  public float getFloat(int row, int column) {
+    return table.getFloat(getRowIndex(row), column);
+  }
+
+
+  public float getFloat(int row, String columnName) {
+    return table.getFloat(getRowIndex(row), columnName);
+  }
+
+
+  public double getDouble(int row, int column) {
+    return table.getDouble(getRowIndex(row), column);
+  }
+
+
+  public double getDouble(int row, String columnName) {
+    return table.getDouble(getRowIndex(row), columnName);
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  public String[] getStringColumn(String columnName) {
+    return getStringColumn(table.getColumnIndex(columnName));
+  }
+
+
+  public String[] getStringColumn(int column) {
+    String[] outgoing = new String[getRowCount()];
+    for (int i = 0; i < outgoing.length; i++) {
+      outgoing[i] = table.getString(index(i), column);
+    }
+    return outgoing;
+  }
+
+
+  public int[] getIntColumn(String columnName) {
+    return getIntColumn(table.getColumnIndex(columnName));
+  }
+
+
+  public int[] getIntColumn(int column) {
+    int[] outgoing = new int[getRowCount()];
+    for (int i = 0; i < outgoing.length; i++) {
+      outgoing[i] = table.getInt(index(i), column);
+    }
+    return outgoing;
+  }
+
+
+  public long[] getLongColumn(String columnName) {
+    return getLongColumn(table.getColumnIndex(columnName));
+  }
+
+
+  public long[] getLongColumn(int column) {
+    long[] outgoing = new long[getRowCount()];
+    for (int i = 0; i < outgoing.length; i++) {
+      outgoing[i] = table.getLong(index(i), column);
+    }
+    return outgoing;
+  }
+
+
+  public float[] getFloatColumn(String columnName) {
+    return getFloatColumn(table.getColumnIndex(columnName));
+  }
+
+
+  public float[] getFloatColumn(int column) {
+    float[] outgoing = new float[getRowCount()];
+    for (int i = 0; i < outgoing.length; i++) {
+      outgoing[i] = table.getFloat(index(i), column);
+    }
+    return outgoing;
+  }
+
+
+  public double[] getDoubleColumn(String columnName) {
+    return getDoubleColumn(table.getColumnIndex(columnName));
+  }
+
+
+  public double[] getDoubleColumn(int column) {
+    double[] outgoing = new double[getRowCount()];
+    for (int i = 0; i < outgoing.length; i++) {
+      outgoing[i] = table.getDouble(index(i), column);
+    }
+    return outgoing;
+  }
+
+
+  /** Same as getRowIndex(), without the bounds check. */
+  private int index(int i) {
+    return (rows == null) ? start + i : rows.data[i];
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Copy the rows of this view into a new Table.
+   */
+  public Table toTable() {
+    return table.copyRows(getRowIndices());
+  }
+
+
+  public boolean save(File file, String options) throws IOException {
+    return save(PApplet.createOutput(file),
+                Table.extensionOptions(false, file.getName(), options));
+  }
+
+
+  /**
+   * Save the rows of this view. CSV, TSV, and HTML are written directly
+   * from the table, other formats make a copy with toTable() first.
+   */
+  public boolean save(OutputStream output, String options) {
+    return table.save(output, options, getRowIndices());
+  }
+}
@@ -0,0 +1,133 @@
+package test.processing.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+import processing.data.IntDict;
+import processing.data.StringDict;
+
+/**
+ * Random edits to the dictionaries checked against a plain list of keys
+ * and values, to cover the gaps left by removals and the index lookups
+ * that have to account for them.
+ */
+public class DictTests {
+
+  @Test
+  public void intDictMatchesModel() {
+    Random random = new Random(1);
+    for (int trial = 0; trial < 200; trial++) {
+      IntDict dict = new IntDict(random.nextInt(3));
+      List<String> keys = new ArrayList<String>();
+      List<Integer> values = new ArrayList<Integer>();
+      int range = 1 + random.nextInt(60);
+
+      for (int step = 0; step < 400; step++) {
+        String key = "k" + random.nextInt(range);
+        int model = keys.indexOf(key);
+        switch (random.nextInt(8)) {
+        case 0:
+        case 1:
+        case 2:
+          int value = random.nextInt(100);
+          dict.set(key, value);
+          if (model == -1) {
+            keys.add(key);
+            values.add(value);
+          } else {
+            values.set(model, value);
+          }
+          break;
+        case 3:
+          assertEquals(model, dict.remove(key));
+          if (model != -1) {
+            keys.remove(model);
+            values.remove(model);
+          }
+          break;
+        case 4:
+          if (!keys.isEmpty()) {
+            int index = random.nextInt(keys.size());
+            assertEquals(keys.remove(index), dict.removeIndex(index));
+            values.remove(index);
+          }
+          break;
+        case 5:
+          dict.increment(key);
+          if (model == -1) {
+            keys.add(key);
+            values.add(1);
+          } else {
+            values.set(model, values.get(model) + 1);
+          }
+          break;
+        case 6:
+          // reading by position closes the gaps
+          if (!keys.isEmpty()) {
+            int index = random.nextInt(keys.size());
+            assertEquals(keys.get(index), dict.key(index));
+            assertEquals((int) values.get(index), dict.value(index));
+          }
+          break;
+        case 7:
+          List<String> seen = new ArrayList<String>();
+          for (String k : dict.keys()) {
+            seen.add(k);
+          }
+          assertEquals(keys, seen);
+          break;
+        }
+        assertEquals(keys.size(), dict.size());
+        assertEquals(keys.indexOf(key), dict.index(key));
+        assertEquals(keys.contains(key), dict.hasKey(key));
+      }
+      assertArrayEquals(keys.toArray(new String[0]), dict.keyArray());
+      for (int i = 0; i < keys.size(); i++) {
+        assertEquals((int) values.get(i), dict.get(keys.get(i)));
+      }
+    }
+  }
+
+
+  @Test
+  public void iteratorRemoveSkipsGaps() {
+    IntDict dict = new IntDict();
+    for (int i = 0; i < 10; i++) {
+      dict.set("k" + i, i);
+    }
+    dict.remove("k2");
+    Iterator<String> it = dict.keyIterator();
+    while (it.hasNext()) {
+      if (it.next().endsWith("5")) {
+        it.remove();
+      }
+    }
+    assertArrayEquals(new String[] { "k0", "k1", "k3", "k4", "k6", "k7", "k8", "k9" },
+                      dict.keyArray());
+    assertEquals(4, dict.index("k6"));
+  }
+
+
+  @Test
+  public void stringDictSortAfterRemove() {
+    StringDict dict = new StringDict();
+    String[] keys = { "pear", "Apple", "fig", "banana", "cherry" };
+    for (String key : keys) {
+      dict.set(key, key.toUpperCase());
+    }
+    dict.remove("fig");
+    dict.sortKeys();
+    assertArrayEquals(new String[] { "Apple", "banana", "cherry", "pear" },
+                      dict.keyArray());
+    assertEquals(2, dict.index("cherry"));
+    assertEquals("PEAR", dict.get("pear"));
+    dict.removeIndex(0);
+    assertEquals(0, dict.index("banana"));
+  }
+}
@@ -0,0 +1,172 @@
+package test.processing.data;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Just enough of JDBC to read a Table from a ResultSet and write one with
+ * insertInto(), without a database. Each stub records what was done to it.
+ */
+public class JdbcStubs {
+
+  @SuppressWarnings("unchecked")
+  static <T> T proxy(Class<T> type, InvocationHandler handler) {
+    return (T) Proxy.newProxyInstance(JdbcStubs.class.getClassLoader(),
+                                      new Class<?>[] { type }, handler);
+  }
+
+
+  /** Rows of values, one java.sql.Types code per column. */
+  static class Results implements InvocationHandler {
+    String[] labels;
+    int[] types;
+    Object[][] rows;
+    int row = -1;
+    boolean wasNull;
+    int fetchSize;  // last value passed to setFetchSize(), or 0
+
+    Results(String[] labels, int[] types, Object[][] rows) {
+      this.labels = labels;
+      this.types = types;
+      this.rows = rows;
+    }
+
+    ResultSet resultSet() {
+      return proxy(ResultSet.class, this);
+    }
+
+    public Object invoke(Object proxy, Method method, Object[] args) {
+      String name = method.getName();
+      if (name.equals("next")) {
+        return ++row < rows.length;
+      } else if (name.equals("setFetchSize")) {
+        fetchSize = (Integer) args[0];
+        return null;
+      } else if (name.equals("getMetaData")) {
+        return proxy(ResultSetMetaData.class, new InvocationHandler() {
+          public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            if (name.equals("getColumnCount")) {
+              return labels.length;
+            } else if (name.equals("getColumnLabel")) {
+              return labels[(Integer) args[0] - 1];
+            } else if (name.equals("getColumnType")) {
+              return types[(Integer) args[0] - 1];
+            }
+            throw new UnsupportedOperationException(name);
+          }
+        });
+      } else if (name.equals("wasNull")) {
+        return wasNull;
+      } else if (name.equals("close")) {
+        return null;
+      }
+      Object value = rows[row][(Integer) args[0] - 1];
+      wasNull = (value == null);
+      if (name.equals("getString")) {
+        return (value == null) ? null : String.valueOf(value);
+      } else if (name.equals("getBoolean")) {
+        return (value != null) && (Boolean) value;
+      } else if (name.equals("getDate") || name.equals("getTime") ||
+                 name.equals("getTimestamp")) {
+        return value;
+      }
+      Number number = (value == null) ? Integer.valueOf(0) : (Number) value;
+      if (name.equals("getInt")) {
+        return number.intValue();
+      } else if (name.equals("getLong")) {
+        return number.longValue();
+      } else if (name.equals("getFloat")) {
+        return number.floatValue();
+      } else if (name.equals("getDouble")) {
+        return number.doubleValue();
+      }
+      throw new UnsupportedOperationException(name);
+    }
+  }
+
+
+  /**
+   * A connection whose PreparedStatement keeps each batched row as an
+   * array of the values that were set (null for setNull()).
+   */
+  static class Database implements InvocationHandler {
+    boolean autoCommit = true;
+    int commits;
+    int rollbacks;
+    int batches;
+    String quote = "\"";
+    String sql;
+    boolean failPrepare;
+    boolean statementClosed;
+    List<Object[]> inserted = new ArrayList<Object[]>();
+    List<Object> current = new ArrayList<Object>();
+
+    Connection connection() {
+      return proxy(Connection.class, this);
+    }
+
+    public Object invoke(Object proxy, Method method, Object[] args) throws SQLException {
+      String name = method.getName();
+      if (name.equals("getAutoCommit")) {
+        return autoCommit;
+      } else if (name.equals("setAutoCommit")) {
+        autoCommit = (Boolean) args[0];
+        return null;
+      } else if (name.equals("commit")) {
+        commits++;
+        return null;
+      } else if (name.equals("rollback")) {
+        rollbacks++;
+        return null;
+      } else if (name.equals("getMetaData")) {
+        return proxy(DatabaseMetaData.class, new InvocationHandler() {
+          public Object invoke(Object proxy, Method method, Object[] args) {
+            if (method.getName().equals("getIdentifierQuoteString")) {
+              return quote;
+            }
+            throw new UnsupportedOperationException(method.getName());
+          }
+        });
+      } else if (name.equals("prepareStatement")) {
+        sql = (String) args[0];
+        if (failPrepare) {
+          throw new SQLException("no such table");
+        }
+        return proxy(PreparedStatement.class, new InvocationHandler() {
+          public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            if (name.equals("addBatch")) {
+              inserted.add(current.toArray());
+              current.clear();
+            } else if (name.equals("executeBatch")) {
+              batches++;
+              return new int[0];
+            } else if (name.equals("close")) {
+              statementClosed = true;
+            } else if (name.startsWith("set")) {
+              int index = (Integer) args[0] - 1;
+              while (current.size() <= index) {
+                current.add(null);
+              }
+              current.set(index, name.equals("setNull") ? null : args[1]);
+            } else {
+              throw new UnsupportedOperationException(name);
+            }
+            return null;
+          }
+        });
+      }
+      throw new UnsupportedOperationException(name);
+    }
+  }
+}
@@ -0,0 +1,229 @@
+package test.processing.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+import processing.data.Sort;
+
+/**
+ * Sort is checked on inputs that are bad for a plain quicksort, for both
+ * the result and the number of comparisons it takes, and stableSort() for
+ * keeping ties in their original order.
+ */
+public class SortTests {
+
+  /** Sorts an int array, counting the comparisons. */
+  static class IntSort extends Sort {
+    int[] data;
+    long comparisons;
+
+    IntSort(int[] data) {
+      this.data = data;
+    }
+
+    @Override
+    public int size() {
+      return data.length;
+    }
+
+    @Override
+    public float compare(int a, int b) {
+      comparisons++;
+      return (data[a] < data[b]) ? -1 : ((data[a] > data[b]) ? 1 : 0);
+    }
+
+    @Override
+    public void swap(int a, int b) {
+      int temp = data[a];
+      data[a] = data[b];
+      data[b] = temp;
+    }
+  }
+
+
+  /** The most comparisons allowed for n entries, a few times n log n. */
+  static long limit(int n) {
+    return 4L * n * (32 - Integer.numberOfLeadingZeros(n)) + 100;
+  }
+
+
+  static void check(int[] data) {
+    int[] expected = data.clone();
+    Arrays.sort(expected);
+    IntSort sort = new IntSort(data.clone());
+    sort.run();
+    assertArrayEquals(expected, sort.data);
+    assertTrue(sort.comparisons + " comparisons for " + data.length,
+               sort.comparisons <= limit(data.length));
+  }
+
+
+  @Test
+  public void patterns() {
+    Random random = new Random(1);
+    for (int n : new int[] { 0, 1, 2, 3, 15, 16, 17, 100, 1000, 100000 }) {
+      int[] ascending = new int[n];
+      int[] descending = new int[n];
+      int[] equal = new int[n];
+      int[] organPipe = new int[n];
+      int[] sawtooth = new int[n];
+      int[] fewValues = new int[n];
+      int[] shuffled = new int[n];
+      for (int i = 0; i < n; i++) {
+        ascending[i] = i;
+        descending[i] = n - i;
+        equal[i] = 7;
+        organPipe[i] = Math.min(i, n - i);
+        sawtooth[i] = i % 16;
+        fewValues[i] = random.nextInt(3);
+        shuffled[i] = random.nextInt();
+      }
+      check(ascending);
+      check(descending);
+      check(equal);
+      check(organPipe);
+      check(sawtooth);
+      check(fewValues);
+      check(shuffled);
+    }
+  }
+
+
+  /**
+   * McIlroy's adversary, which decides the values as the sort compares
+   * them so that each pivot is as bad as possible. Without the heapsort
+   * fallback this would take quadratic time.
+   */
+  @Test
+  public void adversary() {
+    final int n = 20000;
+    final int[] value = new int[n];
+    final int gas = n;
+    Arrays.fill(value, gas);
+    IntSort sort = new IntSort(new int[n]) {
+      int solid;
+      int candidate;
+
+      @Override
+      public float compare(int a, int b) {
+        comparisons++;
+        int x = data[a];
+        int y = data[b];
+        if (value[x] == gas && value[y] == gas) {
+          value[x == candidate ? x : y] = solid++;
+        }
+        if (value[x] == gas) {
+          candidate = x;
+        } else if (value[y] == gas) {
+          candidate = y;
+        }
+        return value[x] - value[y];
+      }
+    };
+    for (int i = 0; i < n; i++) {
+      sort.data[i] = i;
+    }
+    sort.run();
+    assertTrue(sort.comparisons + " comparisons", sort.comparisons <= limit(n));
+
+    // sorting the values it settled on is just as bad for plain quicksort
+    check(value);
+  }
+
+
+  @Test
+  public void sortOrder() {
+    Random random = new Random(2);
+    final int[] keys = new int[5000];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = random.nextInt(50);
+    }
+    int[] order = Sort.order(keys.length);
+    Sort.sort(order, keys.length, new Sort.Comparison() {
+      public int compare(int a, int b) {
+        return keys[a] - keys[b];
+      }
+    });
+    for (int i = 1; i < order.length; i++) {
+      assertTrue(keys[order[i - 1]] <= keys[order[i]]);
+    }
+    int[] sortedOrder = order.clone();
+    Arrays.sort(sortedOrder);
+    assertArrayEquals(Sort.order(keys.length), sortedOrder);
+  }
+
+
+  @Test
+  public void stableSortKeepsTies() {
+    Random random = new Random(3);
+    for (int n : new int[] { 0, 1, 15, 16, 17, 33, 1000, 50000 }) {
+      final int[] keys = new int[n];
+      for (int i = 0; i < n; i++) {
+        keys[i] = random.nextInt(1 + n / 10);
+      }
+      int[] order = Sort.order(n);
+      Sort.stableSort(order, n, new Sort.Comparison() {
+        public int compare(int a, int b) {
+          return keys[a] - keys[b];
+        }
+      });
+      for (int i = 1; i < n; i++) {
+        int a = order[i - 1];
+        int b = order[i];
+        assertTrue(keys[a] < keys[b] || (keys[a] == keys[b] && a < b));
+      }
+    }
+  }
+
+
+  @Test
+  public void stableSortPartOfOrder() {
+    final int[] keys = { 5, 3, 5, 1, 3, 9, 0, 0 };
+    int[] order = Sort.order(keys.length);
+    // only the first six are sorted, the rest stay where they are
+    Sort.stableSort(order, 6, new Sort.Comparison() {
+      public int compare(int a, int b) {
+        return keys[b] - keys[a];
+      }
+    });
+    assertArrayEquals(new int[] { 5, 0, 2, 1, 4, 3, 6, 7 }, order);
+  }
+
+
+  @Test
+  public void firstMatchesFullSort() {
+    Random random = new Random(4);
+    for (int trial = 0; trial < 300; trial++) {
+      int n = random.nextInt(200);
+      final int[] keys = new int[n];
+      for (int i = 0; i < n; i++) {
+        keys[i] = random.nextInt(1 + random.nextInt(20));
+      }
+      Sort.Comparison comparison = new Sort.Comparison() {
+        public int compare(int a, int b) {
+          return keys[a] - keys[b];
+        }
+      };
+      int[] order = Sort.order(n);
+      Sort.stableSort(order, n, comparison);
+      int k = random.nextInt(n + 5);
+      // ties go to the lower position, the same as a stable sort
+      int[] expected = Arrays.copyOf(order, Math.min(k, n));
+      assertArrayEquals(expected, Sort.first(n, k, comparison));
+    }
+  }
+
+
+  @Test(expected = IllegalArgumentException.class)
+  public void firstNegative() {
+    Sort.first(10, -1, new Sort.Comparison() {
+      public int compare(int a, int b) {
+        return 0;
+      }
+    });
+  }
+}
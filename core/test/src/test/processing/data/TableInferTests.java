@@ -0,0 +1,49 @@
+package test.processing.data;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import org.junit.Test;
+
+import processing.data.Table;
+
+/** Column types picked by the "infer" option when loading a CSV. */
+public class TableInferTests {
+
+  static Table load(String csv) throws IOException {
+    return new Table(new ByteArrayInputStream(csv.getBytes("UTF-8")),
+                     "csv,header,infer");
+  }
+
+
+  @Test
+  public void textFirstStaysText() throws IOException {
+    Table table = load("id,name\n1,abc\n2,7\n3,xyz\n");
+    assertEquals(Table.INT, table.getColumnType("id"));
+    assertEquals(Table.STRING, table.getColumnType("name"));
+    assertEquals("abc", table.getString(0, "name"));
+    assertEquals("7", table.getString(1, "name"));
+    assertEquals("xyz", table.getString(2, "name"));
+  }
+
+
+  @Test
+  public void numbersFirstBecomeText() throws IOException {
+    Table table = load("id,name\n1,7\n2,2.5\n3,abc\n");
+    assertEquals(Table.STRING, table.getColumnType("name"));
+    assertEquals("7", table.getString(0, "name"));
+    assertEquals("2.5", table.getString(1, "name"));
+    assertEquals("abc", table.getString(2, "name"));
+  }
+
+
+  @Test
+  public void numbersWiden() throws IOException {
+    Table table = load("a,b,c\n1,1,1\n2,2.5,12345678901\n3,,\n");
+    assertEquals(Table.INT, table.getColumnType("a"));
+    assertEquals(Table.FLOAT, table.getColumnType("b"));
+    assertEquals(Table.LONG, table.getColumnType("c"));
+    assertEquals(12345678901L, table.getLong(1, "c"));
+  }
+}
@@ -0,0 +1,190 @@
+package test.processing.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import org.junit.Test;
+
+import processing.data.Table;
+
+public class TableJdbcTests {
+
+  @Test
+  public void nullsBecomeMissingValues() {
+    JdbcStubs.Results results = new JdbcStubs.Results(
+      new String[] { "i", "l", "f", "d", "s" },
+      new int[] { Types.INTEGER, Types.BIGINT, Types.REAL, Types.DOUBLE, Types.VARCHAR },
+      new Object[][] {
+        { 1, 2L, 3.5f, 4.25, "five" },
+        { null, null, null, null, null }
+      });
+    Table table = new Table(results.resultSet());
+    assertEquals(2, table.getRowCount());
+    assertEquals(Table.INT, table.getColumnType("i"));
+    assertEquals(Table.LONG, table.getColumnType("l"));
+    assertEquals(Table.FLOAT, table.getColumnType("f"));
+    assertEquals(Table.DOUBLE, table.getColumnType("d"));
+    assertEquals(Table.STRING, table.getColumnType("s"));
+
+    assertEquals(1, table.getInt(0, "i"));
+    assertEquals(2L, table.getLong(0, "l"));
+    assertEquals(3.5f, table.getFloat(0, "f"), 0);
+    assertEquals(4.25, table.getDouble(0, "d"), 0);
+    assertEquals("five", table.getString(0, "s"));
+
+    assertEquals(0, table.getInt(1, "i"));
+    assertEquals(0L, table.getLong(1, "l"));
+    assertTrue(Float.isNaN(table.getFloat(1, "f")));
+    assertTrue(Double.isNaN(table.getDouble(1, "d")));
+    assertNull(table.getString(1, "s"));
+  }
+
+
+  @Test
+  public void datesBecomeLongs() {
+    Date date = new Date(86400000L * 365);
+    Timestamp timestamp = new Timestamp(1234567890123L);
+    JdbcStubs.Results results = new JdbcStubs.Results(
+      new String[] { "day", "when" },
+      new int[] { Types.DATE, Types.TIMESTAMP },
+      new Object[][] {
+        { date, timestamp },
+        { null, null }
+      });
+    Table table = new Table(results.resultSet());
+    assertEquals(Table.LONG, table.getColumnType("day"));
+    assertEquals(Table.LONG, table.getColumnType("when"));
+    assertEquals(date.getTime(), table.getLong(0, "day"));
+    assertEquals(timestamp.getTime(), table.getLong(0, "when"));
+    assertEquals(0L, table.getLong(1, "day"));
+    assertEquals(0L, table.getLong(1, "when"));
+  }
+
+
+  @Test
+  public void booleansBecomeInts() {
+    JdbcStubs.Results results = new JdbcStubs.Results(
+      new String[] { "b", "bit" },
+      new int[] { Types.BOOLEAN, Types.BIT },
+      new Object[][] {
+        { true, false },
+        { false, true }
+      });
+    Table table = new Table(results.resultSet());
+    assertEquals(Table.INT, table.getColumnType("b"));
+    assertEquals(Table.INT, table.getColumnType("bit"));
+    assertEquals(1, table.getInt(0, "b"));
+    assertEquals(0, table.getInt(0, "bit"));
+    assertEquals(0, table.getInt(1, "b"));
+    assertEquals(1, table.getInt(1, "bit"));
+  }
+
+
+  @Test
+  public void fetchSize() {
+    JdbcStubs.Results results = new JdbcStubs.Results(
+      new String[] { "i" }, new int[] { Types.INTEGER }, new Object[0][]);
+    new Table(results.resultSet(), 500);
+    assertEquals(500, results.fetchSize);
+
+    results = new JdbcStubs.Results(
+      new String[] { "i" }, new int[] { Types.INTEGER }, new Object[0][]);
+    new Table(results.resultSet());
+    assertEquals(0, results.fetchSize);  // left to the driver
+  }
+
+
+  @Test
+  public void roundTrip() throws SQLException {
+    Table table = new Table();
+    table.addColumn("i", Table.INT);
+    table.addColumn("l", Table.LONG);
+    table.addColumn("f", Table.FLOAT);
+    table.addColumn("d", Table.DOUBLE);
+    table.addColumn("s", Table.STRING);
+    int rows = 2500;
+    for (int row = 0; row < rows; row++) {
+      table.addRow();
+      table.setInt(row, "i", row);
+      table.setLong(row, "l", row * 10000000000L);
+      table.setFloat(row, "f", (row % 7 == 0) ? Float.NaN : row / 4f);
+      table.setDouble(row, "d", (row % 5 == 0) ? Double.NaN : row / 8.0);
+      table.setString(row, "s", (row % 3 == 0) ? null : "row " + row);
+    }
+
+    JdbcStubs.Database database = new JdbcStubs.Database();
+    table.insertInto(database.connection(), "things", 1000);
+    assertEquals("INSERT INTO things (\"i\", \"l\", \"f\", \"d\", \"s\") " +
+                 "VALUES (?, ?, ?, ?, ?)", database.sql);
+    assertEquals(3, database.batches);
+    assertEquals(1, database.commits);
+    assertEquals(0, database.rollbacks);
+    assertTrue(database.autoCommit);
+    assertTrue(database.statementClosed);
+    assertEquals(rows, database.inserted.size());
+
+    JdbcStubs.Results results = new JdbcStubs.Results(
+      new String[] { "i", "l", "f", "d", "s" },
+      new int[] { Types.INTEGER, Types.BIGINT, Types.REAL, Types.DOUBLE, Types.VARCHAR },
+      database.inserted.toArray(new Object[0][]));
+    Table back = new Table(results.resultSet());
+    assertEquals(rows, back.getRowCount());
+    for (int row = 0; row < rows; row++) {
+      assertEquals(table.getInt(row, 0), back.getInt(row, 0));
+      assertEquals(table.getLong(row, 1), back.getLong(row, 1));
+      assertEquals(table.getFloat(row, 2), back.getFloat(row, 2), 0);
+      assertEquals(table.getDouble(row, 3), back.getDouble(row, 3), 0);
+      assertEquals(table.getString(row, 4), back.getString(row, 4));
+    }
+  }
+
+
+  @Test
+  public void existingTransactionIsLeftOpen() throws SQLException {
+    Table table = new Table();
+    table.addColumn("i", Table.INT);
+    table.addRow();
+    JdbcStubs.Database database = new JdbcStubs.Database();
+    database.autoCommit = false;
+    table.insertInto(database.connection(), "things");
+    assertEquals(0, database.commits);
+    assertFalse(database.autoCommit);
+    assertEquals(1, database.inserted.size());
+  }
+
+
+  @Test
+  public void failureRestoresAutoCommit() {
+    Table table = new Table();
+    table.addColumn("i", Table.INT);
+    table.addRow();
+    JdbcStubs.Database database = new JdbcStubs.Database();
+    database.failPrepare = true;
+    try {
+      table.insertInto(database.connection(), "missing");
+      fail("expected an SQLException");
+    } catch (SQLException e) {
+      assertEquals("no such table", e.getMessage());
+    }
+    assertTrue(database.autoCommit);
+    assertEquals(1, database.rollbacks);
+    assertEquals(0, database.commits);
+  }
+
+
+  @Test
+  public void quotesInTitlesAreDoubled() throws SQLException {
+    Table table = new Table();
+    table.addColumn("say \"hi\"", Table.INT);
+    JdbcStubs.Database database = new JdbcStubs.Database();
+    table.insertInto(database.connection(), "things");
+    assertEquals("INSERT INTO things (\"say \"\"hi\"\"\") VALUES (?)", database.sql);
+  }
+}
@@ -0,0 +1,94 @@
+package test.processing.data;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import org.junit.Test;
+
+import processing.data.Table;
+import processing.data.TableRow;
+
+/** Tables kept in direct buffers with setOffHeap() or "offheap". */
+public class TableOffHeapTests {
+
+  static Table numbers(int count) {
+    Table table = new Table();
+    table.addColumn("n", Table.INT);
+    table.addColumn("s", Table.STRING);
+    for (int i = 0; i < count; i++) {
+      TableRow row = table.addRow();
+      row.setInt(0, count - i);
+      row.setString(1, "s" + (count - i));
+    }
+    return table;
+  }
+
+
+  /** Columns read from a .tbl file have no categories to copy. */
+  @Test
+  public void sharedColumnFromFile() throws IOException {
+    File file = File.createTempFile("offheap", ".tbl");
+    file.deleteOnExit();
+    numbers(5).save(file, "tbl");
+
+    Table table = new Table(file, "tbl");
+    table.sort(0);
+    Table copy = table.copy();
+    copy.setOffHeap(true);
+    copy.setInt(0, 0, 99);
+
+    assertEquals(99, copy.getInt(0, 0));
+    assertEquals(1, table.getInt(0, 0));
+    assertEquals("s5", copy.getString(4, 1));
+  }
+
+
+  static void append(File file, int first, int last) throws IOException {
+    FileWriter writer = new FileWriter(file, true);
+    try {
+      for (int i = first; i <= last; i++) {
+        writer.write(i + "," + (i * 10000000000L) + "," + (i + 0.5) + ",s" + i + "\n");
+      }
+    } finally {
+      writer.close();
+    }
+  }
+
+
+  static void assertWindow(Table table, int first, int last) {
+    assertEquals(last - first + 1, table.getRowCount());
+    for (int row = 0; row < table.getRowCount(); row++) {
+      int i = first + row;
+      assertEquals(i, table.getInt(row, 0));
+      assertEquals(i * 10000000000L, table.getLong(row, 1));
+      assertEquals(i + 0.5, table.getDouble(row, 2), 0);
+      assertEquals("s" + i, table.getString(row, 3));
+    }
+  }
+
+
+  @Test
+  public void windowKeepsNewestRows() throws IOException {
+    File file = File.createTempFile("offheap", ".csv");
+    file.deleteOnExit();
+    FileWriter writer = new FileWriter(file);
+    writer.write("i,l,d,s\n");
+    writer.close();
+    append(file, 1, 3);
+
+    Table table = new Table(file, "csv,header,infer,follow,offheap,window=5");
+    assertWindow(table, 1, 3);
+    append(file, 4, 7);
+    assertEquals(4, table.refresh());
+    assertWindow(table, 3, 7);
+
+    // the copy keeps its rows when the original drops them
+    Table copy = table.copy();
+    append(file, 8, 20000);
+    table.refresh();
+    assertWindow(table, 19996, 20000);
+    assertWindow(copy, 3, 7);
+  }
+}